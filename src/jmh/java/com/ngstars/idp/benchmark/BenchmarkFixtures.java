@@ -0,0 +1,104 @@
+package com.ngstars.idp.benchmark;
+
+
+import com.ngstars.idp.config.JwtProperties;
+import com.ngstars.idp.entity.Role;
+import com.ngstars.idp.entity.User;
+import com.ngstars.idp.repository.SigningKeyRepository;
+import com.ngstars.idp.util.JwtTokenProvider;
+import com.ngstars.idp.util.SigningKeyRing;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Données et doublures partagées par les benchmarks (aucun contexte Spring, aucune DB).
+ */
+final class BenchmarkFixtures {
+
+    static final String EMAIL = "bench.user@example.com";
+
+    private BenchmarkFixtures() {}
+
+    static JwtProperties jwtProperties() {
+        return jwtProperties("HS512");
+    }
+
+    static JwtProperties jwtProperties(String algorithm) {
+        JwtProperties props = new JwtProperties();
+        props.setAlgorithm(algorithm);
+        props.setSecret("benchmarkSecretKeyForJWTTokenGenerationThatIsAtLeast512BitsLongForHS512Algorithm");
+        props.setExpirationMs(900_000);
+        props.setRefreshExpirationMs(2_592_000_000L);
+        return props;
+    }
+
+    /**
+     * JwtTokenProvider initialisé, trousseau de clés en mémoire pour les algorithmes asymétriques.
+     */
+    static JwtTokenProvider jwtTokenProvider(String algorithm) {
+        JwtProperties props = jwtProperties(algorithm);
+        SigningKeyRing keyRing = new SigningKeyRing(props, savingRepository(SigningKeyRepository.class),
+                noOpTransactionManager());
+        keyRing.init();
+        JwtTokenProvider provider = new JwtTokenProvider(props, keyRing, new SimpleMeterRegistry());
+        provider.init();
+        return provider;
+    }
+
+    static User user() {
+        User user = new User();
+        user.setId(42L);
+        user.setEmail(EMAIL);
+        user.setPassword("$2a$10$7EqJtq98hPqEX7fNZaFWoOhi5BWX4Z1Qk8Q6G0o1xTzJ5hQ5lG5Yy");
+        user.setEnabled(true);
+        Set<Role> roles = new HashSet<>();
+        roles.add(role(1L, "ROLE_USER"));
+        roles.add(role(2L, "ROLE_ADMIN"));
+        user.setRoles(roles);
+        return user;
+    }
+
+    private static Role role(Long id, String name) {
+        Role role = new Role();
+        role.setId(id);
+        role.setName(name);
+        return role;
+    }
+
+    /**
+     * Gestionnaire de transactions sans effet (aucune DB) : TransactionTemplate exécute simplement l'action.
+     */
+    static PlatformTransactionManager noOpTransactionManager() {
+        return (PlatformTransactionManager) Proxy.newProxyInstance(PlatformTransactionManager.class.getClassLoader(),
+                new Class<?>[]{PlatformTransactionManager.class}, (proxy, method, args) -> null);
+    }
+
+    /**
+     * Repository Spring Data factice : save() conserve et renvoie l'entité, les find* de listes
+     * renvoient les entités sauvegardées (plus récentes d'abord), les lock* ne font rien, le reste n'est pas supporté.
+     */
+    @SuppressWarnings("unchecked")
+    static <R> R savingRepository(Class<R> type) {
+        List<Object> saved = Collections.synchronizedList(new ArrayList<>());
+        return (R) Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, (proxy, method, args) -> {
+            if (method.getName().equals("save")) {
+                saved.add(0, args[0]);
+                return args[0];
+            }
+            if (method.getName().startsWith("find") && List.class.isAssignableFrom(method.getReturnType())) {
+                return new ArrayList<>(saved);
+            }
+            if (method.getName().startsWith("lock")) {
+                return null; // verrous DB : sans objet en mémoire
+            }
+            throw new UnsupportedOperationException(method.getName());
+        });
+    }
+}
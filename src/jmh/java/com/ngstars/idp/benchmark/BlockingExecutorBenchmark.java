@@ -0,0 +1,153 @@
+package com.ngstars.idp.benchmark;
+
+
+import com.ngstars.idp.IdpApplication;
+import com.ngstars.idp.entity.User;
+import com.ngstars.idp.repository.UserRepository;
+import com.ngstars.idp.service.AuthService;
+import com.ngstars.idp.service.TokenService;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.core.task.VirtualThreadTaskExecutor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Rafale de refresh (AuthService.refreshToken : lecture du token et de l'utilisateur, rotation
+ * conditionnelle, INSERT du successeur, événement d'invalidation, access token) contre PostgreSQL
+ * via le pool Hikari, par mode d'exécution :
+ * - "platform" : pool fixe de 200 threads plateforme (valeur par défaut de server.tomcat.threads.max)
+ * - "virtual"  : un thread virtuel par requête (spring.threads.virtual.enabled=true), Java 21+
+ *
+ * Application complète (profil dev, port HTTP aléatoire, appels directs au service) : base de
+ * application-dev.yml (DB_URL, DB_USER, DB_PASS) migrée par Flyway au démarrage. Chaque tâche fait
+ * tourner sa propre famille de refresh tokens, pour un utilisateur dédié dont les tokens sont
+ * supprimés au TearDown.
+ *
+ * connections = spring.datasource.hikari.maximum-pool-size : la concurrence effective en base est
+ * min(threads, connections), les autres requêtes attendent une connexion du pool.
+ *
+ * Sur une JVM 21+ le profil Maven java21 (activé automatiquement) mesure les deux modes; en Java 17
+ * seul "platform" est mesuré :
+ *   mvn -Pbenchmark test-compile exec:exec -Djmh.args="BlockingExecutorBenchmark"
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class BlockingExecutorBenchmark {
+
+    private static final int PLATFORM_THREADS = 200;
+    private static final String EMAIL = "jmh.refresh@example.com";
+
+    @Param({"platform"})
+    public String executor;
+
+    @Param({"500"})
+    public int tasks;
+
+    @Param({"10", "20"})
+    public int connections;
+
+    private Executor taskExecutor;
+    private ExecutorService platformPool;
+    private ConfigurableApplicationContext context;
+    private AuthService authService;
+    private Long userId;
+    private String[] refreshTokens;
+
+    @Setup
+    public void setup() {
+        switch (executor) {
+            case "platform":
+                platformPool = Executors.newFixedThreadPool(PLATFORM_THREADS, new CustomizableThreadFactory("bench-platform-"));
+                taskExecutor = platformPool;
+                break;
+            case "virtual":
+                if (Runtime.version().feature() < 21) {
+                    throw new IllegalStateException("executor=virtual requiert Java 21+ (JVM courante : "
+                            + Runtime.version() + ")");
+                }
+                taskExecutor = new VirtualThreadTaskExecutor("bench-virtual-");
+                break;
+            default:
+                throw new IllegalArgumentException("Executor inconnu : " + executor);
+        }
+
+        // Arguments de ligne de commande : prioritaires sur application-dev.yml
+        context = new SpringApplicationBuilder(IdpApplication.class)
+                .profiles("dev")
+                .run("--server.port=0",
+                        "--spring.datasource.hikari.maximum-pool-size=" + connections,
+                        "--spring.datasource.hikari.minimum-idle=" + connections,
+                        "--spring.datasource.hikari.connection-timeout=30000",
+                        "--spring.jpa.show-sql=false",
+                        "--logging.level.root=WARN");
+        authService = context.getBean(AuthService.class);
+
+        UserRepository users = context.getBean(UserRepository.class);
+        User user = users.findByEmail(EMAIL).orElseGet(() -> {
+            User created = new User();
+            created.setEmail(EMAIL);
+            // Jamais utilisé pour un login
+            created.setPassword("!");
+            created.setEnabled(true);
+            return users.save(created);
+        });
+        userId = user.getId();
+
+        TokenService tokenService = context.getBean(TokenService.class);
+        Instant expiry = Instant.now().plus(1, ChronoUnit.DAYS);
+        refreshTokens = new String[tasks];
+        for (int i = 0; i < tasks; i++) {
+            refreshTokens[i] = tokenService.createRefreshToken(user, expiry, "JMH").getToken();
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws InterruptedException {
+        if (platformPool != null) {
+            platformPool.shutdown();
+            platformPool.awaitTermination(10, TimeUnit.SECONDS);
+        }
+        if (context != null) {
+            context.getBean(JdbcTemplate.class).update("DELETE FROM refresh_tokens WHERE user_id = ?", userId);
+            context.close();
+        }
+    }
+
+    @Benchmark
+    public void burst() throws InterruptedException {
+        CountDownLatch done = new CountDownLatch(tasks);
+        AtomicReference<RuntimeException> failure = new AtomicReference<>();
+        for (int i = 0; i < tasks; i++) {
+            int family = i;
+            taskExecutor.execute(() -> {
+                try {
+                    refreshTokens[family] = authService.refreshToken(refreshTokens[family]).getRefreshToken();
+                } catch (RuntimeException ex) {
+                    failure.compareAndSet(null, ex);
+                } finally {
+                    done.countDown();
+                }
+            });
+        }
+        done.await();
+        // Famille interrompue : les itérations suivantes ne mesureraient plus que des refus
+        if (failure.get() != null) {
+            throw failure.get();
+        }
+    }
+}
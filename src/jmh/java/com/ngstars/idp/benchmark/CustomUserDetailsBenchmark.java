@@ -0,0 +1,32 @@
+package com.ngstars.idp.benchmark;
+
+
+import com.ngstars.idp.entity.User;
+import com.ngstars.idp.security.CustomUserDetails;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Construction du principal Spring Security depuis l'entité User (rôles -> authorities).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CustomUserDetailsBenchmark {
+
+    private User user;
+
+    @Setup
+    public void setup() {
+        user = BenchmarkFixtures.user();
+    }
+
+    @Benchmark
+    public CustomUserDetails fromEntity() {
+        return new CustomUserDetails(user);
+    }
+}
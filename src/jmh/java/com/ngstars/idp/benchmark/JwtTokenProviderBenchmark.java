@@ -0,0 +1,67 @@
+package com.ngstars.idp.benchmark;
+
+
+import com.ngstars.idp.util.IssuedAccessToken;
+import com.ngstars.idp.util.JwtTokenProvider;
+import com.ngstars.idp.util.JwtValidationResult;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Émission et validation des access tokens (JwtTokenProvider).
+ * - issueAccessToken : émission par login / refresh (header précalculé, claims sérialisés à la main)
+ * - generateAccessToken : builder JJWT générique, pour comparaison
+ * - validateAndExtract : chemin du filtre JWT (un seul parsing)
+ * - validateThenGetSubject : ancien chemin à deux parsings, pour comparaison
+ * pour chaque algorithme de signature supporté.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JwtTokenProviderBenchmark {
+
+    private static final List<String> ROLES = List.of("ROLE_USER");
+
+    @Param({"HS512", "RS256", "ES256"})
+    public String algorithm;
+
+    private JwtTokenProvider provider;
+    private Map<String, Object> claims;
+    private String token;
+
+    @Setup
+    public void setup() {
+        provider = BenchmarkFixtures.jwtTokenProvider(algorithm);
+        claims = Map.of(
+                JwtTokenProvider.CLAIM_USER_ID, 42L,
+                JwtTokenProvider.CLAIM_ROLES, ROLES,
+                JwtTokenProvider.CLAIM_ACCOUNT_VERSION, 1);
+        token = provider.issueAccessToken(BenchmarkFixtures.EMAIL, 42L, ROLES, 1).getToken();
+    }
+
+    @Benchmark
+    public IssuedAccessToken issueAccessToken() {
+        return provider.issueAccessToken(BenchmarkFixtures.EMAIL, 42L, ROLES, 1);
+    }
+
+    @Benchmark
+    public String generateAccessToken() {
+        return provider.generateAccessToken(BenchmarkFixtures.EMAIL, claims);
+    }
+
+    @Benchmark
+    public JwtValidationResult validateAndExtract() {
+        return provider.validateAndExtract(token);
+    }
+
+    @Benchmark
+    public String validateThenGetSubject() {
+        return provider.validateToken(token) ? provider.getSubjectFromToken(token) : null;
+    }
+}
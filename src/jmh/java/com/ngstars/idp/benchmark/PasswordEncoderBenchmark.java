@@ -0,0 +1,66 @@
+package com.ngstars.idp.benchmark;
+
+
+import com.ngstars.idp.config.PasswordConfig;
+import com.ngstars.idp.config.PasswordHashingProperties;
+import com.ngstars.idp.security.PasswordEncoderCalibrator;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Coût d'un hachage / d'une vérification de mot de passe (register / login), par encoder :
+ * - "config"            : encoder tel que fourni par PasswordConfig (calibré sur cette machine)
+ * - "bcrypt:N"          : BCrypt de strength N
+ * - "argon2:M:T"        : Argon2id, M KiB de mémoire, T itérations, parallélisme 1
+ *
+ * Ex : -p encoder=bcrypt:11,argon2:47104:1 pour comparer d'autres réglages.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PasswordEncoderBenchmark {
+
+    private static final String RAW_PASSWORD = "correct-horse-battery-staple";
+
+    @Param({"config", "bcrypt:10", "bcrypt:12", "argon2:19456:2", "argon2:65536:3"})
+    public String encoder;
+
+    private PasswordEncoder passwordEncoder;
+    private String encoded;
+
+    @Setup
+    public void setup() {
+        passwordEncoder = create(encoder);
+        encoded = passwordEncoder.encode(RAW_PASSWORD);
+    }
+
+    private static PasswordEncoder create(String spec) {
+        String[] parts = spec.split(":");
+        switch (parts[0]) {
+            case "config":
+                return new PasswordConfig().hashingEncoder(new PasswordHashingProperties());
+            case "bcrypt":
+                return new BCryptPasswordEncoder(Integer.parseInt(parts[1]));
+            case "argon2":
+                return PasswordEncoderCalibrator.argon2(Integer.parseInt(parts[1]), 1, Integer.parseInt(parts[2]));
+            default:
+                throw new IllegalArgumentException("Encoder inconnu : " + spec);
+        }
+    }
+
+    @Benchmark
+    public String encode() {
+        return passwordEncoder.encode(RAW_PASSWORD);
+    }
+
+    @Benchmark
+    public boolean matches() {
+        return passwordEncoder.matches(RAW_PASSWORD, encoded);
+    }
+}
@@ -0,0 +1,56 @@
+package com.ngstars.idp.benchmark;
+
+
+import com.ngstars.idp.config.IntrospectionProperties;
+import com.ngstars.idp.config.InvalidationProperties;
+import com.ngstars.idp.entity.RefreshToken;
+import com.ngstars.idp.entity.User;
+import com.ngstars.idp.repository.RefreshTokenRepository;
+import com.ngstars.idp.repository.VerificationTokenRepository;
+import com.ngstars.idp.security.IntrospectionCache;
+import com.ngstars.idp.service.InvalidationBus;
+import com.ngstars.idp.service.TokenServiceImpl;
+import com.ngstars.idp.util.JwtTokenProvider;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.openjdk.jmh.annotations.*;
+
+import java.time.Instant;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Génération des refresh tokens opaques (TokenServiceImpl.createRefreshToken),
+ * repository remplacé par une doublure : seul le coût CPU côté service est mesuré.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TokenServiceBenchmark {
+
+    private TokenServiceImpl tokenService;
+    private User user;
+    private Instant expiry;
+
+    @Setup
+    public void setup() {
+        JwtTokenProvider provider = BenchmarkFixtures.jwtTokenProvider("HS512");
+        tokenService = new TokenServiceImpl(
+                BenchmarkFixtures.savingRepository(RefreshTokenRepository.class),
+                BenchmarkFixtures.savingRepository(VerificationTokenRepository.class),
+                provider,
+                BenchmarkFixtures.jwtProperties(),
+                new IntrospectionCache(new IntrospectionProperties(), new SimpleMeterRegistry()),
+                // createRefreshToken ne publie aucun événement : JdbcTemplate jamais appelé
+                new InvalidationBus(new JdbcTemplate(), new InvalidationProperties(), new SimpleMeterRegistry()));
+        user = BenchmarkFixtures.user();
+        expiry = Instant.now().plusSeconds(3600);
+    }
+
+    @Benchmark
+    public RefreshToken createRefreshToken() {
+        return tokenService.createRefreshToken(user, expiry, "JMH");
+    }
+}
@@ -0,0 +1,36 @@
+package com.ngstars.idp.config;
+
+
+import jakarta.validation.constraints.Max;
+import jakarta.validation.constraints.Min;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.validation.annotation.Validated;
+
+/**
+ * Enregistrement différé de l'activité des utilisateurs (last_login, last_refresh_at) :
+ *
+ * idp:
+ *   activity:
+ *     flush-interval-ms: 10000
+ *     max-batch-size: 5000      # utilisateurs par UPDATE, 10000 au plus
+ *
+ * 3 paramètres liés par utilisateur; PostgreSQL en accepte au plus 32767 par requête. Au-delà,
+ * chaque flush échouerait et les entrées remises en file s'accumuleraient : validé au démarrage.
+ */
+@Configuration
+@ConfigurationProperties(prefix = "idp.activity")
+@Validated
+public class ActivityTrackingProperties {
+
+    private long flushIntervalMs = 10_000;
+    @Min(1)
+    @Max(10_000)
+    private int maxBatchSize = 5000;
+
+    public long getFlushIntervalMs() { return flushIntervalMs; }
+    public void setFlushIntervalMs(long flushIntervalMs) { this.flushIntervalMs = flushIntervalMs; }
+
+    public int getMaxBatchSize() { return maxBatchSize; }
+    public void setMaxBatchSize(int maxBatchSize) { this.maxBatchSize = maxBatchSize; }
+}
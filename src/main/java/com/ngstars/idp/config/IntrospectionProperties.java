@@ -0,0 +1,32 @@
+package com.ngstars.idp.config;
+
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Introspection des tokens (POST /api/auth/introspect, RFC 7662) :
+ *
+ * idp:
+ *   introspection:
+ *     cache-enabled: true
+ *     cache-max-size: 100000
+ *     cache-ttl-ms: 30000   # borne la durée d'un résultat périmé si une invalidation est manquée
+ */
+@Configuration
+@ConfigurationProperties(prefix = "idp.introspection")
+public class IntrospectionProperties {
+
+    private boolean cacheEnabled = true;
+    private long cacheMaxSize = 100_000;
+    private long cacheTtlMs = 30_000;
+
+    public boolean isCacheEnabled() { return cacheEnabled; }
+    public void setCacheEnabled(boolean cacheEnabled) { this.cacheEnabled = cacheEnabled; }
+
+    public long getCacheMaxSize() { return cacheMaxSize; }
+    public void setCacheMaxSize(long cacheMaxSize) { this.cacheMaxSize = cacheMaxSize; }
+
+    public long getCacheTtlMs() { return cacheTtlMs; }
+    public void setCacheTtlMs(long cacheTtlMs) { this.cacheTtlMs = cacheTtlMs; }
+}
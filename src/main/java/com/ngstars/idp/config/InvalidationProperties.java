@@ -0,0 +1,62 @@
+package com.ngstars.idp.config;
+
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Propagation des invalidations entre nœuds (table invalidation_events + LISTEN/NOTIFY PostgreSQL) :
+ *
+ * idp:
+ *   invalidation:
+ *     enabled: true
+ *     channel: idp_invalidation
+ *     listen: true                      # false = polling seul (ex: PgBouncer en mode transaction)
+ *     poll-interval-ms: 5000            # rattrapage périodique, même avec LISTEN
+ *     batch-size: 500
+ *     gap-timeout-ms: 10000             # attente max d'un id sauté (transaction encore ouverte)
+ *     reconnect-initial-backoff-ms: 500
+ *     reconnect-max-backoff-ms: 30000
+ *     retention-ms: 3600000             # purge par TokenReaper
+ */
+@Configuration
+@ConfigurationProperties(prefix = "idp.invalidation")
+public class InvalidationProperties {
+
+    private boolean enabled = true;
+    private String channel = "idp_invalidation";
+    private boolean listen = true;
+    private long pollIntervalMs = 5_000;
+    private int batchSize = 500;
+    private long gapTimeoutMs = 10_000;
+    private long reconnectInitialBackoffMs = 500;
+    private long reconnectMaxBackoffMs = 30_000;
+    private long retentionMs = 3_600_000;
+
+    public boolean isEnabled() { return enabled; }
+    public void setEnabled(boolean enabled) { this.enabled = enabled; }
+
+    public String getChannel() { return channel; }
+    public void setChannel(String channel) { this.channel = channel; }
+
+    public boolean isListen() { return listen; }
+    public void setListen(boolean listen) { this.listen = listen; }
+
+    public long getPollIntervalMs() { return pollIntervalMs; }
+    public void setPollIntervalMs(long pollIntervalMs) { this.pollIntervalMs = pollIntervalMs; }
+
+    public int getBatchSize() { return batchSize; }
+    public void setBatchSize(int batchSize) { this.batchSize = batchSize; }
+
+    public long getGapTimeoutMs() { return gapTimeoutMs; }
+    public void setGapTimeoutMs(long gapTimeoutMs) { this.gapTimeoutMs = gapTimeoutMs; }
+
+    public long getReconnectInitialBackoffMs() { return reconnectInitialBackoffMs; }
+    public void setReconnectInitialBackoffMs(long reconnectInitialBackoffMs) { this.reconnectInitialBackoffMs = reconnectInitialBackoffMs; }
+
+    public long getReconnectMaxBackoffMs() { return reconnectMaxBackoffMs; }
+    public void setReconnectMaxBackoffMs(long reconnectMaxBackoffMs) { this.reconnectMaxBackoffMs = reconnectMaxBackoffMs; }
+
+    public long getRetentionMs() { return retentionMs; }
+    public void setRetentionMs(long retentionMs) { this.retentionMs = retentionMs; }
+}
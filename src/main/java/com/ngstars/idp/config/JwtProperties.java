@@ -11,6 +11,14 @@ import org.springframework.context.annotation.Configuration;
  *   secret: <secret>
  *   expiration-ms: 900000
  *   refresh-expiration-ms: 2592000000
+ *   principal-source: token   # token | database
+ *   algorithm: RS256          # HS512 (secret partagé) | RS256 | ES256 (clés publiées via JWKS)
+ *   key-rotation-interval-ms: 604800000
+ *   key-activation-delay-ms: 300000
+ *   verification-key-count: 2
+ *   key-refresh-interval-ms: 60000
+ *   jwks-max-age-seconds: 300
+ *   denylist-bucket-seconds: 60   # granularité d'expiration des access tokens révoqués
  */
 @Configuration
 @ConfigurationProperties(prefix = "jwt")
@@ -20,6 +28,32 @@ public class JwtProperties {
     private long expirationMs;
     private long refreshExpirationMs;
 
+    /**
+     * Origine du principal reconstruit par JwtAuthenticationFilter :
+     * - TOKEN : à partir des claims (uid, roles, ver), sans accès DB
+     * - DATABASE : rechargé via CustomUserDetailsService (désactivation immédiate)
+     */
+    public enum PrincipalSource { TOKEN, DATABASE }
+
+    private PrincipalSource principalSource = PrincipalSource.TOKEN;
+
+    /**
+     * Algorithme de signature des access tokens. HS512 utilise secret; RS256/ES256 utilisent
+     * le trousseau SigningKeyRing (secret sert alors à chiffrer les clés privées en base).
+     */
+    private String algorithm = "HS512";
+    /** Âge de la clé active au-delà duquel une nouvelle clé est générée. */
+    private long keyRotationIntervalMs = 7L * 24 * 60 * 60 * 1000;
+    /** Délai de publication (JWKS) d'une nouvelle clé avant qu'elle ne signe. */
+    private long keyActivationDelayMs = 5L * 60 * 1000;
+    /** Nombre d'anciennes clés conservées pour la vérification. */
+    private int verificationKeyCount = 2;
+    /** Intervalle de rechargement du trousseau depuis la base (clés créées par d'autres nœuds). */
+    private long keyRefreshIntervalMs = 60_000;
+    private long jwksMaxAgeSeconds = 300;
+    /** Largeur d'un seau de l'AccessTokenDenylist (jti révoqués regroupés par tranche d'expiration). */
+    private long denylistBucketSeconds = 60;
+
     public String getSecret() { return secret; }
     public void setSecret(String secret) { this.secret = secret; }
 
@@ -28,5 +62,29 @@ public class JwtProperties {
 
     public long getRefreshExpirationMs() { return refreshExpirationMs; }
     public void setRefreshExpirationMs(long refreshExpirationMs) { this.refreshExpirationMs = refreshExpirationMs; }
+
+    public PrincipalSource getPrincipalSource() { return principalSource; }
+    public void setPrincipalSource(PrincipalSource principalSource) { this.principalSource = principalSource; }
+
+    public String getAlgorithm() { return algorithm; }
+    public void setAlgorithm(String algorithm) { this.algorithm = algorithm; }
+
+    public long getKeyRotationIntervalMs() { return keyRotationIntervalMs; }
+    public void setKeyRotationIntervalMs(long keyRotationIntervalMs) { this.keyRotationIntervalMs = keyRotationIntervalMs; }
+
+    public long getKeyActivationDelayMs() { return keyActivationDelayMs; }
+    public void setKeyActivationDelayMs(long keyActivationDelayMs) { this.keyActivationDelayMs = keyActivationDelayMs; }
+
+    public int getVerificationKeyCount() { return verificationKeyCount; }
+    public void setVerificationKeyCount(int verificationKeyCount) { this.verificationKeyCount = verificationKeyCount; }
+
+    public long getKeyRefreshIntervalMs() { return keyRefreshIntervalMs; }
+    public void setKeyRefreshIntervalMs(long keyRefreshIntervalMs) { this.keyRefreshIntervalMs = keyRefreshIntervalMs; }
+
+    public long getJwksMaxAgeSeconds() { return jwksMaxAgeSeconds; }
+    public void setJwksMaxAgeSeconds(long jwksMaxAgeSeconds) { this.jwksMaxAgeSeconds = jwksMaxAgeSeconds; }
+
+    public long getDenylistBucketSeconds() { return denylistBucketSeconds; }
+    public void setDenylistBucketSeconds(long denylistBucketSeconds) { this.denylistBucketSeconds = denylistBucketSeconds; }
 }
 
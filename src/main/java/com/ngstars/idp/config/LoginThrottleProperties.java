@@ -0,0 +1,52 @@
+package com.ngstars.idp.config;
+
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Limitation des échecs de login par compte et par IP (fenêtre glissante) :
+ *
+ * idp:
+ *   login-throttle:
+ *     enabled: true
+ *     store: memory                    # memory (un store partagé pourra être ajouté)
+ *     window-ms: 900000                # 15 minutes
+ *     buckets: 15                      # granularité de la fenêtre glissante
+ *     max-failures-per-account: 5
+ *     max-failures-per-ip: 50
+ *     max-tracked-keys: 100000         # mémoire bornée (éviction au-delà)
+ */
+@Configuration
+@ConfigurationProperties(prefix = "idp.login-throttle")
+public class LoginThrottleProperties {
+
+    private boolean enabled = true;
+    private String store = "memory";
+    private long windowMs = 900_000;
+    private int buckets = 15;
+    private int maxFailuresPerAccount = 5;
+    private int maxFailuresPerIp = 50;
+    private long maxTrackedKeys = 100_000;
+
+    public boolean isEnabled() { return enabled; }
+    public void setEnabled(boolean enabled) { this.enabled = enabled; }
+
+    public String getStore() { return store; }
+    public void setStore(String store) { this.store = store; }
+
+    public long getWindowMs() { return windowMs; }
+    public void setWindowMs(long windowMs) { this.windowMs = windowMs; }
+
+    public int getBuckets() { return buckets; }
+    public void setBuckets(int buckets) { this.buckets = buckets; }
+
+    public int getMaxFailuresPerAccount() { return maxFailuresPerAccount; }
+    public void setMaxFailuresPerAccount(int maxFailuresPerAccount) { this.maxFailuresPerAccount = maxFailuresPerAccount; }
+
+    public int getMaxFailuresPerIp() { return maxFailuresPerIp; }
+    public void setMaxFailuresPerIp(int maxFailuresPerIp) { this.maxFailuresPerIp = maxFailuresPerIp; }
+
+    public long getMaxTrackedKeys() { return maxTrackedKeys; }
+    public void setMaxTrackedKeys(long maxTrackedKeys) { this.maxTrackedKeys = maxTrackedKeys; }
+}
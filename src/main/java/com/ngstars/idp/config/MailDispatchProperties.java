@@ -0,0 +1,52 @@
+package com.ngstars.idp.config;
+
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Pipeline d'envoi des emails (outbox + dispatcher asynchrone) :
+ *
+ * idp:
+ *   mail:
+ *     transport: log            # log | memory
+ *     batch-size: 50
+ *     poll-interval-ms: 10000
+ *     lease-ms: 300000
+ *     max-attempts: 8
+ *     initial-backoff-ms: 30000
+ *     max-backoff-ms: 3600000
+ */
+@Configuration
+@ConfigurationProperties(prefix = "idp.mail")
+public class MailDispatchProperties {
+
+    private String transport = "log";
+    private int batchSize = 50;
+    private long pollIntervalMs = 10_000;
+    private long leaseMs = 300_000;
+    private int maxAttempts = 8;
+    private long initialBackoffMs = 30_000;
+    private long maxBackoffMs = 3_600_000;
+
+    public String getTransport() { return transport; }
+    public void setTransport(String transport) { this.transport = transport; }
+
+    public int getBatchSize() { return batchSize; }
+    public void setBatchSize(int batchSize) { this.batchSize = batchSize; }
+
+    public long getPollIntervalMs() { return pollIntervalMs; }
+    public void setPollIntervalMs(long pollIntervalMs) { this.pollIntervalMs = pollIntervalMs; }
+
+    public long getLeaseMs() { return leaseMs; }
+    public void setLeaseMs(long leaseMs) { this.leaseMs = leaseMs; }
+
+    public int getMaxAttempts() { return maxAttempts; }
+    public void setMaxAttempts(int maxAttempts) { this.maxAttempts = maxAttempts; }
+
+    public long getInitialBackoffMs() { return initialBackoffMs; }
+    public void setInitialBackoffMs(long initialBackoffMs) { this.initialBackoffMs = initialBackoffMs; }
+
+    public long getMaxBackoffMs() { return maxBackoffMs; }
+    public void setMaxBackoffMs(long maxBackoffMs) { this.maxBackoffMs = maxBackoffMs; }
+}
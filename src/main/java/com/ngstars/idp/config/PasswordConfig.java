@@ -1,22 +1,71 @@
 package com.ngstars.idp.config;
 
 
+import com.ngstars.idp.security.OffloadingPasswordEncoder;
+import com.ngstars.idp.security.PasswordEncoderCalibrator;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.crypto.password.DelegatingPasswordEncoder;
 import org.springframework.security.crypto.password.PasswordEncoder;
 
+import java.util.HashMap;
+import java.util.Map;
+
 /**
  * Configuration du PasswordEncoder.
- * BCrypt est recommandé pour le hachage des mots de passe.
+ *
+ * - DelegatingPasswordEncoder : les hashes sont préfixés par l'algorithme ({bcrypt}, {argon2}),
+ *   les nouveaux utilisent idp.password-hashing.algorithm
+ * - Les hashes historiques sans préfixe sont vérifiés en BCrypt
+ * - Coût calibré au démarrage sur un budget de latence (voir PasswordEncoderCalibrator);
+ *   un hash plus faible que la configuration est re-haché au login suivant
+ *   (CustomUserDetailsService implémente UserDetailsPasswordService)
+ * - Les calculs sont exécutés sur un pool dédié et borné (voir OffloadingPasswordEncoder)
  */
 @Configuration
 public class PasswordConfig {
 
-    @Bean
-    public PasswordEncoder passwordEncoder() {
-        // Strength par défaut (10) — augmente si besoin (coût CPU plus élevé)
-        return new BCryptPasswordEncoder();
+    public static final String BCRYPT = "bcrypt";
+    public static final String ARGON2 = "argon2";
+
+    @Bean(destroyMethod = "shutdown")
+    public OffloadingPasswordEncoder passwordEncoder(PasswordHashingProperties props, MeterRegistry meterRegistry) {
+        return new OffloadingPasswordEncoder(hashingEncoder(props), props, meterRegistry);
     }
-}
 
+    /**
+     * Encoder effectif, exécuté sur le thread appelant (utilisé tel quel par les benchmarks).
+     * Seul l'algorithme des nouveaux hashes est calibré; l'autre reste à son coût minimal
+     * (il ne sert qu'à vérifier, avec les paramètres portés par le hash).
+     */
+    public PasswordEncoder hashingEncoder(PasswordHashingProperties props) {
+        String idForEncode = props.getAlgorithm().toLowerCase();
+        if (!BCRYPT.equals(idForEncode) && !ARGON2.equals(idForEncode)) {
+            throw new IllegalStateException("idp.password-hashing.algorithm inconnu : " + props.getAlgorithm());
+        }
+
+        int strength = props.getBcryptStrength() > 0 ? props.getBcryptStrength()
+                : BCRYPT.equals(idForEncode)
+                        ? PasswordEncoderCalibrator.calibrateBcryptStrength(props.getTargetLatencyMs(),
+                                props.getBcryptMinStrength(), props.getBcryptMaxStrength())
+                        : props.getBcryptMinStrength();
+        int iterations = props.getArgon2Iterations() > 0 ? props.getArgon2Iterations()
+                : ARGON2.equals(idForEncode)
+                        ? PasswordEncoderCalibrator.calibrateArgon2Iterations(props.getTargetLatencyMs(),
+                                props.getArgon2MemoryKib(), props.getArgon2Parallelism(), props.getArgon2MaxIterations())
+                        : PasswordEncoderCalibrator.ARGON2_MIN_ITERATIONS;
+
+        BCryptPasswordEncoder bcrypt = new BCryptPasswordEncoder(strength);
+        Map<String, PasswordEncoder> encoders = new HashMap<>();
+        encoders.put(BCRYPT, bcrypt);
+        encoders.put(ARGON2, PasswordEncoderCalibrator.argon2(props.getArgon2MemoryKib(),
+                props.getArgon2Parallelism(), iterations));
+
+        DelegatingPasswordEncoder delegating = new DelegatingPasswordEncoder(idForEncode, encoders);
+        // Hashes créés avant l'introduction des préfixes : BCrypt brut
+        delegating.setDefaultPasswordEncoderForMatches(bcrypt);
+        return delegating;
+    }
+}
@@ -0,0 +1,84 @@
+package com.ngstars.idp.config;
+
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Hachage des mots de passe : algorithme, coût et pool dédié.
+ *
+ * idp:
+ *   password-hashing:
+ *     algorithm: bcrypt         # bcrypt | argon2 (argon2id) pour les nouveaux hashes
+ *     target-latency-ms: 100    # budget d'un hachage; le coût est calibré au démarrage
+ *     bcrypt-strength: 0        # > 0 = valeur fixe, sans calibration
+ *     bcrypt-min-strength: 10
+ *     bcrypt-max-strength: 14
+ *     argon2-memory-kib: 19456
+ *     argon2-parallelism: 1
+ *     argon2-iterations: 0      # > 0 = valeur fixe, sans calibration
+ *     argon2-max-iterations: 10
+ *     pool-size: 0              # 0 = nombre de CPU
+ *     queue-capacity: 64        # au-delà : 503 immédiat
+ *     retry-after-seconds: 1
+ */
+@Configuration
+@ConfigurationProperties(prefix = "idp.password-hashing")
+public class PasswordHashingProperties {
+
+    private String algorithm = "bcrypt";
+    private long targetLatencyMs = 100;
+    private int bcryptStrength = 0;
+    private int bcryptMinStrength = 10;
+    private int bcryptMaxStrength = 14;
+    private int argon2MemoryKib = 19_456;
+    private int argon2Parallelism = 1;
+    private int argon2Iterations = 0;
+    private int argon2MaxIterations = 10;
+    private int poolSize = 0;
+    private int queueCapacity = 64;
+    private long retryAfterSeconds = 1;
+
+    /**
+     * Taille effective du pool (pool-size, ou nombre de CPU si <= 0).
+     */
+    public int resolvePoolSize() {
+        return poolSize > 0 ? poolSize : Runtime.getRuntime().availableProcessors();
+    }
+
+    public String getAlgorithm() { return algorithm; }
+    public void setAlgorithm(String algorithm) { this.algorithm = algorithm; }
+
+    public long getTargetLatencyMs() { return targetLatencyMs; }
+    public void setTargetLatencyMs(long targetLatencyMs) { this.targetLatencyMs = targetLatencyMs; }
+
+    public int getBcryptStrength() { return bcryptStrength; }
+    public void setBcryptStrength(int bcryptStrength) { this.bcryptStrength = bcryptStrength; }
+
+    public int getBcryptMinStrength() { return bcryptMinStrength; }
+    public void setBcryptMinStrength(int bcryptMinStrength) { this.bcryptMinStrength = bcryptMinStrength; }
+
+    public int getBcryptMaxStrength() { return bcryptMaxStrength; }
+    public void setBcryptMaxStrength(int bcryptMaxStrength) { this.bcryptMaxStrength = bcryptMaxStrength; }
+
+    public int getArgon2MemoryKib() { return argon2MemoryKib; }
+    public void setArgon2MemoryKib(int argon2MemoryKib) { this.argon2MemoryKib = argon2MemoryKib; }
+
+    public int getArgon2Parallelism() { return argon2Parallelism; }
+    public void setArgon2Parallelism(int argon2Parallelism) { this.argon2Parallelism = argon2Parallelism; }
+
+    public int getArgon2Iterations() { return argon2Iterations; }
+    public void setArgon2Iterations(int argon2Iterations) { this.argon2Iterations = argon2Iterations; }
+
+    public int getArgon2MaxIterations() { return argon2MaxIterations; }
+    public void setArgon2MaxIterations(int argon2MaxIterations) { this.argon2MaxIterations = argon2MaxIterations; }
+
+    public int getPoolSize() { return poolSize; }
+    public void setPoolSize(int poolSize) { this.poolSize = poolSize; }
+
+    public int getQueueCapacity() { return queueCapacity; }
+    public void setQueueCapacity(int queueCapacity) { this.queueCapacity = queueCapacity; }
+
+    public long getRetryAfterSeconds() { return retryAfterSeconds; }
+    public void setRetryAfterSeconds(long retryAfterSeconds) { this.retryAfterSeconds = retryAfterSeconds; }
+}
@@ -0,0 +1,59 @@
+package com.ngstars.idp.config;
+
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Purge planifiée des tokens expirés (refresh_tokens, verification_tokens) et des refresh tokens
+ * révoqués depuis plus de revoked-grace-ms :
+ *
+ * idp:
+ *   reaper:
+ *     enabled: true
+ *     interval-ms: 3600000
+ *     initial-delay-ms: 60000
+ *     batch-size: 1000
+ *     pause-ms: 50
+ *     grace-ms: 0
+ *     revoked-grace-ms: 86400000
+ */
+@Configuration
+@ConfigurationProperties(prefix = "idp.reaper")
+public class ReaperProperties {
+
+    private boolean enabled = true;
+    private long intervalMs = 3_600_000;
+    private long initialDelayMs = 60_000;
+    private int batchSize = 1000;
+    /** Pause entre deux lots, pour étaler la charge (WAL, vacuum, réplication). */
+    private long pauseMs = 50;
+    /** Délai après expiration avant suppression. */
+    private long graceMs = 0;
+    /**
+     * Délai après révocation avant suppression d'un refresh token : un rejeu plus tardif n'est plus
+     * reconnu comme tel (token inconnu). Le dernier révoqué d'une famille encore active est conservé.
+     */
+    private long revokedGraceMs = 86_400_000;
+
+    public boolean isEnabled() { return enabled; }
+    public void setEnabled(boolean enabled) { this.enabled = enabled; }
+
+    public long getIntervalMs() { return intervalMs; }
+    public void setIntervalMs(long intervalMs) { this.intervalMs = intervalMs; }
+
+    public long getInitialDelayMs() { return initialDelayMs; }
+    public void setInitialDelayMs(long initialDelayMs) { this.initialDelayMs = initialDelayMs; }
+
+    public int getBatchSize() { return batchSize; }
+    public void setBatchSize(int batchSize) { this.batchSize = batchSize; }
+
+    public long getPauseMs() { return pauseMs; }
+    public void setPauseMs(long pauseMs) { this.pauseMs = pauseMs; }
+
+    public long getGraceMs() { return graceMs; }
+    public void setGraceMs(long graceMs) { this.graceMs = graceMs; }
+
+    public long getRevokedGraceMs() { return revokedGraceMs; }
+    public void setRevokedGraceMs(long revokedGraceMs) { this.revokedGraceMs = revokedGraceMs; }
+}
@@ -0,0 +1,13 @@
+package com.ngstars.idp.config;
+
+
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.EnableScheduling;
+
+/**
+ * Active les tâches planifiées (dispatch des emails, etc.).
+ */
+@Configuration
+@EnableScheduling
+public class SchedulingConfig {
+}
@@ -3,9 +3,12 @@ package com.ngstars.idp.config;
 import com.ngstars.idp.security.CustomUserDetailsService;
 import com.ngstars.idp.security.JwtAuthenticationEntryPoint;
 import com.ngstars.idp.security.JwtAuthenticationFilter;
+import jakarta.servlet.DispatcherType;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.http.HttpMethod;
 
 import org.springframework.security.authentication.AuthenticationManager;
 import org.springframework.security.config.annotation.authentication.builders.AuthenticationManagerBuilder;
@@ -22,13 +25,20 @@ import org.springframework.security.web.authentication.UsernamePasswordAuthentic
 
 /**
  * Configuration de sécurité principale.
- * - On autorise les endpoints /api/auth/**
+ * - On autorise les endpoints /api/auth/** et le JWKS (/.well-known/jwks.json), sauf l'introspection
+ *   (RFC 7662 §2.1 : appelant authentifié) réservée à ROLE_INTROSPECT / ROLE_ADMIN (Bearer)
+ * - Actuator : health et info anonymes; les autres endpoints (metrics) réservés à ROLE_ADMIN
  * - Toutes les autres requêtes doivent être authentifiées.
+ * - Dispatch ERROR (/error) autorisé : un 403 ou 404 déjà décidé reste tel quel au lieu de devenir
+ *   un 401 (le dispatch d'erreur n'a plus d'Authentication)
  * - On désactive la gestion de session HTTP (stateless JWT).
  *
  * Le filtre JWT est maintenant intégré dans la chaîne de filtres.
+ * Pile servlet uniquement; la variante WebFlux (profil Maven/Spring "reactive") a sa propre
+ * chaîne (ReactiveSecurityConfig).
  */
 @Configuration
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
 @EnableMethodSecurity(prePostEnabled = true)
 public class SecurityConfig {
 
@@ -53,7 +63,11 @@ public class SecurityConfig {
             .sessionManagement(session -> session.sessionCreationPolicy(SessionCreationPolicy.STATELESS))
             .exceptionHandling(ex -> ex.authenticationEntryPoint(jwtAuthenticationEntryPoint))
             .authorizeHttpRequests(authz -> authz
-                .requestMatchers("/api/auth/**", "/v3/api-docs/**", "/swagger-ui/**", "/actuator/**").permitAll()
+                .dispatcherTypeMatchers(DispatcherType.ERROR).permitAll()
+                .requestMatchers(HttpMethod.POST, JwtAuthenticationFilter.INTROSPECTION_PATH).hasAnyRole("INTROSPECT", "ADMIN")
+                .requestMatchers("/api/auth/**", "/.well-known/jwks.json", "/v3/api-docs/**", "/swagger-ui/**").permitAll()
+                .requestMatchers("/actuator/health/**", "/actuator/info").permitAll()
+                .requestMatchers("/actuator/**").hasRole("ADMIN")
                 .anyRequest().authenticated());
 
         // Ajouter le filtre JWT avant UsernamePasswordAuthenticationFilter
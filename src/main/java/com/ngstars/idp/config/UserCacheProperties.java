@@ -0,0 +1,51 @@
+package com.ngstars.idp.config;
+
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Cache des UserDetails devant CustomUserDetailsService :
+ *
+ * idp:
+ *   user-cache:
+ *     enabled: true
+ *     max-size: 10000
+ *     ttl-ms: 300000
+ *     negative-max-size: 100000   # emails inconnus (évite une requête par tentative d'énumération)
+ *     negative-ttl-ms: 30000
+ *     changed-max-size: 100000    # comptes modifiés pendant la durée de vie d'un access token (mode TOKEN)
+ */
+@Configuration
+@ConfigurationProperties(prefix = "idp.user-cache")
+public class UserCacheProperties {
+
+    private boolean enabled = true;
+    private long maxSize = 10_000;
+    private long ttlMs = 300_000;
+    private long negativeMaxSize = 100_000;
+    private long negativeTtlMs = 30_000;
+    /**
+     * Comptes modifiés mémorisés (jwt.expiration-ms) : au-delà, les plus anciennes marques sont
+     * évincées et un token antérieur à ces changements ne serait plus vérifié en base.
+     */
+    private long changedMaxSize = 100_000;
+
+    public boolean isEnabled() { return enabled; }
+    public void setEnabled(boolean enabled) { this.enabled = enabled; }
+
+    public long getMaxSize() { return maxSize; }
+    public void setMaxSize(long maxSize) { this.maxSize = maxSize; }
+
+    public long getTtlMs() { return ttlMs; }
+    public void setTtlMs(long ttlMs) { this.ttlMs = ttlMs; }
+
+    public long getNegativeMaxSize() { return negativeMaxSize; }
+    public void setNegativeMaxSize(long negativeMaxSize) { this.negativeMaxSize = negativeMaxSize; }
+
+    public long getNegativeTtlMs() { return negativeTtlMs; }
+    public void setNegativeTtlMs(long negativeTtlMs) { this.negativeTtlMs = negativeTtlMs; }
+
+    public long getChangedMaxSize() { return changedMaxSize; }
+    public void setChangedMaxSize(long changedMaxSize) { this.changedMaxSize = changedMaxSize; }
+}
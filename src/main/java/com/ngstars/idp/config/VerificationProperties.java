@@ -0,0 +1,32 @@
+package com.ngstars.idp.config;
+
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Liens de vérification des comptes (email envoyé au register) :
+ *
+ * idp:
+ *   verification:
+ *     mode: database     # database (table verification_tokens) | signed (lien HMAC, aucune écriture)
+ *     ttl-ms: 86400000
+ *     secret: ...        # clé HMAC-SHA256 du mode signed, au moins 32 octets
+ */
+@Configuration
+@ConfigurationProperties(prefix = "idp.verification")
+public class VerificationProperties {
+
+    private String mode = "database";
+    private long ttlMs = 86_400_000;
+    private String secret;
+
+    public String getMode() { return mode; }
+    public void setMode(String mode) { this.mode = mode; }
+
+    public long getTtlMs() { return ttlMs; }
+    public void setTtlMs(long ttlMs) { this.ttlMs = ttlMs; }
+
+    public String getSecret() { return secret; }
+    public void setSecret(String secret) { this.secret = secret; }
+}
@@ -2,13 +2,23 @@ package com.ngstars.idp.controller;
 
 
 import com.ngstars.idp.dto.AuthResponse;
+import com.ngstars.idp.dto.IntrospectionBatchResponse;
+import com.ngstars.idp.dto.IntrospectionRequest;
+import com.ngstars.idp.dto.IntrospectionResponse;
 import com.ngstars.idp.dto.LoginRequest;
 import com.ngstars.idp.dto.RefreshTokenRequest;
 import com.ngstars.idp.dto.RegisterRequest;
+import com.ngstars.idp.security.AuthMetrics;
+import com.ngstars.idp.security.AuthMetrics.Operation;
+import com.ngstars.idp.security.AuthMetrics.Outcome;
 import com.ngstars.idp.service.AuthService;
+import com.ngstars.idp.service.IntrospectionService;
 
 import java.util.Map;
 
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.annotation.*;
@@ -21,18 +31,26 @@ import jakarta.servlet.http.HttpServletRequest;
  * - verify  -> active compte
  * - login   -> renvoie access + refresh
  * - refresh -> échange refresh token pour nouveau access
- * - logout  -> révoque refresh token
+ * - logout  -> révoque refresh token (et l'access token présenté)
+ * - introspect -> état d'un ou plusieurs tokens (RFC 7662)
  *
  * Les réponses sont simples; adapte selon besoins (statuts HTTP, body détaillé).
+ *
+ * Chaque opération est chronométrée ici (transaction et flush compris) : idp.auth.operation{operation, outcome}.
  */
 @RestController
 @RequestMapping("/api/auth")
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
 public class AuthController {
 
     private final AuthService authService;
+    private final IntrospectionService introspectionService;
+    private final AuthMetrics authMetrics;
 
-    public AuthController(AuthService authService) {
+    public AuthController(AuthService authService, IntrospectionService introspectionService, AuthMetrics authMetrics) {
         this.authService = authService;
+        this.introspectionService = introspectionService;
+        this.authMetrics = authMetrics;
     }
 
     /**
@@ -42,9 +60,19 @@ public class AuthController {
     public ResponseEntity<?> register(@Validated @RequestBody RegisterRequest request, HttpServletRequest httpRequest) {
         // Construire appUrl pour lien verification (extraction du host)
         String appUrl = httpRequest.getRequestURL().toString().replace(httpRequest.getRequestURI(), "");
-        AuthResponse resp = authService.register(request, appUrl);
-        // Renvoie 201 Created si tu veux (ici 200 pour simplicité)
-        return ResponseEntity.ok(resp);
+        long start = System.nanoTime();
+        Outcome outcome = Outcome.ERROR;
+        try {
+            AuthResponse resp = authService.register(request, appUrl);
+            outcome = Outcome.SUCCESS;
+            // Renvoie 201 Created si tu veux (ici 200 pour simplicité)
+            return ResponseEntity.ok(resp);
+        } catch (RuntimeException ex) {
+            outcome = AuthMetrics.outcomeOf(ex);
+            throw ex;
+        } finally {
+            authMetrics.record(Operation.REGISTER, outcome, start);
+        }
     }
 
     /**
@@ -52,9 +80,19 @@ public class AuthController {
      */
     @GetMapping("/verify")
     public ResponseEntity<?> verifyAccount(@RequestParam("token") String token) {
-        boolean ok = authService.verifyAccount(token);
-        if (ok) return ResponseEntity.ok(Map.of("message", "Compte vérifié"));
-        return ResponseEntity.badRequest().body(Map.of("message", "Token invalide ou expiré"));
+        long start = System.nanoTime();
+        Outcome outcome = Outcome.ERROR;
+        try {
+            boolean ok = authService.verifyAccount(token);
+            outcome = ok ? Outcome.SUCCESS : Outcome.REJECTED;
+            if (ok) return ResponseEntity.ok(Map.of("message", "Compte vérifié"));
+            return ResponseEntity.badRequest().body(Map.of("message", "Token invalide ou expiré"));
+        } catch (RuntimeException ex) {
+            outcome = AuthMetrics.outcomeOf(ex);
+            throw ex;
+        } finally {
+            authMetrics.record(Operation.VERIFY, outcome, start);
+        }
     }
 
     /**
@@ -63,8 +101,19 @@ public class AuthController {
     @PostMapping("/login")
     public ResponseEntity<?> login(@Validated @RequestBody LoginRequest request, HttpServletRequest httpRequest) {
         String deviceInfo = httpRequest.getHeader("User-Agent");
-        AuthResponse resp = authService.login(request, deviceInfo);
-        return ResponseEntity.ok(resp);
+        // Adresse client (derrière un proxy : server.forward-headers-strategy)
+        long start = System.nanoTime();
+        Outcome outcome = Outcome.ERROR;
+        try {
+            AuthResponse resp = authService.login(request, deviceInfo, httpRequest.getRemoteAddr());
+            outcome = Outcome.SUCCESS;
+            return ResponseEntity.ok(resp);
+        } catch (RuntimeException ex) {
+            outcome = AuthMetrics.outcomeOf(ex);
+            throw ex;
+        } finally {
+            authMetrics.record(Operation.LOGIN, outcome, start);
+        }
     }
 
     /**
@@ -72,17 +121,78 @@ public class AuthController {
      */
     @PostMapping("/refresh-token")
     public ResponseEntity<?> refreshToken(@Validated @RequestBody RefreshTokenRequest req) {
-        AuthResponse resp = authService.refreshToken(req.getRefreshToken());
-        return ResponseEntity.ok(resp);
+        long start = System.nanoTime();
+        Outcome outcome = Outcome.ERROR;
+        try {
+            AuthResponse resp = authService.refreshToken(req.getRefreshToken());
+            outcome = Outcome.SUCCESS;
+            return ResponseEntity.ok(resp);
+        } catch (RuntimeException ex) {
+            outcome = AuthMetrics.outcomeOf(ex);
+            throw ex;
+        } finally {
+            authMetrics.record(Operation.REFRESH, outcome, start);
+        }
     }
 
     /**
-     * Logout : révoque refresh token
+     * Logout : révoque refresh token, et l'access token s'il est présenté (Authorization: Bearer)
      */
     @PostMapping("/logout")
-    public ResponseEntity<?> logout(@Validated @RequestBody RefreshTokenRequest req) {
-        authService.logout(req.getRefreshToken());
-        return ResponseEntity.ok(Map.of("message", "Déconnecté"));
+    public ResponseEntity<?> logout(@Validated @RequestBody RefreshTokenRequest req,
+                                    @RequestHeader(value = HttpHeaders.AUTHORIZATION, required = false) String authorization) {
+        long start = System.nanoTime();
+        Outcome outcome = Outcome.ERROR;
+        try {
+            authService.logout(req.getRefreshToken(), bearerToken(authorization));
+            outcome = Outcome.SUCCESS;
+            return ResponseEntity.ok(Map.of("message", "Déconnecté"));
+        } catch (RuntimeException ex) {
+            outcome = AuthMetrics.outcomeOf(ex);
+            throw ex;
+        } finally {
+            authMetrics.record(Operation.LOGOUT, outcome, start);
+        }
+    }
+
+    /**
+     * Introspection RFC 7662 (formulaire : token, token_type_hint) : { active, ... } pour un token.
+     * Appelant authentifié (Bearer portant ROLE_INTROSPECT ou ROLE_ADMIN, cf. SecurityConfig).
+     */
+    @PostMapping(value = "/introspect", consumes = MediaType.APPLICATION_FORM_URLENCODED_VALUE)
+    public ResponseEntity<IntrospectionResponse> introspect(@RequestParam("token") String token,
+                                                            @RequestParam(value = "token_type_hint", required = false) String tokenTypeHint) {
+        long start = System.nanoTime();
+        Outcome outcome = Outcome.ERROR;
+        try {
+            IntrospectionResponse resp = introspectionService.introspect(token);
+            outcome = Outcome.SUCCESS;
+            return ResponseEntity.ok(resp);
+        } finally {
+            authMetrics.record(Operation.INTROSPECT, outcome, start);
+        }
     }
-}
 
+    /**
+     * Introspection groupée (JSON : { tokens: [...] }) : un résultat par token, dans l'ordre.
+     */
+    @PostMapping(value = "/introspect", consumes = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<IntrospectionBatchResponse> introspectBatch(@Validated @RequestBody IntrospectionRequest request) {
+        long start = System.nanoTime();
+        Outcome outcome = Outcome.ERROR;
+        try {
+            IntrospectionBatchResponse resp = new IntrospectionBatchResponse(introspectionService.introspectAll(request.getTokens()));
+            outcome = Outcome.SUCCESS;
+            return ResponseEntity.ok(resp);
+        } finally {
+            authMetrics.record(Operation.INTROSPECT, outcome, start);
+        }
+    }
+
+    private static String bearerToken(String authorization) {
+        if (authorization != null && authorization.startsWith("Bearer ")) {
+            return authorization.substring(7);
+        }
+        return null;
+    }
+}
@@ -0,0 +1,42 @@
+package com.ngstars.idp.controller;
+
+
+import com.ngstars.idp.security.HashingCapacityExceededException;
+import com.ngstars.idp.security.LoginThrottledException;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.RestControllerAdvice;
+
+import java.util.Map;
+
+/**
+ * Traduction des exceptions applicatives en réponses HTTP.
+ * Corps au même format que JwtAuthenticationEntryPoint : { status, message }.
+ */
+@RestControllerAdvice
+public class GlobalExceptionHandler {
+
+    /**
+     * Pool de hachage saturé : réponse immédiate, le client réessaie après Retry-After.
+     */
+    @ExceptionHandler(HashingCapacityExceededException.class)
+    public ResponseEntity<Map<String, Object>> handleHashingCapacity(HashingCapacityExceededException ex) {
+        HttpStatus status = HttpStatus.SERVICE_UNAVAILABLE;
+        return ResponseEntity.status(status)
+                .header(HttpHeaders.RETRY_AFTER, Long.toString(ex.getRetryAfterSeconds()))
+                .body(Map.of("status", status.value(), "message", "Service surchargé, réessayez plus tard"));
+    }
+
+    /**
+     * Trop d'échecs de login pour ce compte ou cette IP.
+     */
+    @ExceptionHandler(LoginThrottledException.class)
+    public ResponseEntity<Map<String, Object>> handleLoginThrottled(LoginThrottledException ex) {
+        HttpStatus status = HttpStatus.TOO_MANY_REQUESTS;
+        return ResponseEntity.status(status)
+                .header(HttpHeaders.RETRY_AFTER, Long.toString(ex.getRetryAfterSeconds()))
+                .body(Map.of("status", status.value(), "message", "Trop de tentatives de connexion, réessayez plus tard"));
+    }
+}
@@ -0,0 +1,40 @@
+package com.ngstars.idp.controller;
+
+
+import com.ngstars.idp.config.JwtProperties;
+import com.ngstars.idp.util.SigningKeyRing;
+import org.springframework.http.CacheControl;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Publication des clés publiques de signature (RFC 7517) pour la validation locale
+ * des access tokens par les services en aval.
+ *
+ * Le JSON est précalculé par SigningKeyRing; l'ETag permet des revalidations en 304
+ * (If-None-Match géré par Spring MVC pour les ResponseEntity portant un ETag).
+ */
+@RestController
+public class JwksController {
+
+    private final SigningKeyRing keyRing;
+    private final JwtProperties jwtProperties;
+
+    public JwksController(SigningKeyRing keyRing, JwtProperties jwtProperties) {
+        this.keyRing = keyRing;
+        this.jwtProperties = jwtProperties;
+    }
+
+    @GetMapping(value = "/.well-known/jwks.json", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<byte[]> jwks() {
+        SigningKeyRing.Jwks jwks = keyRing.getJwks();
+        return ResponseEntity.ok()
+                .eTag(jwks.getEtag())
+                .cacheControl(CacheControl.maxAge(jwtProperties.getJwksMaxAgeSeconds(), TimeUnit.SECONDS).cachePublic())
+                .body(jwks.getJson());
+    }
+}
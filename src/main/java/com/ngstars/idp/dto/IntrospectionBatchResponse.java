@@ -0,0 +1,20 @@
+package com.ngstars.idp.dto;
+
+
+import java.util.List;
+
+/**
+ * Réponse d'une introspection groupée : un résultat par token, dans l'ordre de la requête.
+ */
+public class IntrospectionBatchResponse {
+
+    private final List<IntrospectionResponse> results;
+
+    public IntrospectionBatchResponse(List<IntrospectionResponse> results) {
+        this.results = results;
+    }
+
+    public List<IntrospectionResponse> getResults() {
+        return results;
+    }
+}
@@ -0,0 +1,43 @@
+package com.ngstars.idp.dto;
+
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.Size;
+
+import java.util.List;
+
+/**
+ * Introspection groupée (JSON) : plusieurs tokens par requête, réponses dans le même ordre.
+ * Le format formulaire de la RFC 7662 (token, token_type_hint) reste accepté pour un token seul.
+ */
+public class IntrospectionRequest {
+
+    public static final int MAX_TOKENS = 100;
+
+    @NotEmpty
+    @Size(max = MAX_TOKENS)
+    private List<String> tokens;
+
+    /**
+     * Accepté pour compatibilité; le type est déduit du format du token (RFC 7662 : indication facultative).
+     */
+    @JsonProperty("token_type_hint")
+    private String tokenTypeHint;
+
+    public List<String> getTokens() {
+        return tokens;
+    }
+
+    public void setTokens(List<String> tokens) {
+        this.tokens = tokens;
+    }
+
+    public String getTokenTypeHint() {
+        return tokenTypeHint;
+    }
+
+    public void setTokenTypeHint(String tokenTypeHint) {
+        this.tokenTypeHint = tokenTypeHint;
+    }
+}
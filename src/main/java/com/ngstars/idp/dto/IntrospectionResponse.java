@@ -0,0 +1,97 @@
+package com.ngstars.idp.dto;
+
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.annotation.JsonPropertyOrder;
+
+import java.util.List;
+
+/**
+ * Réponse d'introspection (RFC 7662, section 2.2). Un token inactif ne révèle rien d'autre
+ * que {"active": false}.
+ *
+ * Immuable : les instances sont partagées via le cache d'introspection.
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+@JsonPropertyOrder({"active", "token_type", "sub", "username", "uid", "roles", "iat", "exp", "jti"})
+public final class IntrospectionResponse {
+
+    public static final String ACCESS_TOKEN = "access_token";
+    public static final String REFRESH_TOKEN = "refresh_token";
+
+    public static final IntrospectionResponse INACTIVE =
+            new IntrospectionResponse(false, null, null, null, null, null, null, null);
+
+    private final boolean active;
+    private final String tokenType;
+    private final String subject;
+    private final Long userId;
+    private final List<String> roles;
+    private final Long issuedAt;
+    private final Long expiresAt;
+    private final String tokenId;
+
+    /**
+     * @param issuedAt  secondes epoch, null si inconnu
+     * @param expiresAt secondes epoch
+     * @param tokenId   jti (access tokens)
+     */
+    public IntrospectionResponse(boolean active, String tokenType, String subject, Long userId,
+                                 List<String> roles, Long issuedAt, Long expiresAt, String tokenId) {
+        this.active = active;
+        this.tokenType = tokenType;
+        this.subject = subject;
+        this.userId = userId;
+        this.roles = roles == null ? null : List.copyOf(roles);
+        this.issuedAt = issuedAt;
+        this.expiresAt = expiresAt;
+        this.tokenId = tokenId;
+    }
+
+    public boolean isActive() {
+        return active;
+    }
+
+    @JsonProperty("token_type")
+    public String getTokenType() {
+        return tokenType;
+    }
+
+    @JsonProperty("sub")
+    public String getSubject() {
+        return subject;
+    }
+
+    /**
+     * Le sujet est l'email, qui sert aussi d'identifiant de connexion.
+     */
+    @JsonProperty("username")
+    public String getUsername() {
+        return subject;
+    }
+
+    @JsonProperty("uid")
+    public Long getUserId() {
+        return userId;
+    }
+
+    public List<String> getRoles() {
+        return roles;
+    }
+
+    @JsonProperty("iat")
+    public Long getIssuedAt() {
+        return issuedAt;
+    }
+
+    @JsonProperty("exp")
+    public Long getExpiresAt() {
+        return expiresAt;
+    }
+
+    @JsonProperty("jti")
+    public String getTokenId() {
+        return tokenId;
+    }
+}
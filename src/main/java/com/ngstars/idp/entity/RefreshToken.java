@@ -5,25 +5,55 @@ package com.ngstars.idp.entity;
 import jakarta.persistence.*;
 import java.time.Instant;
 import java.util.Objects;
+import java.util.UUID;
 
 /**
  * Refresh token persistant pour permettre la révocation côté serveur.
- * On conserve l'utilisateur, la date d'expiration et un flag revoked.
+ * On conserve l'utilisateur, la date d'expiration, un flag revoked et la date de révocation
+ * (purge des révoqués par TokenReaper).
+ *
+ * La valeur du token n'est pas stockée : seulement son selector (uuid, 16 octets, indexé)
+ * et le SHA-256 de son verifier (voir OpaqueTokens).
+ *
+ * Rotation : chaque refresh émet un nouveau token de la même famille (family_id) et révoque
+ * le précédent. Présenter un token déjà révoqué = réutilisation : toute la famille est révoquée.
  */
 @Entity
 @Table(name = "refresh_tokens", indexes = {
-        @Index(name = "idx_refresh_token_token", columnList = "token"),
-        @Index(name = "idx_refresh_token_user_id", columnList = "user_id")
+        @Index(name = "idx_refresh_token_selector", columnList = "selector", unique = true),
+        @Index(name = "idx_refresh_token_user_id", columnList = "user_id"),
+        @Index(name = "idx_refresh_token_family_id", columnList = "family_id"),
+        @Index(name = "idx_refresh_token_expiry", columnList = "expiry_date, id"),
+        @Index(name = "idx_refresh_token_revoked_at", columnList = "revoked_at, id")
 })
 public class RefreshToken {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "refresh_tokens_seq")
+    @SequenceGenerator(name = "refresh_tokens_seq", sequenceName = "refresh_tokens_seq", allocationSize = 50)
     private Long id;
 
-    @Column(nullable = false, unique = true, length = 512)
+    @Column(name = "selector", nullable = false)
+    private UUID selector;
+
+    /**
+     * SHA-256 du verifier (32 octets).
+     */
+    @Column(name = "token_hash", nullable = false, length = 32)
+    private byte[] tokenHash;
+
+    /**
+     * Valeur en clair, uniquement disponible sur le token qui vient d'être émis (jamais persistée).
+     */
+    @Transient
     private String token;
 
+    /**
+     * Famille de rotation : identique pour tous les tokens issus d'un même login.
+     */
+    @Column(name = "family_id", nullable = false)
+    private UUID familyId;
+
     @ManyToOne(optional = false, fetch = FetchType.LAZY)
     @JoinColumn(name = "user_id", nullable = false)
     private User user;
@@ -34,6 +64,9 @@ public class RefreshToken {
     @Column(nullable = false)
     private boolean revoked = false;
 
+    @Column(name = "revoked_at")
+    private Instant revokedAt;
+
     @Column(name = "device_info")
     private String deviceInfo;
 
@@ -73,6 +106,30 @@ public class RefreshToken {
         this.token = token;
     }
 
+    public UUID getSelector() {
+        return selector;
+    }
+
+    public void setSelector(UUID selector) {
+        this.selector = selector;
+    }
+
+    public byte[] getTokenHash() {
+        return tokenHash;
+    }
+
+    public void setTokenHash(byte[] tokenHash) {
+        this.tokenHash = tokenHash;
+    }
+
+    public UUID getFamilyId() {
+        return familyId;
+    }
+
+    public void setFamilyId(UUID familyId) {
+        this.familyId = familyId;
+    }
+
     public User getUser() {
         return user;
     }
@@ -97,6 +154,14 @@ public class RefreshToken {
         this.revoked = revoked;
     }
 
+    public Instant getRevokedAt() {
+        return revokedAt;
+    }
+
+    public void setRevokedAt(Instant revokedAt) {
+        this.revokedAt = revokedAt;
+    }
+
     public String getDeviceInfo() {
         return deviceInfo;
     }
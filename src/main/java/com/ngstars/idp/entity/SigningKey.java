@@ -0,0 +1,96 @@
+package com.ngstars.idp.entity;
+
+
+import jakarta.persistence.*;
+import java.time.Instant;
+import java.util.Objects;
+
+/**
+ * Clé de signature asymétrique des access tokens (RS256 / ES256), identifiée par kid.
+ * Partagée entre les nœuds via la base; la clé privée est chiffrée (AES-GCM) avec une clé
+ * dérivée de jwt.secret et n'est jamais exposée. Les clés publiques sont publiées via JWKS.
+ */
+@Entity
+@Table(name = "jwt_signing_keys", indexes = {
+        @Index(name = "idx_jwt_signing_keys_alg_created", columnList = "algorithm, created_at")
+})
+public class SigningKey {
+
+    @Id
+    @Column(length = 64)
+    private String kid;
+
+    @Column(nullable = false, length = 16)
+    private String algorithm;
+
+    /**
+     * Clé publique encodée X.509 (SubjectPublicKeyInfo).
+     */
+    @Column(name = "public_key", nullable = false)
+    private byte[] publicKey;
+
+    /**
+     * Clé privée PKCS#8 chiffrée : iv (12 octets) || ciphertext AES-GCM.
+     */
+    @Column(name = "private_key", nullable = false)
+    private byte[] privateKey;
+
+    @Column(name = "created_at", nullable = false, updatable = false)
+    private Instant createdAt;
+
+    public SigningKey() {}
+
+    // equals/hashCode by kid
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof SigningKey)) return false;
+        SigningKey that = (SigningKey) o;
+        return kid != null && Objects.equals(kid, that.kid);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31;
+    }
+
+    public String getKid() {
+        return kid;
+    }
+
+    public void setKid(String kid) {
+        this.kid = kid;
+    }
+
+    public String getAlgorithm() {
+        return algorithm;
+    }
+
+    public void setAlgorithm(String algorithm) {
+        this.algorithm = algorithm;
+    }
+
+    public byte[] getPublicKey() {
+        return publicKey;
+    }
+
+    public void setPublicKey(byte[] publicKey) {
+        this.publicKey = publicKey;
+    }
+
+    public byte[] getPrivateKey() {
+        return privateKey;
+    }
+
+    public void setPrivateKey(byte[] privateKey) {
+        this.privateKey = privateKey;
+    }
+
+    public Instant getCreatedAt() {
+        return createdAt;
+    }
+
+    public void setCreatedAt(Instant createdAt) {
+        this.createdAt = createdAt;
+    }
+}
@@ -4,6 +4,7 @@ package com.ngstars.idp.entity;
 import jakarta.persistence.*;
 import jakarta.validation.constraints.Email;
 import jakarta.validation.constraints.NotBlank;
+import org.hibernate.annotations.ColumnDefault;
 import java.time.Instant;
 import java.util.HashSet;
 import java.util.Objects;
@@ -19,8 +20,13 @@ import java.util.Set;
        uniqueConstraints = { @UniqueConstraint(name = "uc_users_email", columnNames = {"email"}) })
 public class User {
 
+    /**
+     * Identifiant issu d'une séquence pooled (50 valeurs par appel) : contrairement à IDENTITY,
+     * Hibernate connaît l'id avant l'INSERT et peut regrouper les insertions en batch JDBC.
+     */
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "users_seq")
+    @SequenceGenerator(name = "users_seq", sequenceName = "users_seq", allocationSize = 50)
     private Long id;
 
     @Email
@@ -45,6 +51,21 @@ public class User {
     @Column(name = "last_login")
     private Instant lastLogin;
 
+    /**
+     * Dernier refresh de session. Comme lastLogin, écrit en différé par UserActivityTracker.
+     */
+    @Column(name = "last_refresh_at")
+    private Instant lastRefreshAt;
+
+    /**
+     * Version de l'état du compte (activation, rôles, mot de passe).
+     * Incrémentée à chaque changement et embarquée dans les access tokens (claim "ver"), comparée
+     * par les filtres JWT à la version courante (UserDetailsCache).
+     */
+    @ColumnDefault("0")
+    @Column(name = "account_version", nullable = false)
+    private int accountVersion = 0;
+
     /**
      * Relation Many-to-Many vers Role via table user_roles.
      * On utilise Set pour éviter les doublons.
@@ -128,6 +149,22 @@ public class User {
         this.lastLogin = lastLogin;
     }
 
+    public Instant getLastRefreshAt() {
+        return lastRefreshAt;
+    }
+
+    public void setLastRefreshAt(Instant lastRefreshAt) {
+        this.lastRefreshAt = lastRefreshAt;
+    }
+
+    public int getAccountVersion() {
+        return accountVersion;
+    }
+
+    public void setAccountVersion(int accountVersion) {
+        this.accountVersion = accountVersion;
+    }
+
     public Set<Role> getRoles() {
         return roles;
     }
@@ -12,12 +12,14 @@ import java.util.Objects;
 @Entity
 @Table(name = "verification_tokens", indexes = {
         @Index(name = "idx_verif_token_token", columnList = "token"),
-        @Index(name = "idx_verif_token_user_id", columnList = "user_id")
+        @Index(name = "idx_verif_token_user_id", columnList = "user_id"),
+        @Index(name = "idx_verif_token_expiry", columnList = "expiry_date, id")
 })
 public class VerificationToken {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "verification_tokens_seq")
+    @SequenceGenerator(name = "verification_tokens_seq", sequenceName = "verification_tokens_seq", allocationSize = 50)
     private Long id;
 
     @Column(nullable = false, unique = true, length = 512)
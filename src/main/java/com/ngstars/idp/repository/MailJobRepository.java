@@ -0,0 +1,37 @@
+package com.ngstars.idp.repository;
+
+
+import com.ngstars.idp.entity.MailJob;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+
+public interface MailJobRepository extends JpaRepository<MailJob, Long> {
+
+    /**
+     * Verrouille un lot d'emails dus. SKIP LOCKED : plusieurs nœuds peuvent dépiler en parallèle
+     * sans se bloquer ni envoyer deux fois le même email.
+     */
+    @Query(value = "SELECT * FROM mail_outbox WHERE status = 'PENDING' AND next_attempt_at <= :now "
+            + "ORDER BY next_attempt_at LIMIT :limit FOR UPDATE SKIP LOCKED", nativeQuery = true)
+    List<MailJob> lockDue(@Param("now") Instant now, @Param("limit") int limit);
+
+    @Modifying
+    @Query("update MailJob j set j.status = :status, j.sentAt = :sentAt, j.lastError = null where j.id in :ids")
+    int markSent(@Param("ids") Collection<Long> ids,
+                 @Param("status") MailJob.Status status,
+                 @Param("sentAt") Instant sentAt);
+
+    @Modifying
+    @Query("update MailJob j set j.status = :status, j.nextAttemptAt = :nextAttemptAt, j.lastError = :error "
+            + "where j.id = :id")
+    int markFailedAttempt(@Param("id") Long id,
+                          @Param("status") MailJob.Status status,
+                          @Param("nextAttemptAt") Instant nextAttemptAt,
+                          @Param("error") String error);
+}
@@ -2,14 +2,37 @@ package com.ngstars.idp.repository;
 
 
 import com.ngstars.idp.entity.RefreshToken;
-import com.ngstars.idp.entity.User;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
+import java.util.UUID;
 
 public interface RefreshTokenRepository extends JpaRepository<RefreshToken, Long> {
-    Optional<RefreshToken> findByToken(String token);
-    List<RefreshToken> findAllByUserAndRevokedFalse(User user);
-}
+    Optional<RefreshToken> findBySelector(UUID selector);
+
+    /**
+     * Tokens et utilisateurs d'un lot de selectors en une requête (introspection groupée).
+     */
+    @Query("select t from RefreshToken t join fetch t.user where t.selector in :selectors")
+    List<RefreshToken> findWithUserBySelectorIn(@Param("selectors") Collection<UUID> selectors);
+
+    /**
+     * Révocation conditionnelle : 0 si le token était déjà révoqué (rotation concurrente ou rejeu).
+     */
+    @Modifying
+    @Query("update RefreshToken t set t.revoked = true, t.revokedAt = current_timestamp where t.id = :id and t.revoked = false")
+    int revokeIfActive(@Param("id") Long id);
 
+    @Modifying
+    @Query("update RefreshToken t set t.revoked = true, t.revokedAt = current_timestamp where t.familyId = :familyId and t.revoked = false")
+    int revokeFamily(@Param("familyId") UUID familyId);
+
+    @Modifying
+    @Query("update RefreshToken t set t.revoked = true, t.revokedAt = current_timestamp where t.user.id = :userId and t.revoked = false")
+    int revokeAllByUserId(@Param("userId") Long userId);
+}
@@ -0,0 +1,24 @@
+package com.ngstars.idp.repository;
+
+
+import com.ngstars.idp.entity.SigningKey;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.util.List;
+
+public interface SigningKeyRepository extends JpaRepository<SigningKey, String> {
+    List<SigningKey> findByAlgorithmOrderByCreatedAtDesc(String algorithm, Pageable pageable);
+
+    /** Plus anciennes clés d'un algorithme (la première date la bascule vers cet algorithme). */
+    List<SigningKey> findByAlgorithmOrderByCreatedAtAsc(String algorithm, Pageable pageable);
+
+    /**
+     * Verrou consultatif PostgreSQL jusqu'à la fin de la transaction courante (rotation des clés :
+     * un seul nœud à la fois, les autres attendent puis constatent la nouvelle clé).
+     */
+    @Query(value = "SELECT 1 FROM pg_advisory_xact_lock(:key)", nativeQuery = true)
+    Integer lockForRotation(@Param("key") long key);
+}
@@ -4,11 +4,55 @@ package com.ngstars.idp.repository;
 
 import com.ngstars.idp.entity.User;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
 import java.util.Optional;
 
 public interface UserRepository extends JpaRepository<User, Long> {
     Optional<User> findByEmail(String email);
+
+    /**
+     * Utilisateur et rôles en une seule requête (au lieu d'un second SELECT pour la collection EAGER).
+     */
+    @Query("select u from User u left join fetch u.roles where u.email = :email")
+    Optional<User> findWithRolesByEmail(@Param("email") String email);
+
     boolean existsByEmail(String email);
-}
 
+    /**
+     * Activation en un UPDATE, sans chargement préalable; incrémente la version de compte
+     * (access tokens émis avant refusés par les filtres JWT en mode TOKEN). Retourne l'email (invalidation des caches), vide si
+     * l'utilisateur n'existe pas. Comme consume, exécuté comme une requête : à appeler sans
+     * entité User chargée dans la transaction.
+     */
+    @Query(value = "UPDATE users SET enabled = true, account_version = account_version + 1"
+            + " WHERE id = :id RETURNING email", nativeQuery = true)
+    Optional<String> enableById(@Param("id") Long id);
+
+    /**
+     * Activation par lien signé (SignedAccountVerifier) : seulement si le compte est encore inactif,
+     * dans la version de compte et à l'email (16 premiers octets de SHA-256) du lien. Retourne
+     * l'email, vide si une condition échoue (lien déjà utilisé ou compte modifié depuis).
+     */
+    @Query(value = "UPDATE users SET enabled = true, account_version = account_version + 1"
+            + " WHERE id = :id AND enabled = false AND account_version = :accountVersion"
+            + " AND substring(sha256(convert_to(email, 'UTF8')) FROM 1 FOR 16) = :emailHash"
+            + " RETURNING email", nativeQuery = true)
+    Optional<String> enableIfPending(@Param("id") Long id,
+                                     @Param("accountVersion") int accountVersion,
+                                     @Param("emailHash") byte[] emailHash);
+
+    /**
+     * Remplacement conditionnel du hash (re-hachage au login) : 0 si le mot de passe
+     * a changé entre-temps, auquel cas le nouveau hash est ignoré.
+     * clearAutomatically : une entité User déjà chargée dans la transaction (login) ne doit pas
+     * réécrire l'ancien hash au flush.
+     */
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("update User u set u.password = :newPassword where u.id = :id and u.password = :oldPassword")
+    int replacePasswordHash(@Param("id") Long id,
+                            @Param("oldPassword") String oldPassword,
+                            @Param("newPassword") String newPassword);
+}
@@ -3,10 +3,23 @@ package com.ngstars.idp.repository;
 
 import com.ngstars.idp.entity.VerificationToken;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
 import java.util.Optional;
 
 public interface VerificationTokenRepository extends JpaRepository<VerificationToken, Long> {
     Optional<VerificationToken> findByToken(String token);
+
+    /**
+     * Consommation atomique : marque le token utilisé s'il est valide et retourne son utilisateur,
+     * vide sinon (inconnu, expiré ou déjà utilisé). Un seul gagnant pour des clics concurrents.
+     * UPDATE ... RETURNING : exécuté comme une requête (pas de @Modifying), aucune entité
+     * VerificationToken n'est chargée dans le contexte de persistance.
+     */
+    @Query(value = "UPDATE verification_tokens SET used = true"
+            + " WHERE token = :token AND used = false AND expiry_date > now()"
+            + " RETURNING user_id", nativeQuery = true)
+    Optional<Long> consume(@Param("token") String token);
 }
 
@@ -0,0 +1,246 @@
+package com.ngstars.idp.security;
+
+
+import com.ngstars.idp.config.JwtProperties;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * Access tokens révoqués avant expiration (logout), identifiés par leur jti.
+ *
+ * - Anneau de seaux par tranche d'expiration (jwt.denylist-bucket-seconds) : un jti n'est conservé
+ *   que jusqu'à l'exp de son token, un seau entier est abandonné quand sa tranche est passée.
+ *   La mémoire est bornée par les révocations de la fenêtre jwt.expiration-ms, pas par leur total
+ * - Chaque seau est un ensemble de long en adressage ouvert : 8 octets par jti (64 premiers bits)
+ * - Lecture (filtres JWT, introspection) : lecture optimiste sans verrou ni allocation, O(1)
+ *
+ * État local au nœud : les révocations des autres nœuds arrivent par InvalidationListener, qui
+ * recharge aussi au démarrage celles encore valides (table invalidation_events).
+ *
+ * Métrique : idp.auth.denylist.size (jti conservés).
+ */
+@Component
+public class AccessTokenDenylist {
+
+    private static final int INITIAL_CAPACITY = 64;
+    private static final long EMPTY = 0L;
+    /** Longueur d'un jti émis par JwtTokenProvider (16 octets en base64url sans padding). */
+    private static final int JTI_LENGTH = 22;
+
+    /**
+     * Ensemble de jti (64 bits) dont l'exp tombe dans la tranche epoch.
+     */
+    private static final class Bucket {
+        long epoch = -1;
+        long[] keys = new long[INITIAL_CAPACITY];
+        int size;
+    }
+
+    private final long bucketSeconds;
+    private final Bucket[] ring;
+    private final StampedLock lock = new StampedLock();
+
+    public AccessTokenDenylist(JwtProperties props, MeterRegistry meterRegistry) {
+        this.bucketSeconds = Math.max(1, props.getDenylistBucketSeconds());
+        long ttlSeconds = Math.max(1, props.getExpirationMs() / 1000);
+        // Seaux couvrant toute la fenêtre [maintenant, maintenant + TTL], plus un de marge
+        int bucketCount = (int) ((ttlSeconds + bucketSeconds - 1) / bucketSeconds) + 2;
+        this.ring = new Bucket[bucketCount];
+        for (int i = 0; i < bucketCount; i++) {
+            ring[i] = new Bucket();
+        }
+        Gauge.builder("idp.auth.denylist.size", this, AccessTokenDenylist::size)
+                .description("Access tokens révoqués conservés (jusqu'à leur expiration)")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Révoque le token jusqu'à son expiration. Sans effet si le token est déjà expiré.
+     */
+    public void revoke(String jti, Instant expiresAt) {
+        if (jti == null || expiresAt == null) {
+            return;
+        }
+        long now = Instant.now().getEpochSecond();
+        long exp = expiresAt.getEpochSecond();
+        if (exp <= now) {
+            return;
+        }
+        long epoch = exp / bucketSeconds;
+        long key = keyOf(jti);
+        long stamp = lock.writeLock();
+        try {
+            Bucket bucket = ring[slot(epoch)];
+            if (bucket.epoch != epoch) {
+                // Tranche passée : abandonnée en bloc
+                reset(bucket, epoch);
+            }
+            add(bucket, key);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Vrai si le jti a été révoqué. Aucune allocation : lecture optimiste, verrou en lecture
+     * seulement si une révocation est écrite au même moment.
+     */
+    public boolean isRevoked(String jti, Instant expiresAt) {
+        return expiresAt != null && isRevoked(jti, expiresAt.getEpochSecond());
+    }
+
+    /**
+     * @param expiresAtEpochSecond exp du token (secondes epoch)
+     */
+    public boolean isRevoked(String jti, long expiresAtEpochSecond) {
+        if (jti == null) {
+            return false;
+        }
+        long epoch = expiresAtEpochSecond / bucketSeconds;
+        long key = keyOf(jti);
+        Bucket bucket = ring[slot(epoch)];
+        long stamp = lock.tryOptimisticRead();
+        if (stamp != 0L) {
+            boolean revoked = contains(bucket, epoch, key);
+            if (lock.validate(stamp)) {
+                return revoked;
+            }
+        }
+        stamp = lock.readLock();
+        try {
+            return contains(bucket, epoch, key);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    private int slot(long epoch) {
+        return (int) Math.floorMod(epoch, (long) ring.length);
+    }
+
+    private static boolean contains(Bucket bucket, long epoch, long key) {
+        if (bucket.epoch != epoch) {
+            return false;
+        }
+        long[] keys = bucket.keys;
+        int mask = keys.length - 1;
+        for (int i = index(key, mask); ; i = (i + 1) & mask) {
+            long k = keys[i];
+            if (k == key) {
+                return true;
+            }
+            if (k == EMPTY) {
+                return false;
+            }
+        }
+    }
+
+    private static void add(Bucket bucket, long key) {
+        if ((bucket.size + 1) * 2 > bucket.keys.length) {
+            rehash(bucket, bucket.keys.length * 2);
+        }
+        if (insert(bucket.keys, key)) {
+            bucket.size++;
+        }
+    }
+
+    private static boolean insert(long[] keys, long key) {
+        int mask = keys.length - 1;
+        for (int i = index(key, mask); ; i = (i + 1) & mask) {
+            long k = keys[i];
+            if (k == key) {
+                return false;
+            }
+            if (k == EMPTY) {
+                keys[i] = key;
+                return true;
+            }
+        }
+    }
+
+    private static void rehash(Bucket bucket, int capacity) {
+        long[] keys = new long[capacity];
+        for (long k : bucket.keys) {
+            if (k != EMPTY) {
+                insert(keys, k);
+            }
+        }
+        // Publié en dernier : une lecture optimiste concurrente voit l'ancien ou le nouveau tableau complet
+        bucket.keys = keys;
+    }
+
+    private static void reset(Bucket bucket, long epoch) {
+        bucket.epoch = epoch;
+        bucket.size = 0;
+        if (bucket.keys.length > INITIAL_CAPACITY) {
+            bucket.keys = new long[INITIAL_CAPACITY];
+        } else {
+            Arrays.fill(bucket.keys, EMPTY);
+        }
+    }
+
+    private static int index(long key, int mask) {
+        return (int) (key ^ (key >>> 32)) & mask;
+    }
+
+    /**
+     * 64 premiers bits du jti (16 octets en base64url, voir JwtTokenProvider) décodés sans allocation;
+     * hachage des caractères pour un jti d'un autre format (un UUID passerait le décodage base64url
+     * mais ses 11 premiers caractères n'ont que 40 bits d'entropie). 0 est réservé aux cases vides.
+     */
+    static long keyOf(String jti) {
+        long key = 0;
+        if (jti.length() == JTI_LENGTH) {
+            for (int i = 0; i < JTI_LENGTH; i++) {
+                int digit = base64Digit(jti.charAt(i));
+                if (digit < 0) {
+                    return hashKey(jti);
+                }
+                if (i < 11) {
+                    key = (key << 6) | digit;
+                }
+            }
+        } else {
+            key = hashKey(jti);
+        }
+        return key == EMPTY ? 1L : key;
+    }
+
+    private static long hashKey(String value) {
+        long h = 1125899906842597L;
+        for (int i = 0; i < value.length(); i++) {
+            h = 31 * h + value.charAt(i);
+        }
+        return h == EMPTY ? 1L : h;
+    }
+
+    private static int base64Digit(char c) {
+        if (c >= 'A' && c <= 'Z') return c - 'A';
+        if (c >= 'a' && c <= 'z') return c - 'a' + 26;
+        if (c >= '0' && c <= '9') return c - '0' + 52;
+        if (c == '-') return 62;
+        if (c == '_') return 63;
+        return -1;
+    }
+
+    private double size() {
+        long stamp = lock.readLock();
+        try {
+            long now = Instant.now().getEpochSecond() / bucketSeconds;
+            long total = 0;
+            for (Bucket bucket : ring) {
+                if (bucket.epoch >= now) {
+                    total += bucket.size;
+                }
+            }
+            return total;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package com.ngstars.idp.security;
+
+
+import com.ngstars.idp.util.JwtValidationResult;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.security.authentication.AccountStatusException;
+import org.springframework.security.authentication.LockedException;
+import org.springframework.security.core.AuthenticationException;
+import org.springframework.stereotype.Component;
+
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Métriques des opérations d'authentification, enregistrées sur le chemin critique.
+ *
+ * - idp.auth.operation{operation, outcome} : durée de bout en bout (transaction comprise) de
+ *   login / register / refresh / logout / verify / introspect, histogramme par issue
+ * - idp.auth.filter.rejected{reason} : access tokens refusés par le filtre JWT (JwtValidationResult.Failure,
+ *   ou principal_unavailable si l'utilisateur n'a pas pu être chargé)
+ *
+ * Les autres étapes ont leurs propres meters : idp.password.hashing.* (hachage),
+ * idp.jwt.sign / idp.jwt.parse (JWT), spring.data.repository.invocations (requêtes par méthode
+ * de repository), hikaricp.* (attente de connexion), cache.* (taux de hit).
+ *
+ * Tous les meters sont créés au démarrage (EnumMap) : un enregistrement = un appel au meter,
+ * sans recherche dans le registre ni allocation de tags par requête.
+ */
+@Component
+public class AuthMetrics {
+
+    public enum Operation { LOGIN, REGISTER, REFRESH, LOGOUT, VERIFY, INTROSPECT }
+
+    public enum Outcome {
+        SUCCESS,
+        /** Mot de passe ou email invalide. */
+        INVALID_CREDENTIALS,
+        /** Compte non vérifié. */
+        DISABLED,
+        /** Refusé par LoginThrottle (429). */
+        THROTTLED,
+        /** Pool de hachage saturé (503). */
+        OVERLOADED,
+        /** Requête refusée : token inconnu, révoqué ou expiré, email déjà utilisé. */
+        REJECTED,
+        ERROR
+    }
+
+    private static final String PRINCIPAL_UNAVAILABLE = "principal_unavailable";
+
+    private final Map<Operation, Map<Outcome, Timer>> operations = new EnumMap<>(Operation.class);
+    private final Map<JwtValidationResult.Failure, Counter> rejected = new EnumMap<>(JwtValidationResult.Failure.class);
+    private final Counter principalUnavailable;
+
+    public AuthMetrics(MeterRegistry meterRegistry) {
+        for (Operation operation : Operation.values()) {
+            Map<Outcome, Timer> byOutcome = new EnumMap<>(Outcome.class);
+            for (Outcome outcome : Outcome.values()) {
+                byOutcome.put(outcome, Timer.builder("idp.auth.operation")
+                        .description("Durée des opérations d'authentification")
+                        .tag("operation", tagValue(operation))
+                        .tag("outcome", tagValue(outcome))
+                        .publishPercentileHistogram()
+                        .register(meterRegistry));
+            }
+            operations.put(operation, byOutcome);
+        }
+        for (JwtValidationResult.Failure failure : JwtValidationResult.Failure.values()) {
+            rejected.put(failure, rejectedCounter(meterRegistry, tagValue(failure)));
+        }
+        this.principalUnavailable = rejectedCounter(meterRegistry, PRINCIPAL_UNAVAILABLE);
+    }
+
+    /**
+     * @param startNanos valeur de System.nanoTime() au début de l'opération
+     */
+    public void record(Operation operation, Outcome outcome, long startNanos) {
+        operations.get(operation).get(outcome).record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void recordRejected(JwtValidationResult.Failure failure) {
+        rejected.get(failure).increment();
+    }
+
+    public void recordPrincipalUnavailable() {
+        principalUnavailable.increment();
+    }
+
+    /**
+     * Issue correspondant à l'exception levée par une opération.
+     */
+    public static Outcome outcomeOf(Throwable ex) {
+        if (ex instanceof LoginThrottledException || ex instanceof LockedException) {
+            return Outcome.THROTTLED;
+        }
+        if (ex instanceof HashingCapacityExceededException) {
+            return Outcome.OVERLOADED;
+        }
+        if (ex instanceof AccountStatusException) {
+            return Outcome.DISABLED;
+        }
+        if (ex instanceof AuthenticationException) {
+            return Outcome.INVALID_CREDENTIALS;
+        }
+        if (ex instanceof IllegalArgumentException) {
+            return Outcome.REJECTED;
+        }
+        return Outcome.ERROR;
+    }
+
+    private static Counter rejectedCounter(MeterRegistry meterRegistry, String reason) {
+        return Counter.builder("idp.auth.filter.rejected")
+                .description("Access tokens refusés par le filtre JWT")
+                .tag("reason", reason)
+                .register(meterRegistry);
+    }
+
+    private static String tagValue(Enum<?> value) {
+        return value.name().toLowerCase(Locale.ROOT);
+    }
+}
@@ -3,6 +3,9 @@ package com.ngstars.idp.security;
 
 import com.ngstars.idp.entity.Role;
 import com.ngstars.idp.entity.User;
+import com.ngstars.idp.util.IssuedAccessToken;
+import com.ngstars.idp.util.JwtTokenProvider;
+import com.ngstars.idp.util.JwtValidationResult;
 import org.springframework.security.core.GrantedAuthority;
 import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.security.core.userdetails.UserDetails;
@@ -20,6 +23,8 @@ public class CustomUserDetails implements UserDetails {
     private final String email;
     private final String password;
     private final boolean enabled;
+    private final int accountVersion;
+    private final boolean accountNonLocked;
     private final Set<GrantedAuthority> authorities;
 
     public CustomUserDetails(User user) {
@@ -27,6 +32,8 @@ public class CustomUserDetails implements UserDetails {
         this.email = user.getEmail();
         this.password = user.getPassword();
         this.enabled = user.isEnabled();
+        this.accountVersion = user.getAccountVersion();
+        this.accountNonLocked = true;
 
         // Convertit Roles -> GrantedAuthority (ex: ROLE_USER -> new SimpleGrantedAuthority("ROLE_USER"))
         Set<Role> roles = user.getRoles() == null ? Collections.emptySet() : user.getRoles();
@@ -37,10 +44,107 @@ public class CustomUserDetails implements UserDetails {
                 .collect(Collectors.toSet());
     }
 
+    /**
+     * Principal reconstruit depuis les claims d'un access token validé (aucun accès DB).
+     * Le mot de passe n'est pas connu : ce principal ne sert qu'à l'autorisation.
+     */
+    private CustomUserDetails(Long id, String email, int accountVersion, Set<GrantedAuthority> authorities) {
+        this(id, email, null, true, accountVersion, true, authorities);
+    }
+
+    private CustomUserDetails(Long id, String email, String password, boolean enabled,
+                              int accountVersion, boolean accountNonLocked, Set<GrantedAuthority> authorities) {
+        this.id = id;
+        this.email = email;
+        this.password = password;
+        this.enabled = enabled;
+        this.accountVersion = accountVersion;
+        this.accountNonLocked = accountNonLocked;
+        this.authorities = authorities;
+    }
+
+    /**
+     * Construit le principal à partir des claims uid/roles/ver.
+     * Retourne null si le token ne porte pas ces claims (token émis avant leur introduction).
+     */
+    public static CustomUserDetails fromClaims(JwtValidationResult.TokenClaims claims) {
+        Object uid = claims.get(JwtTokenProvider.CLAIM_USER_ID);
+        Object roles = claims.get(JwtTokenProvider.CLAIM_ROLES);
+        if (!(uid instanceof Number) || !(roles instanceof Collection)) {
+            return null;
+        }
+        Object ver = claims.get(JwtTokenProvider.CLAIM_ACCOUNT_VERSION);
+        Set<GrantedAuthority> authorities = new HashSet<>();
+        for (Object role : (Collection<?>) roles) {
+            if (role != null) {
+                authorities.add(new SimpleGrantedAuthority(role.toString()));
+            }
+        }
+        return new CustomUserDetails(((Number) uid).longValue(), claims.getSubject(),
+                ver instanceof Number ? ((Number) ver).intValue() : 0, authorities);
+    }
+
+    /**
+     * Claims uid/roles/ver embarqués dans l'access token (inverse de fromClaims) : permettent
+     * aux filtres JWT de reconstruire le principal sans recharger l'utilisateur
+     * (voir JwtProperties.PrincipalSource).
+     */
+    public Map<String, Object> toClaims() {
+        Map<String, Object> claims = new HashMap<>();
+        claims.put(JwtTokenProvider.CLAIM_USER_ID, id);
+        claims.put(JwtTokenProvider.CLAIM_ROLES, getRoleNames());
+        claims.put(JwtTokenProvider.CLAIM_ACCOUNT_VERSION, accountVersion);
+        return claims;
+    }
+
+    /**
+     * Copie avec un nouveau hash de mot de passe (re-hachage transparent au login).
+     */
+    public CustomUserDetails withPassword(String encodedPassword) {
+        return new CustomUserDetails(id, email, encodedPassword, enabled, accountVersion, accountNonLocked, authorities);
+    }
+
+    /**
+     * Copie verrouillée (trop d'échecs de login, voir LoginThrottle).
+     * L'état de verrouillage n'est jamais mis en cache avec l'utilisateur.
+     */
+    public CustomUserDetails locked() {
+        return new CustomUserDetails(id, email, password, enabled, accountVersion, false, authorities);
+    }
+
     public Long getId() {
         return id;
     }
 
+    public int getAccountVersion() {
+        return accountVersion;
+    }
+
+    /**
+     * Vrai si ce principal (reconstruit depuis un token) correspond toujours à l'état courant du
+     * compte : même version (claim "ver") et compte activé. accountVersion est incrémentée à
+     * chaque changement d'état; un token émis avant ne correspond plus.
+     */
+    public boolean matchesAccountState(CustomUserDetails current) {
+        return current.isEnabled() && current.accountVersion == accountVersion;
+    }
+
+    /**
+     * Noms des rôles (ROLE_xxx), valeur du claim roles.
+     */
+    public List<String> getRoleNames() {
+        return authorities.stream()
+                .map(GrantedAuthority::getAuthority)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Access token de ce principal (claims uid / roles / ver), métadonnées comprises.
+     */
+    public IssuedAccessToken issueAccessToken(JwtTokenProvider jwtTokenProvider) {
+        return jwtTokenProvider.issueAccessToken(email, id, getRoleNames(), accountVersion);
+    }
+
     @Override
     public Collection<? extends GrantedAuthority> getAuthorities() {
         return Collections.unmodifiableSet(authorities);
@@ -67,8 +171,7 @@ public class CustomUserDetails implements UserDetails {
 
     @Override
     public boolean isAccountNonLocked() {
-        // Implémentation simple : toujours true. Si tu mets un champ lock, change ici.
-        return true;
+        return accountNonLocked;
     }
 
     @Override
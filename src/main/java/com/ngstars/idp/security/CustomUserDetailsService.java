@@ -4,6 +4,7 @@ package com.ngstars.idp.security;
 import com.ngstars.idp.entity.User;
 import com.ngstars.idp.repository.UserRepository;
 import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.core.userdetails.UserDetailsPasswordService;
 import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.stereotype.Service;
@@ -12,14 +13,24 @@ import org.springframework.transaction.annotation.Transactional;
 /**
  * Service qui charge l'entité User depuis la DB et la transforme en UserDetails.
  * Utilisé par Spring Security pour l'authentification.
+ * Les lectures passent par UserDetailsCache (voir UserCacheProperties).
+ *
+ * Implémente UserDetailsPasswordService : après un login réussi, DaoAuthenticationProvider
+ * y enregistre le nouveau hash si l'encodage stocké est obsolète (algorithme ou coût).
  */
 @Service
-public class CustomUserDetailsService implements UserDetailsService {
+public class CustomUserDetailsService implements UserDetailsService, UserDetailsPasswordService {
 
     private final UserRepository userRepository;
+    private final UserDetailsCache userDetailsCache;
+    private final LoginThrottle loginThrottle;
 
-    public CustomUserDetailsService(UserRepository userRepository) {
+    public CustomUserDetailsService(UserRepository userRepository,
+                                    UserDetailsCache userDetailsCache,
+                                    LoginThrottle loginThrottle) {
         this.userRepository = userRepository;
+        this.userDetailsCache = userDetailsCache;
+        this.loginThrottle = loginThrottle;
     }
 
     /**
@@ -29,11 +40,46 @@ public class CustomUserDetailsService implements UserDetailsService {
      * @throws UsernameNotFoundException si non trouvé
      */
     @Override
-    @Transactional(readOnly = true)
     public UserDetails loadUserByUsername(String username) throws UsernameNotFoundException {
-        User u = userRepository.findByEmail(username)
-                .orElseThrow(() -> new UsernameNotFoundException("Utilisateur non trouvé pour email: " + username));
+        // Pas de @Transactional ici : un hit de cache ne doit pas emprunter de connexion au pool
+        if (userDetailsCache.isKnownMissing(username)) {
+            // DaoAuthenticationProvider compare tout de même un hash factice : même coût
+            // qu'un compte existant, pas d'énumération par le temps de réponse
+            throw notFound(username);
+        }
+        CustomUserDetails details = userDetailsCache.get(username, this::loadFromDatabase);
+        // Verrouillage évalué à chaque chargement : DaoAuthenticationProvider refuse alors
+        // le login (LockedException) avant de vérifier le mot de passe
+        return loginThrottle.isAccountLocked(username) ? details.locked() : details;
+    }
+
+    /**
+     * Re-hachage transparent : même mot de passe, encodage à jour. N'incrémente pas accountVersion.
+     */
+    @Override
+    @Transactional
+    public UserDetails updatePassword(UserDetails user, String newPassword) {
+        CustomUserDetails details = (CustomUserDetails) user;
+        int updated = userRepository.replacePasswordHash(details.getId(), details.getPassword(), newPassword);
+        if (updated == 0) {
+            return user;
+        }
+        userDetailsCache.evictAfterCommit(details.getUsername());
+        return details.withPassword(newPassword);
+    }
+
+    private CustomUserDetails loadFromDatabase(String username) {
+        // Utilisateur + rôles en une requête (fetch join)
+        User u = userRepository.findWithRolesByEmail(username).orElse(null);
+        if (u == null) {
+            userDetailsCache.markMissing(username);
+            throw notFound(username);
+        }
         return new CustomUserDetails(u);
     }
+
+    private static UsernameNotFoundException notFound(String username) {
+        return new UsernameNotFoundException("Utilisateur non trouvé pour email: " + username);
+    }
 }
 
@@ -0,0 +1,20 @@
+package com.ngstars.idp.security;
+
+
+/**
+ * Levée lorsque le pool de hachage des mots de passe est saturé (file pleine).
+ * Traduite en 503 + Retry-After par GlobalExceptionHandler.
+ */
+public class HashingCapacityExceededException extends RuntimeException {
+
+    private final long retryAfterSeconds;
+
+    public HashingCapacityExceededException(long retryAfterSeconds) {
+        super("Capacité de hachage des mots de passe saturée");
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    public long getRetryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+}
@@ -0,0 +1,151 @@
+package com.ngstars.idp.security;
+
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.ngstars.idp.config.LoginThrottleProperties;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * LoginAttemptStore local au nœud.
+ *
+ * - Fenêtre glissante découpée en buckets (window-ms / buckets) : chaque clé a un tableau
+ *   circulaire de compteurs, mis à jour par CAS (aucun verrou sur le chemin du login)
+ * - Chaque slot encode (numéro de bucket << 20 | compteur) : un slot d'un bucket périmé
+ *   est réinitialisé à la volée par le premier échec qui le réutilise
+ * - Mémoire bornée : Caffeine (max-tracked-keys, éviction par fréquence/récence), entrée
+ *   supprimée après une fenêtre sans accès (ses compteurs sont alors tous périmés)
+ * - Horloge injectable (Clock, système par défaut) : buckets et expiration Caffeine en dépendent
+ */
+@Component
+@ConditionalOnProperty(name = "idp.login-throttle.store", havingValue = "memory", matchIfMissing = true)
+public class InMemoryLoginAttemptStore implements LoginAttemptStore {
+
+    private static final int COUNT_BITS = 20;
+    private static final long COUNT_MASK = (1L << COUNT_BITS) - 1;
+
+    private final int buckets;
+    private final long bucketMs;
+    private final Cache<String, Window> windows;
+    private final Clock clock;
+
+    @Autowired
+    public InMemoryLoginAttemptStore(LoginThrottleProperties props, MeterRegistry meterRegistry) {
+        this(props, meterRegistry, Clock.systemUTC());
+    }
+
+    InMemoryLoginAttemptStore(LoginThrottleProperties props, MeterRegistry meterRegistry, Clock clock) {
+        this.clock = clock;
+        this.buckets = Math.max(1, props.getBuckets());
+        this.bucketMs = Math.max(1, props.getWindowMs() / buckets);
+        this.windows = Caffeine.newBuilder()
+                .maximumSize(props.getMaxTrackedKeys())
+                .expireAfterAccess(Duration.ofMillis(bucketMs * buckets))
+                .ticker(() -> TimeUnit.MILLISECONDS.toNanos(clock.millis()))
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, windows, "loginAttempts");
+    }
+
+    @Override
+    public int recordFailure(String key) {
+        long epoch = currentEpoch();
+        Window window = windows.get(key, k -> new Window(buckets));
+        window.increment(epoch);
+        return window.sum(epoch);
+    }
+
+    @Override
+    public int failures(String key) {
+        Window window = windows.getIfPresent(key);
+        return window == null ? 0 : window.sum(currentEpoch());
+    }
+
+    @Override
+    public long retryAfterMs(String key, int limit) {
+        Window window = windows.getIfPresent(key);
+        if (window == null) {
+            return 0;
+        }
+        long now = clock.millis();
+        long epoch = now / bucketMs;
+        int remaining = window.sum(epoch);
+        // Les buckets quittent la fenêtre du plus ancien au plus récent
+        for (long e = epoch - buckets + 1; e <= epoch && remaining >= limit; e++) {
+            remaining -= window.count(e);
+            if (remaining < limit) {
+                return Math.max(0, (e + buckets) * bucketMs - now);
+            }
+        }
+        return remaining >= limit ? bucketMs * buckets : 0;
+    }
+
+    @Override
+    public void reset(String key) {
+        windows.invalidate(key);
+    }
+
+    private long currentEpoch() {
+        return clock.millis() / bucketMs;
+    }
+
+    /**
+     * Compteurs circulaires sans verrou; slot = epoch % buckets.
+     */
+    private static final class Window {
+
+        private final AtomicLongArray slots;
+        private final int size;
+
+        Window(int size) {
+            this.size = size;
+            this.slots = new AtomicLongArray(size);
+        }
+
+        void increment(long epoch) {
+            int index = (int) (epoch % size);
+            while (true) {
+                long current = slots.get(index);
+                long next;
+                if (current >>> COUNT_BITS == epoch) {
+                    long count = current & COUNT_MASK;
+                    if (count == COUNT_MASK) {
+                        return;
+                    }
+                    next = current + 1;
+                } else {
+                    next = (epoch << COUNT_BITS) | 1;
+                }
+                if (slots.compareAndSet(index, current, next)) {
+                    return;
+                }
+            }
+        }
+
+        int count(long epoch) {
+            long value = slots.get((int) (epoch % size));
+            return value >>> COUNT_BITS == epoch ? (int) (value & COUNT_MASK) : 0;
+        }
+
+        int sum(long epoch) {
+            int total = 0;
+            for (int i = 0; i < size; i++) {
+                long value = slots.get(i);
+                long slotEpoch = value >>> COUNT_BITS;
+                if (slotEpoch > epoch - size && slotEpoch <= epoch) {
+                    total += (int) (value & COUNT_MASK);
+                }
+            }
+            return total;
+        }
+    }
+}
@@ -0,0 +1,192 @@
+package com.ngstars.idp.security;
+
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.ngstars.idp.config.IntrospectionProperties;
+import com.ngstars.idp.dto.IntrospectionResponse;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Set;
+import java.util.UUID;
+import java.util.function.Predicate;
+
+/**
+ * Résultats d'introspection récents (TTL court, taille bornée) :
+ * - access tokens : clé = SHA-256 du JWT (la valeur en clair n'est pas conservée); seuls les
+ *   tokens valides sont mis en cache, la vérification de signature n'est faite qu'une fois
+ * - refresh tokens : clé = selector, avec le hash du verifier stocké (comparé à chaque lecture,
+ *   comme en base); les selectors inconnus sont aussi mis en cache
+ *
+ * L'expiration du token est contrôlée à chaque lecture : une entrée n'est jamais active au-delà
+ * de l'exp du token. Les révocations de refresh tokens invalident les entrées après commit
+ * (par selector, par famille ou par utilisateur); le TTL borne l'écart restant (lecture
+ * concurrente d'une révocation non encore validée).
+ *
+ * Métriques hit/miss (cache.*, name=introspectionAccess / introspectionRefresh).
+ */
+@Component
+public class IntrospectionCache {
+
+    private static final String ACCESS_CACHE_NAME = "introspectionAccess";
+    private static final String REFRESH_CACHE_NAME = "introspectionRefresh";
+
+    /**
+     * État d'un refresh token tel que lu en base.
+     */
+    public static final class RefreshEntry {
+
+        private static final RefreshEntry UNKNOWN = new RefreshEntry(null, null, null, IntrospectionResponse.INACTIVE);
+
+        private final byte[] tokenHash;
+        private final UUID familyId;
+        private final Long userId;
+        private final IntrospectionResponse response;
+
+        public RefreshEntry(byte[] tokenHash, UUID familyId, Long userId, IntrospectionResponse response) {
+            this.tokenHash = tokenHash;
+            this.familyId = familyId;
+            this.userId = userId;
+            this.response = response;
+        }
+
+        /**
+         * Selector absent de la base.
+         */
+        public static RefreshEntry unknown() {
+            return UNKNOWN;
+        }
+
+        public byte[] getTokenHash() {
+            return tokenHash;
+        }
+
+        public IntrospectionResponse getResponse() {
+            return response;
+        }
+    }
+
+    private final boolean enabled;
+    private final Cache<ByteBuffer, IntrospectionResponse> accessTokens;
+    private final Cache<UUID, RefreshEntry> refreshTokens;
+
+    public IntrospectionCache(IntrospectionProperties props, MeterRegistry meterRegistry) {
+        this.enabled = props.isCacheEnabled();
+        this.accessTokens = Caffeine.newBuilder()
+                .maximumSize(props.getCacheMaxSize())
+                .expireAfterWrite(Duration.ofMillis(props.getCacheTtlMs()))
+                .recordStats()
+                .build();
+        this.refreshTokens = Caffeine.newBuilder()
+                .maximumSize(props.getCacheMaxSize())
+                .expireAfterWrite(Duration.ofMillis(props.getCacheTtlMs()))
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, accessTokens, ACCESS_CACHE_NAME);
+        CaffeineCacheMetrics.monitor(meterRegistry, refreshTokens, REFRESH_CACHE_NAME);
+    }
+
+    /**
+     * @param tokenHash SHA-256 du JWT
+     */
+    public IntrospectionResponse getAccess(byte[] tokenHash, Instant now) {
+        if (!enabled) {
+            return null;
+        }
+        IntrospectionResponse cached = accessTokens.getIfPresent(ByteBuffer.wrap(tokenHash));
+        return cached == null ? null : checkExpiry(cached, now);
+    }
+
+    public void putAccess(byte[] tokenHash, IntrospectionResponse response) {
+        if (enabled && response.isActive()) {
+            accessTokens.put(ByteBuffer.wrap(tokenHash), response);
+        }
+    }
+
+    public RefreshEntry getRefresh(UUID selector) {
+        return enabled ? refreshTokens.getIfPresent(selector) : null;
+    }
+
+    public void putRefresh(UUID selector, RefreshEntry entry) {
+        if (enabled) {
+            refreshTokens.put(selector, entry);
+        }
+    }
+
+    /**
+     * Token actif dont l'exp est dépassée : inactif, sans attendre l'éviction de l'entrée.
+     */
+    public static IntrospectionResponse checkExpiry(IntrospectionResponse response, Instant now) {
+        if (response.isActive() && response.getExpiresAt() != null
+                && response.getExpiresAt() <= now.getEpochSecond()) {
+            return IntrospectionResponse.INACTIVE;
+        }
+        return response;
+    }
+
+    /**
+     * Refresh token révoqué : invalidation après commit de la transaction courante (sinon immédiate).
+     */
+    public void evictRefreshToken(UUID selector) {
+        if (enabled && selector != null) {
+            afterCommit(() -> refreshTokens.invalidate(selector));
+        }
+    }
+
+    /**
+     * Famille révoquée (rejeu détecté) : parcours du cache, évènement rare.
+     */
+    public void evictRefreshFamily(UUID familyId) {
+        if (enabled && familyId != null) {
+            afterCommit(() -> removeRefreshIf(entry -> familyId.equals(entry.familyId)));
+        }
+    }
+
+    /**
+     * Tous les refresh tokens de l'utilisateur révoqués : parcours du cache, évènement rare.
+     */
+    public void evictRefreshTokensOfUser(Long userId) {
+        if (enabled && userId != null) {
+            afterCommit(() -> removeRefreshIf(entry -> userId.equals(entry.userId)));
+        }
+    }
+
+    /**
+     * Invalidations reçues d'un autre nœud (hors transaction) : familles et utilisateurs d'un lot
+     * retirés en un seul parcours du cache.
+     */
+    public void evictRefreshEntries(Set<UUID> familyIds, Set<Long> userIds) {
+        if (enabled && (!familyIds.isEmpty() || !userIds.isEmpty())) {
+            removeRefreshIf(entry -> familyIds.contains(entry.familyId) || userIds.contains(entry.userId));
+        }
+    }
+
+    public void evictAll() {
+        accessTokens.invalidateAll();
+        refreshTokens.invalidateAll();
+    }
+
+    private void removeRefreshIf(Predicate<RefreshEntry> predicate) {
+        refreshTokens.asMap().values().removeIf(predicate);
+    }
+
+    private static void afterCommit(Runnable eviction) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    eviction.run();
+                }
+            });
+        } else {
+            eviction.run();
+        }
+    }
+}
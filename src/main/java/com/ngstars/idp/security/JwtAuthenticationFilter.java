@@ -1,9 +1,12 @@
 package com.ngstars.idp.security;
 
 
+import com.ngstars.idp.config.JwtProperties;
 import com.ngstars.idp.util.JwtTokenProvider;
+import com.ngstars.idp.util.JwtValidationResult;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.security.web.authentication.WebAuthenticationDetailsSource;
@@ -20,24 +23,49 @@ import java.io.IOException;
 
 /**
  * Filtre qui s'exécute une fois par requête.
+ * - Ignore les endpoints /api/auth/**, sauf l'introspection (appelant authentifié, RFC 7662 §2.1)
  * - Extrait le token JWT du header Authorization
- * - Valide le token via JwtTokenProvider
- * - Charge l'utilisateur via CustomUserDetailsService
+ * - Valide le token et extrait ses claims en un seul parsing via JwtTokenProvider
+ * - Refuse un token révoqué avant expiration (jti dans AccessTokenDenylist)
+ * - Reconstruit le principal depuis les claims (mode TOKEN) ou le charge via
+ *   CustomUserDetailsService (mode DATABASE, ou token sans claims uid/roles)
+ * - Mode TOKEN : refuse un token dont le claim "ver" n'est plus la version courante du compte.
+ *   Sans requête SQL dans le cas courant : version lue dans UserDetailsCache si présente; sinon
+ *   chargement seulement si le compte a changé depuis l'émission du token (changements locaux
+ *   et, via InvalidationBus, des autres nœuds), claims crus sinon
  * - Place l'Authentication dans SecurityContext si tout est OK
+ * - Compte les refus par motif (AuthMetrics : idp.auth.filter.rejected)
  *
  * Ce filtre doit être ajouté AVANT UsernamePasswordAuthenticationFilter dans la chaine de sécurité.
  */
 @Component
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
 public class JwtAuthenticationFilter extends OncePerRequestFilter {
 
     private static final Logger logger = LoggerFactory.getLogger(JwtAuthenticationFilter.class);
 
+    /** Seul endpoint de /api/auth/** à authentifier (ROLE_INTROSPECT ou ROLE_ADMIN). */
+    public static final String INTROSPECTION_PATH = "/api/auth/introspect";
+
     private final JwtTokenProvider jwtTokenProvider;
     private final CustomUserDetailsService userDetailsService;
+    private final UserDetailsCache userDetailsCache;
+    private final JwtProperties jwtProperties;
+    private final AccessTokenDenylist denylist;
+    private final AuthMetrics authMetrics;
 
-    public JwtAuthenticationFilter(JwtTokenProvider jwtTokenProvider, CustomUserDetailsService userDetailsService) {
+    public JwtAuthenticationFilter(JwtTokenProvider jwtTokenProvider,
+                                   CustomUserDetailsService userDetailsService,
+                                   UserDetailsCache userDetailsCache,
+                                   JwtProperties jwtProperties,
+                                   AccessTokenDenylist denylist,
+                                   AuthMetrics authMetrics) {
         this.jwtTokenProvider = jwtTokenProvider;
         this.userDetailsService = userDetailsService;
+        this.userDetailsCache = userDetailsCache;
+        this.jwtProperties = jwtProperties;
+        this.denylist = denylist;
+        this.authMetrics = authMetrics;
     }
 
     /**
@@ -56,18 +84,30 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
                                     HttpServletResponse response,
                                     FilterChain filterChain) throws ServletException, IOException {
 
-        // Sauter la validation JWT pour les endpoints d'authentification
+        // Sauter la validation JWT pour les endpoints d'authentification (hors introspection)
         String requestURI = request.getRequestURI();
-        if (requestURI.startsWith("/api/auth/")) {
+        if (requestURI.startsWith("/api/auth/") && !requestURI.equals(INTROSPECTION_PATH)) {
             filterChain.doFilter(request, response);
             return;
         }
 
         try {
             String token = resolveToken(request);
-            if (token != null && jwtTokenProvider.validateToken(token)) {
-                String username = jwtTokenProvider.getSubjectFromToken(token);
-                UserDetails userDetails = userDetailsService.loadUserByUsername(username);
+            JwtValidationResult result = token != null ? jwtTokenProvider.validateAndExtract(token) : null;
+            if (result != null && !result.isValid()) {
+                logger.debug("JWT rejeté : {}", result.getFailure());
+                authMetrics.recordRejected(result.getFailure());
+            } else if (result != null && isRevoked(result.getClaims())) {
+                logger.debug("JWT rejeté : {}", JwtValidationResult.Failure.REVOKED);
+                authMetrics.recordRejected(JwtValidationResult.Failure.REVOKED);
+            } else if (result != null) {
+                UserDetails userDetails = resolvePrincipal(result.getClaims());
+                if (userDetails == null) {
+                    logger.debug("JWT rejeté : {}", JwtValidationResult.Failure.STALE);
+                    authMetrics.recordRejected(JwtValidationResult.Failure.STALE);
+                    filterChain.doFilter(request, response);
+                    return;
+                }
 
                 // Construire l'objet Authentication pour Spring Security
                 UsernamePasswordAuthenticationToken authentication =
@@ -80,9 +120,33 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
         } catch (Exception ex) {
             // Ne pas interrompre la chaîne — laisser le SecurityContext vide.
             logger.debug("Impossible d'authentifier l'utilisateur via JWT : {}", ex.getMessage());
+            authMetrics.recordPrincipalUnavailable();
         }
 
         filterChain.doFilter(request, response);
     }
+
+    private boolean isRevoked(JwtValidationResult.TokenClaims claims) {
+        return denylist.isRevoked(claims.getId(), claims.getExpiration());
+    }
+
+    /**
+     * Principal depuis les claims en mode TOKEN (état du compte vérifié seulement s'il est en cache
+     * ou a changé depuis l'émission du token); sinon chargement via CustomUserDetailsService.
+     * Null si le token est antérieur au dernier changement d'état du compte.
+     */
+    private UserDetails resolvePrincipal(JwtValidationResult.TokenClaims claims) {
+        if (jwtProperties.getPrincipalSource() == JwtProperties.PrincipalSource.TOKEN) {
+            CustomUserDetails fromClaims = CustomUserDetails.fromClaims(claims);
+            if (fromClaims != null) {
+                CustomUserDetails current = userDetailsCache.getIfPresent(claims.getSubject());
+                if (current == null && userDetailsCache.changedSince(claims.getSubject(), claims.getIssuedAt())) {
+                    current = (CustomUserDetails) userDetailsService.loadUserByUsername(claims.getSubject());
+                }
+                return current == null || fromClaims.matchesAccountState(current) ? fromClaims : null;
+            }
+        }
+        return userDetailsService.loadUserByUsername(claims.getSubject());
+    }
 }
 
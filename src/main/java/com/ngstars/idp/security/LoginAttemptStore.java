@@ -0,0 +1,27 @@
+package com.ngstars.idp.security;
+
+
+/**
+ * Compteurs d'échecs de login sur fenêtre glissante, par clé (compte ou IP).
+ * Implémentation locale : InMemoryLoginAttemptStore; un store partagé (ex: Redis) permettra
+ * d'appliquer les mêmes limites sur tous les nœuds.
+ */
+public interface LoginAttemptStore {
+
+    /**
+     * Enregistre un échec; retourne le nombre d'échecs dans la fenêtre, celui-ci inclus.
+     */
+    int recordFailure(String key);
+
+    /**
+     * Nombre d'échecs dans la fenêtre courante.
+     */
+    int failures(String key);
+
+    /**
+     * Délai (ms) avant que le nombre d'échecs repasse sous limit; 0 si déjà le cas.
+     */
+    long retryAfterMs(String key, int limit);
+
+    void reset(String key);
+}
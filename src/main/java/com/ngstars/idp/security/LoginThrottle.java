@@ -0,0 +1,98 @@
+package com.ngstars.idp.security;
+
+
+import com.ngstars.idp.config.LoginThrottleProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.stereotype.Component;
+
+import java.util.Locale;
+
+/**
+ * Politique anti brute-force du login, appliquée avant AuthenticationManager.authenticate :
+ * un compte ou une IP au-delà de son quota d'échecs est refusé sans aucun hachage BCrypt.
+ *
+ * - Compte : max-failures-per-account échecs sur window-ms; remis à zéro après un succès
+ * - IP : max-failures-per-ip échecs sur window-ms (credential stuffing sur plusieurs comptes)
+ *
+ * L'état de verrouillage du compte est aussi exposé via CustomUserDetails.isAccountNonLocked.
+ */
+@Component
+public class LoginThrottle {
+
+    private static final String ACCOUNT_PREFIX = "a:";
+    private static final String IP_PREFIX = "i:";
+
+    private final LoginAttemptStore store;
+    private final LoginThrottleProperties props;
+    private final Counter throttledAccount;
+    private final Counter throttledIp;
+
+    public LoginThrottle(LoginAttemptStore store, LoginThrottleProperties props, MeterRegistry meterRegistry) {
+        this.store = store;
+        this.props = props;
+        this.throttledAccount = Counter.builder("idp.login.throttled")
+                .description("Logins refusés avant authentification (quota d'échecs atteint)")
+                .tag("scope", "account")
+                .register(meterRegistry);
+        this.throttledIp = Counter.builder("idp.login.throttled")
+                .description("Logins refusés avant authentification (quota d'échecs atteint)")
+                .tag("scope", "ip")
+                .register(meterRegistry);
+    }
+
+    /**
+     * @throws LoginThrottledException si le compte ou l'IP est au-delà de son quota
+     */
+    public void checkAllowed(String email, String clientIp) {
+        if (!props.isEnabled()) {
+            return;
+        }
+        if (clientIp != null && store.failures(IP_PREFIX + clientIp) >= props.getMaxFailuresPerIp()) {
+            throttledIp.increment();
+            throw new LoginThrottledException(toSeconds(store.retryAfterMs(IP_PREFIX + clientIp, props.getMaxFailuresPerIp())));
+        }
+        if (isAccountLocked(email)) {
+            throttledAccount.increment();
+            throw new LoginThrottledException(retryAfterSeconds(email));
+        }
+    }
+
+    public boolean isAccountLocked(String email) {
+        return props.isEnabled() && email != null
+                && store.failures(accountKey(email)) >= props.getMaxFailuresPerAccount();
+    }
+
+    public long retryAfterSeconds(String email) {
+        return toSeconds(store.retryAfterMs(accountKey(email), props.getMaxFailuresPerAccount()));
+    }
+
+    public void recordFailure(String email, String clientIp) {
+        if (!props.isEnabled()) {
+            return;
+        }
+        if (email != null) {
+            store.recordFailure(accountKey(email));
+        }
+        if (clientIp != null) {
+            store.recordFailure(IP_PREFIX + clientIp);
+        }
+    }
+
+    /**
+     * Succès : le compteur du compte repart de zéro (celui de l'IP est conservé).
+     */
+    public void recordSuccess(String email) {
+        if (props.isEnabled() && email != null) {
+            store.reset(accountKey(email));
+        }
+    }
+
+    private static String accountKey(String email) {
+        return ACCOUNT_PREFIX + email.trim().toLowerCase(Locale.ROOT);
+    }
+
+    private static long toSeconds(long millis) {
+        return Math.max(1, (millis + 999) / 1000);
+    }
+}
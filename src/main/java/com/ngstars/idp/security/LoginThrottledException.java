@@ -0,0 +1,20 @@
+package com.ngstars.idp.security;
+
+
+/**
+ * Levée lorsqu'un compte ou une IP a dépassé le nombre d'échecs de login autorisés.
+ * Traduite en 429 + Retry-After par GlobalExceptionHandler.
+ */
+public class LoginThrottledException extends RuntimeException {
+
+    private final long retryAfterSeconds;
+
+    public LoginThrottledException(long retryAfterSeconds) {
+        super("Trop de tentatives de connexion");
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    public long getRetryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+}
@@ -0,0 +1,161 @@
+package com.ngstars.idp.security;
+
+
+import com.ngstars.idp.config.PasswordHashingProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * PasswordEncoder qui exécute encode/matches (BCrypt, coûteux en CPU) sur un pool dédié et borné.
+ *
+ * - Au plus pool-size hachages simultanés, quel que soit le nombre de threads Tomcat
+ * - File bornée (queue-capacity) : si elle est pleine, rejet immédiat
+ *   (HashingCapacityExceededException → 503 + Retry-After) au lieu d'empiler les logins
+ * - Les threads servlet des autres endpoints (refresh, verify) ne se retrouvent jamais en
+ *   concurrence CPU avec une rafale de logins
+ *
+ * Variantes non bloquantes (encodeAsync / matchesAsync) pour les appelants qui ne doivent pas
+ * attendre le hachage sur leur thread (boucle d'événements WebFlux) : même pool, même file bornée.
+ *
+ * Métriques : executor.* (name=passwordHashing), idp.password.hashing.rejected,
+ * idp.password.hashing.wait (attente dans la file) et idp.password.hashing.duration{operation}
+ * (temps BCrypt seul, hors attente).
+ */
+public class OffloadingPasswordEncoder implements PasswordEncoder {
+
+    private static final String POOL_NAME = "passwordHashing";
+
+    private final PasswordEncoder delegate;
+    private final ThreadPoolExecutor executor;
+    private final long retryAfterSeconds;
+    private final Counter rejected;
+    private final Timer waitTimer;
+    private final Timer encodeTimer;
+    private final Timer matchesTimer;
+
+    public OffloadingPasswordEncoder(PasswordEncoder delegate, PasswordHashingProperties props, MeterRegistry meterRegistry) {
+        this.delegate = delegate;
+        this.retryAfterSeconds = props.getRetryAfterSeconds();
+        int poolSize = props.resolvePoolSize();
+        this.executor = new ThreadPoolExecutor(poolSize, poolSize, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, props.getQueueCapacity())),
+                new CustomizableThreadFactory("password-hash-"),
+                new ThreadPoolExecutor.AbortPolicy());
+        this.executor.prestartAllCoreThreads();
+        this.rejected = Counter.builder("idp.password.hashing.rejected")
+                .description("Hachages refusés faute de capacité (file pleine)")
+                .register(meterRegistry);
+        this.waitTimer = Timer.builder("idp.password.hashing.wait")
+                .description("Attente d'un thread de hachage libre")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        this.encodeTimer = hashingTimer(meterRegistry, "encode");
+        this.matchesTimer = hashingTimer(meterRegistry, "matches");
+        ExecutorServiceMetrics.monitor(meterRegistry, executor, POOL_NAME);
+    }
+
+    private static Timer hashingTimer(MeterRegistry meterRegistry, String operation) {
+        return Timer.builder("idp.password.hashing.duration")
+                .description("Durée d'un hachage / d'une vérification de mot de passe")
+                .tag("operation", operation)
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+    }
+
+    @Override
+    public String encode(CharSequence rawPassword) {
+        return submit(encodeTimer, () -> delegate.encode(rawPassword));
+    }
+
+    @Override
+    public boolean matches(CharSequence rawPassword, String encodedPassword) {
+        return submit(matchesTimer, () -> delegate.matches(rawPassword, encodedPassword));
+    }
+
+    /**
+     * Future en échec (HashingCapacityExceededException) si la file est pleine.
+     */
+    public CompletableFuture<String> encodeAsync(CharSequence rawPassword) {
+        return submitAsync(encodeTimer, () -> delegate.encode(rawPassword));
+    }
+
+    public CompletableFuture<Boolean> matchesAsync(CharSequence rawPassword, String encodedPassword) {
+        return submitAsync(matchesTimer, () -> delegate.matches(rawPassword, encodedPassword));
+    }
+
+    /**
+     * Simple inspection du préfixe/coût : reste sur le thread appelant.
+     */
+    @Override
+    public boolean upgradeEncoding(String encodedPassword) {
+        return delegate.upgradeEncoding(encodedPassword);
+    }
+
+    private <T> T submit(Timer timer, Supplier<T> task) {
+        long queuedAt = System.nanoTime();
+        Future<T> future;
+        try {
+            future = executor.submit(() -> timed(timer, queuedAt, task));
+        } catch (RejectedExecutionException ex) {
+            rejected.increment();
+            throw new HashingCapacityExceededException(retryAfterSeconds);
+        }
+        try {
+            return future.get();
+        } catch (InterruptedException ex) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Hachage du mot de passe interrompu", ex);
+        } catch (ExecutionException ex) {
+            Throwable cause = ex.getCause();
+            if (cause instanceof RuntimeException runtime) {
+                throw runtime;
+            }
+            if (cause instanceof Error error) {
+                throw error;
+            }
+            throw new IllegalStateException(cause);
+        }
+    }
+
+    private <T> CompletableFuture<T> submitAsync(Timer timer, Supplier<T> task) {
+        long queuedAt = System.nanoTime();
+        try {
+            return CompletableFuture.supplyAsync(() -> timed(timer, queuedAt, task), executor);
+        } catch (RejectedExecutionException ex) {
+            rejected.increment();
+            return CompletableFuture.failedFuture(new HashingCapacityExceededException(retryAfterSeconds));
+        }
+    }
+
+    /**
+     * Exécuté sur le thread de hachage : attente dans la file puis durée du hachage.
+     */
+    private <T> T timed(Timer timer, long queuedAt, Supplier<T> task) {
+        long start = System.nanoTime();
+        waitTimer.record(start - queuedAt, TimeUnit.NANOSECONDS);
+        try {
+            return task.get();
+        } finally {
+            timer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    public void shutdown() throws InterruptedException {
+        executor.shutdown();
+        executor.awaitTermination(10, TimeUnit.SECONDS);
+    }
+}
@@ -0,0 +1,83 @@
+package com.ngstars.idp.security;
+
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.security.crypto.argon2.Argon2PasswordEncoder;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Calibration du coût de hachage au démarrage, sur le matériel courant :
+ * on mesure le coût minimal puis on retient le coût le plus élevé qui tient
+ * dans le budget de latence (target-latency-ms), borné par min/max.
+ *
+ * - BCrypt : chaque +1 de strength double le temps de calcul
+ * - Argon2id : mémoire fixe, le temps croît linéairement avec le nombre d'itérations
+ */
+public final class PasswordEncoderCalibrator {
+
+    private static final Logger log = LoggerFactory.getLogger(PasswordEncoderCalibrator.class);
+
+    private static final String SAMPLE_PASSWORD = "calibration-sample-password";
+    private static final int WARMUP_ROUNDS = 3;
+    private static final int SAMPLES = 3;
+
+    public static final int ARGON2_SALT_LENGTH = 16;
+    public static final int ARGON2_HASH_LENGTH = 32;
+    /**
+     * Minimum recommandé (OWASP) pour ~19 MiB de mémoire.
+     */
+    public static final int ARGON2_MIN_ITERATIONS = 2;
+
+    private PasswordEncoderCalibrator() {
+    }
+
+    public static int calibrateBcryptStrength(long targetLatencyMs, int minStrength, int maxStrength) {
+        long targetNanos = TimeUnit.MILLISECONDS.toNanos(targetLatencyMs);
+        long estimate = measureNanos(new BCryptPasswordEncoder(minStrength));
+        int strength = minStrength;
+        while (strength < maxStrength && estimate * 2 <= targetNanos) {
+            strength++;
+            estimate *= 2;
+        }
+        log.info("BCrypt calibré : strength={} (~{} ms, budget {} ms)",
+                strength, TimeUnit.NANOSECONDS.toMillis(estimate), targetLatencyMs);
+        return strength;
+    }
+
+    public static int calibrateArgon2Iterations(long targetLatencyMs, int memoryKib, int parallelism, int maxIterations) {
+        long targetNanos = TimeUnit.MILLISECONDS.toNanos(targetLatencyMs);
+        long perIteration = measureNanos(argon2(memoryKib, parallelism, 1));
+        long fits = perIteration == 0 ? maxIterations : targetNanos / perIteration;
+        int iterations = (int) Math.max(ARGON2_MIN_ITERATIONS, Math.min(maxIterations, fits));
+        log.info("Argon2id calibré : m={} KiB, p={}, t={} (~{} ms, budget {} ms)", memoryKib, parallelism,
+                iterations, TimeUnit.NANOSECONDS.toMillis(perIteration * iterations), targetLatencyMs);
+        return iterations;
+    }
+
+    public static Argon2PasswordEncoder argon2(int memoryKib, int parallelism, int iterations) {
+        return new Argon2PasswordEncoder(ARGON2_SALT_LENGTH, ARGON2_HASH_LENGTH, parallelism, memoryKib, iterations);
+    }
+
+    /**
+     * Meilleur temps de quelques hachages, après échauffement (JIT encore froid au démarrage) :
+     * le minimum est la mesure la moins sensible aux autres tâches du démarrage.
+     */
+    private static long measureNanos(PasswordEncoder encoder) {
+        for (int i = 0; i < WARMUP_ROUNDS; i++) {
+            encoder.encode(SAMPLE_PASSWORD);
+        }
+        long[] samples = new long[SAMPLES];
+        for (int i = 0; i < SAMPLES; i++) {
+            long start = System.nanoTime();
+            encoder.encode(SAMPLE_PASSWORD);
+            samples[i] = System.nanoTime() - start;
+        }
+        Arrays.sort(samples);
+        return samples[0];
+    }
+}
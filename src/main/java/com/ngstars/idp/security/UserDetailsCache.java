@@ -0,0 +1,235 @@
+package com.ngstars.idp.security;
+
+
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.ngstars.idp.config.JwtProperties;
+import com.ngstars.idp.config.UserCacheProperties;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Function;
+
+/**
+ * Cache borné (taille + TTL) des CustomUserDetails, indexé par email.
+ * - Chargement single-flight par clé : N requêtes concurrentes sur un compte froid = 1 requête SQL.
+ *   Le chargement s'exécute hors de tout moniteur (futur publié dans un AsyncCache puis complété
+ *   par l'appelant) : pas de thread virtuel épinglé sur son carrier pendant la requête SQL,
+ *   contrairement à Cache.get(key, loader) qui charge dans le compute() synchronisé de la map
+ * - Invalidation explicite après commit lors d'un changement d'état du compte
+ * - Cache négatif court (negative-ttl-ms) des emails inconnus : une tentative sur un compte
+ *   inexistant ne coûte pas de requête SQL; purgé à la création du compte
+ * - Date du dernier changement de chaque compte (éviction locale ou événement USER d'un autre nœud),
+ *   conservée pendant la durée de vie d'un access token : en mode TOKEN, seul un token émis avant
+ *   un changement est vérifié en base (changedSince), les autres sont crus sur leurs claims
+ * - Métriques hit/miss/éviction (cache.*, name=userDetails / unknownUsers / changedUsers) et latence
+ *   de chargement (idp.user.cache.load) exposées via Actuator
+ */
+@Component
+public class UserDetailsCache {
+
+    private static final String CACHE_NAME = "userDetails";
+    private static final String NEGATIVE_CACHE_NAME = "unknownUsers";
+    private static final String CHANGED_CACHE_NAME = "changedUsers";
+
+    private final boolean enabled;
+    private final AsyncCache<String, CustomUserDetails> cache;
+    private final Cache<String, Boolean> unknown;
+    private final Cache<String, Long> changedAt; // email -> seconde epoch du dernier changement
+    private volatile long allChangedAt = Long.MIN_VALUE; // evictAll : tous les comptes
+    private final Timer loadTimer;
+
+    public UserDetailsCache(UserCacheProperties props, JwtProperties jwtProperties, MeterRegistry meterRegistry) {
+        this.enabled = props.isEnabled();
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(props.getMaxSize())
+                .expireAfterWrite(Duration.ofMillis(props.getTtlMs()))
+                .recordStats()
+                .buildAsync();
+        this.loadTimer = Timer.builder("idp.user.cache.load")
+                .description("Latence de chargement d'un utilisateur en base sur cache miss")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        this.unknown = Caffeine.newBuilder()
+                .maximumSize(props.getNegativeMaxSize())
+                .expireAfterWrite(Duration.ofMillis(props.getNegativeTtlMs()))
+                .recordStats()
+                .build();
+        this.changedAt = Caffeine.newBuilder()
+                .maximumSize(props.getChangedMaxSize())
+                .expireAfterWrite(Duration.ofMillis(jwtProperties.getExpirationMs()))
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, CACHE_NAME);
+        CaffeineCacheMetrics.monitor(meterRegistry, unknown, NEGATIVE_CACHE_NAME);
+        CaffeineCacheMetrics.monitor(meterRegistry, changedAt, CHANGED_CACHE_NAME);
+    }
+
+    /**
+     * Utilisateur en cache, sans chargement ni attente; null si absent ou en cours de chargement.
+     */
+    public CustomUserDetails getIfPresent(String email) {
+        if (!enabled) {
+            return null;
+        }
+        CompletableFuture<CustomUserDetails> cached = cache.getIfPresent(email);
+        if (cached == null || !cached.isDone() || cached.isCompletedExceptionally()) {
+            return null;
+        }
+        return cached.getNow(null);
+    }
+
+    /**
+     * Vrai si le compte a changé à la seconde issuedAt ou après (token émis avant le changement,
+     * ou dans la même seconde) : son état doit être relu. Indépendant de idp.user-cache.enabled.
+     */
+    public boolean changedSince(String email, Instant issuedAt) {
+        long issued = issuedAt != null ? issuedAt.getEpochSecond() : Long.MIN_VALUE;
+        if (allChangedAt >= issued) {
+            return true;
+        }
+        Long changed = changedAt.getIfPresent(email);
+        return changed != null && changed >= issued;
+    }
+
+    private void markChanged(String email) {
+        changedAt.put(email, Instant.now().getEpochSecond());
+    }
+
+    /**
+     * Retourne l'utilisateur en cache ou le charge via loader (une seule fois par clé en concurrence).
+     * Les exceptions du loader (ex: UsernameNotFoundException) sont propagées et rien n'est mis en cache.
+     */
+    public CustomUserDetails get(String email, Function<String, CustomUserDetails> loader) {
+        if (!enabled) {
+            return loader.apply(email);
+        }
+        CompletableFuture<CustomUserDetails> cached = cache.getIfPresent(email);
+        if (cached != null) {
+            return join(cached);
+        }
+        CompletableFuture<CustomUserDetails> loading = new CompletableFuture<>();
+        CompletableFuture<CustomUserDetails> prior = cache.asMap().putIfAbsent(email, loading);
+        if (prior != null) {
+            return join(prior);
+        }
+        try {
+            CustomUserDetails loaded = loadTimer.record(() -> loader.apply(email));
+            // Entrée invalidée pendant le chargement : le futur n'est plus dans la map, rien n'est remis en cache
+            loading.complete(loaded);
+            return loaded;
+        } catch (RuntimeException ex) {
+            cache.asMap().remove(email, loading);
+            loading.completeExceptionally(ex);
+            throw ex;
+        }
+    }
+
+    /**
+     * Variante non bloquante de get : loader retourne un futur (requête R2DBC par exemple).
+     * Single-flight identique; un futur complété avec null (utilisateur absent) n'est pas conservé.
+     */
+    public CompletableFuture<CustomUserDetails> getAsync(String email,
+                                                         Function<String, CompletableFuture<CustomUserDetails>> loader) {
+        if (!enabled) {
+            return loader.apply(email);
+        }
+        return cache.get(email, (key, executor) -> {
+            Timer.Sample sample = Timer.start();
+            return loader.apply(key).whenComplete((loaded, ex) -> sample.stop(loadTimer));
+        });
+    }
+
+    private static CustomUserDetails join(CompletableFuture<CustomUserDetails> future) {
+        try {
+            return future.join();
+        } catch (CompletionException ex) {
+            if (ex.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw ex;
+        }
+    }
+
+    /**
+     * Vrai si l'email a été récemment cherché sans résultat.
+     */
+    public boolean isKnownMissing(String email) {
+        return enabled && email != null && unknown.getIfPresent(email) != null;
+    }
+
+    public void markMissing(String email) {
+        if (enabled && email != null) {
+            unknown.put(email, Boolean.TRUE);
+        }
+    }
+
+    /**
+     * Compte créé : retire l'email du cache négatif immédiatement et à nouveau après commit
+     * (une recherche concurrente avant le commit a pu le remettre).
+     */
+    public void forgetMissingAfterCommit(String email) {
+        if (email == null) {
+            return;
+        }
+        unknown.invalidate(email);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    unknown.invalidate(email);
+                }
+            });
+        }
+    }
+
+    public void evict(String email) {
+        if (email != null) {
+            markChanged(email);
+            cache.synchronous().invalidate(email);
+        }
+    }
+
+    /**
+     * Invalide l'entrée après le commit de la transaction courante (sinon immédiatement),
+     * pour qu'une lecture concurrente ne remette pas en cache l'état d'avant commit.
+     */
+    public void evictAfterCommit(String email) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    evict(email);
+                }
+            });
+        } else {
+            evict(email);
+        }
+    }
+
+    /**
+     * Compte modifié sur un autre nœud : entrée et marque "inconnu" retirées immédiatement.
+     */
+    public void invalidate(String email) {
+        if (email != null) {
+            markChanged(email);
+            cache.synchronous().invalidate(email);
+            unknown.invalidate(email);
+        }
+    }
+
+    public void evictAll() {
+        allChangedAt = Instant.now().getEpochSecond();
+        cache.synchronous().invalidateAll();
+        unknown.invalidateAll();
+    }
+}
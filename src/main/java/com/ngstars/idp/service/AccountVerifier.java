@@ -0,0 +1,24 @@
+package com.ngstars.idp.service;
+
+
+import com.ngstars.idp.entity.User;
+
+import java.time.Instant;
+
+/**
+ * Émission et consommation des tokens des liens de vérification, appelé dans les transactions
+ * de register / verifyAccount. Sélection via idp.verification.mode (database | signed).
+ */
+public interface AccountVerifier {
+
+    /**
+     * Token à placer dans le lien de vérification de l'utilisateur (déjà persisté, compte inactif).
+     */
+    String createToken(User user, Instant expiresAt);
+
+    /**
+     * Active le compte si le token est valide et n'a pas déjà servi; false sinon
+     * (inconnu, expiré, falsifié ou déjà utilisé). Deux appels concurrents : un seul réussit.
+     */
+    boolean verify(String token);
+}
@@ -10,9 +10,14 @@ import com.ngstars.idp.dto.RegisterRequest;
  */
 public interface AuthService {
     AuthResponse register(RegisterRequest request, String appUrl /* pour lien verification */);
-    AuthResponse login(LoginRequest request, String deviceInfo);
+    AuthResponse login(LoginRequest request, String deviceInfo, String clientIp);
     AuthResponse refreshToken(String refreshToken);
-    void logout(String refreshToken);
+
+    /**
+     * Révoque le refresh token et, s'il est fourni et valide, l'access token (jti) jusqu'à son expiration.
+     */
+    void logout(String refreshToken, String accessToken);
+
     boolean verifyAccount(String token);
 }
 
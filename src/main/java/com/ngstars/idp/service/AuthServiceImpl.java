@@ -2,42 +2,49 @@ package com.ngstars.idp.service;
 
 
 import com.ngstars.idp.config.JwtProperties;
+import com.ngstars.idp.config.VerificationProperties;
 import com.ngstars.idp.dto.AuthResponse;
 import com.ngstars.idp.dto.LoginRequest;
 import com.ngstars.idp.dto.RegisterRequest;
 import com.ngstars.idp.entity.RefreshToken;
 import com.ngstars.idp.entity.User;
-import com.ngstars.idp.entity.VerificationToken;
-import com.ngstars.idp.repository.VerificationTokenRepository;
+import com.ngstars.idp.security.AccessTokenDenylist;
+import com.ngstars.idp.security.CustomUserDetails;
+import com.ngstars.idp.security.LoginThrottle;
+import com.ngstars.idp.security.LoginThrottledException;
+import com.ngstars.idp.util.IssuedAccessToken;
 import com.ngstars.idp.util.JwtTokenProvider;
+import com.ngstars.idp.util.JwtValidationResult;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.security.authentication.AuthenticationManager;
 import org.springframework.security.authentication.BadCredentialsException;
+import org.springframework.security.authentication.LockedException;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 
 import org.springframework.security.core.Authentication;
-import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.net.URI;
 import java.time.Instant;
-import java.util.HashMap;
-import java.util.Map;
 
 /**
  * Implémentation complète d'AuthService.
  *
  * Responsabilités :
- * - register : créer user (inactif), générer token vérification, envoyer email
- * - login : authentifier, générer access JWT & refresh token persistant
- * - refreshToken : valider refresh token persistant et renvoyer nouvel access token
- * - logout : révoquer refresh token
- * - verifyAccount : valider token de verification puis activer compte
+ * - register : créer user (inactif), générer le lien de vérification (AccountVerifier), envoyer email
+ * - login : authentifier (après contrôle anti brute-force, voir LoginThrottle), générer access JWT
+ *   & refresh token persistant
+ * - refreshToken : valider refresh token persistant, le faire tourner et renvoyer nouvel access token
+ * - logout : révoquer refresh token et access token (AccessTokenDenylist)
+ * - verifyAccount : valider le lien et activer le compte (AccountVerifier, idp.verification.mode)
  *
- * Note : pour envoyer des emails réels, remplace DevMailService par une implémentation SMTP.
+ * Note : l'email de vérification est mis en file (OutboxMailService) dans la transaction de register
+ * puis envoyé après commit; pour des emails réels, fournir un MailTransport SMTP.
  */
 @Service
 public class AuthServiceImpl implements AuthService {
@@ -51,7 +58,13 @@ public class AuthServiceImpl implements AuthService {
     private final AuthenticationManager authenticationManager;
     private final PasswordEncoder passwordEncoder;
     private final MailService mailService;
-    private final VerificationTokenRepository verificationTokenRepository;
+    private final LoginThrottle loginThrottle;
+    private final UserActivityTracker userActivityTracker;
+    private final AccessTokenDenylist accessTokenDenylist;
+    private final InvalidationBus invalidationBus;
+    private final AccountVerifier accountVerifier;
+    private final VerificationProperties verificationProperties;
+    private final TransactionTemplate transactionTemplate;
 
     public AuthServiceImpl(UserService userService,
                            TokenService tokenService,
@@ -60,7 +73,13 @@ public class AuthServiceImpl implements AuthService {
                            AuthenticationManager authenticationManager,
                            PasswordEncoder passwordEncoder,
                            MailService mailService,
-                           VerificationTokenRepository verificationTokenRepository) {
+                           LoginThrottle loginThrottle,
+                           UserActivityTracker userActivityTracker,
+                           AccessTokenDenylist accessTokenDenylist,
+                           InvalidationBus invalidationBus,
+                           AccountVerifier accountVerifier,
+                           VerificationProperties verificationProperties,
+                           PlatformTransactionManager transactionManager) {
         this.userService = userService;
         this.tokenService = tokenService;
         this.jwtTokenProvider = jwtTokenProvider;
@@ -68,46 +87,64 @@ public class AuthServiceImpl implements AuthService {
         this.authenticationManager = authenticationManager;
         this.passwordEncoder = passwordEncoder;
         this.mailService = mailService;
-        this.verificationTokenRepository = verificationTokenRepository;
+        this.loginThrottle = loginThrottle;
+        this.userActivityTracker = userActivityTracker;
+        this.accessTokenDenylist = accessTokenDenylist;
+        this.invalidationBus = invalidationBus;
+        this.accountVerifier = accountVerifier;
+        this.verificationProperties = verificationProperties;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
     }
 
     /**
      * Register :
+     * - hache le mot de passe avant d'ouvrir la transaction : aucune connexion du pool retenue
+     *   pendant le hachage ni pendant l'attente dans la file bornée (OffloadingPasswordEncoder)
      * - crée l'utilisateur (disabled)
-     * - génère un verification token (24h)
-     * - envoie un email de vérification (ou log en dev)
+     * - génère le token du lien de vérification (idp.verification.ttl-ms, 24h par défaut) :
+     *   ligne verification_tokens (mode database) ou lien signé sans écriture (mode signed)
+     * - met en file un email de vérification (envoyé après commit)
      *
      * Retourne AuthResponse vide (pas d'auth tant que compte non vérifié).
      */
     @Override
-    @Transactional
     public AuthResponse register(RegisterRequest request, String appUrl) {
-        // Validation simple côté service (DTO a déjà validation annotations)
-        if (userService.findByEmail(request.getEmail()).isPresent()) {
+        // Requête d'index hors transaction : un email déjà utilisé ne coûte pas de hachage
+        // (course entre deux inscriptions tranchée par la contrainte uc_users_email dans createUser)
+        if (userService.emailExists(request.getEmail())) {
             throw new IllegalArgumentException("Email déjà utilisé");
         }
+        String encodedPassword = passwordEncoder.encode(request.getPassword());
+        transactionTemplate.executeWithoutResult(status -> createAndNotify(request.getEmail(), encodedPassword, appUrl));
+
+        // On ne retourne pas de token d'auth car compte non activé
+        return new AuthResponse(null, null, null);
+    }
 
+    /**
+     * Partie transactionnelle de register : utilisateur, token de vérification et email en file
+     * validés ensemble.
+     */
+    private void createAndNotify(String email, String encodedPassword, String appUrl) {
         // Crée l'utilisateur avec rôle par défaut; user.enabled = false
-        User created = userService.createUser(request.getEmail(), request.getPassword());
+        // (IllegalArgumentException si l'email est déjà utilisé)
+        User created = userService.createUser(email, encodedPassword);
 
-        // Calculer expiration token verification (par ex. 24h)
-        Instant expiry = Instant.now().plusMillis(24L * 60 * 60 * 1000);
+        long ttlMs = verificationProperties.getTtlMs();
+        Instant expiry = Instant.now().plusMillis(ttlMs);
 
-        String verificationToken = tokenService.createVerificationToken(created, expiry);
+        String verificationToken = accountVerifier.createToken(created, expiry);
 
         // Construire lien vérification (ex: https://app.example.com/api/auth/verify?token=xxx)
         String verifyPath = "/api/auth/verify?token=" + verificationToken;
         String verificationUrl = buildAppUrl(appUrl, verifyPath);
 
-        // Envoyer email (implémentation concrète fournie par MailService)
+        // Mettre l'email en file (outbox) : aucun aller-retour SMTP dans la transaction
         String subject = "Vérifiez votre compte";
         String body = "Bonjour,\n\nVeuillez vérifier votre compte en cliquant sur le lien suivant :\n"
-                + verificationUrl + "\n\nCe lien expire dans 24 heures.\n\nCordialement.";
+                + verificationUrl + "\n\nCe lien expire dans " + Math.max(1, ttlMs / 3_600_000) + " heure(s).\n\nCordialement.";
 
         mailService.sendEmail(created.getEmail(), subject, body);
-
-        // On ne retourne pas de token d'auth car compte non activé
-        return new AuthResponse(null, null, null);
     }
 
     /**
@@ -116,119 +153,119 @@ public class AuthServiceImpl implements AuthService {
      * - Génère access JWT (via JwtTokenProvider)
      * - Crée refresh token persistant (TokenService)
      * - Renvoie AuthResponse (access + refresh + expiry)
+     *
+     * Accès base : au plus une lecture (utilisateur + rôles, uniquement sur cache miss) et une
+     * écriture (INSERT du refresh token). Le principal authentifié sert au contrôle enabled et
+     * aux claims; le refresh token référence l'utilisateur par proxy (aucun SELECT); last_login
+     * est écrit en différé (UserActivityTracker).
+     * Pas de @Transactional ici : aucune connexion n'est retenue pendant le hachage du mot de passe.
      */
     @Override
-    @Transactional
-    public AuthResponse login(LoginRequest request, String deviceInfo) {
+    public AuthResponse login(LoginRequest request, String deviceInfo, String clientIp) {
+        // Compte ou IP au-delà du quota d'échecs : refus avant tout hachage (429)
+        loginThrottle.checkAllowed(request.getEmail(), clientIp);
         try {
             // Authentifier via AuthenticationManager
             Authentication authentication = authenticationManager.authenticate(
                     new UsernamePasswordAuthenticationToken(request.getEmail(), request.getPassword())
             );
 
-            UserDetails principal = (UserDetails) authentication.getPrincipal();
+            CustomUserDetails principal = (CustomUserDetails) authentication.getPrincipal();
+            loginThrottle.recordSuccess(principal.getUsername());
 
             // Vérifier que l'utilisateur est activé (enabled)
-            User userEntity = userService.findByEmail(principal.getUsername())
-                    .orElseThrow(() -> new IllegalStateException("Utilisateur introuvable après authentification"));
-
-            if (!userEntity.isEnabled()) {
+            if (!principal.isEnabled()) {
                 throw new IllegalStateException("Compte non vérifié. Vérifiez votre email.");
             }
 
-            // Générer claims (ajoute roles si tu veux)
-            Map<String, Object> claims = new HashMap<>();
-            // Exemple : claims.put("roles", principal.getAuthorities().stream().map(GrantedAuthority::getAuthority).collect(Collectors.toList()));
-
-            String accessToken = jwtTokenProvider.generateAccessToken(principal.getUsername(), claims);
-            Instant accessExpiry = jwtTokenProvider.getExpirationFromToken(accessToken);
+            // Claims uid / roles / ver pour la reconstruction stateless du principal; expiration connue
+            // à l'émission (aucun re-parsing du token signé)
+            IssuedAccessToken accessToken = principal.issueAccessToken(jwtTokenProvider);
 
             // Créer refresh token et le persister
-            Instant refreshExpiry = Instant.now().plusMillis(jwtProperties.getRefreshExpirationMs());
-            RefreshToken rt = tokenService.createRefreshToken(userEntity, refreshExpiry, deviceInfo);
+            Instant now = Instant.now();
+            Instant refreshExpiry = now.plusMillis(jwtProperties.getRefreshExpirationMs());
+            RefreshToken rt = tokenService.createRefreshToken(userService.getReference(principal.getId()),
+                    refreshExpiry, deviceInfo);
 
-            // Mettre à jour lastLogin pour suivi simple
-            userEntity.setLastLogin(Instant.now());
-            userService.findById(userEntity.getId()).ifPresent(u -> {
-                // userService.enableUser ne fait pas ce set, on sauvegarde direct via UserService ou repo
-                // Ici on peut appeler userService's repository save (implémentation UserServiceImpl already saves)
-                // But UserService doesn't expose update method; for simplicity we save via createUser? better to rely on JPA managed entity
-            });
+            userActivityTracker.recordLogin(principal.getId(), now);
 
-            return new AuthResponse(accessToken, rt.getToken(), accessExpiry);
+            return new AuthResponse(accessToken.getToken(), rt.getToken(), accessToken.getExpiresAt());
 
         } catch (BadCredentialsException ex) {
+            loginThrottle.recordFailure(request.getEmail(), clientIp);
             throw new BadCredentialsException("Identifiants invalides");
+        } catch (LockedException ex) {
+            // Verrouillé entre checkAllowed et le chargement de l'utilisateur (échecs concurrents)
+            throw new LoginThrottledException(loginThrottle.retryAfterSeconds(request.getEmail()));
         }
     }
 
     /**
      * Refresh token : vérifie le refresh token stocké en base, s'il est valide et non révoqué,
-     * génère un nouvel access token et renvoie AuthResponse.
+     * le remplace par un nouveau token de la même famille (rotation), génère un nouvel access
+     * token et renvoie AuthResponse.
+     *
+     * Un token révoqué présenté à nouveau signale un vol : toute la famille est révoquée.
+     * noRollbackFor : les révocations doivent être validées même si la requête est refusée.
      */
     @Override
-    @Transactional
+    @Transactional(noRollbackFor = IllegalArgumentException.class)
     public AuthResponse refreshToken(String refreshTokenStr) {
         RefreshToken rt = tokenService.findByToken(refreshTokenStr)
                 .orElseThrow(() -> new IllegalArgumentException("Refresh token introuvable"));
 
+        if (rt.isRevoked()) {
+            log.warn("Réutilisation d'un refresh token révoqué (famille {}) : révocation de la famille", rt.getFamilyId());
+            tokenService.revokeRefreshTokenFamily(rt.getFamilyId());
+            throw new IllegalArgumentException("Refresh token révoqué");
+        }
+
         if (rt.isExpired()) {
             // Si expiré -> révoquer et refuser
             tokenService.revokeRefreshToken(rt);
             throw new IllegalArgumentException("Refresh token expiré");
         }
 
-        if (rt.isRevoked()) {
-            throw new IllegalArgumentException("Refresh token révoqué");
-        }
+        // Rotation : l'ancien token est révoqué de façon conditionnelle (un seul refresh gagnant)
+        RefreshToken next = tokenService.rotateRefreshToken(rt)
+                .orElseThrow(() -> new IllegalArgumentException("Refresh token révoqué"));
+
+        // Générer nouveau access token (claims recalculés depuis l'état courant du compte)
+        IssuedAccessToken newAccess = new CustomUserDetails(rt.getUser()).issueAccessToken(jwtTokenProvider);
 
-        // Générer nouveau access token
-        Map<String, Object> claims = new HashMap<>();
-        String newAccess = jwtTokenProvider.generateAccessToken(rt.getUser().getEmail(), claims);
-        Instant newExpiry = jwtTokenProvider.getExpirationFromToken(newAccess);
+        userActivityTracker.recordRefresh(rt.getUser().getId(), Instant.now());
 
-        return new AuthResponse(newAccess, refreshTokenStr, newExpiry);
+        return new AuthResponse(newAccess.getToken(), next.getToken(), newAccess.getExpiresAt());
     }
 
     /**
-     * Logout : révoque le refresh token fourni (si présent).
+     * Logout : révoque le refresh token fourni (si présent) et l'access token présenté,
+     * refusé ensuite par les filtres JWT de tous les nœuds jusqu'à son expiration.
      */
     @Override
     @Transactional
-    public void logout(String refreshTokenStr) {
+    public void logout(String refreshTokenStr, String accessToken) {
         tokenService.findByToken(refreshTokenStr).ifPresent(tokenService::revokeRefreshToken);
+        if (accessToken != null) {
+            JwtValidationResult result = jwtTokenProvider.validateAndExtract(accessToken);
+            if (result.isValid()) {
+                accessTokenDenylist.revoke(result.getClaims().getId(), result.getClaims().getExpiration());
+                invalidationBus.accessTokenRevoked(result.getClaims().getId(), result.getClaims().getExpiration());
+            }
+        }
     }
 
     /**
-     * Vérification du compte via token :
-     * - vérifie la validité du token (expiration/used)
-     * - active le compte
-     * - marque le token comme utilisé (pour empêcher la réutilisation)
+     * Vérification du compte via token (voir AccountVerifier) :
+     * - mode database : consomme le token (UPDATE conditionnel) puis active le compte, deux requêtes
+     * - mode signed : contrôle HMAC / expiration en mémoire puis un seul UPDATE conditionnel
+     * Deux clics concurrents sur le même lien : un seul active le compte, l'autre reçoit false.
      */
     @Override
     @Transactional
     public boolean verifyAccount(String token) {
-        // Vérifier via TokenService
-        boolean valid = tokenService.validateVerificationToken(token);
-        if (!valid) return false;
-
-        // Récupérer userId à partir du token
-        var optUserId = tokenService.getUserIdFromVerificationToken(token);
-        if (optUserId.isEmpty()) return false;
-
-        Long userId = optUserId.get();
-        User user = userService.findById(userId).orElseThrow(() -> new IllegalStateException("Utilisateur introuvable"));
-
-        // Activer l'utilisateur
-        userService.enableUser(user);
-
-        // Marquer token comme used pour éviter réutilisation
-        verificationTokenRepository.findByToken(token).ifPresent(vt -> {
-            vt.setUsed(true);
-            verificationTokenRepository.save(vt);
-        });
-
-        return true;
+        return accountVerifier.verify(token);
     }
 
     /**
@@ -0,0 +1,44 @@
+package com.ngstars.idp.service;
+
+
+import com.ngstars.idp.entity.User;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+
+import java.time.Instant;
+import java.util.Optional;
+
+/**
+ * Tokens de vérification en base (idp.verification.mode=database, défaut) : un INSERT par
+ * register, puis à la vérification consommation conditionnelle du token et activation du compte
+ * (deux requêtes).
+ */
+@Service
+@ConditionalOnProperty(prefix = "idp.verification", name = "mode", havingValue = "database", matchIfMissing = true)
+public class DatabaseAccountVerifier implements AccountVerifier {
+
+    private final TokenService tokenService;
+    private final UserService userService;
+
+    public DatabaseAccountVerifier(TokenService tokenService, UserService userService) {
+        this.tokenService = tokenService;
+        this.userService = userService;
+    }
+
+    @Override
+    public String createToken(User user, Instant expiresAt) {
+        return tokenService.createVerificationToken(user, expiresAt);
+    }
+
+    @Override
+    public boolean verify(String token) {
+        Optional<Long> userId = tokenService.consumeVerificationToken(token);
+        if (userId.isEmpty()) {
+            return false;
+        }
+        if (!userService.enableUser(userId.get())) {
+            throw new IllegalStateException("Utilisateur introuvable");
+        }
+        return true;
+    }
+}
@@ -0,0 +1,61 @@
+package com.ngstars.idp.service;
+
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Transport local pour les tests (idp.mail.transport=memory).
+ * Conserve les emails "envoyés" en mémoire au lieu de contacter un relais SMTP.
+ */
+@Service
+@ConditionalOnProperty(prefix = "idp.mail", name = "transport", havingValue = "memory")
+public class InMemoryMailTransport implements MailTransport {
+
+    /**
+     * Email capturé par le transport.
+     */
+    public static final class SentMail {
+        private final String to;
+        private final String subject;
+        private final String body;
+
+        public SentMail(String to, String subject, String body) {
+            this.to = to;
+            this.subject = subject;
+            this.body = body;
+        }
+
+        public String getTo() {
+            return to;
+        }
+
+        public String getSubject() {
+            return subject;
+        }
+
+        public String getBody() {
+            return body;
+        }
+    }
+
+    private final Queue<SentMail> sent = new ConcurrentLinkedQueue<>();
+
+    @Override
+    public void send(String to, String subject, String body) {
+        sent.add(new SentMail(to, subject, body));
+    }
+
+    public List<SentMail> getSentMails() {
+        return new ArrayList<>(sent);
+    }
+
+    public void clear() {
+        sent.clear();
+    }
+}
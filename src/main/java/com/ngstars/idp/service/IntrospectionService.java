@@ -0,0 +1,23 @@
+package com.ngstars.idp.service;
+
+
+import com.ngstars.idp.dto.IntrospectionResponse;
+
+import java.util.List;
+
+/**
+ * Introspection des tokens (RFC 7662) pour les services qui ne valident pas les JWT eux-mêmes.
+ */
+public interface IntrospectionService {
+
+    /**
+     * Access token (JWT) ou refresh token (opaque), type déduit du format.
+     * Jamais d'exception pour un token invalide : IntrospectionResponse.INACTIVE.
+     */
+    IntrospectionResponse introspect(String token);
+
+    /**
+     * Un résultat par token, dans le même ordre; au plus une requête SQL pour tout le lot.
+     */
+    List<IntrospectionResponse> introspectAll(List<String> tokens);
+}
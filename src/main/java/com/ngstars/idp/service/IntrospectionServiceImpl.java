@@ -0,0 +1,189 @@
+package com.ngstars.idp.service;
+
+
+import com.ngstars.idp.dto.IntrospectionResponse;
+import com.ngstars.idp.entity.RefreshToken;
+import com.ngstars.idp.entity.User;
+import com.ngstars.idp.security.AccessTokenDenylist;
+import com.ngstars.idp.security.IntrospectionCache;
+import com.ngstars.idp.util.JwtTokenProvider;
+import com.ngstars.idp.util.JwtValidationResult;
+import com.ngstars.idp.util.OpaqueTokens;
+import org.springframework.stereotype.Service;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Implémentation d'IntrospectionService, devant IntrospectionCache :
+ * - access token (JWT, deux '.') : JwtTokenProvider, aucun accès base; inactif si son jti est
+ *   révoqué (AccessTokenDenylist, contrôlé aussi sur les résultats en cache)
+ * - refresh token (opaque) : selector puis comparaison du hash comme TokenServiceImpl.findByToken;
+ *   les selectors absents du cache d'un lot sont chargés en une seule requête
+ *
+ * Un refresh token est actif s'il n'est ni révoqué ni expiré et que son compte est activé.
+ */
+@Service
+public class IntrospectionServiceImpl implements IntrospectionService {
+
+    private final JwtTokenProvider jwtTokenProvider;
+    private final TokenService tokenService;
+    private final IntrospectionCache cache;
+    private final AccessTokenDenylist denylist;
+
+    public IntrospectionServiceImpl(JwtTokenProvider jwtTokenProvider,
+                                    TokenService tokenService,
+                                    IntrospectionCache cache,
+                                    AccessTokenDenylist denylist) {
+        this.jwtTokenProvider = jwtTokenProvider;
+        this.tokenService = tokenService;
+        this.cache = cache;
+        this.denylist = denylist;
+    }
+
+    @Override
+    public IntrospectionResponse introspect(String token) {
+        return introspectAll(List.of(token == null ? "" : token)).get(0);
+    }
+
+    @Override
+    public List<IntrospectionResponse> introspectAll(List<String> tokens) {
+        Instant now = Instant.now();
+        int size = tokens.size();
+        IntrospectionResponse[] results = new IntrospectionResponse[size];
+        OpaqueTokens.Parsed[] pendingRefresh = new OpaqueTokens.Parsed[size];
+        Map<UUID, IntrospectionCache.RefreshEntry> missing = null;
+
+        for (int i = 0; i < size; i++) {
+            String token = tokens.get(i);
+            if (token == null || token.isBlank()) {
+                results[i] = IntrospectionResponse.INACTIVE;
+            } else if (isJwt(token)) {
+                results[i] = introspectAccess(token, now);
+            } else {
+                OpaqueTokens.Parsed parsed = OpaqueTokens.parse(token);
+                if (parsed == null) {
+                    results[i] = IntrospectionResponse.INACTIVE;
+                    continue;
+                }
+                IntrospectionCache.RefreshEntry cached = cache.getRefresh(parsed.getSelector());
+                if (cached != null) {
+                    results[i] = resolve(cached, parsed, now);
+                } else {
+                    if (missing == null) {
+                        missing = new HashMap<>();
+                    }
+                    missing.put(parsed.getSelector(), null);
+                    pendingRefresh[i] = parsed;
+                }
+            }
+        }
+
+        if (missing != null) {
+            loadRefreshEntries(missing);
+            for (int i = 0; i < size; i++) {
+                OpaqueTokens.Parsed parsed = pendingRefresh[i];
+                if (parsed != null) {
+                    results[i] = resolve(missing.get(parsed.getSelector()), parsed, now);
+                }
+            }
+        }
+        return List.of(results);
+    }
+
+    /**
+     * Signature vérifiée une seule fois par token tant qu'il reste en cache.
+     */
+    private IntrospectionResponse introspectAccess(String token, Instant now) {
+        byte[] tokenHash = OpaqueTokens.sha256(token);
+        IntrospectionResponse response = cache.getAccess(tokenHash, now);
+        if (response == null) {
+            JwtValidationResult result = jwtTokenProvider.validateAndExtract(token);
+            if (!result.isValid()) {
+                return IntrospectionResponse.INACTIVE;
+            }
+            response = toResponse(result.getClaims());
+            cache.putAccess(tokenHash, response);
+            response = IntrospectionCache.checkExpiry(response, now);
+        }
+        if (response.isActive() && response.getExpiresAt() != null
+                && denylist.isRevoked(response.getTokenId(), response.getExpiresAt())) {
+            return IntrospectionResponse.INACTIVE;
+        }
+        return response;
+    }
+
+    /**
+     * Remplit missing (selector -> état) en une requête et met chaque état en cache,
+     * y compris les selectors inconnus.
+     */
+    private void loadRefreshEntries(Map<UUID, IntrospectionCache.RefreshEntry> missing) {
+        Collection<UUID> selectors = new ArrayList<>(missing.keySet());
+        for (RefreshToken rt : tokenService.findWithUserBySelectors(selectors)) {
+            missing.put(rt.getSelector(), toEntry(rt));
+        }
+        for (UUID selector : selectors) {
+            IntrospectionCache.RefreshEntry entry = missing.get(selector);
+            if (entry == null) {
+                entry = IntrospectionCache.RefreshEntry.unknown();
+                missing.put(selector, entry);
+            }
+            cache.putRefresh(selector, entry);
+        }
+    }
+
+    private static IntrospectionResponse resolve(IntrospectionCache.RefreshEntry entry,
+                                                 OpaqueTokens.Parsed parsed, Instant now) {
+        if (!parsed.matches(entry.getTokenHash())) {
+            return IntrospectionResponse.INACTIVE;
+        }
+        return IntrospectionCache.checkExpiry(entry.getResponse(), now);
+    }
+
+    private static IntrospectionCache.RefreshEntry toEntry(RefreshToken rt) {
+        User user = rt.getUser();
+        boolean active = !rt.isRevoked() && !rt.isExpired() && user.isEnabled();
+        IntrospectionResponse response = active
+                ? new IntrospectionResponse(true, IntrospectionResponse.REFRESH_TOKEN, user.getEmail(), user.getId(),
+                        null, null, rt.getExpiryDate().getEpochSecond(), null)
+                : IntrospectionResponse.INACTIVE;
+        return new IntrospectionCache.RefreshEntry(rt.getTokenHash(), rt.getFamilyId(), user.getId(), response);
+    }
+
+    private static IntrospectionResponse toResponse(JwtValidationResult.TokenClaims claims) {
+        Object uid = claims.get(JwtTokenProvider.CLAIM_USER_ID);
+        Object roles = claims.get(JwtTokenProvider.CLAIM_ROLES);
+        List<String> roleNames = null;
+        if (roles instanceof Collection) {
+            roleNames = new ArrayList<>();
+            for (Object role : (Collection<?>) roles) {
+                if (role != null) {
+                    roleNames.add(role.toString());
+                }
+            }
+        }
+        return new IntrospectionResponse(true, IntrospectionResponse.ACCESS_TOKEN, claims.getSubject(),
+                uid instanceof Number ? ((Number) uid).longValue() : null,
+                roleNames,
+                claims.getIssuedAt() == null ? null : claims.getIssuedAt().getEpochSecond(),
+                claims.getExpiration() == null ? null : claims.getExpiration().getEpochSecond(),
+                claims.getId());
+    }
+
+    /**
+     * JWS compact : exactement deux '.'; un refresh token en a au plus un.
+     */
+    private static boolean isJwt(String token) {
+        int first = token.indexOf('.');
+        if (first < 0) {
+            return false;
+        }
+        int second = token.indexOf('.', first + 1);
+        return second > 0 && token.indexOf('.', second + 1) < 0;
+    }
+}
@@ -0,0 +1,184 @@
+package com.ngstars.idp.service;
+
+
+import com.ngstars.idp.config.InvalidationProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.sql.PreparedStatement;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Publie les changements qui rendent périmé l'état en mémoire des autres nœuds (UserDetailsCache,
+ * IntrospectionCache, AccessTokenDenylist); InvalidationListener les applique à la réception.
+ *
+ * - Événements compacts (type, sujet, expiration) insérés dans invalidation_events, dans la
+ *   transaction du changement : rien n'est publié si elle est annulée
+ * - Rafales regroupées : les événements d'une transaction sont écrits au commit en un seul
+ *   INSERT ... SELECT FROM unnest(...) suivi d'un seul pg_notify (hors transaction : immédiatement)
+ * - NOTIFY porte uniquement l'id du nœud émetteur : PostgreSQL fusionne les notifications
+ *   identiques d'une transaction, et un nœud ignore ses propres réveils sans requête
+ *
+ * Le nœud émetteur invalide ses propres caches directement (after commit) : ses événements
+ * ne lui sont pas réappliqués.
+ *
+ * Métrique : idp.invalidation.published{type}.
+ */
+@Component
+public class InvalidationBus {
+
+    public enum Type { USER, REFRESH_TOKEN, REFRESH_FAMILY, REFRESH_USER, ACCESS_TOKEN }
+
+    private static final String INSERT =
+            "WITH inserted AS ("
+                    + " INSERT INTO invalidation_events (type, subject, expires_at, origin)"
+                    + " SELECT e.type, e.subject, to_timestamp(e.expires_at), ?"
+                    + " FROM unnest(?::varchar[], ?::varchar[], ?::bigint[]) AS e(type, subject, expires_at)"
+                    + " RETURNING id)"
+                    + " SELECT pg_notify(?, ?) WHERE EXISTS (SELECT 1 FROM inserted)";
+
+    /**
+     * Événement en attente d'écriture (expiresAt en secondes epoch, null hors ACCESS_TOKEN).
+     */
+    private static final class Event {
+        private final Type type;
+        private final String subject;
+        private final Long expiresAt;
+
+        Event(Type type, String subject, Long expiresAt) {
+            this.type = type;
+            this.subject = subject;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    private final JdbcTemplate jdbcTemplate;
+    private final InvalidationProperties props;
+    private final UUID nodeId = UUID.randomUUID();
+    private final Map<Type, Counter> published = new EnumMap<>(Type.class);
+
+    public InvalidationBus(JdbcTemplate jdbcTemplate, InvalidationProperties props, MeterRegistry meterRegistry) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.props = props;
+        for (Type type : Type.values()) {
+            published.put(type, Counter.builder("idp.invalidation.published")
+                    .description("Événements d'invalidation publiés pour les autres nœuds")
+                    .tag("type", type.name().toLowerCase(Locale.ROOT))
+                    .register(meterRegistry));
+        }
+    }
+
+    /**
+     * Identifiant de ce nœud (origin des événements, payload des NOTIFY), tiré au démarrage.
+     */
+    public UUID getNodeId() {
+        return nodeId;
+    }
+
+    public String getChannel() {
+        return props.getChannel();
+    }
+
+    /**
+     * Compte modifié (activation, changement d'état) : entrée UserDetailsCache et cache négatif.
+     */
+    public void userChanged(String email) {
+        publish(Type.USER, email, null);
+    }
+
+    public void refreshTokenRevoked(UUID selector) {
+        publish(Type.REFRESH_TOKEN, selector == null ? null : selector.toString(), null);
+    }
+
+    public void refreshFamilyRevoked(UUID familyId) {
+        publish(Type.REFRESH_FAMILY, familyId == null ? null : familyId.toString(), null);
+    }
+
+    public void userRefreshTokensRevoked(Long userId) {
+        publish(Type.REFRESH_USER, userId == null ? null : userId.toString(), null);
+    }
+
+    /**
+     * Access token révoqué jusqu'à son expiration (conservé jusque-là : rejoué au démarrage d'un nœud).
+     */
+    public void accessTokenRevoked(String jti, Instant expiresAt) {
+        if (expiresAt != null) {
+            publish(Type.ACCESS_TOKEN, jti, expiresAt.getEpochSecond());
+        }
+    }
+
+    void recordPublished(Type type) {
+        published.get(type).increment();
+    }
+
+    private void publish(Type type, String subject, Long expiresAt) {
+        if (!props.isEnabled() || subject == null) {
+            return;
+        }
+        Event event = new Event(type, subject, expiresAt);
+        if (!TransactionSynchronizationManager.isSynchronizationActive()
+                || !TransactionSynchronizationManager.isActualTransactionActive()) {
+            insert(List.of(event));
+            return;
+        }
+        @SuppressWarnings("unchecked")
+        List<Event> pending = (List<Event>) TransactionSynchronizationManager.getResource(this);
+        if (pending == null) {
+            List<Event> batch = new ArrayList<>();
+            TransactionSynchronizationManager.bindResource(this, batch);
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void beforeCommit(boolean readOnly) {
+                    // Encore dans la transaction : événements et changement validés ensemble
+                    insert(batch);
+                }
+
+                @Override
+                public void afterCompletion(int status) {
+                    TransactionSynchronizationManager.unbindResourceIfPossible(InvalidationBus.this);
+                }
+            });
+            pending = batch;
+        }
+        pending.add(event);
+    }
+
+    private void insert(List<Event> events) {
+        if (events.isEmpty()) {
+            return;
+        }
+        int size = events.size();
+        String[] types = new String[size];
+        String[] subjects = new String[size];
+        Long[] expirations = new Long[size];
+        for (int i = 0; i < size; i++) {
+            Event event = events.get(i);
+            types[i] = event.type.name();
+            subjects[i] = event.subject;
+            expirations[i] = event.expiresAt;
+        }
+        jdbcTemplate.execute(con -> {
+            PreparedStatement ps = con.prepareStatement(INSERT);
+            ps.setObject(1, nodeId);
+            ps.setArray(2, con.createArrayOf("varchar", types));
+            ps.setArray(3, con.createArrayOf("varchar", subjects));
+            ps.setArray(4, con.createArrayOf("bigint", expirations));
+            ps.setString(5, props.getChannel());
+            ps.setString(6, nodeId.toString());
+            return ps;
+        }, (PreparedStatement ps) -> ps.execute());
+        for (Event event : events) {
+            recordPublished(event.type);
+        }
+    }
+}
@@ -0,0 +1,447 @@
+package com.ngstars.idp.service;
+
+
+import com.ngstars.idp.config.InvalidationProperties;
+import com.ngstars.idp.security.AccessTokenDenylist;
+import com.ngstars.idp.security.IntrospectionCache;
+import com.ngstars.idp.security.UserDetailsCache;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.datasource.SimpleDriverDataSource;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Instant;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/**
+ * Applique les invalidations publiées par les autres nœuds (InvalidationBus) aux caches locaux :
+ * UserDetailsCache (entrée + cache négatif), IntrospectionCache et AccessTokenDenylist.
+ *
+ * - Un thread dédié tient une connexion hors pool (LISTEN) et attend les NOTIFY; chaque réveil
+ *   venant d'un autre nœud déclenche la lecture de tous les événements depuis le dernier id lu
+ *   (les rafales sont absorbées en une requête par lot de batch-size)
+ * - Rattrapage toutes les poll-interval-ms même en écoute (NOTIFY perdu, connexion à demi ouverte);
+ *   polling seul si listen=false ou tant que LISTEN est impossible
+ * - Connexion perdue : reconnexion immédiate puis backoff exponentiel, rattrapage à chaque reconnexion
+ * - Ids sautés (transaction concurrente pas encore validée, ou annulée) relus jusqu'à gap-timeout-ms
+ * - Au démarrage, les access tokens révoqués et non expirés sont rechargés dans la denylist
+ *
+ * Métriques : idp.invalidation.applied{type}, idp.invalidation.lag (publication -> application),
+ * idp.invalidation.listening (1 si LISTEN actif), idp.invalidation.connection.lost.
+ */
+@Component
+public class InvalidationListener implements SmartLifecycle {
+
+    private static final Logger log = LoggerFactory.getLogger(InvalidationListener.class);
+
+    private static final Pattern CHANNEL = Pattern.compile("[a-z_][a-z0-9_]{0,62}");
+
+    /** Au-delà, un saut d'ids n'est pas suivi (séquence avancée en bloc, ex: bascule de primaire). */
+    private static final int MAX_TRACKED_GAPS = 10_000;
+
+    private static final int VALIDATION_TIMEOUT_SECONDS = 2;
+
+    private static final String SELECT_MAX_ID = "SELECT coalesce(max(id), 0) FROM invalidation_events";
+
+    private static final String SELECT_LIVE_ACCESS_TOKENS =
+            "SELECT subject, expires_at FROM invalidation_events "
+                    + "WHERE type = 'ACCESS_TOKEN' AND expires_at > now() AND id <= ?";
+
+    private static final String SELECT_EVENTS =
+            "SELECT id, type, subject, expires_at, origin, created_at FROM invalidation_events "
+                    + "WHERE id > ? OR id = ANY (?) ORDER BY id LIMIT ?";
+
+    private static final RowMapper<Event> EVENT_MAPPER = (rs, rowNum) -> new Event(
+            rs.getLong("id"),
+            typeOf(rs.getString("type")),
+            rs.getString("subject"),
+            rs.getTimestamp("expires_at") == null ? null : rs.getTimestamp("expires_at").toInstant(),
+            rs.getObject("origin", UUID.class),
+            rs.getTimestamp("created_at").toInstant());
+
+    private static final class Event {
+        private final long id;
+        private final InvalidationBus.Type type;
+        private final String subject;
+        private final Instant expiresAt;
+        private final UUID origin;
+        private final Instant createdAt;
+
+        Event(long id, InvalidationBus.Type type, String subject, Instant expiresAt, UUID origin, Instant createdAt) {
+            this.id = id;
+            this.type = type;
+            this.subject = subject;
+            this.expiresAt = expiresAt;
+            this.origin = origin;
+            this.createdAt = createdAt;
+        }
+    }
+
+    private final JdbcTemplate jdbcTemplate;
+    private final DataSource listenDataSource;
+    private final InvalidationProperties props;
+    private final InvalidationBus bus;
+    private final UserDetailsCache userDetailsCache;
+    private final IntrospectionCache introspectionCache;
+    private final AccessTokenDenylist denylist;
+    private final Map<InvalidationBus.Type, Counter> applied = new EnumMap<>(InvalidationBus.Type.class);
+    private final Timer lag;
+    private final Counter connectionLost;
+
+    private volatile boolean running;
+    private volatile boolean listening;
+    private Thread thread;
+
+    // État du thread d'écoute uniquement
+    private Connection connection;
+    private long cursor = -1;
+    private final Map<Long, Long> gaps = new HashMap<>();
+    private boolean catchUp;
+    private long lastDrainNanos;
+    private long nextConnectNanos;
+    private long backoffMs;
+
+    public InvalidationListener(JdbcTemplate jdbcTemplate,
+                                DataSourceProperties dataSourceProperties,
+                                InvalidationProperties props,
+                                InvalidationBus bus,
+                                UserDetailsCache userDetailsCache,
+                                IntrospectionCache introspectionCache,
+                                AccessTokenDenylist denylist,
+                                MeterRegistry meterRegistry) {
+        if (!CHANNEL.matcher(props.getChannel()).matches()) {
+            throw new IllegalStateException("Canal d'invalidation invalide : " + props.getChannel());
+        }
+        this.jdbcTemplate = jdbcTemplate;
+        // Connexion LISTEN tenue en permanence : hors du pool Hikari, qu'elle ne réduit pas
+        this.listenDataSource = dataSourceProperties.initializeDataSourceBuilder()
+                .type(SimpleDriverDataSource.class)
+                .build();
+        this.props = props;
+        this.bus = bus;
+        this.userDetailsCache = userDetailsCache;
+        this.introspectionCache = introspectionCache;
+        this.denylist = denylist;
+        for (InvalidationBus.Type type : InvalidationBus.Type.values()) {
+            applied.put(type, Counter.builder("idp.invalidation.applied")
+                    .description("Invalidations reçues d'autres nœuds et appliquées aux caches locaux")
+                    .tag("type", type.name().toLowerCase(Locale.ROOT))
+                    .register(meterRegistry));
+        }
+        this.lag = Timer.builder("idp.invalidation.lag")
+                .description("Délai entre la publication d'une invalidation et son application locale")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        this.connectionLost = Counter.builder("idp.invalidation.connection.lost")
+                .description("Connexions LISTEN perdues ou impossibles à ouvrir")
+                .register(meterRegistry);
+        Gauge.builder("idp.invalidation.listening", this, listener -> listener.listening ? 1 : 0)
+                .description("1 si les invalidations sont reçues par LISTEN, 0 en polling seul")
+                .register(meterRegistry);
+    }
+
+    private void run() {
+        backoffMs = props.getReconnectInitialBackoffMs();
+        drain();
+        while (running) {
+            if (props.isListen() && connection == null && System.nanoTime() - nextConnectNanos >= 0) {
+                listen();
+            }
+            boolean notified = await();
+            if (!running) {
+                break;
+            }
+            if (notified) {
+                drain();
+            } else if (System.nanoTime() - lastDrainNanos >= TimeUnit.MILLISECONDS.toNanos(props.getPollIntervalMs())) {
+                validateConnection();
+                drain();
+            }
+        }
+        closeConnection();
+    }
+
+    private void listen() {
+        Connection con = null;
+        try {
+            con = listenDataSource.getConnection();
+            try (Statement statement = con.createStatement()) {
+                // Canal validé au démarrage : LISTEN n'accepte pas de paramètre lié
+                statement.execute("LISTEN " + props.getChannel());
+            }
+            connection = con;
+            listening = true;
+            backoffMs = props.getReconnectInitialBackoffMs();
+            // Événements publiés pendant la déconnexion
+            catchUp = true;
+            log.info("Invalidations reçues par LISTEN sur le canal {}", props.getChannel());
+        } catch (SQLException ex) {
+            close(con);
+            connectionLost.increment();
+            log.warn("LISTEN {} impossible : {} (polling, nouvel essai dans {} ms)",
+                    props.getChannel(), ex.getMessage(), backoffMs);
+            nextConnectNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(backoffMs);
+            backoffMs = Math.min(backoffMs * 2, props.getReconnectMaxBackoffMs());
+        }
+    }
+
+    /**
+     * Attend un NOTIFY d'un autre nœud (ou un rattrapage demandé) jusqu'au prochain polling.
+     */
+    private boolean await() {
+        if (catchUp) {
+            catchUp = false;
+            return true;
+        }
+        long untilPollMs = props.getPollIntervalMs()
+                - TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - lastDrainNanos);
+        long waitMs = Math.max(1, untilPollMs);
+        if (connection == null) {
+            if (props.isListen()) {
+                long untilConnectMs = TimeUnit.NANOSECONDS.toMillis(nextConnectNanos - System.nanoTime());
+                waitMs = Math.max(1, Math.min(waitMs, untilConnectMs));
+            }
+            sleep(waitMs);
+            return false;
+        }
+        try {
+            PGNotification[] notifications = connection.unwrap(PGConnection.class)
+                    .getNotifications((int) Math.min(waitMs, Integer.MAX_VALUE));
+            if (notifications == null) {
+                return false;
+            }
+            String self = bus.getNodeId().toString();
+            for (PGNotification notification : notifications) {
+                if (!self.equals(notification.getParameter())) {
+                    return true;
+                }
+            }
+            return false;
+        } catch (SQLException ex) {
+            lost(ex);
+            return true;
+        }
+    }
+
+    /**
+     * Détecte une connexion LISTEN à demi ouverte (aucune erreur, mais plus aucun NOTIFY).
+     */
+    private void validateConnection() {
+        if (connection == null) {
+            return;
+        }
+        try {
+            if (!connection.isValid(VALIDATION_TIMEOUT_SECONDS)) {
+                lost(new SQLException("connexion invalide"));
+            }
+        } catch (SQLException ex) {
+            lost(ex);
+        }
+    }
+
+    private void lost(SQLException ex) {
+        log.warn("Connexion LISTEN {} perdue : {} (reconnexion, polling en attendant)", props.getChannel(), ex.getMessage());
+        connectionLost.increment();
+        closeConnection();
+        nextConnectNanos = System.nanoTime();
+    }
+
+    /**
+     * Lit et applique les événements en attente (thread d'écoute; package-private pour les tests).
+     */
+    void drain() {
+        lastDrainNanos = System.nanoTime();
+        try {
+            if (cursor < 0) {
+                initialize();
+                return;
+            }
+            gaps.values().removeIf(deadline -> lastDrainNanos - deadline > 0);
+            List<Event> events;
+            do {
+                events = fetch();
+                apply(events);
+            } while (events.size() == props.getBatchSize());
+        } catch (DataAccessException ex) {
+            log.warn("Lecture des invalidations impossible : {}", ex.getMessage());
+        }
+    }
+
+    /**
+     * Part du dernier événement existant (les caches d'un nœud qui démarre sont vides) et recharge
+     * les access tokens révoqués encore valides.
+     */
+    private void initialize() {
+        Long maxId = jdbcTemplate.queryForObject(SELECT_MAX_ID, Long.class);
+        long start = maxId == null ? 0 : maxId;
+        jdbcTemplate.query(SELECT_LIVE_ACCESS_TOKENS,
+                (RowCallbackHandler) rs -> denylist.revoke(rs.getString("subject"), rs.getTimestamp("expires_at").toInstant()),
+                start);
+        cursor = start;
+    }
+
+    private List<Event> fetch() {
+        Long[] pendingGaps = gaps.keySet().toArray(new Long[0]);
+        long from = cursor;
+        return jdbcTemplate.query(con -> {
+            PreparedStatement ps = con.prepareStatement(SELECT_EVENTS);
+            ps.setLong(1, from);
+            ps.setArray(2, con.createArrayOf("bigint", pendingGaps));
+            ps.setInt(3, props.getBatchSize());
+            return ps;
+        }, EVENT_MAPPER);
+    }
+
+    private void apply(List<Event> events) {
+        if (events.isEmpty()) {
+            return;
+        }
+        UUID self = bus.getNodeId();
+        Set<UUID> families = new HashSet<>();
+        Set<Long> users = new HashSet<>();
+        long now = System.currentTimeMillis();
+        for (Event event : events) {
+            track(event.id);
+            if (self.equals(event.origin) || event.type == null) {
+                continue;
+            }
+            switch (event.type) {
+                case USER:
+                    userDetailsCache.invalidate(event.subject);
+                    break;
+                case REFRESH_TOKEN:
+                    introspectionCache.evictRefreshToken(UUID.fromString(event.subject));
+                    break;
+                case REFRESH_FAMILY:
+                    families.add(UUID.fromString(event.subject));
+                    break;
+                case REFRESH_USER:
+                    users.add(Long.valueOf(event.subject));
+                    break;
+                case ACCESS_TOKEN:
+                    denylist.revoke(event.subject, event.expiresAt);
+                    break;
+                default:
+                    break;
+            }
+            applied.get(event.type).increment();
+            lag.record(Math.max(0, now - event.createdAt.toEpochMilli()), TimeUnit.MILLISECONDS);
+        }
+        // Familles et utilisateurs du lot : un seul parcours du cache d'introspection
+        introspectionCache.evictRefreshEntries(families, users);
+    }
+
+    /**
+     * Avance le curseur; les ids sautés sont relus tant qu'ils n'ont pas expiré.
+     */
+    private void track(long id) {
+        if (id <= cursor) {
+            gaps.remove(id);
+            return;
+        }
+        long missing = id - cursor - 1;
+        if (missing > 0 && missing + gaps.size() <= MAX_TRACKED_GAPS) {
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(props.getGapTimeoutMs());
+            for (long gap = cursor + 1; gap < id; gap++) {
+                gaps.put(gap, deadline);
+            }
+        }
+        cursor = id;
+    }
+
+    /**
+     * Type inconnu (événement d'une version plus récente) : ignoré.
+     */
+    private static InvalidationBus.Type typeOf(String value) {
+        for (InvalidationBus.Type type : InvalidationBus.Type.values()) {
+            if (type.name().equals(value)) {
+                return type;
+            }
+        }
+        return null;
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void closeConnection() {
+        close(connection);
+        connection = null;
+        listening = false;
+    }
+
+    private static void close(Connection con) {
+        if (con == null) {
+            return;
+        }
+        try {
+            con.close();
+        } catch (SQLException ex) {
+            log.debug("Fermeture de la connexion LISTEN : {}", ex.getMessage());
+        }
+    }
+
+    @Override
+    public void start() {
+        if (!props.isEnabled() || running) {
+            return;
+        }
+        running = true;
+        thread = new Thread(this::run, "invalidation-listener");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+        Thread current = thread;
+        if (current == null) {
+            return;
+        }
+        current.interrupt();
+        try {
+            // getNotifications n'est pas interruptible : au plus un intervalle de polling
+            current.join(props.getPollIntervalMs() + 1_000);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        thread = null;
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+}
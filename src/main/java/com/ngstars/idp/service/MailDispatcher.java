@@ -0,0 +1,200 @@
+package com.ngstars.idp.service;
+
+
+import com.ngstars.idp.config.MailDispatchProperties;
+import com.ngstars.idp.entity.MailJob;
+import com.ngstars.idp.repository.MailJobRepository;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.thread.Threading;
+import org.springframework.core.env.Environment;
+import org.springframework.core.task.VirtualThreadTaskExecutor;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Dépile mail_outbox en arrière-plan et envoie via MailTransport.
+ *
+ * Cycle d'un lot :
+ * 1. transaction courte : verrouille jusqu'à batch-size emails dus (SKIP LOCKED), incrémente
+ *    attempts et repousse next_attempt_at d'un bail (lease-ms) pour qu'un crash soit rejoué
+ * 2. hors transaction : envoi via MailTransport (aucune connexion DB retenue pendant le SMTP)
+ * 3. transaction courte : succès marqués SENT en un seul UPDATE, échecs replanifiés avec
+ *    backoff exponentiel ou FAILED après max-attempts
+ *
+ * Un seul drain actif par nœud; les réveils concurrents (après commit, polling) sont coalescés.
+ * Le drain tourne sur un thread virtuel quand spring.threads.virtual.enabled=true (Java 21+) :
+ * il passe l'essentiel de son temps bloqué sur SMTP / JDBC.
+ */
+@Component
+public class MailDispatcher {
+
+    private static final Logger log = LoggerFactory.getLogger(MailDispatcher.class);
+
+    private static final String THREAD_NAME_PREFIX = "mail-dispatch-";
+
+    private final MailJobRepository mailJobRepository;
+    private final MailTransport mailTransport;
+    private final MailDispatchProperties props;
+    private final TransactionTemplate transactionTemplate;
+    private final ExecutorService executor;
+
+    private final AtomicBoolean running = new AtomicBoolean(false);
+    private final AtomicBoolean rerun = new AtomicBoolean(false);
+
+    public MailDispatcher(MailJobRepository mailJobRepository,
+                          MailTransport mailTransport,
+                          MailDispatchProperties props,
+                          PlatformTransactionManager transactionManager,
+                          Environment environment) {
+        this.mailJobRepository = mailJobRepository;
+        this.mailTransport = mailTransport;
+        this.props = props;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        // Un thread, file bornée : le drain est unique et les réveils sont coalescés
+        this.executor = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(1), threadFactory(environment));
+    }
+
+    private static ThreadFactory threadFactory(Environment environment) {
+        if (Threading.VIRTUAL.isActive(environment)) {
+            return new VirtualThreadTaskExecutor(THREAD_NAME_PREFIX).getVirtualThreadFactory();
+        }
+        return new CustomizableThreadFactory(THREAD_NAME_PREFIX);
+    }
+
+    /**
+     * Filet de sécurité : rattrape les retries planifiés et les réveils perdus (redémarrage, autre nœud).
+     */
+    @Scheduled(fixedDelayString = "${idp.mail.poll-interval-ms:10000}")
+    public void poll() {
+        wakeUp();
+    }
+
+    /**
+     * Demande un drain de la file. Non bloquant; sans effet si un drain est déjà en cours
+     * (il refera un passage).
+     */
+    public void wakeUp() {
+        rerun.set(true);
+        if (!running.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            executor.execute(this::drain);
+        } catch (RejectedExecutionException ex) {
+            running.set(false);
+            log.debug("Dispatch email non planifié (arrêt en cours)");
+        }
+    }
+
+    private void drain() {
+        try {
+            while (rerun.getAndSet(false)) {
+                while (dispatchBatch() == props.getBatchSize()) {
+                    // lot plein : il reste probablement des emails dus
+                }
+            }
+        } catch (RuntimeException ex) {
+            log.warn("Échec du dispatch des emails : {}", ex.getMessage());
+        } finally {
+            running.set(false);
+        }
+        if (rerun.get()) {
+            wakeUp();
+        }
+    }
+
+    /**
+     * Traite un lot; retourne le nombre d'emails réclamés.
+     */
+    int dispatchBatch() {
+        List<MailJob> jobs = transactionTemplate.execute(status -> claimBatch());
+        if (jobs == null || jobs.isEmpty()) {
+            return 0;
+        }
+
+        List<Long> sent = new ArrayList<>(jobs.size());
+        List<MailJob> failed = new ArrayList<>();
+        List<String> errors = new ArrayList<>();
+        for (MailJob job : jobs) {
+            try {
+                mailTransport.send(job.getRecipient(), job.getSubject(), job.getBody());
+                sent.add(job.getId());
+            } catch (RuntimeException ex) {
+                failed.add(job);
+                errors.add(ex.getMessage());
+            }
+        }
+
+        transactionTemplate.executeWithoutResult(status -> {
+            Instant now = Instant.now();
+            if (!sent.isEmpty()) {
+                mailJobRepository.markSent(sent, MailJob.Status.SENT, now);
+            }
+            for (int i = 0; i < failed.size(); i++) {
+                recordFailure(failed.get(i), errors.get(i), now);
+            }
+        });
+        return jobs.size();
+    }
+
+    private List<MailJob> claimBatch() {
+        Instant now = Instant.now();
+        List<MailJob> due = mailJobRepository.lockDue(now, props.getBatchSize());
+        if (due.isEmpty()) {
+            return Collections.emptyList();
+        }
+        Instant leaseUntil = now.plusMillis(props.getLeaseMs());
+        for (MailJob job : due) {
+            job.setAttempts(job.getAttempts() + 1);
+            job.setNextAttemptAt(leaseUntil);
+        }
+        return due;
+    }
+
+    private void recordFailure(MailJob job, String error, Instant now) {
+        String message = error == null ? "erreur inconnue" : error;
+        if (message.length() > 1000) {
+            message = message.substring(0, 1000);
+        }
+        if (job.getAttempts() >= props.getMaxAttempts()) {
+            log.warn("Email {} abandonné après {} tentatives : {}", job.getId(), job.getAttempts(), message);
+            mailJobRepository.markFailedAttempt(job.getId(), MailJob.Status.FAILED, now, message);
+            return;
+        }
+        mailJobRepository.markFailedAttempt(job.getId(), MailJob.Status.PENDING,
+                now.plusMillis(backoffMs(job.getAttempts())), message);
+    }
+
+    /**
+     * Backoff exponentiel : initial * 2^(attempts-1), plafonné à max-backoff-ms.
+     */
+    private long backoffMs(int attempts) {
+        int shift = Math.min(Math.max(attempts - 1, 0), 30);
+        long delay = props.getInitialBackoffMs() << shift;
+        return delay <= 0 ? props.getMaxBackoffMs() : Math.min(delay, props.getMaxBackoffMs());
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        executor.shutdown();
+        executor.awaitTermination(10, TimeUnit.SECONDS);
+    }
+}
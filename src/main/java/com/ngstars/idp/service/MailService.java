@@ -4,8 +4,10 @@ package com.ngstars.idp.service;
 /**
  * Abstraction d'envoi d'email pour faciliter le remplacement par une implémentation
  * réelle (SMTP) ou un mock pendant les tests.
+ *
+ * L'implémentation par défaut (OutboxMailService) ne fait que persister l'email dans la
+ * transaction courante; l'envoi réel est asynchrone (MailDispatcher + MailTransport).
  */
 public interface MailService {
     void sendEmail(String to, String subject, String body);
 }
-
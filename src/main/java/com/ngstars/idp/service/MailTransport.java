@@ -0,0 +1,11 @@
+package com.ngstars.idp.service;
+
+
+/**
+ * Transport effectif des emails (SMTP, logs, mémoire...), appelé hors transaction
+ * par MailDispatcher. Une exception signale un échec à retenter.
+ * Sélection via idp.mail.transport (log | memory).
+ */
+public interface MailTransport {
+    void send(String to, String subject, String body);
+}
@@ -0,0 +1,46 @@
+package com.ngstars.idp.service;
+
+
+import com.ngstars.idp.entity.MailJob;
+import com.ngstars.idp.repository.MailJobRepository;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * MailService transactionnel (pattern outbox).
+ * - sendEmail insère une ligne mail_outbox dans la transaction de l'appelant (aucun appel SMTP)
+ * - après commit, réveille MailDispatcher qui envoie hors transaction
+ * Si la transaction est annulée, l'email n'est jamais envoyé.
+ */
+@Service
+public class OutboxMailService implements MailService {
+
+    private final MailJobRepository mailJobRepository;
+    private final MailDispatcher mailDispatcher;
+
+    public OutboxMailService(MailJobRepository mailJobRepository, MailDispatcher mailDispatcher) {
+        this.mailJobRepository = mailJobRepository;
+        this.mailDispatcher = mailDispatcher;
+    }
+
+    @Override
+    @Transactional
+    public void sendEmail(String to, String subject, String body) {
+        MailJob job = new MailJob();
+        job.setRecipient(to);
+        job.setSubject(subject);
+        job.setBody(body);
+        mailJobRepository.save(job);
+
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    mailDispatcher.wakeUp();
+                }
+            });
+        }
+    }
+}
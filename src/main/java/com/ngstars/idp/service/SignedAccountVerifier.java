@@ -0,0 +1,145 @@
+package com.ngstars.idp.service;
+
+
+import com.ngstars.idp.config.VerificationProperties;
+import com.ngstars.idp.entity.User;
+import com.ngstars.idp.util.BoundedPool;
+import com.ngstars.idp.util.OpaqueTokens;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Base64;
+
+/**
+ * Liens de vérification signés (idp.verification.mode=signed) : aucune ligne écrite au register,
+ * aucune lecture avant l'activation.
+ *
+ * Token "payload.mac" (base64url) :
+ * - payload : version, id utilisateur, expiration (secondes epoch), version de compte à l'émission
+ *   (nonce), 16 premiers octets de SHA-256(email)
+ * - mac : HMAC-SHA256(idp.verification.secret, payload), comparé en temps constant
+ *
+ * Usage unique sans table : l'activation est un UPDATE conditionnel (compte encore inactif, même
+ * version de compte, même email) qui incrémente la version; le même lien ne correspond plus ensuite.
+ */
+@Service
+@ConditionalOnProperty(prefix = "idp.verification", name = "mode", havingValue = "signed")
+public class SignedAccountVerifier implements AccountVerifier {
+
+    private static final byte FORMAT_VERSION = 1;
+    private static final int EMAIL_HASH_LENGTH = 16;
+    private static final int PAYLOAD_LENGTH = 1 + Long.BYTES + Long.BYTES + Integer.BYTES + EMAIL_HASH_LENGTH;
+    private static final int MIN_SECRET_LENGTH = 32;
+    private static final String ALGORITHM = "HmacSHA256";
+
+    private static final Base64.Encoder ENCODER = Base64.getUrlEncoder().withoutPadding();
+    private static final Base64.Decoder DECODER = Base64.getUrlDecoder();
+
+    private final UserService userService;
+    private final SecretKeySpec key;
+    private final BoundedPool<Mac> macs;
+
+    public SignedAccountVerifier(UserService userService, VerificationProperties props) {
+        String secret = props.getSecret();
+        if (secret == null || secret.getBytes(StandardCharsets.UTF_8).length < MIN_SECRET_LENGTH) {
+            throw new IllegalStateException("idp.verification.secret requis en mode signed (au moins "
+                    + MIN_SECRET_LENGTH + " octets)");
+        }
+        this.userService = userService;
+        this.key = new SecretKeySpec(secret.getBytes(StandardCharsets.UTF_8), ALGORITHM);
+        // Mac non thread-safe : instances initialisées empruntées le temps d'un calcul
+        this.macs = BoundedPool.perCore(this::newMac);
+    }
+
+    @Override
+    public String createToken(User user, Instant expiresAt) {
+        byte[] payload = ByteBuffer.allocate(PAYLOAD_LENGTH)
+                .put(FORMAT_VERSION)
+                .putLong(user.getId())
+                .putLong(expiresAt.getEpochSecond())
+                .putInt(user.getAccountVersion())
+                .put(emailHash(user.getEmail()))
+                .array();
+        return ENCODER.encodeToString(payload) + "." + ENCODER.encodeToString(mac(payload));
+    }
+
+    @Override
+    public boolean verify(String token) {
+        byte[] payload = verifiedPayload(token);
+        if (payload == null) {
+            return false;
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(payload);
+        if (buffer.get() != FORMAT_VERSION) {
+            return false;
+        }
+        long userId = buffer.getLong();
+        long expiresAt = buffer.getLong();
+        int accountVersion = buffer.getInt();
+        byte[] emailHash = new byte[EMAIL_HASH_LENGTH];
+        buffer.get(emailHash);
+        if (expiresAt <= Instant.now().getEpochSecond()) {
+            return false;
+        }
+        return userService.enablePendingUser(userId, accountVersion, emailHash);
+    }
+
+    /**
+     * Payload dont le MAC est valide, null sinon (format invalide ou signature fausse).
+     */
+    private byte[] verifiedPayload(String token) {
+        if (token == null) {
+            return null;
+        }
+        int dot = token.indexOf('.');
+        if (dot <= 0 || token.indexOf('.', dot + 1) >= 0) {
+            return null;
+        }
+        byte[] payload;
+        byte[] signature;
+        try {
+            payload = DECODER.decode(token.substring(0, dot));
+            signature = DECODER.decode(token.substring(dot + 1));
+        } catch (IllegalArgumentException ex) {
+            return null;
+        }
+        if (payload.length != PAYLOAD_LENGTH || !MessageDigest.isEqual(mac(payload), signature)) {
+            return null;
+        }
+        return payload;
+    }
+
+    private byte[] mac(byte[] payload) {
+        Mac mac = macs.acquire();
+        try {
+            return mac.doFinal(payload);
+        } finally {
+            macs.release(mac);
+        }
+    }
+
+    private Mac newMac() {
+        try {
+            Mac mac = Mac.getInstance(ALGORITHM);
+            mac.init(key);
+            return mac;
+        } catch (GeneralSecurityException ex) {
+            throw new IllegalStateException("HMAC indisponible", ex);
+        }
+    }
+
+    /**
+     * 16 premiers octets de SHA-256(email), recalculés en SQL à l'activation (voir UserRepository).
+     */
+    private static byte[] emailHash(String email) {
+        return Arrays.copyOf(OpaqueTokens.sha256(email), EMAIL_HASH_LENGTH);
+    }
+}
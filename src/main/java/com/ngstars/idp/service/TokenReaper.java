@@ -0,0 +1,261 @@
+package com.ngstars.idp.service;
+
+
+import com.ngstars.idp.config.InvalidationProperties;
+import com.ngstars.idp.config.ReaperProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.ResultSetExtractor;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Purge des tokens expirés, par lots bornés.
+ *
+ * - pagination keyset sur (expiry_date, id) : chaque lot reprend après le dernier supprimé,
+ *   via l'index idx_*_expiry, sans OFFSET ni parcours complet
+ * - un lot = une transaction courte (DELETE ... RETURNING), pause configurable entre les lots
+ * - un seul nœud purge à la fois : verrou consultatif PostgreSQL tenu pendant la passe
+ *   (pg_try_advisory_lock, les autres nœuds passent leur tour)
+ *
+ * Refresh tokens révoqués (chaque rotation en révoque un) : seconde passe keyset sur (revoked_at, id),
+ * suppression après idp.reaper.revoked-grace-ms sans attendre l'expiration de la famille. Le dernier
+ * révoqué d'une famille qui a encore un token actif est conservé : c'est celui qu'un rejeu présenterait
+ * après une rotation frauduleuse (détection de réutilisation, voir TokenServiceImpl.rotateRefreshToken).
+ * Les familles entièrement révoquées (logout, réutilisation détectée) sont supprimées en entier.
+ *
+ * Même passe pour invalidation_events : événements plus vieux que idp.invalidation.retention-ms,
+ * sauf les révocations d'access tokens pas encore expirés (rechargées au démarrage d'un nœud).
+ *
+ * Métriques : idp.reaper.purged (lignes supprimées) et idp.reaper.duration, tag table
+ * (refresh_tokens_revoked pour la seconde passe).
+ */
+@Component
+public class TokenReaper {
+
+    private static final Logger log = LoggerFactory.getLogger(TokenReaper.class);
+
+    /** Clé du verrou consultatif ("idpreap" en ASCII). */
+    private static final long LEADER_LOCK_KEY = 0x6964707265617000L;
+
+    private static final String[] TABLES = {"refresh_tokens", "verification_tokens"};
+
+    private static final String INVALIDATION_EVENTS = "invalidation_events";
+
+    /** Tag de la passe des refresh tokens révoqués. */
+    private static final String REVOKED_REFRESH_TOKENS = "refresh_tokens_revoked";
+
+    private static final String PURGE_REVOKED_REFRESH_TOKENS =
+            "WITH batch AS ("
+                    + " SELECT t.id, t.revoked_at FROM refresh_tokens t"
+                    + " WHERE t.revoked_at < ? AND (t.revoked_at, t.id) > (?, ?)"
+                    // Conservé : dernier révoqué d'une famille qui a encore un token actif
+                    + " AND NOT (EXISTS (SELECT 1 FROM refresh_tokens a WHERE a.family_id = t.family_id"
+                    + "   AND NOT a.revoked AND a.expiry_date >= now())"
+                    + "  AND NOT EXISTS (SELECT 1 FROM refresh_tokens n WHERE n.family_id = t.family_id"
+                    + "   AND n.revoked_at > t.revoked_at))"
+                    + " ORDER BY t.revoked_at, t.id LIMIT ?)"
+                    + " DELETE FROM refresh_tokens t USING batch WHERE t.id = batch.id"
+                    + " RETURNING batch.revoked_at, batch.id";
+
+    private static final String PURGE_INVALIDATION_EVENTS =
+            "WITH batch AS ("
+                    + " SELECT id FROM invalidation_events"
+                    + " WHERE created_at < ? AND (expires_at IS NULL OR expires_at < now())"
+                    + " ORDER BY id LIMIT ?)"
+                    + " DELETE FROM invalidation_events e USING batch WHERE e.id = batch.id";
+
+    private final DataSource dataSource;
+    private final JdbcTemplate jdbcTemplate;
+    private final ReaperProperties props;
+    private final InvalidationProperties invalidationProps;
+    private final MeterRegistry meterRegistry;
+
+    public TokenReaper(DataSource dataSource, JdbcTemplate jdbcTemplate, ReaperProperties props,
+                       InvalidationProperties invalidationProps, MeterRegistry meterRegistry) {
+        this.dataSource = dataSource;
+        this.jdbcTemplate = jdbcTemplate;
+        this.props = props;
+        this.invalidationProps = invalidationProps;
+        this.meterRegistry = meterRegistry;
+    }
+
+    @Scheduled(fixedDelayString = "${idp.reaper.interval-ms:3600000}", initialDelayString = "${idp.reaper.initial-delay-ms:60000}")
+    public void reap() {
+        if (!props.isEnabled()) {
+            return;
+        }
+        try (Connection lockConnection = dataSource.getConnection()) {
+            if (!tryLock(lockConnection)) {
+                log.debug("Purge des tokens ignorée : un autre nœud la réalise");
+                return;
+            }
+            try {
+                Instant cutoff = Instant.now().minusMillis(props.getGraceMs());
+                for (String table : TABLES) {
+                    purge(table, expiredSql(table), cutoff);
+                }
+                purge(REVOKED_REFRESH_TOKENS, PURGE_REVOKED_REFRESH_TOKENS,
+                        Instant.now().minusMillis(props.getRevokedGraceMs()));
+                purgeInvalidationEvents(Instant.now().minusMillis(invalidationProps.getRetentionMs()));
+            } finally {
+                unlock(lockConnection);
+            }
+        } catch (SQLException ex) {
+            log.warn("Purge des tokens impossible : {}", ex.getMessage());
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Suppression keyset sur (expiry_date, id), lignes expirées avant le seuil.
+     */
+    private static String expiredSql(String table) {
+        // Seules les valeurs du code (TABLES) sont concaténées dans le SQL
+        return "WITH batch AS ("
+                + " SELECT id, expiry_date FROM " + table
+                + " WHERE expiry_date < ? AND (expiry_date, id) > (?, ?)"
+                + " ORDER BY expiry_date, id LIMIT ?)"
+                + " DELETE FROM " + table + " t USING batch WHERE t.id = batch.id"
+                + " RETURNING batch.expiry_date, batch.id";
+    }
+
+    /**
+     * Lots successifs de sql (paramètres : seuil, curseur (clé, id), taille de lot; RETURNING clé, id).
+     */
+    private void purge(String table, String sql, Instant cutoff) throws InterruptedException {
+        Counter purged = Counter.builder("idp.reaper.purged")
+                .description("Tokens expirés supprimés")
+                .tag("table", table)
+                .register(meterRegistry);
+        Timer duration = Timer.builder("idp.reaper.duration")
+                .description("Durée d'une passe de purge")
+                .tag("table", table)
+                .register(meterRegistry);
+
+        long start = System.nanoTime();
+        long total = 0;
+        Timestamp cutoffTs = Timestamp.from(cutoff);
+        Cursor cursor = new Cursor(new Timestamp(0), Long.MIN_VALUE);
+        ResultSetExtractor<Integer> advance = rs -> advance(rs, cursor);
+        try {
+            while (true) {
+                Integer deleted = jdbcTemplate.query(sql, ps -> bind(ps, cutoffTs, cursor), advance);
+                if (deleted == null || deleted == 0) {
+                    break;
+                }
+                total += deleted;
+                purged.increment(deleted);
+                if (deleted < props.getBatchSize()) {
+                    break;
+                }
+                if (props.getPauseMs() > 0) {
+                    Thread.sleep(props.getPauseMs());
+                }
+            }
+        } finally {
+            duration.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+        if (total > 0) {
+            log.info("Purge {} : {} tokens supprimés", table, total);
+        }
+    }
+
+    private void purgeInvalidationEvents(Instant cutoff) throws InterruptedException {
+        Counter purged = Counter.builder("idp.reaper.purged")
+                .description("Tokens expirés supprimés")
+                .tag("table", INVALIDATION_EVENTS)
+                .register(meterRegistry);
+        Timer duration = Timer.builder("idp.reaper.duration")
+                .description("Durée d'une passe de purge")
+                .tag("table", INVALIDATION_EVENTS)
+                .register(meterRegistry);
+
+        long start = System.nanoTime();
+        long total = 0;
+        Timestamp cutoffTs = Timestamp.from(cutoff);
+        try {
+            while (true) {
+                int deleted = jdbcTemplate.update(PURGE_INVALIDATION_EVENTS, cutoffTs, props.getBatchSize());
+                total += deleted;
+                purged.increment(deleted);
+                if (deleted < props.getBatchSize()) {
+                    break;
+                }
+                if (props.getPauseMs() > 0) {
+                    Thread.sleep(props.getPauseMs());
+                }
+            }
+        } finally {
+            duration.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+        if (total > 0) {
+            log.info("Purge {} : {} événements supprimés", INVALIDATION_EVENTS, total);
+        }
+    }
+
+    private void bind(PreparedStatement ps, Timestamp cutoff, Cursor cursor) throws SQLException {
+        ps.setTimestamp(1, cutoff);
+        ps.setTimestamp(2, cursor.key);
+        ps.setLong(3, cursor.id);
+        ps.setInt(4, props.getBatchSize());
+    }
+
+    /**
+     * Consomme les lignes supprimées et place le curseur sur la plus grande clé (expiry_date ou revoked_at, id).
+     */
+    private int advance(ResultSet rs, Cursor cursor) throws SQLException {
+        int count = 0;
+        while (rs.next()) {
+            Timestamp key = rs.getTimestamp(1);
+            long id = rs.getLong(2);
+            int cmp = key.compareTo(cursor.key);
+            if (cmp > 0 || (cmp == 0 && id > cursor.id)) {
+                cursor.key = key;
+                cursor.id = id;
+            }
+            count++;
+        }
+        return count;
+    }
+
+    private static boolean tryLock(Connection connection) throws SQLException {
+        try (PreparedStatement ps = connection.prepareStatement("SELECT pg_try_advisory_lock(?)")) {
+            ps.setLong(1, LEADER_LOCK_KEY);
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next() && rs.getBoolean(1);
+            }
+        }
+    }
+
+    private static void unlock(Connection connection) throws SQLException {
+        try (PreparedStatement ps = connection.prepareStatement("SELECT pg_advisory_unlock(?)")) {
+            ps.setLong(1, LEADER_LOCK_KEY);
+            ps.execute();
+        }
+    }
+
+    private static final class Cursor {
+        private Timestamp key;
+        private long id;
+
+        Cursor(Timestamp key, long id) {
+            this.key = key;
+            this.id = id;
+        }
+    }
+}
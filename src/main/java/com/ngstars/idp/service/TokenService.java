@@ -5,7 +5,10 @@ import com.ngstars.idp.entity.RefreshToken;
 import com.ngstars.idp.entity.User;
 
 import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
+import java.util.UUID;
 
 /**
  * Service pour gérer refresh tokens et verification tokens.
@@ -13,12 +16,29 @@ import java.util.Optional;
 public interface TokenService {
     RefreshToken createRefreshToken(User user, Instant expiryDate, String deviceInfo);
     Optional<RefreshToken> findByToken(String token);
+
+    /**
+     * Tokens (utilisateur chargé) d'un lot de selectors en une requête.
+     * La comparaison du hash du verifier reste à la charge de l'appelant.
+     */
+    List<RefreshToken> findWithUserBySelectors(Collection<UUID> selectors);
+
+    /**
+     * Révoque current et émet son successeur dans la même famille.
+     * Vide si current était déjà révoqué (rejeu / refresh concurrent) : la famille est alors révoquée.
+     */
+    Optional<RefreshToken> rotateRefreshToken(RefreshToken current);
     void revokeRefreshToken(RefreshToken rt);
+    void revokeRefreshTokenFamily(UUID familyId);
     void revokeAllUserRefreshTokens(User user);
 
     // Verification token
     String createVerificationToken(User user, Instant expiryDate);
-    boolean validateVerificationToken(String token);
-    Optional<Long> getUserIdFromVerificationToken(String token);
+
+    /**
+     * Marque le token utilisé s'il est valide (ni expiré, ni déjà utilisé) et retourne l'id de
+     * son utilisateur, en une requête; vide sinon. Deux appels concurrents : un seul réussit.
+     */
+    Optional<Long> consumeVerificationToken(String token);
 }
 
@@ -6,45 +6,86 @@ import com.ngstars.idp.entity.User;
 import com.ngstars.idp.entity.VerificationToken;
 import com.ngstars.idp.repository.RefreshTokenRepository;
 import com.ngstars.idp.repository.VerificationTokenRepository;
+import com.ngstars.idp.security.IntrospectionCache;
 import com.ngstars.idp.util.JwtTokenProvider;
+import com.ngstars.idp.util.OpaqueTokens;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
 
 /**
  * Implémentation de TokenService.
- * - Génère refresh token opaque (UUID)
- * - Persiste refresh tokens et gère révocation
+ * - Génère refresh token opaque (selector.verifier, seul le hash du verifier est stocké)
+ * - Persiste refresh tokens, rotation par famille et révocation (UPDATE en masse, pas de boucle par ligne)
  * - Gère verification tokens (activation compte)
+ * - Invalide le cache d'introspection après commit de chaque révocation et la publie aux autres
+ *   nœuds (InvalidationBus, dans la même transaction)
  */
 @Service
 public class TokenServiceImpl implements TokenService {
 
+    private static final Logger log = LoggerFactory.getLogger(TokenServiceImpl.class);
+
     private final RefreshTokenRepository refreshTokenRepository;
     private final VerificationTokenRepository verificationTokenRepository;
     @SuppressWarnings("unused")
     private final JwtTokenProvider jwtTokenProvider;
     @SuppressWarnings("unused")
     private final com.ngstars.idp.config.JwtProperties jwtProperties;
+    private final IntrospectionCache introspectionCache;
+    private final InvalidationBus invalidationBus;
 
     public TokenServiceImpl(RefreshTokenRepository refreshTokenRepository,
                             VerificationTokenRepository verificationTokenRepository,
                             JwtTokenProvider jwtTokenProvider,
-                            com.ngstars.idp.config.JwtProperties jwtProperties) {
+                            com.ngstars.idp.config.JwtProperties jwtProperties,
+                            IntrospectionCache introspectionCache,
+                            InvalidationBus invalidationBus) {
         this.refreshTokenRepository = refreshTokenRepository;
         this.verificationTokenRepository = verificationTokenRepository;
         this.jwtTokenProvider = jwtTokenProvider;
         this.jwtProperties = jwtProperties;
+        this.introspectionCache = introspectionCache;
+        this.invalidationBus = invalidationBus;
     }
 
     @Override
     @Transactional
     public RefreshToken createRefreshToken(User user, Instant expiryDate, String deviceInfo) {
+        return issueRefreshToken(user, UUID.randomUUID(), expiryDate, deviceInfo);
+    }
+
+    /**
+     * La famille conserve l'expiration du login initial : la rotation ne prolonge pas la session.
+     */
+    @Override
+    @Transactional
+    public Optional<RefreshToken> rotateRefreshToken(RefreshToken current) {
+        if (refreshTokenRepository.revokeIfActive(current.getId()) == 0) {
+            log.warn("Refresh token déjà utilisé (rotation concurrente ou rejeu), famille {}", current.getFamilyId());
+            revokeRefreshTokenFamily(current.getFamilyId());
+            return Optional.empty();
+        }
+        introspectionCache.evictRefreshToken(current.getSelector());
+        invalidationBus.refreshTokenRevoked(current.getSelector());
+        return Optional.of(issueRefreshToken(current.getUser(), current.getFamilyId(),
+                current.getExpiryDate(), current.getDeviceInfo()));
+    }
+
+    private RefreshToken issueRefreshToken(User user, UUID familyId, Instant expiryDate, String deviceInfo) {
+        OpaqueTokens.Generated generated = OpaqueTokens.generate();
         RefreshToken rt = new RefreshToken();
-        rt.setToken(UUID.randomUUID().toString()); // valeur opaque sécurisée
+        rt.setSelector(generated.getSelector());
+        rt.setTokenHash(generated.getVerifierHash());
+        rt.setToken(generated.getValue()); // valeur en clair renvoyée au client, non persistée
+        rt.setFamilyId(familyId);
         rt.setUser(user);
         rt.setExpiryDate(expiryDate);
         rt.setRevoked(false);
@@ -52,27 +93,53 @@ public class TokenServiceImpl implements TokenService {
         return refreshTokenRepository.save(rt);
     }
 
+    /**
+     * Une seule recherche par clé de taille fixe (selector), puis comparaison en temps constant du hash.
+     */
     @Override
     public Optional<RefreshToken> findByToken(String token) {
-        return refreshTokenRepository.findByToken(token);
+        OpaqueTokens.Parsed parsed = OpaqueTokens.parse(token);
+        if (parsed == null) {
+            return Optional.empty();
+        }
+        return refreshTokenRepository.findBySelector(parsed.getSelector())
+                .filter(rt -> parsed.matches(rt.getTokenHash()));
+    }
+
+    @Override
+    public List<RefreshToken> findWithUserBySelectors(Collection<UUID> selectors) {
+        if (selectors.isEmpty()) {
+            return List.of();
+        }
+        return refreshTokenRepository.findWithUserBySelectorIn(selectors);
     }
 
     @Override
     @Transactional
     public void revokeRefreshToken(RefreshToken rt) {
         rt.setRevoked(true);
+        rt.setRevokedAt(Instant.now());
         refreshTokenRepository.save(rt);
+        introspectionCache.evictRefreshToken(rt.getSelector());
+        invalidationBus.refreshTokenRevoked(rt.getSelector());
+    }
+
+    @Override
+    @Transactional
+    public void revokeRefreshTokenFamily(UUID familyId) {
+        int revoked = refreshTokenRepository.revokeFamily(familyId);
+        log.info("Famille de refresh tokens {} révoquée ({} tokens)", familyId, revoked);
+        introspectionCache.evictRefreshFamily(familyId);
+        invalidationBus.refreshFamilyRevoked(familyId);
     }
 
     @Override
     @Transactional
     public void revokeAllUserRefreshTokens(User user) {
-        // Simple: supprimer ou marquer revocation
-        refreshTokenRepository.findAllByUserAndRevokedFalse(user)
-                .forEach(t -> {
-                    t.setRevoked(true);
-                    refreshTokenRepository.save(t);
-                });
+        // Un seul UPDATE, quel que soit le nombre d'appareils
+        refreshTokenRepository.revokeAllByUserId(user.getId());
+        introspectionCache.evictRefreshTokensOfUser(user.getId());
+        invalidationBus.userRefreshTokensRevoked(user.getId());
     }
 
     // Verification token
@@ -89,17 +156,12 @@ public class TokenServiceImpl implements TokenService {
     }
 
     @Override
-    public boolean validateVerificationToken(String token) {
-        Optional<VerificationToken> ot = verificationTokenRepository.findByToken(token);
-        if (ot.isEmpty()) return false;
-        VerificationToken vt = ot.get();
-        if (vt.isExpired() || vt.isUsed()) return false;
-        return true;
-    }
-
-    @Override
-    public Optional<Long> getUserIdFromVerificationToken(String token) {
-        return verificationTokenRepository.findByToken(token).map(v -> v.getUser().getId());
+    @Transactional
+    public Optional<Long> consumeVerificationToken(String token) {
+        if (token == null || token.isEmpty()) {
+            return Optional.empty();
+        }
+        return verificationTokenRepository.consume(token);
     }
 }
 
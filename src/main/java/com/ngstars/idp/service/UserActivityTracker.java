@@ -0,0 +1,213 @@
+package com.ngstars.idp.service;
+
+
+import com.ngstars.idp.config.ActivityTrackingProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.SqlParameterValue;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Activité des utilisateurs (last_login, last_refresh_at) enregistrée hors du chemin critique.
+ *
+ * - Les événements sont notés en mémoire et fusionnés par utilisateur (seuls les instants
+ *   les plus récents sont conservés) : N logins/refresh du même compte = 1 ligne écrite
+ * - Flush périodique (flush-interval-ms) : un seul UPDATE ... FROM (VALUES ...) par intervalle
+ *   (découpé par max-batch-size utilisateurs); GREATEST : jamais de retour en arrière
+ * - En cas d'échec, les entrées sont remises dans la map pour le flush suivant
+ * - Flush final à l'arrêt (SmartLifecycle, après l'arrêt du serveur web et avant la
+ *   fermeture du DataSource)
+ *
+ * Métriques : idp.activity.pending, idp.activity.flushed, idp.activity.flush.
+ */
+@Component
+public class UserActivityTracker implements SmartLifecycle {
+
+    private static final Logger log = LoggerFactory.getLogger(UserActivityTracker.class);
+
+    /**
+     * Arrêté après le serveur web (phases plus élevées), donc après le dernier login.
+     */
+    private static final int PHASE = Integer.MIN_VALUE + 1000;
+
+    private static final String UPDATE_PREFIX =
+            "UPDATE users u SET "
+                    + "last_login = GREATEST(u.last_login, v.last_login), "
+                    + "last_refresh_at = GREATEST(u.last_refresh_at, v.last_refresh_at) "
+                    + "FROM (VALUES ";
+    private static final String UPDATE_ROW = "(?::bigint, ?::timestamptz, ?::timestamptz)";
+    private static final String UPDATE_SUFFIX = ") AS v(id, last_login, last_refresh_at) WHERE u.id = v.id";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ActivityTrackingProperties props;
+    private final ConcurrentHashMap<Long, Activity> pending = new ConcurrentHashMap<>();
+    private final ReentrantLock flushLock = new ReentrantLock();
+    private final Counter flushed;
+    private final Timer flushTimer;
+    private volatile boolean running;
+
+    public UserActivityTracker(JdbcTemplate jdbcTemplate, ActivityTrackingProperties props, MeterRegistry meterRegistry) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.props = props;
+        Gauge.builder("idp.activity.pending", pending, Map::size)
+                .description("Utilisateurs dont l'activité attend le prochain flush")
+                .register(meterRegistry);
+        this.flushed = Counter.builder("idp.activity.flushed")
+                .description("Lignes users mises à jour par les flushs d'activité")
+                .register(meterRegistry);
+        this.flushTimer = Timer.builder("idp.activity.flush")
+                .description("Durée d'un flush d'activité")
+                .register(meterRegistry);
+    }
+
+    public void recordLogin(Long userId, Instant at) {
+        record(userId, new Activity(at, null));
+    }
+
+    public void recordRefresh(Long userId, Instant at) {
+        record(userId, new Activity(null, at));
+    }
+
+    private void record(Long userId, Activity activity) {
+        if (userId != null) {
+            pending.merge(userId, activity, Activity::merge);
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${idp.activity.flush-interval-ms:10000}")
+    public void flush() {
+        if (pending.isEmpty()) {
+            return;
+        }
+        flushLock.lock();
+        try {
+            flushTimer.record(this::flushPending);
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    private void flushPending() {
+        while (!pending.isEmpty()) {
+            List<Map.Entry<Long, Activity>> batch = drain();
+            if (batch.isEmpty()) {
+                return;
+            }
+            try {
+                flushed.increment(jdbcTemplate.update(buildUpdate(batch.size()), toArgs(batch)));
+            } catch (RuntimeException ex) {
+                log.warn("Écriture de l'activité utilisateurs échouée ({} utilisateurs) : {}", batch.size(), ex.getMessage());
+                for (Map.Entry<Long, Activity> entry : batch) {
+                    record(entry.getKey(), entry.getValue());
+                }
+                return;
+            }
+        }
+    }
+
+    /**
+     * Retire au plus max-batch-size entrées; remove(key, value) : un événement arrivé entre-temps
+     * sur la même entrée la laisse dans la map pour le lot suivant.
+     */
+    private List<Map.Entry<Long, Activity>> drain() {
+        List<Map.Entry<Long, Activity>> batch = new ArrayList<>();
+        Iterator<Map.Entry<Long, Activity>> it = pending.entrySet().iterator();
+        while (it.hasNext() && batch.size() < props.getMaxBatchSize()) {
+            Map.Entry<Long, Activity> entry = it.next();
+            if (pending.remove(entry.getKey(), entry.getValue())) {
+                batch.add(Map.entry(entry.getKey(), entry.getValue()));
+            }
+        }
+        return batch;
+    }
+
+    private static String buildUpdate(int rows) {
+        StringBuilder sql = new StringBuilder(UPDATE_PREFIX.length() + rows * (UPDATE_ROW.length() + 2) + UPDATE_SUFFIX.length());
+        sql.append(UPDATE_PREFIX);
+        for (int i = 0; i < rows; i++) {
+            if (i > 0) {
+                sql.append(", ");
+            }
+            sql.append(UPDATE_ROW);
+        }
+        return sql.append(UPDATE_SUFFIX).toString();
+    }
+
+    private static Object[] toArgs(List<Map.Entry<Long, Activity>> batch) {
+        Object[] args = new Object[batch.size() * 3];
+        int i = 0;
+        for (Map.Entry<Long, Activity> entry : batch) {
+            args[i++] = entry.getKey();
+            args[i++] = timestamp(entry.getValue().lastLogin);
+            args[i++] = timestamp(entry.getValue().lastRefresh);
+        }
+        return args;
+    }
+
+    private static SqlParameterValue timestamp(Instant instant) {
+        return new SqlParameterValue(Types.TIMESTAMP, instant == null ? null : Timestamp.from(instant));
+    }
+
+    @Override
+    public void start() {
+        running = true;
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+        flush();
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    @Override
+    public int getPhase() {
+        return PHASE;
+    }
+
+    /**
+     * Instants les plus récents connus pour un utilisateur (null = pas d'événement de ce type).
+     */
+    private static final class Activity {
+
+        private final Instant lastLogin;
+        private final Instant lastRefresh;
+
+        Activity(Instant lastLogin, Instant lastRefresh) {
+            this.lastLogin = lastLogin;
+            this.lastRefresh = lastRefresh;
+        }
+
+        Activity merge(Activity other) {
+            return new Activity(latest(lastLogin, other.lastLogin), latest(lastRefresh, other.lastRefresh));
+        }
+
+        private static Instant latest(Instant a, Instant b) {
+            if (a == null) {
+                return b;
+            }
+            return b == null || a.isAfter(b) ? a : b;
+        }
+    }
+}
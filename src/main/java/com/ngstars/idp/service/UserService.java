@@ -8,9 +8,33 @@ import java.util.Optional;
  * Port pour opérations utilisateur.
  */
 public interface UserService {
-    User createUser(String email, String rawPassword);
+    /**
+     * Crée l'utilisateur (inactif, ROLE_USER) avec un mot de passe déjà haché : le hachage se fait
+     * avant la transaction, sans connexion du pool retenue. IllegalArgumentException si l'email existe.
+     */
+    User createUser(String email, String encodedPassword);
+
+    /**
+     * Contrôle d'existence (requête d'index), avant tout hachage.
+     */
+    boolean emailExists(String email);
     Optional<User> findByEmail(String email);
     Optional<User> findById(Long id);
-    void enableUser(User user);
+
+    /**
+     * Référence (proxy) sans chargement, pour une clé étrangère : aucune requête SQL.
+     */
+    User getReference(Long id);
+
+    /**
+     * Active le compte en une requête (sans le charger); false si l'utilisateur n'existe pas.
+     */
+    boolean enableUser(Long userId);
+
+    /**
+     * Active le compte s'il est encore inactif, dans la version de compte et à l'email attendus
+     * (lien signé); false sinon.
+     */
+    boolean enablePendingUser(Long userId, int accountVersion, byte[] emailHash);
 }
 
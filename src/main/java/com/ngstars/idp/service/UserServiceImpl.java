@@ -5,7 +5,8 @@ import com.ngstars.idp.entity.Role;
 import com.ngstars.idp.entity.User;
 import com.ngstars.idp.repository.RoleRepository;
 import com.ngstars.idp.repository.UserRepository;
-import org.springframework.security.crypto.password.PasswordEncoder;
+import com.ngstars.idp.security.UserDetailsCache;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -14,34 +15,33 @@ import java.util.Optional;
 
 /**
  * Implémentation simple de UserService.
- * - Crée l'utilisateur avec rôle ROLE_USER par défaut.
- * - Hash le mot de passe.
+ * - Crée l'utilisateur avec rôle ROLE_USER par défaut (mot de passe haché par l'appelant,
+ *   hors transaction : voir AuthServiceImpl.register).
  */
 @Service
 public class UserServiceImpl implements UserService {
 
     private final UserRepository userRepository;
     private final RoleRepository roleRepository;
-    private final PasswordEncoder passwordEncoder;
+    private final UserDetailsCache userDetailsCache;
+    private final InvalidationBus invalidationBus;
 
     public UserServiceImpl(UserRepository userRepository,
                            RoleRepository roleRepository,
-                           PasswordEncoder passwordEncoder) {
+                           UserDetailsCache userDetailsCache,
+                           InvalidationBus invalidationBus) {
         this.userRepository = userRepository;
         this.roleRepository = roleRepository;
-        this.passwordEncoder = passwordEncoder;
+        this.userDetailsCache = userDetailsCache;
+        this.invalidationBus = invalidationBus;
     }
 
     @Override
     @Transactional
-    public User createUser(String email, String rawPassword) {
-        if (userRepository.existsByEmail(email)) {
-            throw new IllegalArgumentException("Email déjà utilisé");
-        }
-
+    public User createUser(String email, String encodedPassword) {
         User u = new User();
         u.setEmail(email);
-        u.setPassword(passwordEncoder.encode(rawPassword));
+        u.setPassword(encodedPassword);
         u.setEnabled(false); // inactif avant verification
 
         // assigner ROLE_USER si présent sinon créer/lever erreur
@@ -53,7 +53,20 @@ public class UserServiceImpl implements UserService {
                 });
 
         u.setRoles(Collections.singleton(userRole));
-        return userRepository.save(u);
+        User saved;
+        try {
+            // flush immédiat : une inscription concurrente sur le même email échoue ici (uc_users_email)
+            saved = userRepository.saveAndFlush(u);
+        } catch (DataIntegrityViolationException ex) {
+            throw new IllegalArgumentException("Email déjà utilisé");
+        }
+        userDetailsCache.forgetMissingAfterCommit(email);
+        return saved;
+    }
+
+    @Override
+    public boolean emailExists(String email) {
+        return userRepository.existsByEmail(email);
     }
 
     @Override
@@ -66,11 +79,33 @@ public class UserServiceImpl implements UserService {
         return userRepository.findById(id);
     }
 
+    @Override
+    public User getReference(Long id) {
+        return userRepository.getReferenceById(id);
+    }
+
     @Override
     @Transactional
-    public void enableUser(User user) {
-        user.setEnabled(true);
-        userRepository.save(user);
+    public boolean enableUser(Long userId) {
+        // Changement d'état du compte : accountVersion incrémentée; après invalidation des caches (ici et
+        // sur les autres nœuds), les filtres JWT refusent les access tokens portant l'ancienne version
+        return enabled(userRepository.enableById(userId));
+    }
+
+    @Override
+    @Transactional
+    public boolean enablePendingUser(Long userId, int accountVersion, byte[] emailHash) {
+        return enabled(userRepository.enableIfPending(userId, accountVersion, emailHash));
+    }
+
+    private boolean enabled(Optional<String> email) {
+        if (email.isEmpty()) {
+            return false;
+        }
+        userDetailsCache.evictAfterCommit(email.get());
+        // Autres nœuds : entrée en cache (compte désactivé) et marque "inconnu" éventuelle
+        invalidationBus.userChanged(email.get());
+        return true;
     }
 }
 
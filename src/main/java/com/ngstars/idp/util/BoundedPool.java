@@ -0,0 +1,42 @@
+package com.ngstars.idp.util;
+
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.function.Supplier;
+
+/**
+ * Réserve bornée d'objets coûteux à créer et non thread-safe (Mac, Signature initialisés).
+ *
+ * Remplace un ThreadLocal : avec les threads virtuels (spring.threads.virtual.enabled) chaque
+ * requête a son propre thread, un ThreadLocal recréerait l'instance à chaque appel. Ici le nombre
+ * d'instances est borné par la concurrence réelle (calcul sans I/O entre acquire et release).
+ *
+ * - acquire : instance libre, ou nouvelle instance si la réserve est vide (jamais bloquant)
+ * - release : rend l'instance; ignorée si la réserve est pleine
+ */
+public final class BoundedPool<T> {
+
+    private final ArrayBlockingQueue<T> idle;
+    private final Supplier<T> factory;
+
+    public BoundedPool(int capacity, Supplier<T> factory) {
+        this.idle = new ArrayBlockingQueue<>(capacity);
+        this.factory = factory;
+    }
+
+    /**
+     * Capacité par défaut : deux instances par cœur.
+     */
+    public static <T> BoundedPool<T> perCore(Supplier<T> factory) {
+        return new BoundedPool<>(Runtime.getRuntime().availableProcessors() * 2, factory);
+    }
+
+    public T acquire() {
+        T instance = idle.poll();
+        return instance != null ? instance : factory.get();
+    }
+
+    public void release(T instance) {
+        idle.offer(instance);
+    }
+}
@@ -0,0 +1,39 @@
+package com.ngstars.idp.util;
+
+
+import java.time.Instant;
+
+/**
+ * Access token émis et ses métadonnées (connues à l'émission : aucun re-parsing du JWT signé).
+ * iat / exp à la seconde, comme dans les claims.
+ */
+public final class IssuedAccessToken {
+
+    private final String token;
+    private final String jti;
+    private final Instant issuedAt;
+    private final Instant expiresAt;
+
+    IssuedAccessToken(String token, String jti, Instant issuedAt, Instant expiresAt) {
+        this.token = token;
+        this.jti = jti;
+        this.issuedAt = issuedAt;
+        this.expiresAt = expiresAt;
+    }
+
+    public String getToken() {
+        return token;
+    }
+
+    public String getJti() {
+        return jti;
+    }
+
+    public Instant getIssuedAt() {
+        return issuedAt;
+    }
+
+    public Instant getExpiresAt() {
+        return expiresAt;
+    }
+}
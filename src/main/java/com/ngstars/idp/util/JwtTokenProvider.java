@@ -4,54 +4,344 @@ package com.ngstars.idp.util;
 import com.ngstars.idp.config.JwtProperties;
 import io.jsonwebtoken.*;
 import io.jsonwebtoken.security.Keys;
+import io.jsonwebtoken.security.SignatureException;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import org.springframework.stereotype.Component;
 
 import jakarta.annotation.PostConstruct;
+import javax.crypto.Mac;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
 import java.security.Key;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.security.Signature;
+import java.security.spec.MGF1ParameterSpec;
+import java.security.spec.PSSParameterSpec;
 import java.time.Instant;
+import java.util.Base64;
+import java.util.Collection;
 import java.util.Date;
+import java.util.EnumMap;
+import java.util.Locale;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Fournit méthodes pour générer, parser et valider les JWT.
- * Utilise une secret key symétrique (HS256/HS512) stockée via JwtProperties.
+ * - jwt.algorithm=HS512 : secret symétrique (JwtProperties.secret), pas de kid
+ * - jwt.algorithm=RS256/ES256 : clé active du SigningKeyRing, kid dans le header; les
+ *   resource servers valident localement via /.well-known/jwks.json
  *
- * Attention : pour production, il est préférable d'utiliser des clés asymétriques (RS256)
- * ou une gestion avancée des clés via JWKS.
+ * En mode asymétrique, les tokens sans kid (émis en HS512 avant la bascule) ne sont vérifiés
+ * avec le secret que pendant la fenêtre de migration (SigningKeyRing.acceptsLegacyHmac); tout
+ * token dont l'alg ne correspond pas à jwt.algorithm (ou HS512 sans kid) est refusé (UNSUPPORTED).
+ *
+ * Chaque access token porte un jti (16 octets de SecureRandom, base64url) : identifiant de révocation
+ * (AccessTokenDenylist), pas un secret.
+ *
+ * Émission (issueAccessToken) sans le builder générique de JJWT : header base64url précalculé
+ * (par kid), claims de forme fixe (jti, sub, iat, exp, uid, roles, ver) sérialisés à la main,
+ * Mac / Signature réutilisés (BoundedPool, aussi sous threads virtuels). Le parsing reste confié à JJWT.
+ *
+ * Métriques : idp.jwt.sign (signature) et idp.jwt.parse{result=valid|expired|malformed|...}
+ * (parsing + vérification de signature), meters créés au démarrage.
  */
 @Component
 public class JwtTokenProvider {
 
+    /** Claim : id utilisateur. */
+    public static final String CLAIM_USER_ID = "uid";
+    /** Claim : noms des rôles (ROLE_xxx). */
+    public static final String CLAIM_ROLES = "roles";
+    /** Claim : version de l'état du compte au moment de l'émission. */
+    public static final String CLAIM_ACCOUNT_VERSION = "ver";
+
+    private static final Base64.Encoder BASE64URL = Base64.getUrlEncoder().withoutPadding();
+
     private final JwtProperties props;
+    private final SigningKeyRing keyRing;
     private Key key; // clé symétrique dérivée du secret
+    private JwtParser parser; // immuable et thread-safe : construit une seule fois
+    private String hmacHeader; // header HS512 encodé, sans kid
+    private volatile EncodedHeader kidHeader; // header de la clé active (mode asymétrique), recalculé à la rotation
+    // Mac / Signature non thread-safe : instances empruntées le temps d'une signature
+    private final BoundedPool<Mac> hmacs = BoundedPool.perCore(this::newHmac);
+    private final BoundedPool<AsymmetricSigner> signers = BoundedPool.perCore(AsymmetricSigner::new);
+    private final Timer signTimer;
+    private final Timer parseValidTimer;
+    private final Map<JwtValidationResult.Failure, Timer> parseFailureTimers = new EnumMap<>(JwtValidationResult.Failure.class);
 
-    public JwtTokenProvider(JwtProperties props) {
+    public JwtTokenProvider(JwtProperties props, SigningKeyRing keyRing, MeterRegistry meterRegistry) {
         this.props = props;
+        this.keyRing = keyRing;
+        this.signTimer = Timer.builder("idp.jwt.sign")
+                .description("Durée de construction et signature d'un access token")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        this.parseValidTimer = parseTimer(meterRegistry, "valid");
+        for (JwtValidationResult.Failure failure : JwtValidationResult.Failure.values()) {
+            if (failure == JwtValidationResult.Failure.REVOKED || failure == JwtValidationResult.Failure.STALE) {
+                continue; // constatés après le parsing, par les filtres
+            }
+            parseFailureTimers.put(failure, parseTimer(meterRegistry, failure.name().toLowerCase(Locale.ROOT)));
+        }
+    }
+
+    private static Timer parseTimer(MeterRegistry meterRegistry, String result) {
+        return Timer.builder("idp.jwt.parse")
+                .description("Durée de parsing et vérification de signature d'un JWT")
+                .tag("result", result)
+                .publishPercentileHistogram()
+                .register(meterRegistry);
     }
 
     @PostConstruct
     public void init() {
         // Convertit le secret en Key robuste (HS512). Ne pas utiliser secret court en prod.
         this.key = Keys.hmacShaKeyFor(props.getSecret().getBytes());
+        this.parser = Jwts.parserBuilder()
+                .setSigningKeyResolver(new SigningKeyResolverAdapter() {
+                    @Override
+                    public Key resolveSigningKey(JwsHeader header, Claims claims) {
+                        return resolveVerificationKey(header);
+                    }
+                })
+                .build();
+        this.hmacHeader = encodeHeader(null, SignatureAlgorithm.HS512);
+    }
+
+    /**
+     * kid présent : clé publique du trousseau, alg = jwt.algorithm; sinon : secret, alg = HS512
+     * (en mode asymétrique, pendant la fenêtre de migration seulement).
+     */
+    private Key resolveVerificationKey(JwsHeader<?> header) {
+        String kid = header.getKeyId();
+        if (kid == null) {
+            if (!SignatureAlgorithm.HS512.getValue().equals(header.getAlgorithm()) || !keyRing.acceptsLegacyHmac()) {
+                throw new UnsupportedJwtException("Token sans kid refusé : alg=" + header.getAlgorithm());
+            }
+            return key;
+        }
+        if (!keyRing.getAlgorithm().getValue().equals(header.getAlgorithm())) {
+            throw new UnsupportedJwtException("Algorithme JWT inattendu : alg=" + header.getAlgorithm());
+        }
+        PublicKey publicKey = keyRing.resolveVerificationKey(kid);
+        if (publicKey == null) {
+            throw new SignatureException("Clé de signature inconnue : kid=" + kid);
+        }
+        return publicKey;
+    }
+
+    /**
+     * Émet l'access token d'un utilisateur (claims uid / roles / ver, voir CustomUserDetails.fromClaims)
+     * et renvoie ses métadonnées : l'appelant n'a pas à re-parser le token.
+     */
+    public IssuedAccessToken issueAccessToken(String subject, long userId, Collection<String> roles, int accountVersion) {
+        long start = System.nanoTime();
+        try {
+            return signAccessToken(subject, userId, roles, accountVersion);
+        } finally {
+            signTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private IssuedAccessToken signAccessToken(String subject, long userId, Collection<String> roles, int accountVersion) {
+        Instant now = Instant.now();
+        Instant issuedAt = Instant.ofEpochSecond(now.getEpochSecond());
+        Instant expiresAt = Instant.ofEpochSecond(now.plusMillis(props.getExpirationMs()).getEpochSecond());
+        String jti = newTokenId();
+
+        StringBuilder json = new StringBuilder(160 + subject.length() + roles.size() * 16);
+        json.append("{\"jti\":\"").append(jti)
+                .append("\",\"sub\":");
+        appendJsonString(json, subject);
+        json.append(",\"iat\":").append(issuedAt.getEpochSecond())
+                .append(",\"exp\":").append(expiresAt.getEpochSecond())
+                .append(",\"" + CLAIM_USER_ID + "\":").append(userId)
+                .append(",\"" + CLAIM_ROLES + "\":[");
+        boolean first = true;
+        for (String role : roles) {
+            if (!first) {
+                json.append(',');
+            }
+            appendJsonString(json, role);
+            first = false;
+        }
+        json.append("],\"" + CLAIM_ACCOUNT_VERSION + "\":").append(accountVersion).append('}');
+        String claims = BASE64URL.encodeToString(json.toString().getBytes(StandardCharsets.UTF_8));
+
+        String signingInput;
+        byte[] signature;
+        if (keyRing.isAsymmetric()) {
+            SigningKeyRing.ActiveKey active = keyRing.getActiveKey();
+            if (active == null) {
+                throw new IllegalStateException("Aucune clé de signature JWT active");
+            }
+            signingInput = header(active) + "." + claims;
+            AsymmetricSigner signer = signers.acquire();
+            try {
+                signature = signer.sign(active, signingInput.getBytes(StandardCharsets.US_ASCII));
+            } finally {
+                signers.release(signer);
+            }
+        } else {
+            signingInput = hmacHeader + "." + claims;
+            Mac hmac = hmacs.acquire();
+            try {
+                signature = hmac.doFinal(signingInput.getBytes(StandardCharsets.US_ASCII));
+            } finally {
+                hmacs.release(hmac);
+            }
+        }
+        String token = signingInput + "." + BASE64URL.encodeToString(signature);
+        return new IssuedAccessToken(token, jti, issuedAt, expiresAt);
+    }
+
+    private String header(SigningKeyRing.ActiveKey active) {
+        EncodedHeader cached = kidHeader;
+        if (cached == null || !cached.kid.equals(active.getKid())) {
+            cached = new EncodedHeader(active.getKid(), encodeHeader(active.getKid(), active.getAlgorithm()));
+            kidHeader = cached;
+        }
+        return cached.encoded;
+    }
+
+    private static String encodeHeader(String kid, SignatureAlgorithm algorithm) {
+        StringBuilder json = new StringBuilder(64).append('{');
+        if (kid != null) {
+            json.append("\"" + JwsHeader.KEY_ID + "\":");
+            appendJsonString(json, kid);
+            json.append(',');
+        }
+        json.append("\"" + JwsHeader.ALGORITHM + "\":\"").append(algorithm.getValue()).append("\"}");
+        return BASE64URL.encodeToString(json.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static void appendJsonString(StringBuilder json, String value) {
+        json.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                    json.append("\\\"");
+                    break;
+                case '\\':
+                    json.append("\\\\");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        json.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        json.append(c);
+                    }
+            }
+        }
+        json.append('"');
+    }
+
+    private Mac newHmac() {
+        try {
+            Mac mac = Mac.getInstance(SignatureAlgorithm.HS512.getJcaName());
+            mac.init(key);
+            return mac;
+        } catch (GeneralSecurityException ex) {
+            throw new IllegalStateException("HMAC indisponible", ex);
+        }
+    }
+
+    /**
+     * Header encodé de la clé active.
+     */
+    private static final class EncodedHeader {
+        private final String kid;
+        private final String encoded;
+
+        EncodedHeader(String kid, String encoded) {
+            this.kid = kid;
+            this.encoded = encoded;
+        }
     }
 
     /**
-     * Génère un JWT pour un sujet (username/email) avec claims optionnels.
+     * Signature JCA réutilisable (un utilisateur à la fois), ré-initialisée seulement quand la clé active change.
+     * ECDSA : format P1363 (r || s), celui attendu par JWS, sans transcodage DER.
+     * RSASSA-PSS : MGF1 et sel de la taille du hash (RFC 7518 §3.5).
+     */
+    private static final class AsymmetricSigner {
+        private PrivateKey privateKey;
+        private Signature signature;
+
+        byte[] sign(SigningKeyRing.ActiveKey active, byte[] input) {
+            try {
+                if (privateKey != active.getPrivateKey()) {
+                    String jcaName = active.getAlgorithm().getJcaName();
+                    if (active.getAlgorithm().isEllipticCurve()) {
+                        jcaName += "inP1363Format";
+                    }
+                    Signature next = Signature.getInstance(jcaName);
+                    if (active.getAlgorithm().getFamilyName().equals("RSA") && jcaName.equals("RSASSA-PSS")) {
+                        String hash = "SHA-" + active.getAlgorithm().getValue().substring(2);
+                        int saltLength = Integer.parseInt(active.getAlgorithm().getValue().substring(2)) / 8;
+                        next.setParameter(new PSSParameterSpec(hash, "MGF1", new MGF1ParameterSpec(hash), saltLength, 1));
+                    }
+                    next.initSign(active.getPrivateKey());
+                    signature = next;
+                    privateKey = active.getPrivateKey();
+                }
+                signature.update(input);
+                return signature.sign();
+            } catch (GeneralSecurityException ex) {
+                privateKey = null;
+                throw new IllegalStateException("Signature JWT impossible", ex);
+            }
+        }
+    }
+
+    /**
+     * Génère un JWT pour un sujet (username/email) avec claims libres (builder JJWT générique).
+     * Pour les access tokens utilisateur, préférer issueAccessToken.
      */
     public String generateAccessToken(String subject, Map<String, Object> claims) {
+        long start = System.nanoTime();
+        try {
+            return buildAccessToken(subject, claims);
+        } finally {
+            signTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private String buildAccessToken(String subject, Map<String, Object> claims) {
         Instant now = Instant.now();
         Instant expiry = now.plusMillis(props.getExpirationMs());
 
         JwtBuilder builder = Jwts.builder()
+                .setId(newTokenId())
                 .setSubject(subject)
                 .setIssuedAt(Date.from(now))
                 .setExpiration(Date.from(expiry))
-                .addClaims(claims)
-                .signWith(key, SignatureAlgorithm.HS512);
+                .addClaims(claims);
+
+        SigningKeyRing.ActiveKey active = keyRing.getActiveKey();
+        if (keyRing.isAsymmetric()) {
+            if (active == null) {
+                throw new IllegalStateException("Aucune clé de signature JWT active");
+            }
+            builder.setHeaderParam(JwsHeader.KEY_ID, active.getKid())
+                    .signWith(active.getPrivateKey(), active.getAlgorithm());
+        } else {
+            builder.signWith(key, SignatureAlgorithm.HS512);
+        }
 
         return builder.compact();
     }
 
+    private static String newTokenId() {
+        // Pas secret, mais imprévisible : SecureRandom partagé avec les refresh tokens
+        return OpaqueTokens.randomId();
+    }
+
     /**
      * Génère un refresh token minimal (string long aléatoire).
      * Ici on recommande la persistance côté DB plutôt qu'un JWT lourd.
@@ -61,34 +351,60 @@ public class JwtTokenProvider {
         return Keys.secretKeyFor(SignatureAlgorithm.HS512).toString() + "-" + Instant.now().toEpochMilli();
     }
 
+    /**
+     * Valide le JWT et extrait ses claims en un seul parsing (une seule vérification de signature).
+     * Ne lance jamais d'exception : l'échec est décrit par JwtValidationResult.getFailure().
+     */
+    public JwtValidationResult validateAndExtract(String token) {
+        if (token == null || token.isBlank()) {
+            return JwtValidationResult.failure(JwtValidationResult.Failure.MISSING);
+        }
+        long start = System.nanoTime();
+        JwtValidationResult result = parse(token);
+        Timer timer = result.isValid() ? parseValidTimer : parseFailureTimers.get(result.getFailure());
+        timer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        return result;
+    }
+
+    private JwtValidationResult parse(String token) {
+        try {
+            return JwtValidationResult.valid(parser.parseClaimsJws(token).getBody());
+        } catch (ExpiredJwtException ex) {
+            return JwtValidationResult.failure(JwtValidationResult.Failure.EXPIRED);
+        } catch (SignatureException ex) {
+            return JwtValidationResult.failure(JwtValidationResult.Failure.INVALID_SIGNATURE);
+        } catch (UnsupportedJwtException ex) {
+            return JwtValidationResult.failure(JwtValidationResult.Failure.UNSUPPORTED);
+        } catch (JwtException | IllegalArgumentException ex) {
+            return JwtValidationResult.failure(JwtValidationResult.Failure.MALFORMED);
+        }
+    }
+
     /**
      * Valide JWT et retourne sujet (username/email).
      * Lance exception JwtException si invalide.
      */
     public String getSubjectFromToken(String token) {
-        Claims claims = Jwts.parserBuilder().setSigningKey(key).build().parseClaimsJws(token).getBody();
+        Claims claims = parser.parseClaimsJws(token).getBody();
         return claims.getSubject();
     }
 
     /**
      * Validate token : retourne true si valide, false sinon.
-     * Tu peux logger les exceptions pour debug.
+     * Préférer validateAndExtract quand les claims sont ensuite nécessaires.
      */
     public boolean validateToken(String token) {
-        try {
-            Jwts.parserBuilder().setSigningKey(key).build().parseClaimsJws(token);
-            return true;
-        } catch (JwtException | IllegalArgumentException ex) {
-            // token invalide, expired, malformed, signature invalid, etc.
-            return false;
-        }
+        return validateAndExtract(token).isValid();
     }
 
     /**
-     * Retourne expiration Date du JWT.
+     * Retourne expiration Date du JWT (re-parsing + vérification de signature).
+     * Pour un token qui vient d'être émis, utiliser IssuedAccessToken.getExpiresAt.
      */
     public Instant getExpirationFromToken(String token) {
-        Claims claims = Jwts.parserBuilder().setSigningKey(key).build().parseClaimsJws(token).getBody();
+        long start = System.nanoTime();
+        Claims claims = parser.parseClaimsJws(token).getBody();
+        parseValidTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
         return claims.getExpiration().toInstant();
     }
 }
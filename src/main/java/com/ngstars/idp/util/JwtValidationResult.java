@@ -0,0 +1,133 @@
+package com.ngstars.idp.util;
+
+
+import io.jsonwebtoken.Claims;
+
+import java.time.Instant;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Résultat d'une validation JWT en un seul parsing :
+ * soit une vue immuable des claims, soit la raison typée de l'échec.
+ */
+public final class JwtValidationResult {
+
+    /**
+     * Raison de rejet d'un token.
+     */
+    public enum Failure {
+        MISSING,
+        EXPIRED,
+        MALFORMED,
+        INVALID_SIGNATURE,
+        UNSUPPORTED,
+        /** Signature valide mais jti révoqué (AccessTokenDenylist) : constaté par les filtres JWT. */
+        REVOKED,
+        /**
+         * Signature valide mais claim "ver" différent de la version courante du compte (compte modifié
+         * ou désactivé depuis l'émission) : constaté par les filtres JWT en mode TOKEN.
+         */
+        STALE
+    }
+
+    private static final JwtValidationResult MISSING = new JwtValidationResult(null, Failure.MISSING);
+    private static final JwtValidationResult EXPIRED = new JwtValidationResult(null, Failure.EXPIRED);
+    private static final JwtValidationResult MALFORMED = new JwtValidationResult(null, Failure.MALFORMED);
+    private static final JwtValidationResult INVALID_SIGNATURE = new JwtValidationResult(null, Failure.INVALID_SIGNATURE);
+    private static final JwtValidationResult UNSUPPORTED = new JwtValidationResult(null, Failure.UNSUPPORTED);
+
+    private final TokenClaims claims;
+    private final Failure failure;
+
+    private JwtValidationResult(TokenClaims claims, Failure failure) {
+        this.claims = claims;
+        this.failure = failure;
+    }
+
+    static JwtValidationResult valid(Claims claims) {
+        return new JwtValidationResult(new TokenClaims(claims), null);
+    }
+
+    /**
+     * Instances partagées : aucun objet alloué sur le chemin d'échec.
+     */
+    static JwtValidationResult failure(Failure failure) {
+        switch (failure) {
+            case MISSING: return MISSING;
+            case EXPIRED: return EXPIRED;
+            case MALFORMED: return MALFORMED;
+            case INVALID_SIGNATURE: return INVALID_SIGNATURE;
+            default: return UNSUPPORTED;
+        }
+    }
+
+    public boolean isValid() {
+        return failure == null;
+    }
+
+    /**
+     * Claims du token; null si le token est invalide.
+     */
+    public TokenClaims getClaims() {
+        return claims;
+    }
+
+    /**
+     * Raison de l'échec; null si le token est valide.
+     */
+    public Failure getFailure() {
+        return failure;
+    }
+
+    /**
+     * Vue immuable des claims d'un access token validé.
+     */
+    public static final class TokenClaims {
+
+        private final String subject;
+        private final String id;
+        private final Instant issuedAt;
+        private final Instant expiration;
+        private final Map<String, Object> claims;
+
+        private TokenClaims(Claims source) {
+            this.subject = source.getSubject();
+            this.id = source.getId();
+            this.issuedAt = source.getIssuedAt() == null ? null : source.getIssuedAt().toInstant();
+            this.expiration = source.getExpiration() == null ? null : source.getExpiration().toInstant();
+            this.claims = Collections.unmodifiableMap(new LinkedHashMap<>(source));
+        }
+
+        public String getSubject() {
+            return subject;
+        }
+
+        /**
+         * jti; null pour un token émis avant son introduction.
+         */
+        public String getId() {
+            return id;
+        }
+
+        public Instant getIssuedAt() {
+            return issuedAt;
+        }
+
+        public Instant getExpiration() {
+            return expiration;
+        }
+
+        /**
+         * Claim brut (tel que désérialisé par JJWT), ou null si absent.
+         */
+        public Object get(String name) {
+            return claims.get(name);
+        }
+
+        public Map<String, Object> asMap() {
+            return claims;
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package com.ngstars.idp.util;
+
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.UUID;
+
+/**
+ * Tokens opaques "selector.verifier" (refresh tokens).
+ *
+ * - selector : 16 octets aléatoires, stocké en clair (colonne uuid, clé d'index de taille fixe)
+ * - verifier : 32 octets aléatoires, seul son SHA-256 est stocké; comparaison en temps constant
+ *
+ * Une fuite de la table ne permet donc pas de rejouer les tokens. Les anciens tokens (UUID bruts,
+ * sans '.') restent lisibles : selector = 16 premiers octets de SHA-256(token), hash = SHA-256(token).
+ */
+public final class OpaqueTokens {
+
+    private static final SecureRandom RANDOM = new SecureRandom();
+    private static final Base64.Encoder ENCODER = Base64.getUrlEncoder().withoutPadding();
+    private static final Base64.Decoder DECODER = Base64.getUrlDecoder();
+    private static final int SELECTOR_LENGTH = 16;
+    private static final int VERIFIER_LENGTH = 32;
+
+    private OpaqueTokens() {}
+
+    /**
+     * Token décomposé : selector (recherche) + SHA-256 du verifier (comparaison).
+     */
+    public static class Parsed {
+        private final UUID selector;
+        private final byte[] verifierHash;
+
+        Parsed(UUID selector, byte[] verifierHash) {
+            this.selector = selector;
+            this.verifierHash = verifierHash;
+        }
+
+        public UUID getSelector() {
+            return selector;
+        }
+
+        public byte[] getVerifierHash() {
+            return verifierHash;
+        }
+
+        /**
+         * Comparaison en temps constant avec le hash stocké.
+         */
+        public boolean matches(byte[] storedHash) {
+            return storedHash != null && MessageDigest.isEqual(verifierHash, storedHash);
+        }
+    }
+
+    /**
+     * Token nouvellement généré : valeur à remettre au client + éléments à persister.
+     */
+    public static final class Generated extends Parsed {
+        private final String value;
+
+        Generated(String value, UUID selector, byte[] verifierHash) {
+            super(selector, verifierHash);
+            this.value = value;
+        }
+
+        public String getValue() {
+            return value;
+        }
+    }
+
+    public static Generated generate() {
+        byte[] selector = new byte[SELECTOR_LENGTH];
+        byte[] verifier = new byte[VERIFIER_LENGTH];
+        RANDOM.nextBytes(selector);
+        RANDOM.nextBytes(verifier);
+        String value = ENCODER.encodeToString(selector) + "." + ENCODER.encodeToString(verifier);
+        return new Generated(value, toUuid(selector), sha256(verifier));
+    }
+
+    /**
+     * Décompose un token reçu; null si le format est invalide.
+     */
+    public static Parsed parse(String token) {
+        if (token == null || token.isEmpty()) {
+            return null;
+        }
+        int dot = token.indexOf('.');
+        if (dot < 0) {
+            // Ancien format (UUID brut) : dérivé du SHA-256 complet
+            byte[] digest = sha256(token.getBytes(StandardCharsets.UTF_8));
+            return new Parsed(toUuid(digest), digest);
+        }
+        try {
+            byte[] selector = DECODER.decode(token.substring(0, dot));
+            byte[] verifier = DECODER.decode(token.substring(dot + 1));
+            if (selector.length != SELECTOR_LENGTH || verifier.length != VERIFIER_LENGTH) {
+                return null;
+            }
+            return new Parsed(toUuid(selector), sha256(verifier));
+        } catch (IllegalArgumentException ex) {
+            return null;
+        }
+    }
+
+    /**
+     * Identifiant imprévisible de 16 octets en base64url (22 caractères) : jti des access tokens.
+     */
+    static String randomId() {
+        byte[] id = new byte[SELECTOR_LENGTH];
+        RANDOM.nextBytes(id);
+        return ENCODER.encodeToString(id);
+    }
+
+    private static UUID toUuid(byte[] bytes) {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes, 0, SELECTOR_LENGTH);
+        return new UUID(buffer.getLong(), buffer.getLong());
+    }
+
+    /**
+     * SHA-256 d'un token quelconque (clé de cache qui ne conserve pas la valeur en clair).
+     */
+    public static byte[] sha256(String token) {
+        return sha256(token.getBytes(StandardCharsets.UTF_8));
+    }
+
+    static byte[] sha256(byte[] input) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(input);
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+}
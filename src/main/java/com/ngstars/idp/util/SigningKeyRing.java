@@ -0,0 +1,454 @@
+package com.ngstars.idp.util;
+
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.ngstars.idp.config.JwtProperties;
+import com.ngstars.idp.entity.SigningKey;
+import com.ngstars.idp.repository.SigningKeyRepository;
+import io.jsonwebtoken.SignatureAlgorithm;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.security.*;
+import java.security.interfaces.ECPublicKey;
+import java.security.interfaces.RSAPublicKey;
+import java.security.spec.ECGenParameterSpec;
+import java.security.spec.PKCS8EncodedKeySpec;
+import java.security.spec.X509EncodedKeySpec;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Trousseau de clés asymétriques (RS256 / ES256) pour la signature des access tokens.
+ *
+ * - une clé active (signe) + les clés récentes (vérifient), identifiées par kid
+ * - rotation planifiée : une nouvelle clé est créée quand la plus récente dépasse
+ *   jwt.key-rotation-interval-ms; elle est publiée dans le JWKS pendant
+ *   jwt.key-activation-delay-ms avant de signer, pour laisser les resource servers la récupérer
+ * - les clés sont persistées (jwt_signing_keys) et rechargées périodiquement : tous les nœuds
+ *   signent et vérifient avec le même trousseau
+ * - rotation sérialisée entre nœuds (verrou consultatif PostgreSQL, pg_advisory_xact_lock) : sous le
+ *   verrou, la clé la plus récente est relue et une seule clé est créée par échéance, quel que soit
+ *   le nombre de nœuds (sinon les clés en trop évinceraient la clé active du trousseau)
+ * - le JWKS (JSON + ETag) est précalculé à chaque changement du trousseau
+ *
+ * En mode HS512 le trousseau est vide et le JWKS ne publie aucune clé.
+ *
+ * Migration depuis HS512 : les tokens sans kid (signés avec le secret) ne sont acceptés que
+ * jusqu'à la création de la première clé de l'algorithme + jwt.expiration-ms, durée de vie
+ * maximale d'un token HS512 émis avant la bascule (voir acceptsLegacyHmac).
+ */
+@Component
+public class SigningKeyRing {
+
+    private static final Logger log = LoggerFactory.getLogger(SigningKeyRing.class);
+
+    /** Rechargement à la demande (kid inconnu) au plus une fois par intervalle. */
+    private static final long MIN_ON_DEMAND_RELOAD_MS = 5_000;
+    private static final int GCM_IV_LENGTH = 12;
+    private static final int GCM_TAG_BITS = 128;
+    /** Clé du verrou consultatif de rotation ("idpkeys" en ASCII). */
+    private static final long ROTATION_LOCK_KEY = 0x6964706b65797300L;
+
+    /**
+     * Clé de signature courante.
+     */
+    public static final class ActiveKey {
+        private final String kid;
+        private final PrivateKey privateKey;
+        private final SignatureAlgorithm algorithm;
+
+        ActiveKey(String kid, PrivateKey privateKey, SignatureAlgorithm algorithm) {
+            this.kid = kid;
+            this.privateKey = privateKey;
+            this.algorithm = algorithm;
+        }
+
+        public String getKid() {
+            return kid;
+        }
+
+        public PrivateKey getPrivateKey() {
+            return privateKey;
+        }
+
+        public SignatureAlgorithm getAlgorithm() {
+            return algorithm;
+        }
+    }
+
+    /**
+     * JWKS sérialisé et son ETag.
+     */
+    public static final class Jwks {
+        private final byte[] json;
+        private final String etag;
+
+        Jwks(byte[] json, String etag) {
+            this.json = json;
+            this.etag = etag;
+        }
+
+        public byte[] getJson() {
+            return json;
+        }
+
+        public String getEtag() {
+            return etag;
+        }
+    }
+
+    private static final class Snapshot {
+        private final ActiveKey active;
+        private final Map<String, PublicKey> verificationKeys;
+        private final Instant newestCreatedAt;
+        private final Jwks jwks;
+
+        Snapshot(ActiveKey active, Map<String, PublicKey> verificationKeys, Instant newestCreatedAt, Jwks jwks) {
+            this.active = active;
+            this.verificationKeys = verificationKeys;
+            this.newestCreatedAt = newestCreatedAt;
+            this.jwks = jwks;
+        }
+    }
+
+    private final JwtProperties props;
+    private final SigningKeyRepository repository;
+    private final TransactionTemplate transactionTemplate;
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final SecureRandom random = new SecureRandom();
+    // ReentrantLock plutôt que synchronized : pas d'épinglage des threads virtuels pendant l'I/O DB
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private SignatureAlgorithm algorithm;
+    private SecretKey wrappingKey;
+    private volatile Snapshot snapshot;
+    private volatile long lastReloadMillis;
+    private volatile Instant legacyHmacAcceptedUntil; // fin de la fenêtre de migration HS512 (mode asymétrique)
+
+    public SigningKeyRing(JwtProperties props, SigningKeyRepository repository,
+                          PlatformTransactionManager transactionManager) {
+        this.props = props;
+        this.repository = repository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    @PostConstruct
+    public void init() {
+        this.algorithm = SignatureAlgorithm.forName(props.getAlgorithm());
+        this.snapshot = new Snapshot(null, Collections.emptyMap(), null, buildJwks(Collections.emptyList()));
+        if (!isAsymmetric()) {
+            return;
+        }
+        if (algorithm.getFamilyName().equals("RSA") || algorithm.getFamilyName().equals("ECDSA")) {
+            this.wrappingKey = deriveWrappingKey(props.getSecret());
+            refresh();
+        } else {
+            throw new IllegalStateException("Algorithme JWT non supporté : " + props.getAlgorithm());
+        }
+    }
+
+    public boolean isAsymmetric() {
+        return !algorithm.isHmac();
+    }
+
+    public SignatureAlgorithm getAlgorithm() {
+        return algorithm;
+    }
+
+    /**
+     * Clé de signature courante (null en mode HS512).
+     */
+    public ActiveKey getActiveKey() {
+        return snapshot.active;
+    }
+
+    /**
+     * Clé publique pour un kid; recharge le trousseau (au plus toutes les 5 s) si le kid est
+     * inconnu, cas d'une clé créée par un autre nœud depuis le dernier rafraîchissement.
+     */
+    public PublicKey resolveVerificationKey(String kid) {
+        PublicKey key = snapshot.verificationKeys.get(kid);
+        if (key != null || !isAsymmetric()) {
+            return key;
+        }
+        if (System.currentTimeMillis() - lastReloadMillis >= MIN_ON_DEMAND_RELOAD_MS && lock.tryLock()) {
+            try {
+                reload();
+            } catch (RuntimeException ex) {
+                log.warn("Rechargement du trousseau JWT impossible : {}", ex.getMessage());
+            } finally {
+                lock.unlock();
+            }
+        }
+        return snapshot.verificationKeys.get(kid);
+    }
+
+    /**
+     * Vrai si un token sans kid (HS512, secret partagé) peut encore être accepté : toujours en mode
+     * HS512; en mode asymétrique seulement pendant la fenêtre de migration, ensuite la détention
+     * de jwt.secret ne permet plus de forger un access token valide.
+     */
+    public boolean acceptsLegacyHmac() {
+        if (!isAsymmetric()) {
+            return true;
+        }
+        Instant until = legacyHmacAcceptedUntil;
+        return until != null && Instant.now().isBefore(until);
+    }
+
+    public Jwks getJwks() {
+        return snapshot.jwks;
+    }
+
+    /**
+     * Recharge le trousseau depuis la base et effectue la rotation si la clé la plus récente est trop ancienne.
+     */
+    @Scheduled(fixedDelayString = "${jwt.key-refresh-interval-ms:60000}")
+    public void refresh() {
+        if (!isAsymmetric()) {
+            return;
+        }
+        lock.lock();
+        try {
+            reload();
+            if (rotationDue(snapshot.newestCreatedAt)) {
+                rotate();
+                reload();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void reload() {
+        int size = props.getVerificationKeyCount() + 2; // clé en attente + active + anciennes
+        List<SigningKey> keys = repository.findByAlgorithmOrderByCreatedAtDesc(algorithm.getValue(), PageRequest.of(0, size));
+        Instant activationCutoff = Instant.now().minusMillis(props.getKeyActivationDelayMs());
+
+        SigningKey activeEntity = null;
+        Map<String, PublicKey> verificationKeys = new HashMap<>();
+        List<Map.Entry<String, PublicKey>> published = new ArrayList<>();
+        for (SigningKey key : keys) {
+            PublicKey publicKey = decodePublicKey(key.getPublicKey());
+            verificationKeys.put(key.getKid(), publicKey);
+            published.add(new AbstractMap.SimpleImmutableEntry<>(key.getKid(), publicKey));
+            if (activeEntity == null && !key.getCreatedAt().isAfter(activationCutoff)) {
+                activeEntity = key;
+            }
+        }
+        if (activeEntity == null && !keys.isEmpty()) {
+            // Démarrage à froid : seule une clé encore en attente existe, elle signe immédiatement
+            activeEntity = keys.get(keys.size() - 1);
+        }
+
+        Snapshot previous = snapshot;
+        ActiveKey active = previous.active;
+        if (activeEntity == null) {
+            active = null;
+        } else if (active == null || !active.kid.equals(activeEntity.getKid())) {
+            active = new ActiveKey(activeEntity.getKid(), decodePrivateKey(activeEntity), algorithm);
+            log.info("Clé de signature JWT active : kid={} ({})", active.kid, algorithm.getValue());
+        }
+        Instant newest = keys.isEmpty() ? null : keys.get(0).getCreatedAt();
+        if (legacyHmacAcceptedUntil == null && !keys.isEmpty()) {
+            // Date de la première clé : fixe, lue une seule fois
+            SigningKey first = repository.findByAlgorithmOrderByCreatedAtAsc(algorithm.getValue(), PageRequest.of(0, 1)).get(0);
+            this.legacyHmacAcceptedUntil = first.getCreatedAt().plusMillis(props.getExpirationMs());
+        }
+        this.snapshot = new Snapshot(active, Collections.unmodifiableMap(verificationKeys), newest, buildJwks(published));
+        this.lastReloadMillis = System.currentTimeMillis();
+    }
+
+    private boolean rotationDue(Instant newest) {
+        return newest == null || newest.isBefore(Instant.now().minusMillis(props.getKeyRotationIntervalMs()));
+    }
+
+    /**
+     * Crée la clé suivante, sauf si un autre nœud l'a fait entre-temps : la clé la plus récente est
+     * relue sous le verrou de rotation (transaction courte, clé générée avant).
+     */
+    private void rotate() {
+        KeyPair pair = generateKeyPair();
+        SigningKey key = new SigningKey();
+        key.setKid(newKid());
+        key.setAlgorithm(algorithm.getValue());
+        key.setPublicKey(pair.getPublic().getEncoded());
+        key.setPrivateKey(encrypt(pair.getPrivate().getEncoded(), key.getKid()));
+        Boolean created = transactionTemplate.execute(status -> {
+            repository.lockForRotation(ROTATION_LOCK_KEY);
+            List<SigningKey> newest = repository.findByAlgorithmOrderByCreatedAtDesc(algorithm.getValue(), PageRequest.of(0, 1));
+            if (!newest.isEmpty() && !rotationDue(newest.get(0).getCreatedAt())) {
+                return false;
+            }
+            key.setCreatedAt(Instant.now());
+            repository.save(key);
+            return true;
+        });
+        if (Boolean.TRUE.equals(created)) {
+            log.info("Nouvelle clé de signature JWT générée : kid={} ({})", key.getKid(), algorithm.getValue());
+        } else {
+            log.debug("Rotation de clé JWT déjà effectuée par un autre nœud");
+        }
+    }
+
+    private KeyPair generateKeyPair() {
+        try {
+            KeyPairGenerator generator;
+            if (algorithm.getFamilyName().equals("RSA")) {
+                generator = KeyPairGenerator.getInstance("RSA");
+                generator.initialize(Math.max(2048, algorithm.getMinKeyLength()), random);
+            } else {
+                generator = KeyPairGenerator.getInstance("EC");
+                generator.initialize(new ECGenParameterSpec(curveName()), random);
+            }
+            return generator.generateKeyPair();
+        } catch (GeneralSecurityException ex) {
+            throw new IllegalStateException("Génération de clé JWT impossible", ex);
+        }
+    }
+
+    private String curveName() {
+        switch (algorithm) {
+            case ES256: return "secp256r1";
+            case ES384: return "secp384r1";
+            default: return "secp521r1";
+        }
+    }
+
+    private String jwkCurve() {
+        switch (algorithm) {
+            case ES256: return "P-256";
+            case ES384: return "P-384";
+            default: return "P-521";
+        }
+    }
+
+    private String keyFactoryAlgorithm() {
+        return algorithm.getFamilyName().equals("RSA") ? "RSA" : "EC";
+    }
+
+    private PublicKey decodePublicKey(byte[] encoded) {
+        try {
+            return KeyFactory.getInstance(keyFactoryAlgorithm()).generatePublic(new X509EncodedKeySpec(encoded));
+        } catch (GeneralSecurityException ex) {
+            throw new IllegalStateException("Clé publique JWT illisible", ex);
+        }
+    }
+
+    private PrivateKey decodePrivateKey(SigningKey key) {
+        try {
+            byte[] pkcs8 = decrypt(key.getPrivateKey(), key.getKid());
+            return KeyFactory.getInstance(keyFactoryAlgorithm()).generatePrivate(new PKCS8EncodedKeySpec(pkcs8));
+        } catch (GeneralSecurityException ex) {
+            throw new IllegalStateException("Clé privée JWT illisible (kid=" + key.getKid() + ")", ex);
+        }
+    }
+
+    private String newKid() {
+        byte[] bytes = new byte[16];
+        random.nextBytes(bytes);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+    }
+
+    // --- Chiffrement des clés privées au repos (AES-GCM, kid en données associées) ---
+
+    private static SecretKey deriveWrappingKey(String secret) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(secret.getBytes(StandardCharsets.UTF_8));
+            return new SecretKeySpec(digest, "AES");
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    private byte[] encrypt(byte[] plain, String kid) {
+        try {
+            byte[] iv = new byte[GCM_IV_LENGTH];
+            random.nextBytes(iv);
+            Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+            cipher.init(Cipher.ENCRYPT_MODE, wrappingKey, new GCMParameterSpec(GCM_TAG_BITS, iv));
+            cipher.updateAAD(kid.getBytes(StandardCharsets.UTF_8));
+            byte[] encrypted = cipher.doFinal(plain);
+            byte[] out = new byte[iv.length + encrypted.length];
+            System.arraycopy(iv, 0, out, 0, iv.length);
+            System.arraycopy(encrypted, 0, out, iv.length, encrypted.length);
+            return out;
+        } catch (GeneralSecurityException ex) {
+            throw new IllegalStateException("Chiffrement de la clé JWT impossible", ex);
+        }
+    }
+
+    private byte[] decrypt(byte[] stored, String kid) throws GeneralSecurityException {
+        Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+        cipher.init(Cipher.DECRYPT_MODE, wrappingKey, new GCMParameterSpec(GCM_TAG_BITS, stored, 0, GCM_IV_LENGTH));
+        cipher.updateAAD(kid.getBytes(StandardCharsets.UTF_8));
+        return cipher.doFinal(stored, GCM_IV_LENGTH, stored.length - GCM_IV_LENGTH);
+    }
+
+    // --- JWKS (RFC 7517) ---
+
+    private Jwks buildJwks(List<Map.Entry<String, PublicKey>> keys) {
+        List<Map<String, Object>> jwkList = new ArrayList<>();
+        for (Map.Entry<String, PublicKey> entry : keys) {
+            jwkList.add(toJwk(entry.getKey(), entry.getValue()));
+        }
+        try {
+            byte[] json = mapper.writeValueAsBytes(Map.of("keys", jwkList));
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(json);
+            String etag = "\"" + Base64.getUrlEncoder().withoutPadding().encodeToString(digest).substring(0, 22) + "\"";
+            return new Jwks(json, etag);
+        } catch (JsonProcessingException | NoSuchAlgorithmException ex) {
+            throw new IllegalStateException("Sérialisation JWKS impossible", ex);
+        }
+    }
+
+    private Map<String, Object> toJwk(String kid, PublicKey key) {
+        Map<String, Object> jwk = new LinkedHashMap<>();
+        Base64.Encoder b64 = Base64.getUrlEncoder().withoutPadding();
+        if (key instanceof RSAPublicKey) {
+            RSAPublicKey rsa = (RSAPublicKey) key;
+            jwk.put("kty", "RSA");
+            jwk.put("n", b64.encodeToString(unsigned(rsa.getModulus(), 0)));
+            jwk.put("e", b64.encodeToString(unsigned(rsa.getPublicExponent(), 0)));
+        } else {
+            ECPublicKey ec = (ECPublicKey) key;
+            int size = (ec.getParams().getCurve().getField().getFieldSize() + 7) / 8;
+            jwk.put("kty", "EC");
+            jwk.put("crv", jwkCurve());
+            jwk.put("x", b64.encodeToString(unsigned(ec.getW().getAffineX(), size)));
+            jwk.put("y", b64.encodeToString(unsigned(ec.getW().getAffineY(), size)));
+        }
+        jwk.put("kid", kid);
+        jwk.put("use", "sig");
+        jwk.put("alg", algorithm.getValue());
+        return jwk;
+    }
+
+    /**
+     * Représentation big-endian non signée, complétée à gauche jusqu'à length (0 = longueur minimale).
+     */
+    private static byte[] unsigned(BigInteger value, int length) {
+        byte[] bytes = value.toByteArray();
+        int start = (bytes.length > 1 && bytes[0] == 0) ? 1 : 0;
+        int size = bytes.length - start;
+        int outLength = Math.max(size, length);
+        byte[] out = new byte[outLength];
+        System.arraycopy(bytes, start, out, outLength - size, size);
+        return out;
+    }
+}
@@ -0,0 +1,47 @@
+-- Schéma initial (tel que généré jusqu'ici par Hibernate avec ddl-auto=update).
+-- Les bases existantes sont "baselinées" sur cette version (spring.flyway.baseline-on-migrate).
+
+CREATE TABLE users (
+    id          bigint GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    email       varchar(255)                NOT NULL,
+    password    varchar(255)                NOT NULL,
+    enabled     boolean                     NOT NULL,
+    created_at  timestamp(6) with time zone NOT NULL,
+    last_login  timestamp(6) with time zone,
+    CONSTRAINT uc_users_email UNIQUE (email)
+);
+CREATE INDEX idx_users_email ON users (email);
+
+CREATE TABLE roles (
+    id    bigint GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    name  varchar(100) NOT NULL,
+    CONSTRAINT uc_roles_name UNIQUE (name)
+);
+
+CREATE TABLE user_roles (
+    user_id  bigint NOT NULL REFERENCES users (id),
+    role_id  bigint NOT NULL REFERENCES roles (id),
+    PRIMARY KEY (user_id, role_id)
+);
+CREATE INDEX idx_user_roles_user_id ON user_roles (user_id);
+
+CREATE TABLE refresh_tokens (
+    id           bigint GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    token        varchar(512)                NOT NULL UNIQUE,
+    user_id      bigint                      NOT NULL REFERENCES users (id),
+    expiry_date  timestamp(6) with time zone NOT NULL,
+    revoked      boolean                     NOT NULL,
+    device_info  varchar(255)
+);
+CREATE INDEX idx_refresh_token_token ON refresh_tokens (token);
+CREATE INDEX idx_refresh_token_user_id ON refresh_tokens (user_id);
+
+CREATE TABLE verification_tokens (
+    id           bigint GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    token        varchar(512)                NOT NULL UNIQUE,
+    user_id      bigint                      NOT NULL REFERENCES users (id),
+    expiry_date  timestamp(6) with time zone NOT NULL,
+    used         boolean                     NOT NULL
+);
+CREATE INDEX idx_verif_token_token ON verification_tokens (token);
+CREATE INDEX idx_verif_token_user_id ON verification_tokens (user_id);
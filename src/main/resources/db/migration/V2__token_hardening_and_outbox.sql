@@ -0,0 +1,61 @@
+-- Rattrapage des évolutions appliquées jusqu'ici par ddl-auto=update et RefreshTokenHashMigration :
+-- version de compte, refresh tokens hachés + familles de rotation, index de purge,
+-- outbox des emails, clés de signature JWT.
+-- Idempotent : une base déjà (partiellement) mise à jour par Hibernate passe sans erreur.
+
+ALTER TABLE users ADD COLUMN IF NOT EXISTS account_version integer NOT NULL DEFAULT 0;
+
+-- Refresh tokens : selector uuid + SHA-256 du verifier (voir OpaqueTokens)
+ALTER TABLE refresh_tokens ADD COLUMN IF NOT EXISTS selector uuid;
+ALTER TABLE refresh_tokens ADD COLUMN IF NOT EXISTS token_hash bytea;
+ALTER TABLE refresh_tokens ADD COLUMN IF NOT EXISTS family_id uuid;
+
+DO $$
+BEGIN
+    IF EXISTS (SELECT 1 FROM information_schema.columns
+               WHERE table_schema = current_schema() AND table_name = 'refresh_tokens' AND column_name = 'token') THEN
+        -- Même dérivation que OpaqueTokens.parse pour un token sans '.'
+        UPDATE refresh_tokens SET
+            token_hash = sha256(convert_to(token, 'UTF8')),
+            selector = encode(substring(sha256(convert_to(token, 'UTF8')) FROM 1 FOR 16), 'hex')::uuid
+        WHERE token_hash IS NULL;
+        ALTER TABLE refresh_tokens DROP COLUMN token;
+    END IF;
+END $$;
+
+-- Chaque token existant devient sa propre famille de rotation
+UPDATE refresh_tokens SET family_id = selector WHERE family_id IS NULL;
+
+ALTER TABLE refresh_tokens ALTER COLUMN selector SET NOT NULL;
+ALTER TABLE refresh_tokens ALTER COLUMN token_hash SET NOT NULL;
+ALTER TABLE refresh_tokens ALTER COLUMN family_id SET NOT NULL;
+
+CREATE UNIQUE INDEX IF NOT EXISTS idx_refresh_token_selector ON refresh_tokens (selector);
+CREATE INDEX IF NOT EXISTS idx_refresh_token_family_id ON refresh_tokens (family_id);
+
+-- Purge par lots (TokenReaper) : parcours keyset sur (expiry_date, id)
+CREATE INDEX IF NOT EXISTS idx_refresh_token_expiry ON refresh_tokens (expiry_date, id);
+CREATE INDEX IF NOT EXISTS idx_verif_token_expiry ON verification_tokens (expiry_date, id);
+
+CREATE TABLE IF NOT EXISTS mail_outbox (
+    id               bigint GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    recipient        varchar(255)                NOT NULL,
+    subject          varchar(998)                NOT NULL,
+    body             text                        NOT NULL,
+    status           varchar(16)                 NOT NULL CHECK (status IN ('PENDING', 'SENT', 'FAILED')),
+    attempts         integer                     NOT NULL,
+    next_attempt_at  timestamp(6) with time zone NOT NULL,
+    created_at       timestamp(6) with time zone NOT NULL,
+    sent_at          timestamp(6) with time zone,
+    last_error       varchar(1000)
+);
+CREATE INDEX IF NOT EXISTS idx_mail_outbox_status_next ON mail_outbox (status, next_attempt_at);
+
+CREATE TABLE IF NOT EXISTS jwt_signing_keys (
+    kid          varchar(64)                 PRIMARY KEY,
+    algorithm    varchar(16)                 NOT NULL,
+    public_key   bytea                       NOT NULL,
+    private_key  bytea                       NOT NULL,
+    created_at   timestamp(6) with time zone NOT NULL
+);
+CREATE INDEX IF NOT EXISTS idx_jwt_signing_keys_alg_created ON jwt_signing_keys (algorithm, created_at);
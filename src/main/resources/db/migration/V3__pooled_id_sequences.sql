@@ -0,0 +1,26 @@
+-- Passage des colonnes IDENTITY à des séquences pooled (INCREMENT BY = allocationSize des entités).
+-- Avec IDENTITY, Hibernate doit exécuter chaque INSERT immédiatement pour connaître l'id,
+-- ce qui désactive le batching JDBC. Avec une séquence, un nextval réserve 50 ids.
+--
+-- setval(..., max(id) + 50, false) : le prochain nextval renvoie max(id) + 50 et l'optimiseur
+-- pooled d'Hibernate utilise la plage ]max(id), max(id) + 50], sans collision avec l'existant.
+
+ALTER TABLE users ALTER COLUMN id DROP IDENTITY IF EXISTS;
+CREATE SEQUENCE IF NOT EXISTS users_seq INCREMENT BY 50;
+SELECT setval('users_seq', COALESCE((SELECT max(id) FROM users), 0) + 50, false);
+
+ALTER TABLE roles ALTER COLUMN id DROP IDENTITY IF EXISTS;
+CREATE SEQUENCE IF NOT EXISTS roles_seq INCREMENT BY 50;
+SELECT setval('roles_seq', COALESCE((SELECT max(id) FROM roles), 0) + 50, false);
+
+ALTER TABLE refresh_tokens ALTER COLUMN id DROP IDENTITY IF EXISTS;
+CREATE SEQUENCE IF NOT EXISTS refresh_tokens_seq INCREMENT BY 50;
+SELECT setval('refresh_tokens_seq', COALESCE((SELECT max(id) FROM refresh_tokens), 0) + 50, false);
+
+ALTER TABLE verification_tokens ALTER COLUMN id DROP IDENTITY IF EXISTS;
+CREATE SEQUENCE IF NOT EXISTS verification_tokens_seq INCREMENT BY 50;
+SELECT setval('verification_tokens_seq', COALESCE((SELECT max(id) FROM verification_tokens), 0) + 50, false);
+
+ALTER TABLE mail_outbox ALTER COLUMN id DROP IDENTITY IF EXISTS;
+CREATE SEQUENCE IF NOT EXISTS mail_outbox_seq INCREMENT BY 50;
+SELECT setval('mail_outbox_seq', COALESCE((SELECT max(id) FROM mail_outbox), 0) + 50, false);
@@ -0,0 +1,2 @@
+-- Dernier refresh de session (écrit en différé par UserActivityTracker, comme last_login)
+ALTER TABLE users ADD COLUMN IF NOT EXISTS last_refresh_at timestamp(6) with time zone;
@@ -0,0 +1,15 @@
+-- Invalidations propagées entre nœuds (InvalidationBus -> NOTIFY idp_invalidation -> InvalidationListener).
+-- Écrites dans la transaction du changement : un événement n'est visible (et notifié) qu'au commit.
+-- subject : email (USER), selector / family_id (REFRESH_*), user id (REFRESH_USER) ou jti (ACCESS_TOKEN)
+CREATE TABLE IF NOT EXISTS invalidation_events (
+    id          bigint GENERATED ALWAYS AS IDENTITY PRIMARY KEY,
+    type        varchar(16)                 NOT NULL
+                CHECK (type IN ('USER', 'REFRESH_TOKEN', 'REFRESH_FAMILY', 'REFRESH_USER', 'ACCESS_TOKEN')),
+    subject     varchar(255)                NOT NULL,
+    expires_at  timestamp(6) with time zone,
+    origin      uuid                        NOT NULL,
+    created_at  timestamp(6) with time zone NOT NULL DEFAULT now()
+);
+
+-- Purge par TokenReaper
+CREATE INDEX IF NOT EXISTS idx_invalidation_events_created_at ON invalidation_events (created_at);
@@ -0,0 +1,9 @@
+-- Date de révocation des refresh tokens : les révoqués sont purgés après idp.reaper.revoked-grace-ms
+-- (TokenReaper), sans attendre l'expiration de leur famille.
+ALTER TABLE refresh_tokens ADD COLUMN IF NOT EXISTS revoked_at timestamp(6) with time zone;
+
+-- Révoqués existants : délai de grâce compté à partir de la migration
+UPDATE refresh_tokens SET revoked_at = now() WHERE revoked AND revoked_at IS NULL;
+
+-- Purge par lots (TokenReaper) : parcours keyset sur (revoked_at, id)
+CREATE INDEX IF NOT EXISTS idx_refresh_token_revoked_at ON refresh_tokens (revoked_at, id);
@@ -0,0 +1,78 @@
+package com.ngstars.idp.config;
+
+import com.ngstars.idp.repository.ReactiveUserRepository;
+import com.ngstars.idp.security.AccessTokenDenylist;
+import com.ngstars.idp.security.AuthMetrics;
+import com.ngstars.idp.security.CustomUserDetailsService;
+import com.ngstars.idp.security.JwtAuthenticationWebFilter;
+import com.ngstars.idp.security.JwtServerAuthenticationEntryPoint;
+import com.ngstars.idp.security.UserDetailsCache;
+import com.ngstars.idp.util.JwtTokenProvider;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.HttpMethod;
+import org.springframework.security.authentication.AuthenticationManager;
+import org.springframework.security.authentication.ProviderManager;
+import org.springframework.security.authentication.dao.DaoAuthenticationProvider;
+import org.springframework.security.config.web.server.SecurityWebFiltersOrder;
+import org.springframework.security.config.web.server.ServerHttpSecurity;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.security.web.server.SecurityWebFilterChain;
+import org.springframework.security.web.server.context.NoOpServerSecurityContextRepository;
+
+/**
+ * Configuration de sécurité de la variante WebFlux, équivalente à SecurityConfig :
+ * - On autorise les endpoints /api/auth/** et le JWKS (/.well-known/jwks.json), sauf l'introspection
+ *   (RFC 7662 §2.1 : appelant authentifié) réservée à ROLE_INTROSPECT / ROLE_ADMIN (Bearer)
+ * - Actuator : health et info anonymes; les autres endpoints (metrics) réservés à ROLE_ADMIN
+ * - Toutes les autres requêtes doivent être authentifiées (JwtAuthenticationWebFilter).
+ * - Aucun contexte de sécurité conservé entre requêtes (stateless JWT).
+ */
+@Configuration
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+public class ReactiveSecurityConfig {
+
+    @Bean
+    public SecurityWebFilterChain securityWebFilterChain(ServerHttpSecurity http,
+                                                         JwtTokenProvider jwtTokenProvider,
+                                                         UserDetailsCache userDetailsCache,
+                                                         ReactiveUserRepository userRepository,
+                                                         JwtProperties jwtProperties,
+                                                         JwtServerAuthenticationEntryPoint entryPoint,
+                                                         AccessTokenDenylist denylist,
+                                                         AuthMetrics authMetrics) {
+        JwtAuthenticationWebFilter jwtFilter = new JwtAuthenticationWebFilter(
+                jwtTokenProvider, userDetailsCache, userRepository, jwtProperties, denylist, authMetrics);
+
+        return http
+                .cors(ServerHttpSecurity.CorsSpec::disable)
+                .csrf(ServerHttpSecurity.CsrfSpec::disable)
+                .httpBasic(ServerHttpSecurity.HttpBasicSpec::disable)
+                .formLogin(ServerHttpSecurity.FormLoginSpec::disable)
+                .logout(ServerHttpSecurity.LogoutSpec::disable)
+                .securityContextRepository(NoOpServerSecurityContextRepository.getInstance())
+                .exceptionHandling(ex -> ex.authenticationEntryPoint(entryPoint))
+                .authorizeExchange(authz -> authz
+                        .pathMatchers(HttpMethod.POST, JwtAuthenticationWebFilter.INTROSPECTION_PATH).hasAnyRole("INTROSPECT", "ADMIN")
+                        .pathMatchers("/api/auth/**", "/.well-known/jwks.json", "/v3/api-docs/**", "/swagger-ui/**").permitAll()
+                        .pathMatchers("/actuator/health/**", "/actuator/info").permitAll()
+                        .pathMatchers("/actuator/**").hasRole("ADMIN")
+                        .anyExchange().authenticated())
+                .addFilterAt(jwtFilter, SecurityWebFiltersOrder.AUTHENTICATION)
+                .build();
+    }
+
+    /**
+     * AuthenticationManager bloquant, requis par AuthServiceImpl (register / verify, exécutés hors
+     * boucle d'événements); le login WebFlux passe par ReactiveAuthService.
+     */
+    @Bean
+    public AuthenticationManager authenticationManager(CustomUserDetailsService userDetailsService,
+                                                       PasswordEncoder passwordEncoder) {
+        DaoAuthenticationProvider provider = new DaoAuthenticationProvider(userDetailsService);
+        provider.setPasswordEncoder(passwordEncoder);
+        provider.setUserDetailsPasswordService(userDetailsService);
+        return new ProviderManager(provider);
+    }
+}
@@ -0,0 +1,150 @@
+package com.ngstars.idp.controller;
+
+
+import com.ngstars.idp.dto.IntrospectionBatchResponse;
+import com.ngstars.idp.dto.IntrospectionRequest;
+import com.ngstars.idp.dto.IntrospectionResponse;
+import com.ngstars.idp.dto.LoginRequest;
+import com.ngstars.idp.dto.RefreshTokenRequest;
+import com.ngstars.idp.dto.RegisterRequest;
+import com.ngstars.idp.security.AuthMetrics;
+import com.ngstars.idp.security.AuthMetrics.Operation;
+import com.ngstars.idp.security.AuthMetrics.Outcome;
+import com.ngstars.idp.service.AuthService;
+import com.ngstars.idp.service.IntrospectionService;
+import com.ngstars.idp.service.ReactiveAuthService;
+
+import java.net.InetSocketAddress;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.validation.annotation.Validated;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.util.UriComponentsBuilder;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * Endpoints d'authentification de la variante WebFlux (mêmes chemins et réponses que AuthController).
+ * - login / refresh / logout -> ReactiveAuthService (non bloquant)
+ * - register / verify -> AuthService partagé (JPA + outbox), exécuté sur boundedElastic :
+ *   peu fréquents, ils ne justifient pas une seconde implémentation
+ * - introspect -> IntrospectionService partagé, sur boundedElastic (JPA sur cache miss des refresh tokens)
+ *
+ * Mêmes métriques que AuthController : idp.auth.operation{operation, outcome}.
+ */
+@RestController
+@RequestMapping("/api/auth")
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+public class ReactiveAuthController {
+
+    private final ReactiveAuthService reactiveAuthService;
+    private final AuthService authService;
+    private final IntrospectionService introspectionService;
+    private final AuthMetrics authMetrics;
+
+    public ReactiveAuthController(ReactiveAuthService reactiveAuthService, AuthService authService,
+                                  IntrospectionService introspectionService, AuthMetrics authMetrics) {
+        this.reactiveAuthService = reactiveAuthService;
+        this.authService = authService;
+        this.introspectionService = introspectionService;
+        this.authMetrics = authMetrics;
+    }
+
+    @PostMapping("/register")
+    public Mono<ResponseEntity<?>> register(@Validated @RequestBody RegisterRequest request, ServerHttpRequest httpRequest) {
+        String appUrl = UriComponentsBuilder.fromUri(httpRequest.getURI())
+                .replacePath(null)
+                .replaceQuery(null)
+                .build()
+                .toUriString();
+        return timed(Operation.REGISTER, () -> Mono.fromCallable(() -> authService.register(request, appUrl))
+                .subscribeOn(Schedulers.boundedElastic()))
+                .map(ResponseEntity::ok);
+    }
+
+    @GetMapping("/verify")
+    public Mono<ResponseEntity<?>> verifyAccount(@RequestParam("token") String token) {
+        return timed(Operation.VERIFY, () -> Mono.fromCallable(() -> authService.verifyAccount(token))
+                        .subscribeOn(Schedulers.boundedElastic()),
+                ok -> ok ? Outcome.SUCCESS : Outcome.REJECTED)
+                .map(ok -> ok
+                        ? ResponseEntity.ok(Map.of("message", "Compte vérifié"))
+                        : ResponseEntity.badRequest().body(Map.of("message", "Token invalide ou expiré")));
+    }
+
+    @PostMapping("/login")
+    public Mono<ResponseEntity<?>> login(@Validated @RequestBody LoginRequest request, ServerHttpRequest httpRequest) {
+        String deviceInfo = httpRequest.getHeaders().getFirst(HttpHeaders.USER_AGENT);
+        // Adresse client (derrière un proxy : server.forward-headers-strategy)
+        InetSocketAddress remote = httpRequest.getRemoteAddress();
+        String clientIp = remote == null || remote.getAddress() == null ? null : remote.getAddress().getHostAddress();
+        return timed(Operation.LOGIN, () -> reactiveAuthService.login(request, deviceInfo, clientIp))
+                .map(ResponseEntity::ok);
+    }
+
+    @PostMapping("/refresh-token")
+    public Mono<ResponseEntity<?>> refreshToken(@Validated @RequestBody RefreshTokenRequest req) {
+        return timed(Operation.REFRESH, () -> reactiveAuthService.refreshToken(req.getRefreshToken()))
+                .map(ResponseEntity::ok);
+    }
+
+    @PostMapping("/logout")
+    public Mono<ResponseEntity<?>> logout(@Validated @RequestBody RefreshTokenRequest req,
+                                          @RequestHeader(value = HttpHeaders.AUTHORIZATION, required = false) String authorization) {
+        return timed(Operation.LOGOUT, () -> reactiveAuthService.logout(req.getRefreshToken(), bearerToken(authorization)))
+                .then(Mono.fromSupplier(() -> ResponseEntity.ok(Map.of("message", "Déconnecté"))));
+    }
+
+    /**
+     * Introspection RFC 7662 (formulaire : token, token_type_hint); WebFlux ne lie pas les champs
+     * de formulaire aux @RequestParam, d'où la lecture via getFormData.
+     * Appelant authentifié (Bearer portant ROLE_INTROSPECT ou ROLE_ADMIN, cf. ReactiveSecurityConfig).
+     */
+    @PostMapping(value = "/introspect", consumes = MediaType.APPLICATION_FORM_URLENCODED_VALUE)
+    public Mono<ResponseEntity<IntrospectionResponse>> introspect(ServerWebExchange exchange) {
+        return timed(Operation.INTROSPECT, () -> exchange.getFormData()
+                .publishOn(Schedulers.boundedElastic())
+                .map(form -> introspectionService.introspect(form.getFirst("token"))))
+                .map(ResponseEntity::ok);
+    }
+
+    @PostMapping(value = "/introspect", consumes = MediaType.APPLICATION_JSON_VALUE)
+    public Mono<ResponseEntity<IntrospectionBatchResponse>> introspectBatch(@Validated @RequestBody IntrospectionRequest request) {
+        return timed(Operation.INTROSPECT, () -> Mono.fromCallable(() -> introspectionService.introspectAll(request.getTokens()))
+                .subscribeOn(Schedulers.boundedElastic()))
+                .map(results -> ResponseEntity.ok(new IntrospectionBatchResponse(results)));
+    }
+
+    private static String bearerToken(String authorization) {
+        if (authorization != null && authorization.startsWith("Bearer ")) {
+            return authorization.substring(7);
+        }
+        return null;
+    }
+
+    private <T> Mono<T> timed(Operation operation, Supplier<Mono<T>> call) {
+        return timed(operation, call, value -> Outcome.SUCCESS);
+    }
+
+    /**
+     * Chronométrage de l'abonnement au signal terminal (une annulation n'est pas enregistrée).
+     * Mono vide (logout) = succès.
+     */
+    private <T> Mono<T> timed(Operation operation, Supplier<Mono<T>> call, Function<T, Outcome> outcomeOfValue) {
+        return Mono.defer(() -> {
+            long start = System.nanoTime();
+            return call.get()
+                    .doOnSuccess(value -> authMetrics.record(operation,
+                            value == null ? Outcome.SUCCESS : outcomeOfValue.apply(value), start))
+                    .doOnError(ex -> authMetrics.record(operation, AuthMetrics.outcomeOf(ex), start));
+        });
+    }
+}
@@ -0,0 +1,28 @@
+package com.ngstars.idp.controller;
+
+
+import com.ngstars.idp.security.JwtServerAuthenticationEntryPoint;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.AuthenticationException;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.RestControllerAdvice;
+
+import java.util.Map;
+
+/**
+ * Échecs d'authentification des endpoints WebFlux : même réponse que la pile servlet, où ces
+ * exceptions aboutissent à JwtAuthenticationEntryPoint (401 { status, message }).
+ */
+@RestControllerAdvice
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+public class ReactiveAuthExceptionHandler {
+
+    @ExceptionHandler({AuthenticationException.class, IllegalArgumentException.class, IllegalStateException.class})
+    public ResponseEntity<Map<String, Object>> handleAuthenticationFailure(RuntimeException ex) {
+        HttpStatus status = HttpStatus.UNAUTHORIZED;
+        return ResponseEntity.status(status)
+                .body(Map.of("status", status.value(), "message", JwtServerAuthenticationEntryPoint.MESSAGE));
+    }
+}
@@ -0,0 +1,43 @@
+package com.ngstars.idp.repository;
+
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import reactor.core.publisher.Mono;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Durée d'une méthode de repository R2DBC : idp.r2dbc.query{repository, method, state=success|error},
+ * pendant de spring.data.repository.invocations côté JPA (les repositories DatabaseClient n'en
+ * bénéficient pas). Timers créés une fois par méthode.
+ */
+final class QueryTimer {
+
+    private final Timer success;
+    private final Timer error;
+
+    QueryTimer(MeterRegistry meterRegistry, String repository, String method) {
+        this.success = timer(meterRegistry, repository, method, "success");
+        this.error = timer(meterRegistry, repository, method, "error");
+    }
+
+    private static Timer timer(MeterRegistry meterRegistry, String repository, String method, String state) {
+        return Timer.builder("idp.r2dbc.query")
+                .description("Durée des requêtes R2DBC par méthode de repository")
+                .tag("repository", repository)
+                .tag("method", method)
+                .tag("state", state)
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+    }
+
+    <T> Mono<T> time(Mono<T> query) {
+        return Mono.defer(() -> {
+            long start = System.nanoTime();
+            return query
+                    .doOnSuccess(value -> success.record(System.nanoTime() - start, TimeUnit.NANOSECONDS))
+                    .doOnError(ex -> error.record(System.nanoTime() - start, TimeUnit.NANOSECONDS));
+        });
+    }
+}
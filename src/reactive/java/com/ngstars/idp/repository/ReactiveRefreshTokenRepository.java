@@ -0,0 +1,133 @@
+package com.ngstars.idp.repository;
+
+
+import com.ngstars.idp.entity.RefreshToken;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.r2dbc.spi.Readable;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Mono;
+
+import java.time.Instant;
+import java.util.UUID;
+
+/**
+ * Accès R2DBC à refresh_tokens pour la variante WebFlux (mêmes écritures que RefreshTokenRepository).
+ *
+ * Les ids viennent de refresh_tokens_seq comme côté JPA : avec l'optimiseur pooled, Hibernate
+ * réserve (valeur - 49 .. valeur] pour chaque nextval; utiliser directement la valeur obtenue
+ * ne chevauche donc jamais un bloc réservé par Hibernate.
+ */
+@Repository
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+public class ReactiveRefreshTokenRepository {
+
+    /**
+     * Token + utilisateur + rôles en un aller-retour : de quoi recalculer les claims du nouvel access token.
+     */
+    private static final String FIND_BY_SELECTOR =
+            "SELECT t.id AS token_id, t.selector, t.token_hash, t.family_id, t.expiry_date, t.revoked, t.device_info, "
+                    + "u.id, u.email, u.enabled, u.account_version, "
+                    + "array_remove(array_agg(r.id), NULL) AS role_ids, "
+                    + "array_remove(array_agg(r.name), NULL) AS role_names "
+                    + "FROM refresh_tokens t "
+                    + "JOIN users u ON u.id = t.user_id "
+                    + "LEFT JOIN user_roles ur ON ur.user_id = u.id "
+                    + "LEFT JOIN roles r ON r.id = ur.role_id "
+                    + "WHERE t.selector = :selector "
+                    + "GROUP BY t.id, u.id";
+
+    private static final String INSERT =
+            "INSERT INTO refresh_tokens (id, selector, token_hash, family_id, user_id, expiry_date, revoked, device_info) "
+                    + "VALUES (nextval('refresh_tokens_seq'), :selector, :tokenHash, :familyId, :userId, :expiryDate, false, :deviceInfo) "
+                    + "RETURNING id";
+
+    private static final String REVOKE = "UPDATE refresh_tokens SET revoked = true, revoked_at = now() WHERE id = :id";
+    private static final String REVOKE_IF_ACTIVE = "UPDATE refresh_tokens SET revoked = true, revoked_at = now() WHERE id = :id AND revoked = false";
+    private static final String REVOKE_FAMILY = "UPDATE refresh_tokens SET revoked = true, revoked_at = now() WHERE family_id = :familyId AND revoked = false";
+
+    private static final String NAME = "ReactiveRefreshTokenRepository";
+
+    private final DatabaseClient databaseClient;
+    private final QueryTimer findBySelectorTimer;
+    private final QueryTimer insertTimer;
+    private final QueryTimer revokeTimer;
+    private final QueryTimer revokeIfActiveTimer;
+    private final QueryTimer revokeFamilyTimer;
+
+    public ReactiveRefreshTokenRepository(DatabaseClient databaseClient, MeterRegistry meterRegistry) {
+        this.databaseClient = databaseClient;
+        this.findBySelectorTimer = new QueryTimer(meterRegistry, NAME, "findBySelector");
+        this.insertTimer = new QueryTimer(meterRegistry, NAME, "insert");
+        this.revokeTimer = new QueryTimer(meterRegistry, NAME, "revoke");
+        this.revokeIfActiveTimer = new QueryTimer(meterRegistry, NAME, "revokeIfActive");
+        this.revokeFamilyTimer = new QueryTimer(meterRegistry, NAME, "revokeFamily");
+    }
+
+    /**
+     * Token trouvé par selector, utilisateur (sans mot de passe) et rôles renseignés.
+     */
+    public Mono<RefreshToken> findBySelector(UUID selector) {
+        return findBySelectorTimer.time(databaseClient.sql(FIND_BY_SELECTOR)
+                .bind("selector", selector)
+                .map(ReactiveRefreshTokenRepository::toRefreshToken)
+                .one());
+    }
+
+    /**
+     * Insère le token (selector, token_hash, family_id, user, expiry, device renseignés) et retourne
+     * le même objet avec son id.
+     */
+    public Mono<RefreshToken> insert(RefreshToken rt) {
+        DatabaseClient.GenericExecuteSpec spec = databaseClient.sql(INSERT)
+                .bind("selector", rt.getSelector())
+                .bind("tokenHash", rt.getTokenHash())
+                .bind("familyId", rt.getFamilyId())
+                .bind("userId", rt.getUser().getId())
+                .bind("expiryDate", rt.getExpiryDate());
+        spec = rt.getDeviceInfo() == null
+                ? spec.bindNull("deviceInfo", String.class)
+                : spec.bind("deviceInfo", rt.getDeviceInfo());
+        return insertTimer.time(spec.map(row -> row.get("id", Long.class)).one())
+                .map(id -> {
+                    rt.setId(id);
+                    return rt;
+                });
+    }
+
+    public Mono<Long> revoke(Long id) {
+        return revokeTimer.time(update(REVOKE, "id", id));
+    }
+
+    /**
+     * Révocation conditionnelle : 0 si le token était déjà révoqué (un seul refresh gagnant).
+     */
+    public Mono<Long> revokeIfActive(Long id) {
+        return revokeIfActiveTimer.time(update(REVOKE_IF_ACTIVE, "id", id));
+    }
+
+    public Mono<Long> revokeFamily(UUID familyId) {
+        return revokeFamilyTimer.time(update(REVOKE_FAMILY, "familyId", familyId));
+    }
+
+    private Mono<Long> update(String sql, String name, Object value) {
+        return databaseClient.sql(sql)
+                .bind(name, value)
+                .fetch()
+                .rowsUpdated();
+    }
+
+    private static RefreshToken toRefreshToken(Readable row) {
+        RefreshToken rt = new RefreshToken();
+        rt.setId(row.get("token_id", Long.class));
+        rt.setSelector(row.get("selector", UUID.class));
+        rt.setTokenHash(row.get("token_hash", byte[].class));
+        rt.setFamilyId(row.get("family_id", UUID.class));
+        rt.setExpiryDate(row.get("expiry_date", Instant.class));
+        rt.setRevoked(Boolean.TRUE.equals(row.get("revoked", Boolean.class)));
+        rt.setDeviceInfo(row.get("device_info", String.class));
+        rt.setUser(ReactiveUserRepository.toUser(row, false));
+        return rt;
+    }
+}
@@ -0,0 +1,102 @@
+package com.ngstars.idp.repository;
+
+
+import com.ngstars.idp.entity.Role;
+import com.ngstars.idp.entity.User;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.r2dbc.spi.Readable;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Mono;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Accès R2DBC à la table users pour la variante WebFlux (mêmes requêtes que UserRepository).
+ * Les entités retournées sont de simples objets détachés (aucun contexte de persistance).
+ */
+@Repository
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+public class ReactiveUserRepository {
+
+    /**
+     * Utilisateur + rôles en un aller-retour (équivalent du fetch join de findWithRolesByEmail).
+     */
+    private static final String FIND_WITH_ROLES_BY_EMAIL =
+            "SELECT u.id, u.email, u.password, u.enabled, u.account_version, "
+                    + "array_remove(array_agg(r.id), NULL) AS role_ids, "
+                    + "array_remove(array_agg(r.name), NULL) AS role_names "
+                    + "FROM users u "
+                    + "LEFT JOIN user_roles ur ON ur.user_id = u.id "
+                    + "LEFT JOIN roles r ON r.id = ur.role_id "
+                    + "WHERE u.email = :email "
+                    + "GROUP BY u.id";
+
+    private static final String REPLACE_PASSWORD_HASH =
+            "UPDATE users SET password = :newPassword WHERE id = :id AND password = :oldPassword";
+
+    private static final String NAME = "ReactiveUserRepository";
+
+    private final DatabaseClient databaseClient;
+    private final QueryTimer findWithRolesByEmailTimer;
+    private final QueryTimer replacePasswordHashTimer;
+
+    public ReactiveUserRepository(DatabaseClient databaseClient, MeterRegistry meterRegistry) {
+        this.databaseClient = databaseClient;
+        this.findWithRolesByEmailTimer = new QueryTimer(meterRegistry, NAME, "findWithRolesByEmail");
+        this.replacePasswordHashTimer = new QueryTimer(meterRegistry, NAME, "replacePasswordHash");
+    }
+
+    public Mono<User> findWithRolesByEmail(String email) {
+        return findWithRolesByEmailTimer.time(databaseClient.sql(FIND_WITH_ROLES_BY_EMAIL)
+                .bind("email", email)
+                .map(row -> toUser(row, true))
+                .one());
+    }
+
+    /**
+     * Remplace le hash uniquement s'il n'a pas changé entre-temps; retourne le nombre de lignes modifiées.
+     */
+    public Mono<Long> replacePasswordHash(Long id, String oldPassword, String newPassword) {
+        return replacePasswordHashTimer.time(databaseClient.sql(REPLACE_PASSWORD_HASH)
+                .bind("newPassword", newPassword)
+                .bind("id", id)
+                .bind("oldPassword", oldPassword)
+                .fetch()
+                .rowsUpdated());
+    }
+
+    /**
+     * Lignes issues d'une requête exposant id, email, enabled, account_version, role_ids, role_names
+     * (et password si présent).
+     */
+    static User toUser(Readable row, boolean withPassword) {
+        User user = new User();
+        user.setId(row.get("id", Long.class));
+        user.setEmail(row.get("email", String.class));
+        if (withPassword) {
+            user.setPassword(row.get("password", String.class));
+        }
+        user.setEnabled(Boolean.TRUE.equals(row.get("enabled", Boolean.class)));
+        Integer version = row.get("account_version", Integer.class);
+        user.setAccountVersion(version == null ? 0 : version);
+        user.setRoles(toRoles(row.get("role_ids", Long[].class), row.get("role_names", String[].class)));
+        return user;
+    }
+
+    private static Set<Role> toRoles(Long[] ids, String[] names) {
+        Set<Role> roles = new HashSet<>();
+        if (ids == null || names == null) {
+            return roles;
+        }
+        for (int i = 0; i < Math.min(ids.length, names.length); i++) {
+            Role role = new Role();
+            role.setId(ids[i]);
+            role.setName(names[i]);
+            roles.add(role);
+        }
+        return roles;
+    }
+}
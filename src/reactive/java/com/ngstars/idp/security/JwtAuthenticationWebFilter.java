@@ -0,0 +1,154 @@
+package com.ngstars.idp.security;
+
+
+import com.ngstars.idp.config.JwtProperties;
+import com.ngstars.idp.repository.ReactiveUserRepository;
+import com.ngstars.idp.util.JwtTokenProvider;
+import com.ngstars.idp.util.JwtValidationResult;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.context.ReactiveSecurityContextHolder;
+import org.springframework.util.StringUtils;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.server.WebFilterChain;
+import reactor.core.publisher.Mono;
+import reactor.util.context.Context;
+
+/**
+ * Équivalent WebFlux de JwtAuthenticationFilter :
+ * - Ignore les endpoints /api/auth/**, sauf l'introspection (appelant authentifié, RFC 7662 §2.1)
+ * - Extrait le token JWT du header Authorization
+ * - Valide le token et extrait ses claims en un seul parsing via JwtTokenProvider
+ * - Refuse un token révoqué avant expiration (jti dans AccessTokenDenylist)
+ * - Reconstruit le principal depuis les claims (mode TOKEN) ou le charge via UserDetailsCache
+ *   et R2DBC (mode DATABASE, ou token sans claims uid/roles)
+ * - Mode TOKEN : refuse un token dont le claim "ver" n'est plus la version courante du compte
+ *   (lue dans UserDetailsCache si présente; R2DBC seulement si le compte a changé depuis
+ *   l'émission du token, claims crus sinon)
+ * - Place l'Authentication dans le contexte Reactor (ReactiveSecurityContextHolder) si tout est OK
+ * - Compte les refus par motif (AuthMetrics : idp.auth.filter.rejected)
+ *
+ * Pas un bean : instancié par ReactiveSecurityConfig à la position AUTHENTICATION de la chaîne
+ * de sécurité (un WebFilter déclaré en bean serait aussi appliqué hors de cette chaîne).
+ */
+public class JwtAuthenticationWebFilter implements WebFilter {
+
+    private static final Logger logger = LoggerFactory.getLogger(JwtAuthenticationWebFilter.class);
+
+    /** Seul endpoint de /api/auth/** à authentifier (ROLE_INTROSPECT ou ROLE_ADMIN). */
+    public static final String INTROSPECTION_PATH = "/api/auth/introspect";
+
+    private final JwtTokenProvider jwtTokenProvider;
+    private final UserDetailsCache userDetailsCache;
+    private final ReactiveUserRepository userRepository;
+    private final JwtProperties jwtProperties;
+    private final AccessTokenDenylist denylist;
+    private final AuthMetrics authMetrics;
+
+    public JwtAuthenticationWebFilter(JwtTokenProvider jwtTokenProvider,
+                                      UserDetailsCache userDetailsCache,
+                                      ReactiveUserRepository userRepository,
+                                      JwtProperties jwtProperties,
+                                      AccessTokenDenylist denylist,
+                                      AuthMetrics authMetrics) {
+        this.jwtTokenProvider = jwtTokenProvider;
+        this.userDetailsCache = userDetailsCache;
+        this.userRepository = userRepository;
+        this.jwtProperties = jwtProperties;
+        this.denylist = denylist;
+        this.authMetrics = authMetrics;
+    }
+
+    /**
+     * Récupère le token Bearer depuis le header Authorization.
+     */
+    private String resolveToken(ServerHttpRequest request) {
+        String bearer = request.getHeaders().getFirst(HttpHeaders.AUTHORIZATION);
+        if (StringUtils.hasText(bearer) && bearer.startsWith("Bearer ")) {
+            return bearer.substring(7);
+        }
+        return null;
+    }
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
+        // Sauter la validation JWT pour les endpoints d'authentification (hors introspection)
+        String path = exchange.getRequest().getPath().pathWithinApplication().value();
+        if (path.startsWith("/api/auth/") && !path.equals(INTROSPECTION_PATH)) {
+            return chain.filter(exchange);
+        }
+
+        String token = resolveToken(exchange.getRequest());
+        if (token == null) {
+            return chain.filter(exchange);
+        }
+        JwtValidationResult result = jwtTokenProvider.validateAndExtract(token);
+        if (!result.isValid()) {
+            logger.debug("JWT rejeté : {}", result.getFailure());
+            authMetrics.recordRejected(result.getFailure());
+            return chain.filter(exchange);
+        }
+        JwtValidationResult.TokenClaims claims = result.getClaims();
+        if (denylist.isRevoked(claims.getId(), claims.getExpiration())) {
+            logger.debug("JWT rejeté : {}", JwtValidationResult.Failure.REVOKED);
+            authMetrics.recordRejected(JwtValidationResult.Failure.REVOKED);
+            return chain.filter(exchange);
+        }
+
+        return resolvePrincipal(claims)
+                .map(userDetails -> ReactiveSecurityContextHolder.withAuthentication(
+                        new UsernamePasswordAuthenticationToken(userDetails, null, userDetails.getAuthorities())))
+                .onErrorResume(ex -> {
+                    // Ne pas interrompre la chaîne — laisser le contexte de sécurité vide.
+                    logger.debug("Impossible d'authentifier l'utilisateur via JWT : {}", ex.getMessage());
+                    authMetrics.recordPrincipalUnavailable();
+                    return Mono.empty();
+                })
+                .defaultIfEmpty(Context.empty())
+                .flatMap(context -> chain.filter(exchange).contextWrite(context));
+    }
+
+    /**
+     * Principal depuis les claims en mode TOKEN, si le claim "ver" est toujours la version courante
+     * du compte (vérifiée seulement si elle est en cache ou si le compte a changé depuis l'émission
+     * du token); sinon chargement de l'utilisateur.
+     */
+    private Mono<CustomUserDetails> resolvePrincipal(JwtValidationResult.TokenClaims claims) {
+        if (jwtProperties.getPrincipalSource() == JwtProperties.PrincipalSource.TOKEN) {
+            CustomUserDetails fromClaims = CustomUserDetails.fromClaims(claims);
+            if (fromClaims != null) {
+                CustomUserDetails cached = userDetailsCache.getIfPresent(claims.getSubject());
+                Mono<CustomUserDetails> current;
+                if (cached != null) {
+                    current = Mono.just(cached);
+                } else if (userDetailsCache.changedSince(claims.getSubject(), claims.getIssuedAt())) {
+                    current = loadUser(claims.getSubject());
+                } else {
+                    return Mono.just(fromClaims);
+                }
+                return current.flatMap(state -> {
+                    if (fromClaims.matchesAccountState(state)) {
+                        return Mono.just(fromClaims);
+                    }
+                    logger.debug("JWT rejeté : {}", JwtValidationResult.Failure.STALE);
+                    authMetrics.recordRejected(JwtValidationResult.Failure.STALE);
+                    return Mono.empty();
+                });
+            }
+        }
+        return loadUser(claims.getSubject());
+    }
+
+    private Mono<CustomUserDetails> loadUser(String email) {
+        if (userDetailsCache.isKnownMissing(email)) {
+            return Mono.empty();
+        }
+        return Mono.fromFuture(() -> userDetailsCache.getAsync(email, key -> userRepository.findWithRolesByEmail(key)
+                .map(CustomUserDetails::new)
+                .toFuture()));
+    }
+}
@@ -0,0 +1,59 @@
+package com.ngstars.idp.security;
+
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.security.core.AuthenticationException;
+import org.springframework.security.web.server.ServerAuthenticationEntryPoint;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Mono;
+
+/**
+ * Équivalent WebFlux de JwtAuthenticationEntryPoint : même réponse JSON { status, message }
+ * lorsqu'une ressource protégée est demandée sans authentification valide.
+ */
+@Component
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+public class JwtServerAuthenticationEntryPoint implements ServerAuthenticationEntryPoint {
+
+    public static final String MESSAGE = "Accès non autorisé - authentification requise";
+
+    private final byte[] body;
+
+    public JwtServerAuthenticationEntryPoint() throws JsonProcessingException {
+        this.body = new ObjectMapper().writeValueAsBytes(new ErrorResponse(HttpStatus.UNAUTHORIZED.value(), MESSAGE));
+    }
+
+    @Override
+    public Mono<Void> commence(ServerWebExchange exchange, AuthenticationException ex) {
+        ServerHttpResponse response = exchange.getResponse();
+        response.setStatusCode(HttpStatus.UNAUTHORIZED);
+        response.getHeaders().setContentType(MediaType.APPLICATION_JSON);
+        DataBuffer buffer = response.bufferFactory().wrap(body);
+        return response.writeWith(Mono.just(buffer));
+    }
+
+    private static class ErrorResponse {
+        private final int status;
+        private final String message;
+
+        public ErrorResponse(int status, String message) {
+            this.status = status;
+            this.message = message;
+        }
+
+        public int getStatus() {
+            return status;
+        }
+
+        public String getMessage() {
+            return message;
+        }
+    }
+}
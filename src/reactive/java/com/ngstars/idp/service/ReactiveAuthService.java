@@ -0,0 +1,21 @@
+package com.ngstars.idp.service;
+
+
+import com.ngstars.idp.dto.AuthResponse;
+import com.ngstars.idp.dto.LoginRequest;
+import reactor.core.publisher.Mono;
+
+/**
+ * Variante non bloquante d'AuthService pour les endpoints chauds (login, refresh, logout) :
+ * même contrat (AuthResponse), mêmes règles (anti brute-force, rotation par famille).
+ */
+public interface ReactiveAuthService {
+    Mono<AuthResponse> login(LoginRequest request, String deviceInfo, String clientIp);
+    Mono<AuthResponse> refreshToken(String refreshToken);
+
+    /**
+     * Révoque le refresh token et, s'il est fourni et valide, l'access token (jti) jusqu'à son expiration.
+     */
+    Mono<Void> logout(String refreshToken, String accessToken);
+
+}
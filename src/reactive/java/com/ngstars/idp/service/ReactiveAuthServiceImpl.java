@@ -0,0 +1,319 @@
+package com.ngstars.idp.service;
+
+
+import com.ngstars.idp.config.JwtProperties;
+import com.ngstars.idp.dto.AuthResponse;
+import com.ngstars.idp.dto.LoginRequest;
+import com.ngstars.idp.entity.RefreshToken;
+import com.ngstars.idp.entity.User;
+import com.ngstars.idp.repository.ReactiveRefreshTokenRepository;
+import com.ngstars.idp.repository.ReactiveUserRepository;
+import com.ngstars.idp.security.AccessTokenDenylist;
+import com.ngstars.idp.security.CustomUserDetails;
+import com.ngstars.idp.security.IntrospectionCache;
+import com.ngstars.idp.security.LoginThrottle;
+import com.ngstars.idp.security.LoginThrottledException;
+import com.ngstars.idp.security.OffloadingPasswordEncoder;
+import com.ngstars.idp.security.UserDetailsCache;
+import com.ngstars.idp.util.IssuedAccessToken;
+import com.ngstars.idp.util.JwtTokenProvider;
+import com.ngstars.idp.util.JwtValidationResult;
+import com.ngstars.idp.util.OpaqueTokens;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.security.authentication.BadCredentialsException;
+import org.springframework.security.authentication.DisabledException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.reactive.TransactionalOperator;
+import reactor.core.publisher.Mono;
+
+import java.time.Instant;
+import java.util.UUID;
+
+/**
+ * Implémentation WebFlux + R2DBC de ReactiveAuthService.
+ *
+ * Aucun appel bloquant sur la boucle d'événements :
+ * - utilisateur : UserDetailsCache (partagé avec la pile servlet), chargement R2DBC sur miss
+ * - mot de passe : pool de hachage borné (OffloadingPasswordEncoder.matchesAsync), 503 si saturé
+ * - refresh tokens : R2DBC; rotation (révocation conditionnelle + émission) dans une transaction R2DBC
+ * - last_login / last_refresh_at : UserActivityTracker (mémoire, écrit en différé)
+ *
+ * Mêmes règles que AuthServiceImpl : LoginThrottle avant tout hachage, hash factice pour un
+ * email inconnu (pas d'énumération par le temps de réponse), re-hachage des encodages obsolètes,
+ * réutilisation d'un token révoqué = révocation de la famille. Chaque révocation invalide le
+ * cache d'introspection une fois validée et est publiée aux autres nœuds (ReactiveInvalidationBus).
+ */
+@Service
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+public class ReactiveAuthServiceImpl implements ReactiveAuthService {
+
+    private static final Logger log = LoggerFactory.getLogger(ReactiveAuthServiceImpl.class);
+
+    private static final String UNKNOWN_USER_PASSWORD = "userNotFoundPassword";
+
+    private final ReactiveUserRepository userRepository;
+    private final ReactiveRefreshTokenRepository refreshTokenRepository;
+    private final UserDetailsCache userDetailsCache;
+    private final OffloadingPasswordEncoder passwordEncoder;
+    private final JwtTokenProvider jwtTokenProvider;
+    private final JwtProperties jwtProperties;
+    private final LoginThrottle loginThrottle;
+    private final UserActivityTracker userActivityTracker;
+    private final TransactionalOperator transactionalOperator;
+    private final IntrospectionCache introspectionCache;
+    private final AccessTokenDenylist accessTokenDenylist;
+    private final ReactiveInvalidationBus invalidationBus;
+
+    /**
+     * Hash factice comparé quand l'email est inconnu (calculé au premier besoin).
+     */
+    private volatile String unknownUserHash;
+
+    public ReactiveAuthServiceImpl(ReactiveUserRepository userRepository,
+                                   ReactiveRefreshTokenRepository refreshTokenRepository,
+                                   UserDetailsCache userDetailsCache,
+                                   OffloadingPasswordEncoder passwordEncoder,
+                                   JwtTokenProvider jwtTokenProvider,
+                                   JwtProperties jwtProperties,
+                                   LoginThrottle loginThrottle,
+                                   UserActivityTracker userActivityTracker,
+                                   TransactionalOperator transactionalOperator,
+                                   IntrospectionCache introspectionCache,
+                                   AccessTokenDenylist accessTokenDenylist,
+                                   ReactiveInvalidationBus invalidationBus) {
+        this.userRepository = userRepository;
+        this.refreshTokenRepository = refreshTokenRepository;
+        this.userDetailsCache = userDetailsCache;
+        this.passwordEncoder = passwordEncoder;
+        this.jwtTokenProvider = jwtTokenProvider;
+        this.jwtProperties = jwtProperties;
+        this.loginThrottle = loginThrottle;
+        this.userActivityTracker = userActivityTracker;
+        this.transactionalOperator = transactionalOperator;
+        this.introspectionCache = introspectionCache;
+        this.accessTokenDenylist = accessTokenDenylist;
+        this.invalidationBus = invalidationBus;
+    }
+
+    /**
+     * Login : au plus une lecture (utilisateur + rôles, sur cache miss) et une écriture (INSERT du refresh token).
+     */
+    @Override
+    public Mono<AuthResponse> login(LoginRequest request, String deviceInfo, String clientIp) {
+        String email = request.getEmail();
+        return Mono.defer(() -> {
+                    // Compte ou IP au-delà du quota d'échecs : refus avant tout hachage (429)
+                    loginThrottle.checkAllowed(email, clientIp);
+                    return loadUser(email);
+                })
+                .flatMap(principal -> authenticate(principal, request.getPassword(), clientIp))
+                .switchIfEmpty(Mono.defer(() -> rejectUnknownUser(email, request.getPassword(), clientIp)))
+                .flatMap(principal -> {
+                    Instant now = Instant.now();
+                    IssuedAccessToken accessToken = principal.issueAccessToken(jwtTokenProvider);
+                    Instant refreshExpiry = now.plusMillis(jwtProperties.getRefreshExpirationMs());
+                    return issueRefreshToken(userReference(principal.getId()), UUID.randomUUID(), refreshExpiry, deviceInfo)
+                            .map(rt -> {
+                                userActivityTracker.recordLogin(principal.getId(), now);
+                                return new AuthResponse(accessToken.getToken(), rt.getToken(), accessToken.getExpiresAt());
+                            });
+                });
+    }
+
+    /**
+     * Utilisateur depuis le cache partagé; vide si l'email est inconnu.
+     */
+    private Mono<CustomUserDetails> loadUser(String email) {
+        if (userDetailsCache.isKnownMissing(email)) {
+            return Mono.empty();
+        }
+        return Mono.fromFuture(() -> userDetailsCache.getAsync(email, key -> userRepository.findWithRolesByEmail(key)
+                        .map(CustomUserDetails::new)
+                        .toFuture()))
+                .switchIfEmpty(Mono.fromRunnable(() -> userDetailsCache.markMissing(email)));
+    }
+
+    /**
+     * Mêmes contrôles, dans le même ordre, que DaoAuthenticationProvider (verrouillage, activation,
+     * mot de passe), puis re-hachage si l'encodage stocké est obsolète.
+     */
+    private Mono<CustomUserDetails> authenticate(CustomUserDetails principal, String rawPassword, String clientIp) {
+        if (loginThrottle.isAccountLocked(principal.getUsername())) {
+            // Verrouillé entre checkAllowed et le chargement de l'utilisateur (échecs concurrents)
+            return Mono.error(new LoginThrottledException(loginThrottle.retryAfterSeconds(principal.getUsername())));
+        }
+        if (!principal.isEnabled()) {
+            return Mono.error(new DisabledException("Compte non vérifié. Vérifiez votre email."));
+        }
+        return Mono.fromFuture(() -> passwordEncoder.matchesAsync(rawPassword, principal.getPassword()))
+                .flatMap(matches -> {
+                    if (!matches) {
+                        loginThrottle.recordFailure(principal.getUsername(), clientIp);
+                        return Mono.error(new BadCredentialsException("Identifiants invalides"));
+                    }
+                    loginThrottle.recordSuccess(principal.getUsername());
+                    return upgradeEncoding(principal, rawPassword);
+                });
+    }
+
+    private Mono<CustomUserDetails> upgradeEncoding(CustomUserDetails principal, String rawPassword) {
+        if (!passwordEncoder.upgradeEncoding(principal.getPassword())) {
+            return Mono.just(principal);
+        }
+        return Mono.fromFuture(() -> passwordEncoder.encodeAsync(rawPassword))
+                .flatMap(encoded -> userRepository.replacePasswordHash(principal.getId(), principal.getPassword(), encoded)
+                        .map(updated -> {
+                            if (updated == 0) {
+                                return principal;
+                            }
+                            userDetailsCache.evict(principal.getUsername());
+                            return principal.withPassword(encoded);
+                        }))
+                .onErrorResume(ex -> {
+                    // Le login reste valide; le re-hachage sera retenté au prochain login
+                    log.warn("Re-hachage du mot de passe de l'utilisateur {} échoué : {}", principal.getId(), ex.getMessage());
+                    return Mono.just(principal);
+                });
+    }
+
+    /**
+     * Email inconnu : un hachage factice (même coût qu'un compte existant) puis refus.
+     */
+    private Mono<CustomUserDetails> rejectUnknownUser(String email, String rawPassword, String clientIp) {
+        String dummy = unknownUserHash;
+        Mono<String> hash = dummy != null
+                ? Mono.just(dummy)
+                : Mono.fromFuture(() -> passwordEncoder.encodeAsync(UNKNOWN_USER_PASSWORD))
+                        .doOnNext(encoded -> unknownUserHash = encoded);
+        return hash.flatMap(encoded -> Mono.fromFuture(() -> passwordEncoder.matchesAsync(rawPassword, encoded)))
+                .then(Mono.defer(() -> {
+                    loginThrottle.recordFailure(email, clientIp);
+                    return Mono.error(new BadCredentialsException("Identifiants invalides"));
+                }));
+    }
+
+    /**
+     * Refresh : rotation dans la famille; un token révoqué présenté à nouveau révoque toute la famille.
+     * Chaque révocation est validée même si la requête est refusée (autocommit hors rotation).
+     */
+    @Override
+    public Mono<AuthResponse> refreshToken(String refreshTokenStr) {
+        return findByToken(refreshTokenStr)
+                .switchIfEmpty(Mono.error(() -> new IllegalArgumentException("Refresh token introuvable")))
+                .flatMap(rt -> {
+                    if (rt.isRevoked()) {
+                        log.warn("Réutilisation d'un refresh token révoqué (famille {}) : révocation de la famille", rt.getFamilyId());
+                        return revokeFamily(rt.getFamilyId())
+                                .doOnSuccess(revoked -> introspectionCache.evictRefreshFamily(rt.getFamilyId()))
+                                .then(invalidationBus.refreshFamilyRevoked(rt.getFamilyId()))
+                                .then(Mono.error(new IllegalArgumentException("Refresh token révoqué")));
+                    }
+                    if (rt.isExpired()) {
+                        return refreshTokenRepository.revoke(rt.getId())
+                                .doOnSuccess(revoked -> introspectionCache.evictRefreshToken(rt.getSelector()))
+                                .then(invalidationBus.refreshTokenRevoked(rt.getSelector()))
+                                .then(Mono.error(new IllegalArgumentException("Refresh token expiré")));
+                    }
+                    return rotate(rt)
+                            .switchIfEmpty(Mono.error(() -> new IllegalArgumentException("Refresh token révoqué")))
+                            .map(next -> {
+                                User user = rt.getUser();
+                                IssuedAccessToken newAccess = new CustomUserDetails(user).issueAccessToken(jwtTokenProvider);
+                                userActivityTracker.recordRefresh(user.getId(), Instant.now());
+                                return new AuthResponse(newAccess.getToken(), next.getToken(), newAccess.getExpiresAt());
+                            });
+                });
+    }
+
+    /**
+     * Révocation conditionnelle + émission du successeur (même famille, même expiration) en une
+     * transaction. Vide si le token était déjà révoqué (rejeu / refresh concurrent) : la famille
+     * est alors révoquée. Événement d'invalidation écrit dans la même transaction, cache
+     * d'introspection invalidé après commit.
+     */
+    private Mono<RefreshToken> rotate(RefreshToken current) {
+        return refreshTokenRepository.revokeIfActive(current.getId())
+                .flatMap(updated -> {
+                    if (updated == 0) {
+                        log.warn("Refresh token déjà utilisé (rotation concurrente ou rejeu), famille {}", current.getFamilyId());
+                        return revokeFamily(current.getFamilyId())
+                                .then(invalidationBus.refreshFamilyRevoked(current.getFamilyId()))
+                                .then(Mono.<RefreshToken>empty());
+                    }
+                    return invalidationBus.refreshTokenRevoked(current.getSelector())
+                            .then(issueRefreshToken(current.getUser(), current.getFamilyId(),
+                                    current.getExpiryDate(), current.getDeviceInfo()));
+                })
+                .as(transactionalOperator::transactional)
+                .doOnSuccess(next -> {
+                    if (next != null) {
+                        introspectionCache.evictRefreshToken(current.getSelector());
+                    } else {
+                        introspectionCache.evictRefreshFamily(current.getFamilyId());
+                    }
+                });
+    }
+
+    /**
+     * Logout : révoque le refresh token fourni (si présent) et l'access token présenté.
+     */
+    @Override
+    public Mono<Void> logout(String refreshTokenStr, String accessToken) {
+        Mono<Void> accessTokenRevoked = Mono.empty();
+        if (accessToken != null) {
+            JwtValidationResult result = jwtTokenProvider.validateAndExtract(accessToken);
+            if (result.isValid()) {
+                accessTokenDenylist.revoke(result.getClaims().getId(), result.getClaims().getExpiration());
+                accessTokenRevoked = invalidationBus.accessTokenRevoked(result.getClaims().getId(),
+                        result.getClaims().getExpiration());
+            }
+        }
+        return findByToken(refreshTokenStr)
+                .flatMap(rt -> refreshTokenRepository.revoke(rt.getId())
+                        .doOnSuccess(revoked -> introspectionCache.evictRefreshToken(rt.getSelector()))
+                        .then(invalidationBus.refreshTokenRevoked(rt.getSelector())))
+                .then(accessTokenRevoked);
+    }
+
+    /**
+     * Recherche par selector puis comparaison en temps constant du hash (comme TokenServiceImpl.findByToken).
+     */
+    private Mono<RefreshToken> findByToken(String token) {
+        OpaqueTokens.Parsed parsed = OpaqueTokens.parse(token);
+        if (parsed == null) {
+            return Mono.empty();
+        }
+        return refreshTokenRepository.findBySelector(parsed.getSelector())
+                .filter(rt -> parsed.matches(rt.getTokenHash()));
+    }
+
+    private Mono<RefreshToken> issueRefreshToken(User user, UUID familyId, Instant expiryDate, String deviceInfo) {
+        OpaqueTokens.Generated generated = OpaqueTokens.generate();
+        RefreshToken rt = new RefreshToken();
+        rt.setSelector(generated.getSelector());
+        rt.setTokenHash(generated.getVerifierHash());
+        rt.setToken(generated.getValue()); // valeur en clair renvoyée au client, non persistée
+        rt.setFamilyId(familyId);
+        rt.setUser(user);
+        rt.setExpiryDate(expiryDate);
+        rt.setRevoked(false);
+        rt.setDeviceInfo(deviceInfo);
+        return refreshTokenRepository.insert(rt);
+    }
+
+    private Mono<Long> revokeFamily(UUID familyId) {
+        return refreshTokenRepository.revokeFamily(familyId)
+                .doOnNext(revoked -> log.info("Famille de refresh tokens {} révoquée ({} tokens)", familyId, revoked));
+    }
+
+    /**
+     * Référence par id (seul l'id sert à l'INSERT), équivalent de UserService.getReference.
+     */
+    private static User userReference(Long id) {
+        User user = new User();
+        user.setId(id);
+        return user;
+    }
+}
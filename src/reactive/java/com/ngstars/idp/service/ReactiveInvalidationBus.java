@@ -0,0 +1,69 @@
+package com.ngstars.idp.service;
+
+
+import com.ngstars.idp.config.InvalidationProperties;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.time.Instant;
+import java.util.UUID;
+
+/**
+ * Pendant R2DBC d'InvalidationBus pour la variante WebFlux : même table, même canal, même id de
+ * nœud (InvalidationListener ignore donc aussi ces événements sur le nœud émetteur).
+ *
+ * Un événement = un INSERT ... RETURNING + pg_notify en un aller-retour, sur la connexion de la
+ * transaction R2DBC en cours s'il y en a une (rotation), en autocommit sinon.
+ */
+@Component
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+public class ReactiveInvalidationBus {
+
+    private static final String INSERT =
+            "WITH inserted AS ("
+                    + " INSERT INTO invalidation_events (type, subject, expires_at, origin)"
+                    + " VALUES (:type, :subject, to_timestamp(CAST(:expiresAt AS bigint)), :origin)"
+                    + " RETURNING id)"
+                    + " SELECT pg_notify(:channel, :payload) FROM inserted";
+
+    private final DatabaseClient databaseClient;
+    private final InvalidationBus bus;
+    private final InvalidationProperties props;
+
+    public ReactiveInvalidationBus(DatabaseClient databaseClient, InvalidationBus bus, InvalidationProperties props) {
+        this.databaseClient = databaseClient;
+        this.bus = bus;
+        this.props = props;
+    }
+
+    public Mono<Void> refreshTokenRevoked(UUID selector) {
+        return publish(InvalidationBus.Type.REFRESH_TOKEN, selector.toString(), null);
+    }
+
+    public Mono<Void> refreshFamilyRevoked(UUID familyId) {
+        return publish(InvalidationBus.Type.REFRESH_FAMILY, familyId.toString(), null);
+    }
+
+    public Mono<Void> accessTokenRevoked(String jti, Instant expiresAt) {
+        if (jti == null || expiresAt == null) {
+            return Mono.empty();
+        }
+        return publish(InvalidationBus.Type.ACCESS_TOKEN, jti, expiresAt.getEpochSecond());
+    }
+
+    private Mono<Void> publish(InvalidationBus.Type type, String subject, Long expiresAt) {
+        if (!props.isEnabled()) {
+            return Mono.empty();
+        }
+        DatabaseClient.GenericExecuteSpec spec = databaseClient.sql(INSERT)
+                .bind("type", type.name())
+                .bind("subject", subject)
+                .bind("origin", bus.getNodeId())
+                .bind("channel", props.getChannel())
+                .bind("payload", bus.getNodeId().toString());
+        spec = expiresAt == null ? spec.bindNull("expiresAt", Long.class) : spec.bind("expiresAt", expiresAt);
+        return spec.then().doOnSuccess(done -> bus.recordPublished(type));
+    }
+}
@@ -0,0 +1,135 @@
+package com.ngstars.idp.security;
+
+import com.ngstars.idp.config.JwtProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class AccessTokenDenylistTest {
+
+    // TTL de 60 s en tranches de 10 s : anneau de 60 / 10 + 2 = 8 seaux (80 s)
+    private static final long BUCKET_SECONDS = 10;
+    private static final long RING_SECONDS = 8 * BUCKET_SECONDS;
+
+    private SimpleMeterRegistry meterRegistry;
+    private AccessTokenDenylist denylist;
+
+    @BeforeEach
+    void setUp() {
+        JwtProperties props = new JwtProperties();
+        props.setExpirationMs(60_000);
+        props.setDenylistBucketSeconds(BUCKET_SECONDS);
+        meterRegistry = new SimpleMeterRegistry();
+        denylist = new AccessTokenDenylist(props, meterRegistry);
+    }
+
+    @Test
+    void revokedTokenIsReportedUntilExpiration() {
+        Instant exp = Instant.now().plusSeconds(30);
+
+        denylist.revoke("6V3evi4Wak8HtH8PXSOuSQ", exp);
+
+        assertThat(denylist.isRevoked("6V3evi4Wak8HtH8PXSOuSQ", exp)).isTrue();
+        assertThat(denylist.isRevoked("6V3evi4Wak8HtH8PXSOuSQ", exp.getEpochSecond())).isTrue();
+        assertThat(denylist.isRevoked("Xk0PzL2mQ9aV7bN4cR1tYw", exp)).isFalse();
+        // Le jti est cherché dans la tranche de son exp
+        assertThat(denylist.isRevoked("6V3evi4Wak8HtH8PXSOuSQ", exp.plusSeconds(BUCKET_SECONDS))).isFalse();
+        assertThat(denylist.isRevoked(null, exp)).isFalse();
+        assertThat(denylist.isRevoked("6V3evi4Wak8HtH8PXSOuSQ", (Instant) null)).isFalse();
+        assertThat(size()).isEqualTo(1);
+    }
+
+    @Test
+    void revokingTwiceKeepsOneEntry() {
+        Instant exp = Instant.now().plusSeconds(30);
+
+        denylist.revoke("6V3evi4Wak8HtH8PXSOuSQ", exp);
+        denylist.revoke("6V3evi4Wak8HtH8PXSOuSQ", exp);
+
+        assertThat(size()).isEqualTo(1);
+    }
+
+    @Test
+    void expiredOrIncompleteTokensAreIgnored() {
+        Instant past = Instant.now().minusSeconds(5);
+
+        denylist.revoke("6V3evi4Wak8HtH8PXSOuSQ", past);
+        denylist.revoke(null, Instant.now().plusSeconds(30));
+        denylist.revoke("Xk0PzL2mQ9aV7bN4cR1tYw", null);
+
+        assertThat(denylist.isRevoked("6V3evi4Wak8HtH8PXSOuSQ", past)).isFalse();
+        assertThat(size()).isZero();
+    }
+
+    @Test
+    void bucketIsReusedOnceItsSliceHasPassed() {
+        Instant exp = Instant.now().plusSeconds(30);
+        // Même seau de l'anneau, tranche suivante
+        Instant later = exp.plusSeconds(RING_SECONDS);
+
+        denylist.revoke("6V3evi4Wak8HtH8PXSOuSQ", exp);
+        denylist.revoke("Xk0PzL2mQ9aV7bN4cR1tYw", later);
+
+        assertThat(denylist.isRevoked("Xk0PzL2mQ9aV7bN4cR1tYw", later)).isTrue();
+        // Ancienne tranche abandonnée en bloc
+        assertThat(denylist.isRevoked("6V3evi4Wak8HtH8PXSOuSQ", exp)).isFalse();
+        assertThat(denylist.isRevoked("6V3evi4Wak8HtH8PXSOuSQ", later)).isFalse();
+        assertThat(size()).isEqualTo(1);
+    }
+
+    @Test
+    void bucketGrowsBeyondInitialCapacity() {
+        Instant exp = Instant.now().plusSeconds(30);
+        List<String> jtis = new ArrayList<>();
+        for (int i = 0; i < 1_000; i++) {
+            jtis.add(UUID.randomUUID().toString());
+        }
+
+        jtis.forEach(jti -> denylist.revoke(jti, exp));
+
+        assertThat(jtis).allMatch(jti -> denylist.isRevoked(jti, exp));
+        assertThat(denylist.isRevoked(UUID.randomUUID().toString(), exp)).isFalse();
+        assertThat(size()).isEqualTo(1_000);
+    }
+
+    @Test
+    void keyOfDecodesFirst64BitsOfBase64UrlJti() {
+        // jti de 22 caractères : les 11 premiers (66 bits) sont décodés, les 2 bits de tête sortent du long
+        assertThat(AccessTokenDenylist.keyOf("AAAAAAAAAABAAAAAAAAAAA")).isEqualTo(1L);
+        assertThat(AccessTokenDenylist.keyOf("AAAAAAAAAA-AAAAAAAAAAA")).isEqualTo(62L);
+        assertThat(AccessTokenDenylist.keyOf("AAAAAAAAAB_AAAAAAAAAAA")).isEqualTo(127L);
+        assertThat(AccessTokenDenylist.keyOf("__________8AAAAAAAAAAA")).isEqualTo(-4L);
+        // Seuls les 11 premiers caractères comptent
+        assertThat(AccessTokenDenylist.keyOf("6V3evi4Wak8HtH8PXSOuSQ"))
+                .isEqualTo(AccessTokenDenylist.keyOf("6V3evi4Wak8zzzzzzzzzzz"));
+        // 0 est réservé aux cases vides
+        assertThat(AccessTokenDenylist.keyOf("AAAAAAAAAAAAAAAAAAAAAA")).isEqualTo(1L);
+    }
+
+    @Test
+    void keyOfHashesOtherFormats() {
+        String uuid = "3f1c9a2e-8b4d-4e6f-9a0b-1c2d3e4f5a6b";
+
+        assertThat(AccessTokenDenylist.keyOf(uuid)).isEqualTo(AccessTokenDenylist.keyOf(uuid));
+        // Les 11 premiers caractères d'un UUID sont du base64url valide : haché en entier, pas décodé
+        assertThat(AccessTokenDenylist.keyOf(uuid))
+                .isNotEqualTo(AccessTokenDenylist.keyOf("3f1c9a2e-8b4d-4e6f-9a0b-1c2d3e4f5a6c"));
+        // Caractère hors base64url, ou longueur différente
+        assertThat(AccessTokenDenylist.keyOf("6V3evi4Wak8HtH8PXSOu.Q"))
+                .isNotEqualTo(AccessTokenDenylist.keyOf("6V3evi4Wak8HtH8PXSOu.R"));
+        assertThat(AccessTokenDenylist.keyOf("abc.def.ghi.jkl")).isNotEqualTo(AccessTokenDenylist.keyOf("abc.def.ghi.jkm"));
+        assertThat(AccessTokenDenylist.keyOf("short")).isNotEqualTo(AccessTokenDenylist.keyOf("shorT"));
+        assertThat(AccessTokenDenylist.keyOf("")).isNotZero();
+    }
+
+    private double size() {
+        return meterRegistry.get("idp.auth.denylist.size").gauge().value();
+    }
+}
@@ -0,0 +1,100 @@
+package com.ngstars.idp.security;
+
+import com.ngstars.idp.config.LoginThrottleProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.Instant;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class InMemoryLoginAttemptStoreTest {
+
+    // Fenêtre de 60 s en 6 buckets de 10 s; départ aligné sur un bucket
+    private static final Instant START = Instant.ofEpochMilli(1_700_000_000_000L);
+
+    private MutableClock clock;
+    private InMemoryLoginAttemptStore store;
+
+    @BeforeEach
+    void setUp() {
+        LoginThrottleProperties props = new LoginThrottleProperties();
+        props.setWindowMs(60_000);
+        props.setBuckets(6);
+        clock = new MutableClock(START);
+        store = new InMemoryLoginAttemptStore(props, new SimpleMeterRegistry(), clock);
+    }
+
+    @Test
+    void countsFailuresPerKey() {
+        assertThat(store.recordFailure("a")).isEqualTo(1);
+        assertThat(store.recordFailure("a")).isEqualTo(2);
+        assertThat(store.recordFailure("b")).isEqualTo(1);
+
+        assertThat(store.failures("a")).isEqualTo(2);
+        assertThat(store.failures("b")).isEqualTo(1);
+        assertThat(store.failures("unknown")).isZero();
+    }
+
+    @Test
+    void failuresLeaveTheWindowBucketByBucket() {
+        store.recordFailure("a");
+        store.recordFailure("a");
+        clock.advance(Duration.ofSeconds(30));
+        store.recordFailure("a");
+
+        clock.advance(Duration.ofSeconds(29)); // t = 59 s : tout est encore dans la fenêtre
+        assertThat(store.failures("a")).isEqualTo(3);
+
+        clock.advance(Duration.ofSeconds(1)); // t = 60 s : le premier bucket sort
+        assertThat(store.failures("a")).isEqualTo(1);
+
+        clock.advance(Duration.ofSeconds(30)); // t = 90 s : plus rien
+        assertThat(store.failures("a")).isZero();
+    }
+
+    @Test
+    void staleSlotIsResetWhenReused() {
+        store.recordFailure("a");
+        store.recordFailure("a");
+
+        // Même slot circulaire (t + 60 s), bucket différent : le compteur repart de 1
+        clock.advance(Duration.ofSeconds(60));
+        assertThat(store.recordFailure("a")).isEqualTo(1);
+        assertThat(store.failures("a")).isEqualTo(1);
+    }
+
+    @Test
+    void retryAfterIsTimeUntilCountDropsBelowLimit() {
+        clock.advance(Duration.ofSeconds(5));
+        store.recordFailure("a");
+        store.recordFailure("a");
+        clock.advance(Duration.ofSeconds(20)); // t = 25 s
+        store.recordFailure("a");
+
+        // Sous la limite : pas d'attente
+        assertThat(store.retryAfterMs("a", 4)).isZero();
+        // Limite 3 : il suffit que le bucket [0 s, 10 s[ sorte, à t = 60 s
+        assertThat(store.retryAfterMs("a", 3)).isEqualTo(35_000);
+        // Limite 1 : il faut aussi que le bucket [20 s, 30 s[ sorte, à t = 80 s
+        assertThat(store.retryAfterMs("a", 1)).isEqualTo(55_000);
+
+        clock.advance(Duration.ofSeconds(35));
+        assertThat(store.failures("a")).isEqualTo(1);
+        assertThat(store.retryAfterMs("a", 3)).isZero();
+        assertThat(store.retryAfterMs("unknown", 1)).isZero();
+    }
+
+    @Test
+    void resetClearsKey() {
+        store.recordFailure("a");
+        store.recordFailure("b");
+
+        store.reset("a");
+
+        assertThat(store.failures("a")).isZero();
+        assertThat(store.failures("b")).isEqualTo(1);
+    }
+}
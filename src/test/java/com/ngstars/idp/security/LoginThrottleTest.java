@@ -0,0 +1,128 @@
+package com.ngstars.idp.security;
+
+import com.ngstars.idp.config.LoginThrottleProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.Instant;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatCode;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class LoginThrottleTest {
+
+    private static final Instant START = Instant.ofEpochMilli(1_700_000_000_000L);
+    private static final String EMAIL = "user@example.com";
+    private static final String IP = "10.0.0.1";
+
+    private LoginThrottleProperties props;
+    private MutableClock clock;
+    private SimpleMeterRegistry meterRegistry;
+    private LoginThrottle throttle;
+
+    @BeforeEach
+    void setUp() {
+        props = new LoginThrottleProperties();
+        props.setWindowMs(60_000);
+        props.setBuckets(6);
+        props.setMaxFailuresPerAccount(3);
+        props.setMaxFailuresPerIp(5);
+        clock = new MutableClock(START);
+        meterRegistry = new SimpleMeterRegistry();
+        throttle = new LoginThrottle(new InMemoryLoginAttemptStore(props, meterRegistry, clock), props, meterRegistry);
+    }
+
+    @Test
+    void accountIsLockedAtLimitWithRetryAfter() {
+        throttle.recordFailure(EMAIL, IP);
+        throttle.recordFailure(EMAIL, IP);
+        assertThat(throttle.isAccountLocked(EMAIL)).isFalse();
+        assertThatCode(() -> throttle.checkAllowed(EMAIL, IP)).doesNotThrowAnyException();
+
+        clock.advance(Duration.ofSeconds(15));
+        throttle.recordFailure(EMAIL, IP);
+
+        assertThat(throttle.isAccountLocked(EMAIL)).isTrue();
+        // Verrou levé quand le bucket [0 s, 10 s[ quitte la fenêtre, à t = 60 s
+        assertThat(throttle.retryAfterSeconds(EMAIL)).isEqualTo(45);
+        assertThatThrownBy(() -> throttle.checkAllowed(EMAIL, "10.0.0.2"))
+                .isInstanceOfSatisfying(LoginThrottledException.class,
+                        ex -> assertThat(ex.getRetryAfterSeconds()).isEqualTo(45));
+        assertThat(meterRegistry.get("idp.login.throttled").tag("scope", "account").counter().count()).isEqualTo(1);
+    }
+
+    @Test
+    void accountKeyIsCaseAndWhitespaceInsensitive() {
+        throttle.recordFailure("User@Example.com", null);
+        throttle.recordFailure(" user@example.com ", null);
+        throttle.recordFailure(EMAIL, null);
+
+        assertThat(throttle.isAccountLocked("USER@EXAMPLE.COM")).isTrue();
+    }
+
+    @Test
+    void lockExpiresWithWindow() {
+        for (int i = 0; i < 3; i++) {
+            throttle.recordFailure(EMAIL, IP);
+        }
+        clock.advance(Duration.ofSeconds(59));
+        assertThat(throttle.isAccountLocked(EMAIL)).isTrue();
+
+        clock.advance(Duration.ofSeconds(1));
+        assertThat(throttle.isAccountLocked(EMAIL)).isFalse();
+        assertThatCode(() -> throttle.checkAllowed(EMAIL, IP)).doesNotThrowAnyException();
+    }
+
+    @Test
+    void successResetsAccountButNotIp() {
+        for (int i = 0; i < 3; i++) {
+            throttle.recordFailure(EMAIL, IP);
+        }
+
+        throttle.recordSuccess(EMAIL);
+
+        assertThat(throttle.isAccountLocked(EMAIL)).isFalse();
+        throttle.recordFailure(EMAIL, IP);
+        throttle.recordFailure(EMAIL, IP);
+        // 5 échecs pour l'IP : quota IP atteint malgré le succès
+        assertThatThrownBy(() -> throttle.checkAllowed("other@example.com", IP))
+                .isInstanceOf(LoginThrottledException.class);
+    }
+
+    @Test
+    void ipIsThrottledAcrossAccounts() {
+        for (int i = 0; i < 5; i++) {
+            throttle.recordFailure("user" + i + "@example.com", IP);
+        }
+
+        assertThatThrownBy(() -> throttle.checkAllowed("fresh@example.com", IP))
+                .isInstanceOfSatisfying(LoginThrottledException.class,
+                        ex -> assertThat(ex.getRetryAfterSeconds()).isEqualTo(60));
+        assertThatCode(() -> throttle.checkAllowed("fresh@example.com", "10.0.0.9")).doesNotThrowAnyException();
+        assertThat(meterRegistry.get("idp.login.throttled").tag("scope", "ip").counter().count()).isEqualTo(1);
+    }
+
+    @Test
+    void retryAfterIsRoundedUpToAtLeastOneSecond() {
+        for (int i = 0; i < 3; i++) {
+            throttle.recordFailure(EMAIL, null);
+        }
+        clock.advance(Duration.ofMillis(59_999));
+
+        assertThat(throttle.retryAfterSeconds(EMAIL)).isEqualTo(1);
+    }
+
+    @Test
+    void disabledThrottleNeverBlocks() {
+        props.setEnabled(false);
+        for (int i = 0; i < 10; i++) {
+            throttle.recordFailure(EMAIL, IP);
+        }
+
+        assertThat(throttle.isAccountLocked(EMAIL)).isFalse();
+        assertThatCode(() -> throttle.checkAllowed(EMAIL, IP)).doesNotThrowAnyException();
+    }
+}
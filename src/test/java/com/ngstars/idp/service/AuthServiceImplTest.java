@@ -0,0 +1,141 @@
+package com.ngstars.idp.service;
+
+import com.ngstars.idp.config.JwtProperties;
+import com.ngstars.idp.config.VerificationProperties;
+import com.ngstars.idp.dto.AuthResponse;
+import com.ngstars.idp.entity.RefreshToken;
+import com.ngstars.idp.security.AccessTokenDenylist;
+import com.ngstars.idp.security.LoginThrottle;
+import com.ngstars.idp.util.IssuedAccessToken;
+import com.ngstars.idp.util.JwtTokenProvider;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.authentication.AuthenticationManager;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.AnnotationTransactionAttributeSource;
+import org.springframework.transaction.interceptor.TransactionAttribute;
+
+import java.time.Instant;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class AuthServiceImplTest {
+
+    private static final String PRESENTED = "presented-refresh-token";
+
+    private TokenService tokenService;
+    private JwtTokenProvider jwtTokenProvider;
+    private UserActivityTracker userActivityTracker;
+    private AuthServiceImpl authService;
+
+    @BeforeEach
+    void setUp() {
+        tokenService = mock(TokenService.class);
+        jwtTokenProvider = mock(JwtTokenProvider.class);
+        userActivityTracker = mock(UserActivityTracker.class);
+        authService = new AuthServiceImpl(mock(UserService.class), tokenService, jwtTokenProvider, new JwtProperties(),
+                mock(AuthenticationManager.class), mock(PasswordEncoder.class), mock(MailService.class),
+                mock(LoginThrottle.class), userActivityTracker, mock(AccessTokenDenylist.class),
+                mock(InvalidationBus.class), mock(AccountVerifier.class), new VerificationProperties(),
+                mock(PlatformTransactionManager.class));
+    }
+
+    @Test
+    void refreshRotatesTokenAndIssuesAccessToken() {
+        RefreshToken current = TokenServiceImplTest.refreshToken();
+        RefreshToken next = TokenServiceImplTest.refreshToken();
+        next.setToken("successor");
+        Instant expiresAt = Instant.now().plusSeconds(900);
+        IssuedAccessToken issued = mock(IssuedAccessToken.class);
+        when(issued.getToken()).thenReturn("access");
+        when(issued.getExpiresAt()).thenReturn(expiresAt);
+        when(tokenService.findByToken(PRESENTED)).thenReturn(Optional.of(current));
+        when(tokenService.rotateRefreshToken(current)).thenReturn(Optional.of(next));
+        when(jwtTokenProvider.issueAccessToken(anyString(), anyLong(), anyCollection(), anyInt())).thenReturn(issued);
+
+        AuthResponse response = authService.refreshToken(PRESENTED);
+
+        assertThat(response.getAccessToken()).isEqualTo("access");
+        assertThat(response.getRefreshToken()).isEqualTo("successor");
+        assertThat(response.getExpiresAt()).isEqualTo(expiresAt);
+        verify(jwtTokenProvider).issueAccessToken(anyString(), anyLong(), anyCollection(), anyInt());
+        verify(userActivityTracker).recordRefresh(any(), any());
+        verify(tokenService, never()).revokeRefreshTokenFamily(any());
+    }
+
+    @Test
+    void replayedRevokedTokenRevokesWholeFamily() {
+        RefreshToken revoked = TokenServiceImplTest.refreshToken();
+        revoked.setRevoked(true);
+        when(tokenService.findByToken(PRESENTED)).thenReturn(Optional.of(revoked));
+
+        assertThatThrownBy(() -> authService.refreshToken(PRESENTED))
+                .isInstanceOf(IllegalArgumentException.class);
+
+        verify(tokenService).revokeRefreshTokenFamily(revoked.getFamilyId());
+        verify(tokenService, never()).rotateRefreshToken(any());
+        verify(jwtTokenProvider, never()).issueAccessToken(anyString(), anyLong(), anyCollection(), anyInt());
+    }
+
+    @Test
+    void revocationsAreCommittedDespiteRejection() throws Exception {
+        // Les révocations (famille, token expiré) précèdent l'IllegalArgumentException : la transaction
+        // doit être validée et non annulée
+        TransactionAttribute attribute = new AnnotationTransactionAttributeSource().getTransactionAttribute(
+                AuthServiceImpl.class.getMethod("refreshToken", String.class), AuthServiceImpl.class);
+
+        assertThat(attribute).isNotNull();
+        assertThat(attribute.rollbackOn(new IllegalArgumentException("Refresh token révoqué"))).isFalse();
+        assertThat(attribute.rollbackOn(new IllegalStateException())).isTrue();
+    }
+
+    @Test
+    void concurrentRefreshLoserIsRejected() {
+        RefreshToken current = TokenServiceImplTest.refreshToken();
+        when(tokenService.findByToken(PRESENTED)).thenReturn(Optional.of(current));
+        // Rotation perdue : TokenService a révoqué la famille et ne renvoie pas de successeur
+        when(tokenService.rotateRefreshToken(current)).thenReturn(Optional.empty());
+
+        assertThatThrownBy(() -> authService.refreshToken(PRESENTED))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("révoqué");
+
+        verify(jwtTokenProvider, never()).issueAccessToken(anyString(), anyLong(), anyCollection(), anyInt());
+        verify(userActivityTracker, never()).recordRefresh(any(), any());
+    }
+
+    @Test
+    void expiredTokenIsRevokedAndRejected() {
+        RefreshToken expired = TokenServiceImplTest.refreshToken();
+        expired.setExpiryDate(Instant.now().minusSeconds(1));
+        when(tokenService.findByToken(PRESENTED)).thenReturn(Optional.of(expired));
+
+        assertThatThrownBy(() -> authService.refreshToken(PRESENTED))
+                .isInstanceOf(IllegalArgumentException.class);
+
+        verify(tokenService).revokeRefreshToken(expired);
+        verify(tokenService, never()).rotateRefreshToken(any());
+    }
+
+    @Test
+    void unknownTokenIsRejected() {
+        when(tokenService.findByToken(PRESENTED)).thenReturn(Optional.empty());
+
+        assertThatThrownBy(() -> authService.refreshToken(PRESENTED))
+                .isInstanceOf(IllegalArgumentException.class);
+
+        verify(tokenService, never()).rotateRefreshToken(any());
+    }
+}
@@ -0,0 +1,185 @@
+package com.ngstars.idp.service;
+
+import com.ngstars.idp.config.IntrospectionProperties;
+import com.ngstars.idp.config.JwtProperties;
+import com.ngstars.idp.dto.IntrospectionResponse;
+import com.ngstars.idp.entity.RefreshToken;
+import com.ngstars.idp.entity.User;
+import com.ngstars.idp.repository.SigningKeyRepository;
+import com.ngstars.idp.security.AccessTokenDenylist;
+import com.ngstars.idp.security.IntrospectionCache;
+import com.ngstars.idp.util.IssuedAccessToken;
+import com.ngstars.idp.util.JwtTokenProvider;
+import com.ngstars.idp.util.OpaqueTokens;
+import com.ngstars.idp.util.SigningKeyRing;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class IntrospectionServiceImplTest {
+
+    private static final String SECRET = "testSecretKeyForJWTTokenGenerationThatIsAtLeast512BitsLongForHS512Algorithm";
+
+    private final List<RefreshToken> stored = new ArrayList<>();
+    private User user;
+    private JwtTokenProvider jwtTokenProvider;
+    private TokenService tokenService;
+    private IntrospectionCache cache;
+    private AccessTokenDenylist denylist;
+    private IntrospectionServiceImpl service;
+
+    @BeforeEach
+    void setUp() {
+        JwtProperties jwtProperties = new JwtProperties();
+        jwtProperties.setAlgorithm("HS512");
+        jwtProperties.setSecret(SECRET);
+        jwtProperties.setExpirationMs(900_000);
+        SigningKeyRing keyRing = new SigningKeyRing(jwtProperties, mock(SigningKeyRepository.class),
+                mock(PlatformTransactionManager.class));
+        keyRing.init();
+        jwtTokenProvider = new JwtTokenProvider(jwtProperties, keyRing, new SimpleMeterRegistry());
+        jwtTokenProvider.init();
+
+        IntrospectionProperties introspectionProperties = new IntrospectionProperties();
+        introspectionProperties.setCacheEnabled(true);
+        introspectionProperties.setCacheMaxSize(1_000);
+        introspectionProperties.setCacheTtlMs(60_000);
+        cache = new IntrospectionCache(introspectionProperties, new SimpleMeterRegistry());
+        denylist = new AccessTokenDenylist(jwtProperties, new SimpleMeterRegistry());
+
+        user = new User();
+        user.setId(42L);
+        user.setEmail("user@example.com");
+        user.setEnabled(true);
+
+        // Table refresh_tokens en mémoire (stored), lue par selector comme la requête JPQL
+        tokenService = mock(TokenService.class);
+        when(tokenService.findWithUserBySelectors(anyCollection())).thenAnswer(invocation -> {
+            Collection<UUID> selectors = invocation.getArgument(0);
+            return stored.stream()
+                    .filter(rt -> selectors.contains(rt.getSelector()))
+                    .collect(Collectors.toList());
+        });
+
+        service = new IntrospectionServiceImpl(jwtTokenProvider, tokenService, cache, denylist);
+    }
+
+    @Test
+    void batchKeepsOrderAndLoadsMissingSelectorsInOneQuery() {
+        String cachedRefresh = storeRefreshToken(false);
+        service.introspect(cachedRefresh);
+        String activeRefresh = storeRefreshToken(false);
+        String revokedRefresh = storeRefreshToken(true);
+        String unknownRefresh = OpaqueTokens.generate().getValue();
+        String access = jwtTokenProvider.issueAccessToken(user.getEmail(), user.getId(), List.of("ROLE_USER"), 0).getToken();
+
+        List<IntrospectionResponse> results = service.introspectAll(Arrays.asList(
+                activeRefresh, access, cachedRefresh, "", revokedRefresh, "a.b.c", unknownRefresh, null, activeRefresh));
+
+        assertThat(results).extracting(IntrospectionResponse::isActive)
+                .containsExactly(true, true, true, false, false, false, false, false, true);
+        assertThat(results).extracting(IntrospectionResponse::getTokenType).containsExactly(
+                IntrospectionResponse.REFRESH_TOKEN, IntrospectionResponse.ACCESS_TOKEN, IntrospectionResponse.REFRESH_TOKEN,
+                null, null, null, null, null, IntrospectionResponse.REFRESH_TOKEN);
+        assertThat(results.get(1).getSubject()).isEqualTo("user@example.com");
+        assertThat(results.get(1).getRoles()).containsExactly("ROLE_USER");
+
+        // Un appel pour le premier introspect, un seul pour les selectors absents du cache du lot
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<Collection<UUID>> selectors = ArgumentCaptor.forClass(Collection.class);
+        verify(tokenService, times(2)).findWithUserBySelectors(selectors.capture());
+        assertThat(selectors.getValue()).containsExactlyInAnyOrder(
+                selector(activeRefresh), selector(revokedRefresh), selector(unknownRefresh));
+    }
+
+    @Test
+    void cachedSelectorWithAnotherVerifierIsInactive() {
+        String token = storeRefreshToken(false);
+        assertThat(service.introspect(token).isActive()).isTrue();
+        // Même selector, verifier d'un autre token
+        String other = OpaqueTokens.generate().getValue();
+        String forged = token.substring(0, token.indexOf('.')) + other.substring(other.indexOf('.'));
+
+        assertThat(service.introspect(forged)).isSameAs(IntrospectionResponse.INACTIVE);
+        assertThat(service.introspect(token).isActive()).isTrue();
+        verify(tokenService, times(1)).findWithUserBySelectors(anyCollection());
+    }
+
+    @Test
+    void unknownSelectorIsCached() {
+        String unknown = OpaqueTokens.generate().getValue();
+
+        assertThat(service.introspect(unknown)).isSameAs(IntrospectionResponse.INACTIVE);
+        assertThat(service.introspect(unknown)).isSameAs(IntrospectionResponse.INACTIVE);
+
+        verify(tokenService, times(1)).findWithUserBySelectors(anyCollection());
+        assertThat(cache.getRefresh(selector(unknown))).isSameAs(IntrospectionCache.RefreshEntry.unknown());
+    }
+
+    @Test
+    void revokedJtiMakesCachedAccessTokenInactive() {
+        IssuedAccessToken issued = jwtTokenProvider.issueAccessToken(user.getEmail(), user.getId(), List.of("ROLE_USER"), 0);
+        assertThat(service.introspect(issued.getToken()).isActive()).isTrue();
+        assertThat(cache.getAccess(OpaqueTokens.sha256(issued.getToken()), Instant.now())).isNotNull();
+
+        denylist.revoke(issued.getJti(), issued.getExpiresAt());
+
+        assertThat(service.introspect(issued.getToken())).isSameAs(IntrospectionResponse.INACTIVE);
+        verify(tokenService, never()).findWithUserBySelectors(any());
+    }
+
+    @Test
+    void expiredEntriesAreInactiveBeforeEviction() {
+        Instant expired = Instant.now().minusSeconds(1);
+        // Refresh token actif lu en base, expiré depuis (entrée encore dans le TTL du cache)
+        OpaqueTokens.Generated refresh = OpaqueTokens.generate();
+        cache.putRefresh(refresh.getSelector(), new IntrospectionCache.RefreshEntry(refresh.getVerifierHash(),
+                UUID.randomUUID(), user.getId(), new IntrospectionResponse(true, IntrospectionResponse.REFRESH_TOKEN,
+                        user.getEmail(), user.getId(), null, null, expired.getEpochSecond(), null)));
+        String access = "eyJhbGciOiJIUzUxMiJ9.e30.c2ln";
+        cache.putAccess(OpaqueTokens.sha256(access), new IntrospectionResponse(true, IntrospectionResponse.ACCESS_TOKEN,
+                user.getEmail(), user.getId(), List.of("ROLE_USER"), null, expired.getEpochSecond(), "jti"));
+
+        assertThat(service.introspect(refresh.getValue())).isSameAs(IntrospectionResponse.INACTIVE);
+        assertThat(service.introspect(access)).isSameAs(IntrospectionResponse.INACTIVE);
+        assertThat(cache.getRefresh(refresh.getSelector())).isNotNull();
+        verify(tokenService, never()).findWithUserBySelectors(any());
+    }
+
+    private String storeRefreshToken(boolean revoked) {
+        OpaqueTokens.Generated generated = OpaqueTokens.generate();
+        RefreshToken rt = new RefreshToken();
+        rt.setSelector(generated.getSelector());
+        rt.setTokenHash(generated.getVerifierHash());
+        rt.setFamilyId(UUID.randomUUID());
+        rt.setUser(user);
+        rt.setExpiryDate(Instant.now().plus(7, ChronoUnit.DAYS));
+        rt.setRevoked(revoked);
+        stored.add(rt);
+        return generated.getValue();
+    }
+
+    private static UUID selector(String token) {
+        return OpaqueTokens.parse(token).getSelector();
+    }
+}
@@ -0,0 +1,279 @@
+package com.ngstars.idp.service;
+
+import com.ngstars.idp.config.InvalidationProperties;
+import com.ngstars.idp.security.AccessTokenDenylist;
+import com.ngstars.idp.security.IntrospectionCache;
+import com.ngstars.idp.security.UserDetailsCache;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.PreparedStatementCreator;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.RowMapper;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class InvalidationListenerTest {
+
+    private static final UUID SELF = UUID.randomUUID();
+    private static final UUID OTHER_NODE = UUID.randomUUID();
+
+    /**
+     * Ligne de invalidation_events.
+     */
+    private static final class Row {
+        final long id;
+        final String type;
+        final String subject;
+        final Instant expiresAt;
+        final UUID origin;
+
+        Row(long id, String type, String subject, Instant expiresAt, UUID origin) {
+            this.id = id;
+            this.type = type;
+            this.subject = subject;
+            this.expiresAt = expiresAt;
+            this.origin = origin;
+        }
+    }
+
+    /**
+     * Paramètres d'une lecture SELECT_EVENTS : id > from OR id = ANY (gaps) LIMIT limit.
+     */
+    private static final class Fetch {
+        long from;
+        Set<Long> gaps;
+        int limit;
+    }
+
+    // Table invalidation_events en mémoire (validées = visibles), lue par le JdbcTemplate simulé
+    private final List<Row> table = new ArrayList<>();
+    private final List<Fetch> fetches = new ArrayList<>();
+    private Fetch current;
+    private Row row;
+
+    private InvalidationProperties props;
+    private JdbcTemplate jdbcTemplate;
+    private UserDetailsCache userDetailsCache;
+    private IntrospectionCache introspectionCache;
+    private AccessTokenDenylist denylist;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        props = new InvalidationProperties();
+        props.setBatchSize(500);
+        props.setGapTimeoutMs(60_000);
+        userDetailsCache = mock(UserDetailsCache.class);
+        introspectionCache = mock(IntrospectionCache.class);
+        denylist = mock(AccessTokenDenylist.class);
+
+        // Une seule ligne courante (row) exposée par le ResultSet, comme un curseur JDBC
+        ResultSet rs = mock(ResultSet.class);
+        when(rs.getLong("id")).thenAnswer(invocation -> row.id);
+        when(rs.getString("type")).thenAnswer(invocation -> row.type);
+        when(rs.getString("subject")).thenAnswer(invocation -> row.subject);
+        when(rs.getTimestamp("expires_at")).thenAnswer(invocation ->
+                row.expiresAt == null ? null : Timestamp.from(row.expiresAt));
+        when(rs.getObject("origin", UUID.class)).thenAnswer(invocation -> row.origin);
+        when(rs.getTimestamp("created_at")).thenAnswer(invocation -> Timestamp.from(Instant.now()));
+
+        PreparedStatement ps = mock(PreparedStatement.class);
+        doAnswer(invocation -> current.from = invocation.getArgument(1)).when(ps).setLong(eq(1), anyLong());
+        doAnswer(invocation -> current.limit = invocation.getArgument(1)).when(ps).setInt(eq(3), anyInt());
+        Connection con = mock(Connection.class);
+        when(con.prepareStatement(anyString())).thenReturn(ps);
+        when(con.createArrayOf(eq("bigint"), any(Object[].class))).thenAnswer(invocation -> {
+            current.gaps = Arrays.stream((Object[]) invocation.getArgument(1))
+                    .map(id -> (Long) id)
+                    .collect(Collectors.toSet());
+            return null;
+        });
+
+        jdbcTemplate = mock(JdbcTemplate.class);
+        when(jdbcTemplate.queryForObject(anyString(), eq(Long.class))).thenAnswer(invocation ->
+                table.stream().mapToLong(r -> r.id).max().orElse(0));
+        doAnswer(invocation -> {
+            RowCallbackHandler handler = invocation.getArgument(1);
+            long maxId = invocation.getArgument(2);
+            for (Row live : table) {
+                if (live.type.equals("ACCESS_TOKEN") && live.expiresAt.isAfter(Instant.now()) && live.id <= maxId) {
+                    row = live;
+                    handler.processRow(rs);
+                }
+            }
+            return null;
+        }).when(jdbcTemplate).query(anyString(), any(RowCallbackHandler.class), any());
+        when(jdbcTemplate.query(any(PreparedStatementCreator.class), any(RowMapper.class))).thenAnswer(invocation -> {
+            current = new Fetch();
+            ((PreparedStatementCreator) invocation.getArgument(0)).createPreparedStatement(con);
+            fetches.add(current);
+            RowMapper<?> mapper = invocation.getArgument(1);
+            List<Row> selected = table.stream()
+                    .filter(r -> r.id > current.from || current.gaps.contains(r.id))
+                    .sorted(Comparator.comparingLong(r -> r.id))
+                    .limit(current.limit)
+                    .collect(Collectors.toList());
+            List<Object> events = new ArrayList<>();
+            for (int i = 0; i < selected.size(); i++) {
+                row = selected.get(i);
+                events.add(mapper.mapRow(rs, i));
+            }
+            return events;
+        });
+    }
+
+    @Test
+    void startupSkipsExistingEventsAndReloadsLiveRevokedAccessTokens() {
+        Instant exp = Instant.now().plusSeconds(600);
+        insert(1, "USER", "old@example.com", OTHER_NODE);
+        table.add(new Row(2, "ACCESS_TOKEN", "liveJti", exp, OTHER_NODE));
+        table.add(new Row(3, "ACCESS_TOKEN", "expiredJti", Instant.now().minusSeconds(5), OTHER_NODE));
+        InvalidationListener listener = listener();
+
+        listener.drain();
+        listener.drain();
+
+        verify(denylist).revoke(eq("liveJti"), any(Instant.class));
+        verify(denylist, never()).revoke(eq("expiredJti"), any());
+        verify(userDetailsCache, never()).invalidate(any());
+        assertThat(fetches).hasSize(1);
+        assertThat(fetches.get(0).from).isEqualTo(3);
+    }
+
+    @Test
+    void eventsAreAppliedOnceAndCursorAdvances() {
+        InvalidationListener listener = listener();
+        listener.drain();
+        UUID family = UUID.randomUUID();
+        insert(1, "USER", "a@example.com", OTHER_NODE);
+        insert(2, "REFRESH_FAMILY", family.toString(), OTHER_NODE);
+        insert(3, "REFRESH_USER", "42", OTHER_NODE);
+
+        listener.drain();
+        listener.drain();
+
+        verify(userDetailsCache, times(1)).invalidate("a@example.com");
+        verify(introspectionCache).evictRefreshEntries(Set.of(family), Set.of(42L));
+        assertThat(fetches).extracting(fetch -> fetch.from).containsExactly(0L, 3L);
+    }
+
+    @Test
+    void eventsOfThisNodeAreIgnored() {
+        InvalidationListener listener = listener();
+        listener.drain();
+        insert(1, "USER", "mine@example.com", SELF);
+        insert(2, "ACCESS_TOKEN", "myJti", SELF);
+        insert(3, "USER", "theirs@example.com", OTHER_NODE);
+
+        listener.drain();
+        listener.drain();
+
+        verify(userDetailsCache, never()).invalidate("mine@example.com");
+        verify(denylist, never()).revoke(any(), any());
+        verify(userDetailsCache).invalidate("theirs@example.com");
+        // Les événements ignorés avancent quand même le curseur
+        assertThat(fetches.get(1).from).isEqualTo(3);
+    }
+
+    @Test
+    void skippedIdIsReReadUntilItsLateCommit() {
+        InvalidationListener listener = listener();
+        listener.drain();
+        // Id 2 attribué mais sa transaction n'est pas encore validée
+        insert(1, "USER", "a@example.com", OTHER_NODE);
+        insert(3, "USER", "c@example.com", OTHER_NODE);
+
+        listener.drain();
+        listener.drain();
+        insert(2, "USER", "b@example.com", OTHER_NODE);
+        listener.drain();
+        listener.drain();
+
+        verify(userDetailsCache).invalidate("a@example.com");
+        verify(userDetailsCache).invalidate("b@example.com");
+        verify(userDetailsCache).invalidate("c@example.com");
+        assertThat(fetches).extracting(fetch -> fetch.from).containsExactly(0L, 3L, 3L, 3L);
+        assertThat(fetches).extracting(fetch -> fetch.gaps)
+                .containsExactly(Set.of(), Set.of(2L), Set.of(2L), Set.of());
+    }
+
+    @Test
+    void skippedIdIsDroppedAfterGapTimeout() {
+        props.setGapTimeoutMs(0);
+        InvalidationListener listener = listener();
+        listener.drain();
+        insert(1, "USER", "a@example.com", OTHER_NODE);
+        insert(3, "USER", "c@example.com", OTHER_NODE);
+        listener.drain();
+
+        insert(2, "USER", "late@example.com", OTHER_NODE);
+        listener.drain();
+
+        verify(userDetailsCache, never()).invalidate("late@example.com");
+        assertThat(fetches.get(1).gaps).isEmpty();
+        assertThat(fetches.get(1).from).isEqualTo(3);
+    }
+
+    @Test
+    void fullBatchIsFollowedByAnotherRead() {
+        props.setBatchSize(2);
+        InvalidationListener listener = listener();
+        listener.drain();
+        insert(1, "USER", "a@example.com", OTHER_NODE);
+        insert(2, "USER", "b@example.com", OTHER_NODE);
+
+        listener.drain();
+
+        // Lot plein (exactement batch-size lignes) : relecture, arrêt sur le lot vide
+        assertThat(fetches).extracting(fetch -> fetch.from).containsExactly(0L, 2L);
+        assertThat(fetches).allMatch(fetch -> fetch.limit == 2);
+        verify(userDetailsCache).invalidate("a@example.com");
+        verify(userDetailsCache).invalidate("b@example.com");
+
+        insert(3, "USER", "c@example.com", OTHER_NODE);
+        listener.drain();
+
+        assertThat(fetches).hasSize(3);
+        verify(userDetailsCache).invalidate("c@example.com");
+    }
+
+    private void insert(long id, String type, String subject, UUID origin) {
+        Instant expiresAt = type.equals("ACCESS_TOKEN") ? Instant.now().plusSeconds(600) : null;
+        table.add(new Row(id, type, subject, expiresAt, origin));
+    }
+
+    private InvalidationListener listener() {
+        DataSourceProperties dataSourceProperties = new DataSourceProperties();
+        dataSourceProperties.setUrl("jdbc:postgresql://localhost:5432/idp");
+        InvalidationBus bus = mock(InvalidationBus.class);
+        when(bus.getNodeId()).thenReturn(SELF);
+        return new InvalidationListener(jdbcTemplate, dataSourceProperties, props, bus,
+                userDetailsCache, introspectionCache, denylist, new SimpleMeterRegistry());
+    }
+}
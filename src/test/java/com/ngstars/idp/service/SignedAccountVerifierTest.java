@@ -0,0 +1,161 @@
+package com.ngstars.idp.service;
+
+import com.ngstars.idp.config.VerificationProperties;
+import com.ngstars.idp.entity.User;
+import com.ngstars.idp.util.OpaqueTokens;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Base64;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class SignedAccountVerifierTest {
+
+    private static final String SECRET = "0123456789abcdef0123456789abcdef";
+
+    private User user;
+    private UserService userService;
+    private SignedAccountVerifier verifier;
+
+    @BeforeEach
+    void setUp() {
+        user = new User();
+        user.setId(42L);
+        user.setEmail("pending@example.com");
+        user.setAccountVersion(3);
+
+        // Même conditions que UserRepository.enableIfPending (UPDATE conditionnel)
+        userService = mock(UserService.class);
+        when(userService.enablePendingUser(anyLong(), anyInt(), any())).thenAnswer(invocation -> {
+            long id = invocation.getArgument(0);
+            int accountVersion = invocation.getArgument(1);
+            byte[] emailHash = invocation.getArgument(2);
+            if (id != user.getId() || user.isEnabled() || accountVersion != user.getAccountVersion()
+                    || !Arrays.equals(emailHash, Arrays.copyOf(OpaqueTokens.sha256(user.getEmail()), 16))) {
+                return false;
+            }
+            user.setEnabled(true);
+            user.setAccountVersion(user.getAccountVersion() + 1);
+            return true;
+        });
+
+        verifier = new SignedAccountVerifier(userService, properties(SECRET));
+    }
+
+    @Test
+    void validLinkEnablesAccountOnce() {
+        String token = verifier.createToken(user, Instant.now().plusSeconds(3600));
+
+        assertThat(verifier.verify(token)).isTrue();
+        assertThat(user.isEnabled()).isTrue();
+        assertThat(user.getAccountVersion()).isEqualTo(4);
+        verify(userService).enablePendingUser(eq(42L), eq(3),
+                eq(Arrays.copyOf(OpaqueTokens.sha256("pending@example.com"), 16)));
+
+        // Second usage : version de compte incrémentée par l'activation
+        assertThat(verifier.verify(token)).isFalse();
+    }
+
+    @Test
+    void linkIsRejectedAfterAccountVersionChange() {
+        String token = verifier.createToken(user, Instant.now().plusSeconds(3600));
+        user.setAccountVersion(4);
+
+        assertThat(verifier.verify(token)).isFalse();
+        assertThat(user.isEnabled()).isFalse();
+    }
+
+    @Test
+    void linkIsRejectedAfterEmailChange() {
+        String token = verifier.createToken(user, Instant.now().plusSeconds(3600));
+        user.setEmail("other@example.com");
+
+        assertThat(verifier.verify(token)).isFalse();
+        assertThat(user.isEnabled()).isFalse();
+    }
+
+    @Test
+    void expiredLinkIsRejectedWithoutTouchingTheAccount() {
+        String token = verifier.createToken(user, Instant.now().minusSeconds(1));
+
+        assertThat(verifier.verify(token)).isFalse();
+        verify(userService, never()).enablePendingUser(anyLong(), anyInt(), any());
+    }
+
+    @Test
+    void tamperedPayloadOrMacIsRejected() {
+        String token = verifier.createToken(user, Instant.now().plusSeconds(3600));
+        int dot = token.indexOf('.');
+        byte[] payload = Base64.getUrlDecoder().decode(token.substring(0, dot));
+        byte[] mac = Base64.getUrlDecoder().decode(token.substring(dot + 1));
+        Base64.Encoder encoder = Base64.getUrlEncoder().withoutPadding();
+
+        // Autre utilisateur (octet de poids faible de l'id), MAC d'origine
+        byte[] otherUser = payload.clone();
+        otherUser[8] ^= 1;
+        // Expiration prolongée (octet de poids fort de l'exp)
+        byte[] longerLife = payload.clone();
+        longerLife[9] ^= 0x10;
+        byte[] forgedMac = mac.clone();
+        forgedMac[0] ^= 1;
+
+        assertThat(verifier.verify(encoder.encodeToString(otherUser) + token.substring(dot))).isFalse();
+        assertThat(verifier.verify(encoder.encodeToString(longerLife) + token.substring(dot))).isFalse();
+        assertThat(verifier.verify(token.substring(0, dot + 1) + encoder.encodeToString(forgedMac))).isFalse();
+        assertThat(verifier.verify(token.substring(0, dot + 1) + encoder.encodeToString(Arrays.copyOf(mac, 16)))).isFalse();
+        verify(userService, never()).enablePendingUser(anyLong(), anyInt(), any());
+        assertThat(verifier.verify(token)).isTrue();
+    }
+
+    @Test
+    void linkSignedWithAnotherSecretIsRejected() {
+        SignedAccountVerifier other = new SignedAccountVerifier(userService, properties("fedcba9876543210fedcba9876543210"));
+        String token = other.createToken(user, Instant.now().plusSeconds(3600));
+
+        assertThat(verifier.verify(token)).isFalse();
+        assertThat(user.isEnabled()).isFalse();
+    }
+
+    @Test
+    void malformedTokensAreRejected() {
+        String token = verifier.createToken(user, Instant.now().plusSeconds(3600));
+        int dot = token.indexOf('.');
+
+        assertThat(verifier.verify(null)).isFalse();
+        assertThat(verifier.verify("")).isFalse();
+        assertThat(verifier.verify(token.substring(dot))).isFalse();
+        assertThat(verifier.verify(token.substring(0, dot))).isFalse();
+        assertThat(verifier.verify(token + ".x")).isFalse();
+        assertThat(verifier.verify("!!!" + token.substring(dot))).isFalse();
+        // Payload tronqué
+        assertThat(verifier.verify(token.substring(4))).isFalse();
+        verify(userService, never()).enablePendingUser(anyLong(), anyInt(), any());
+    }
+
+    @Test
+    void shortSecretIsRefused() {
+        assertThatThrownBy(() -> new SignedAccountVerifier(userService, properties("too-short")))
+                .isInstanceOf(IllegalStateException.class);
+        assertThatThrownBy(() -> new SignedAccountVerifier(userService, properties(null)))
+                .isInstanceOf(IllegalStateException.class);
+    }
+
+    private static VerificationProperties properties(String secret) {
+        VerificationProperties props = new VerificationProperties();
+        props.setMode("signed");
+        props.setSecret(secret);
+        return props;
+    }
+}
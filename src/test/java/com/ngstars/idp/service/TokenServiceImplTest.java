@@ -0,0 +1,114 @@
+package com.ngstars.idp.service;
+
+import com.ngstars.idp.config.JwtProperties;
+import com.ngstars.idp.entity.RefreshToken;
+import com.ngstars.idp.entity.User;
+import com.ngstars.idp.repository.RefreshTokenRepository;
+import com.ngstars.idp.repository.VerificationTokenRepository;
+import com.ngstars.idp.security.IntrospectionCache;
+import com.ngstars.idp.util.JwtTokenProvider;
+import com.ngstars.idp.util.OpaqueTokens;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.Optional;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class TokenServiceImplTest {
+
+    private RefreshTokenRepository refreshTokenRepository;
+    private IntrospectionCache introspectionCache;
+    private InvalidationBus invalidationBus;
+    private TokenServiceImpl tokenService;
+
+    @BeforeEach
+    void setUp() {
+        refreshTokenRepository = mock(RefreshTokenRepository.class);
+        introspectionCache = mock(IntrospectionCache.class);
+        invalidationBus = mock(InvalidationBus.class);
+        when(refreshTokenRepository.save(any(RefreshToken.class))).thenAnswer(invocation -> invocation.getArgument(0));
+        tokenService = new TokenServiceImpl(refreshTokenRepository, mock(VerificationTokenRepository.class),
+                mock(JwtTokenProvider.class), new JwtProperties(), introspectionCache, invalidationBus);
+    }
+
+    @Test
+    void rotationRevokesCurrentAndIssuesSuccessorInSameFamily() {
+        RefreshToken current = refreshToken();
+        when(refreshTokenRepository.revokeIfActive(current.getId())).thenReturn(1);
+
+        Optional<RefreshToken> next = tokenService.rotateRefreshToken(current);
+
+        assertThat(next).isPresent();
+        RefreshToken successor = next.get();
+        assertThat(successor.getFamilyId()).isEqualTo(current.getFamilyId());
+        assertThat(successor.getExpiryDate()).isEqualTo(current.getExpiryDate());
+        assertThat(successor.getUser()).isSameAs(current.getUser());
+        assertThat(successor.getDeviceInfo()).isEqualTo(current.getDeviceInfo());
+        assertThat(successor.isRevoked()).isFalse();
+        assertThat(successor.getSelector()).isNotEqualTo(current.getSelector());
+        // Le token remis au client correspond au selector / hash persistés
+        OpaqueTokens.Parsed parsed = OpaqueTokens.parse(successor.getToken());
+        assertThat(parsed.getSelector()).isEqualTo(successor.getSelector());
+        assertThat(parsed.matches(successor.getTokenHash())).isTrue();
+
+        verify(introspectionCache).evictRefreshToken(current.getSelector());
+        verify(invalidationBus).refreshTokenRevoked(current.getSelector());
+        verify(refreshTokenRepository, never()).revokeFamily(any());
+    }
+
+    @Test
+    void concurrentRotationLoserRevokesFamilyAndIssuesNothing() {
+        RefreshToken current = refreshToken();
+        // Un autre refresh a déjà révoqué le token entre la lecture et l'UPDATE conditionnel
+        when(refreshTokenRepository.revokeIfActive(current.getId())).thenReturn(0);
+
+        Optional<RefreshToken> next = tokenService.rotateRefreshToken(current);
+
+        assertThat(next).isEmpty();
+        verify(refreshTokenRepository).revokeFamily(current.getFamilyId());
+        verify(introspectionCache).evictRefreshFamily(current.getFamilyId());
+        verify(invalidationBus).refreshFamilyRevoked(current.getFamilyId());
+        verify(refreshTokenRepository, never()).save(any());
+        verify(invalidationBus, never()).refreshTokenRevoked(any());
+    }
+
+    @Test
+    void findByTokenRejectsWrongVerifier() {
+        RefreshToken stored = refreshToken();
+        OpaqueTokens.Generated generated = OpaqueTokens.generate();
+        stored.setSelector(generated.getSelector());
+        stored.setTokenHash(generated.getVerifierHash());
+        when(refreshTokenRepository.findBySelector(generated.getSelector())).thenReturn(Optional.of(stored));
+        String other = OpaqueTokens.generate().getValue();
+        String forged = generated.getValue().substring(0, generated.getValue().indexOf('.'))
+                + other.substring(other.indexOf('.'));
+
+        assertThat(tokenService.findByToken(generated.getValue())).containsSame(stored);
+        assertThat(tokenService.findByToken(forged)).isEmpty();
+        assertThat(tokenService.findByToken("not.a.token")).isEmpty();
+    }
+
+    static RefreshToken refreshToken() {
+        User user = new User();
+        user.setId(7L);
+        user.setEmail("user@example.com");
+        user.setEnabled(true);
+        RefreshToken rt = new RefreshToken();
+        rt.setId(11L);
+        rt.setSelector(UUID.randomUUID());
+        rt.setFamilyId(UUID.randomUUID());
+        rt.setUser(user);
+        rt.setExpiryDate(Instant.now().plus(30, ChronoUnit.DAYS));
+        rt.setDeviceInfo("junit");
+        return rt;
+    }
+}
@@ -0,0 +1,48 @@
+package com.ngstars.idp.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class BoundedPoolTest {
+
+    @Test
+    void releasedInstanceIsReused() {
+        AtomicInteger created = new AtomicInteger();
+        BoundedPool<Object> pool = new BoundedPool<>(2, () -> {
+            created.incrementAndGet();
+            return new Object();
+        });
+
+        Object first = pool.acquire();
+        pool.release(first);
+
+        assertThat(pool.acquire()).isSameAs(first);
+        assertThat(created).hasValue(1);
+    }
+
+    @Test
+    void emptyPoolCreatesAndFullPoolDropsInstances() {
+        AtomicInteger created = new AtomicInteger();
+        BoundedPool<Object> pool = new BoundedPool<>(2, () -> {
+            created.incrementAndGet();
+            return new Object();
+        });
+
+        // Trois emprunts simultanés : trois instances, une seule de trop rendue est abandonnée
+        Object a = pool.acquire();
+        Object b = pool.acquire();
+        Object c = pool.acquire();
+        pool.release(a);
+        pool.release(b);
+        pool.release(c);
+
+        assertThat(created).hasValue(3);
+        assertThat(pool.acquire()).isSameAs(a);
+        assertThat(pool.acquire()).isSameAs(b);
+        assertThat(pool.acquire()).isNotIn(a, b, c);
+        assertThat(created).hasValue(4);
+    }
+}
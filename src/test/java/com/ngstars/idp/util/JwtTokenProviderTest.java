@@ -0,0 +1,178 @@
+package com.ngstars.idp.util;
+
+import com.ngstars.idp.config.JwtProperties;
+import com.ngstars.idp.entity.SigningKey;
+import com.ngstars.idp.repository.SigningKeyRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.springframework.data.domain.Pageable;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class JwtTokenProviderTest {
+
+    private static final String SECRET = "testSecretKeyForJWTTokenGenerationThatIsAtLeast512BitsLongForHS512Algorithm";
+    // Guillemet, antislash, caractères de contrôle et non ASCII : échappés par appendJsonString
+    private static final String SUBJECT = "a\"b\\c\u0001\n\té@example.com";
+    private static final List<String> ROLES = List.of("ROLE_USER", "ROLE_\"QUOTED\"", "ROLE_\\ESC", "ROLE_\u001fCTL");
+
+    private final List<SigningKey> keys = new ArrayList<>();
+
+    @ParameterizedTest
+    @ValueSource(strings = {"HS512", "RS256", "ES256"})
+    void issuedTokenRoundTrips(String algorithm) {
+        JwtTokenProvider provider = provider(properties(algorithm));
+
+        IssuedAccessToken issued = provider.issueAccessToken(SUBJECT, 42L, ROLES, 7);
+        JwtValidationResult result = provider.validateAndExtract(issued.getToken());
+
+        assertThat(result.isValid()).isTrue();
+        JwtValidationResult.TokenClaims claims = result.getClaims();
+        assertThat(claims.getSubject()).isEqualTo(SUBJECT);
+        assertThat(claims.getId()).isEqualTo(issued.getJti()).hasSize(22);
+        assertThat(claims.getIssuedAt()).isEqualTo(issued.getIssuedAt());
+        assertThat(claims.getExpiration()).isEqualTo(issued.getExpiresAt());
+        assertThat(((Number) claims.get(JwtTokenProvider.CLAIM_USER_ID)).longValue()).isEqualTo(42L);
+        assertThat(claims.get(JwtTokenProvider.CLAIM_ROLES)).isEqualTo(ROLES);
+        assertThat(((Number) claims.get(JwtTokenProvider.CLAIM_ACCOUNT_VERSION)).intValue()).isEqualTo(7);
+        String header = header(issued.getToken());
+        assertThat(header).contains("\"alg\":\"" + algorithm + "\"");
+        assertThat(header.contains("\"kid\":")).isEqualTo(!algorithm.equals("HS512"));
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"HS512", "RS256", "ES256"})
+    void tamperedTokenIsRejected(String algorithm) {
+        JwtTokenProvider provider = provider(properties(algorithm));
+        String token = provider.issueAccessToken("user@example.com", 42L, List.of("ROLE_USER"), 0).getToken();
+        String[] parts = token.split("\\.");
+        String forgedClaims = Base64.getUrlEncoder().withoutPadding().encodeToString(
+                decode(parts[1]).replace("ROLE_USER", "ROLE_ADMIN").getBytes(StandardCharsets.UTF_8));
+
+        JwtValidationResult result = provider.validateAndExtract(parts[0] + "." + forgedClaims + "." + parts[2]);
+
+        assertThat(result.isValid()).isFalse();
+        assertThat(result.getFailure()).isEqualTo(JwtValidationResult.Failure.INVALID_SIGNATURE);
+    }
+
+    @Test
+    void tokenSignedWithAnotherSecretIsRejected() {
+        JwtProperties other = properties("HS512");
+        other.setSecret(SECRET.replace('t', 'T'));
+        String token = provider(other).issueAccessToken("user@example.com", 42L, List.of("ROLE_USER"), 0).getToken();
+
+        JwtValidationResult result = provider(properties("HS512")).validateAndExtract(token);
+
+        assertThat(result.getFailure()).isEqualTo(JwtValidationResult.Failure.INVALID_SIGNATURE);
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"RS256", "ES256"})
+    void keyRotationKeepsRecentTokensValid(String algorithm) throws InterruptedException {
+        JwtProperties props = properties(algorithm);
+        SigningKeyRing keyRing = new SigningKeyRing(props, repository(), mock(PlatformTransactionManager.class));
+        keyRing.init();
+        JwtTokenProvider provider = provider(props, keyRing);
+        IssuedAccessToken beforeRotation = provider.issueAccessToken(SUBJECT, 42L, ROLES, 7);
+        String firstKid = keyRing.getActiveKey().getKid();
+
+        // Rotation à chaque rafraîchissement, nouvelle clé active immédiatement
+        props.setKeyRotationIntervalMs(0);
+        Thread.sleep(2);
+        keyRing.refresh();
+        IssuedAccessToken afterRotation = provider.issueAccessToken(SUBJECT, 42L, ROLES, 7);
+
+        assertThat(keyRing.getActiveKey().getKid()).isNotEqualTo(firstKid);
+        assertThat(header(afterRotation.getToken())).contains(keyRing.getActiveKey().getKid());
+        assertThat(provider.validateAndExtract(beforeRotation.getToken()).isValid()).isTrue();
+        assertThat(provider.validateAndExtract(afterRotation.getToken()).getClaims().getSubject()).isEqualTo(SUBJECT);
+
+        // Au-delà de jwt.verification-key-count (+ clé en attente et active), l'ancienne clé n'est plus publiée
+        for (int i = 0; i < props.getVerificationKeyCount() + 2; i++) {
+            Thread.sleep(2);
+            keyRing.refresh();
+        }
+        assertThat(provider.validateAndExtract(beforeRotation.getToken()).getFailure())
+                .isEqualTo(JwtValidationResult.Failure.INVALID_SIGNATURE);
+        assertThat(provider.validateAndExtract(provider.issueAccessToken(SUBJECT, 42L, ROLES, 7).getToken()).isValid())
+                .isTrue();
+    }
+
+    @Test
+    void asymmetricProviderRejectsTokenOfAnotherAlgorithm() {
+        String rsToken = provider(properties("RS256")).issueAccessToken("user@example.com", 42L, List.of("ROLE_USER"), 0).getToken();
+
+        JwtValidationResult result = provider(properties("ES256")).validateAndExtract(rsToken);
+
+        assertThat(result.getFailure()).isEqualTo(JwtValidationResult.Failure.UNSUPPORTED);
+    }
+
+    private static JwtProperties properties(String algorithm) {
+        JwtProperties props = new JwtProperties();
+        props.setAlgorithm(algorithm);
+        props.setSecret(SECRET);
+        props.setExpirationMs(900_000);
+        props.setKeyActivationDelayMs(0);
+        return props;
+    }
+
+    private JwtTokenProvider provider(JwtProperties props) {
+        SigningKeyRing keyRing = new SigningKeyRing(props, repository(), mock(PlatformTransactionManager.class));
+        keyRing.init();
+        return provider(props, keyRing);
+    }
+
+    private static JwtTokenProvider provider(JwtProperties props, SigningKeyRing keyRing) {
+        JwtTokenProvider provider = new JwtTokenProvider(props, keyRing, new SimpleMeterRegistry());
+        provider.init();
+        return provider;
+    }
+
+    /**
+     * Table signing_keys en mémoire (keys), triée comme les requêtes dérivées.
+     */
+    private SigningKeyRepository repository() {
+        SigningKeyRepository repository = mock(SigningKeyRepository.class);
+        when(repository.save(any(SigningKey.class))).thenAnswer(invocation -> {
+            keys.add(invocation.getArgument(0));
+            return invocation.getArgument(0);
+        });
+        when(repository.findByAlgorithmOrderByCreatedAtDesc(anyString(), any(Pageable.class)))
+                .thenAnswer(invocation -> find(invocation.getArgument(0), invocation.getArgument(1),
+                        Comparator.comparing(SigningKey::getCreatedAt).reversed()));
+        when(repository.findByAlgorithmOrderByCreatedAtAsc(anyString(), any(Pageable.class)))
+                .thenAnswer(invocation -> find(invocation.getArgument(0), invocation.getArgument(1),
+                        Comparator.comparing(SigningKey::getCreatedAt)));
+        return repository;
+    }
+
+    private List<SigningKey> find(String algorithm, Pageable page, Comparator<SigningKey> order) {
+        return keys.stream()
+                .filter(key -> key.getAlgorithm().equals(algorithm))
+                .sorted(order)
+                .limit(page.getPageSize())
+                .collect(Collectors.toList());
+    }
+
+    private static String header(String token) {
+        return decode(token.substring(0, token.indexOf('.')));
+    }
+
+    private static String decode(String part) {
+        return new String(Base64.getUrlDecoder().decode(part), StandardCharsets.UTF_8);
+    }
+}
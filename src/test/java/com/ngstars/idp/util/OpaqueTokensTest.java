@@ -0,0 +1,91 @@
+package com.ngstars.idp.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HexFormat;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class OpaqueTokensTest {
+
+    @Test
+    void generatedTokenParsesToSameSelectorAndHash() {
+        OpaqueTokens.Generated generated = OpaqueTokens.generate();
+
+        OpaqueTokens.Parsed parsed = OpaqueTokens.parse(generated.getValue());
+
+        assertThat(parsed).isNotNull();
+        assertThat(parsed.getSelector()).isEqualTo(generated.getSelector());
+        assertThat(parsed.getVerifierHash()).isEqualTo(generated.getVerifierHash());
+        assertThat(parsed.matches(generated.getVerifierHash())).isTrue();
+    }
+
+    @Test
+    void generatedTokensAreDistinct() {
+        OpaqueTokens.Generated first = OpaqueTokens.generate();
+        OpaqueTokens.Generated second = OpaqueTokens.generate();
+
+        assertThat(first.getValue()).isNotEqualTo(second.getValue());
+        assertThat(first.getSelector()).isNotEqualTo(second.getSelector());
+        assertThat(first.getValue()).matches("[A-Za-z0-9_-]{22}\\.[A-Za-z0-9_-]{43}");
+    }
+
+    @Test
+    void wrongVerifierDoesNotMatch() {
+        OpaqueTokens.Generated generated = OpaqueTokens.generate();
+        OpaqueTokens.Generated other = OpaqueTokens.generate();
+        String selector = generated.getValue().substring(0, generated.getValue().indexOf('.'));
+        String otherVerifier = other.getValue().substring(other.getValue().indexOf('.') + 1);
+
+        OpaqueTokens.Parsed forged = OpaqueTokens.parse(selector + "." + otherVerifier);
+
+        assertThat(forged).isNotNull();
+        assertThat(forged.getSelector()).isEqualTo(generated.getSelector());
+        assertThat(forged.matches(generated.getVerifierHash())).isFalse();
+        assertThat(forged.matches(null)).isFalse();
+    }
+
+    @Test
+    void malformedTokensAreRejected() {
+        OpaqueTokens.Generated generated = OpaqueTokens.generate();
+        String value = generated.getValue();
+        int dot = value.indexOf('.');
+
+        assertThat(OpaqueTokens.parse(null)).isNull();
+        assertThat(OpaqueTokens.parse("")).isNull();
+        // Base64url invalide
+        assertThat(OpaqueTokens.parse("!!!!." + value.substring(dot + 1))).isNull();
+        assertThat(OpaqueTokens.parse(value.substring(0, dot) + ".%%%")).isNull();
+        // Longueurs de selector / verifier incorrectes
+        assertThat(OpaqueTokens.parse(value.substring(0, dot - 2) + value.substring(dot))).isNull();
+        assertThat(OpaqueTokens.parse(value + "AAAA")).isNull();
+        assertThat(OpaqueTokens.parse("." + value.substring(dot + 1))).isNull();
+        assertThat(OpaqueTokens.parse(value.substring(0, dot) + ".")).isNull();
+    }
+
+    @Test
+    void legacyTokenMapsLikeV2Backfill() {
+        // SHA-256("abc") = ba7816bf8f01cfea414140de5dae2223 b00361a396177a9cb410ff61f20015ad
+        // V2 : selector = encode(substring(sha256(token) FROM 1 FOR 16), 'hex')::uuid, token_hash = sha256(token)
+        OpaqueTokens.Parsed parsed = OpaqueTokens.parse("abc");
+
+        assertThat(parsed).isNotNull();
+        assertThat(parsed.getSelector()).isEqualTo(UUID.fromString("ba7816bf-8f01-cfea-4141-40de5dae2223"));
+        byte[] expectedHash = HexFormat.of().parseHex("ba7816bf8f01cfea414140de5dae2223b00361a396177a9cb410ff61f20015ad");
+        assertThat(parsed.getVerifierHash()).isEqualTo(expectedHash);
+        assertThat(parsed.matches(expectedHash)).isTrue();
+    }
+
+    @Test
+    void legacyUuidTokenIsStable() {
+        String legacy = UUID.randomUUID().toString();
+
+        OpaqueTokens.Parsed first = OpaqueTokens.parse(legacy);
+        OpaqueTokens.Parsed second = OpaqueTokens.parse(legacy);
+
+        assertThat(first.getSelector()).isEqualTo(second.getSelector());
+        assertThat(first.matches(OpaqueTokens.sha256(legacy))).isTrue();
+        assertThat(OpaqueTokens.parse(legacy + "x").matches(OpaqueTokens.sha256(legacy))).isFalse();
+    }
+}